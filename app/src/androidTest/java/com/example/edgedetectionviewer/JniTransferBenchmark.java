@@ -0,0 +1,145 @@
+package com.example.edgedetectionviewer;
+
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Compares the byte[] JNI path against the direct-buffer path on a device, and RGBA
+ * against single-channel output on the direct path.
+ *
+ * Run with: ./gradlew :app:connectedAndroidTest
+ * Results are logged under the "JniTransferBenchmark" tag.
+ */
+@RunWith(AndroidJUnit4.class)
+public class JniTransferBenchmark {
+    private static final String TAG = "JniTransferBenchmark";
+    private static final int WARMUP_FRAMES = 20;
+    private static final int MEASURED_FRAMES = 100;
+    
+    private NativeProcessor processor;
+    
+    @Before
+    public void setUp() {
+        processor = new NativeProcessor();
+    }
+    
+    @After
+    public void tearDown() {
+        processor.release();
+    }
+    
+    @Test
+    public void benchmark480p() {
+        compare(640, 480);
+    }
+    
+    @Test
+    public void benchmark720p() {
+        compare(1280, 720);
+    }
+    
+    @Test
+    public void benchmark1080p() {
+        compare(1920, 1080);
+    }
+    
+    @Test
+    public void benchmarkOutputFormats720p() {
+        compareOutputFormats(1280, 720);
+    }
+    
+    @Test
+    public void benchmarkOutputFormats1080p() {
+        compareOutputFormats(1920, 1080);
+    }
+    
+    private void compareOutputFormats(int width, int height) {
+        int pixels = width * height;
+        byte[] frame = new byte[pixels * 4];
+        new Random(42).nextBytes(frame);
+        ByteBuffer input = ByteBuffer.allocateDirect(frame.length).order(ByteOrder.nativeOrder());
+        input.put(frame);
+        input.rewind();
+        
+        ByteBuffer rgba = ByteBuffer.allocateDirect(OutputFormat.RGBA.getFrameSize(width, height));
+        ByteBuffer luminance = ByteBuffer.allocateDirect(OutputFormat.LUMINANCE.getFrameSize(width, height));
+        NativeProcessor single = new NativeProcessor(OutputFormat.LUMINANCE);
+        try {
+            // The single-channel frame is the RGBA frame's R channel
+            assertTrue(processor.processFrame(input, rgba, width, height, true));
+            assertTrue(single.processFrame(input, luminance, width, height, true));
+            for (int i = 0; i < pixels; i++) {
+                assertEquals(rgba.get(i * 4), luminance.get(i));
+            }
+            
+            double rgbaMs = timeDirect(processor, input, rgba, width, height);
+            double luminanceMs = timeDirect(single, input, luminance, width, height);
+            Log.i(TAG, String.format("%dx%d output: RGBA %.2f ms/frame (%d KiB), LUMINANCE %.2f ms/frame (%d KiB)",
+                    width, height, rgbaMs, rgba.capacity() / 1024, luminanceMs, luminance.capacity() / 1024));
+        } finally {
+            single.release();
+        }
+    }
+    
+    private static double timeDirect(NativeProcessor processor, ByteBuffer input, ByteBuffer output, int width, int height) {
+        for (int i = 0; i < WARMUP_FRAMES; i++) {
+            processor.processFrame(input, output, width, height, true);
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < MEASURED_FRAMES; i++) {
+            processor.processFrame(input, output, width, height, true);
+        }
+        return (System.nanoTime() - start) / 1e6 / MEASURED_FRAMES;
+    }
+    
+    private void compare(int width, int height) {
+        int frameSize = width * height * 4;
+        byte[] frame = new byte[frameSize];
+        new Random(42).nextBytes(frame);
+        
+        ByteBuffer input = ByteBuffer.allocateDirect(frameSize).order(ByteOrder.nativeOrder());
+        ByteBuffer output = ByteBuffer.allocateDirect(frameSize).order(ByteOrder.nativeOrder());
+        input.put(frame);
+        input.rewind();
+        
+        // Both paths must produce the same pixels
+        byte[] arrayResult = processor.processFrame(frame, width, height, true);
+        assertTrue(processor.processFrame(input, output, width, height, true));
+        byte[] directResult = new byte[frameSize];
+        output.get(directResult);
+        output.rewind();
+        assertArrayEquals(arrayResult, directResult);
+        
+        for (int i = 0; i < WARMUP_FRAMES; i++) {
+            processor.processFrame(frame, width, height, true);
+            processor.processFrame(input, output, width, height, true);
+        }
+        
+        long start = System.nanoTime();
+        for (int i = 0; i < MEASURED_FRAMES; i++) {
+            processor.processFrame(frame, width, height, true);
+        }
+        double arrayMs = (System.nanoTime() - start) / 1e6 / MEASURED_FRAMES;
+        
+        start = System.nanoTime();
+        for (int i = 0; i < MEASURED_FRAMES; i++) {
+            processor.processFrame(input, output, width, height, true);
+        }
+        double directMs = (System.nanoTime() - start) / 1e6 / MEASURED_FRAMES;
+        
+        Log.i(TAG, String.format("%dx%d: byte[] %.2f ms/frame, direct %.2f ms/frame (%.2fx)",
+                width, height, arrayMs, directMs, arrayMs / directMs));
+    }
+}
@@ -2,6 +2,7 @@
 #include <android/log.h>
 #include <opencv2/opencv.hpp>
 #include <opencv2/imgproc.hpp>
+#include <chrono>
 #include <vector>
 
 #define TAG "NativeProcessor"
@@ -10,12 +11,29 @@
 
 using namespace cv;
 
+static int64_t nowNanos() {
+    return std::chrono::duration_cast<std::chrono::nanoseconds>(
+            std::chrono::steady_clock::now().time_since_epoch()).count();
+}
+
+// Order of the stage timings returned by nativeGetStageTimings
+enum StageTiming { TIMING_GRAYSCALE, TIMING_BLUR, TIMING_CANNY, TIMING_COUNT };
+
+// One region in the layout array of RegionSet.java: x, y, width, height, output offset
+enum RegionField { REGION_X, REGION_Y, REGION_WIDTH, REGION_HEIGHT, REGION_OFFSET, REGION_FIELDS };
+
+// Context read around each region: blur radius, Sobel and the suppression neighbour (RegionSet.HALO)
+static const int REGION_HALO = 4;
+
 /**
  * Native processor class to handle OpenCV operations
  */
 class NativeProcessor {
 public:
-    NativeProcessor() {
+    /**
+     * outputChannels: 4 for RGBA output, 1 for single-channel output
+     */
+    explicit NativeProcessor(int outputChannels) : outputType(outputChannels == 1 ? CV_8UC1 : CV_8UC4) {
         LOGD("NativeProcessor created");
     }
     
@@ -23,66 +41,225 @@ public:
         LOGD("NativeProcessor destroyed");
     }
     
+    size_t outputBytesPerPixel() const {
+        return CV_ELEM_SIZE(outputType);
+    }
+    
+    /**
+     * Nanoseconds spent in each OpenCV stage of the last frame; 0 for stages it skipped.
+     * A few clock reads per frame, so they are always taken.
+     */
+    const int64_t* stageTimings() const {
+        return timings;
+    }
+    
+    /**
+     * Quality for the following frames (QualityLevel.java): edges of a pyramidLevel times
+     * pyrDown'ed frame, blurred with a 5x5 or 3x3 kernel. Output stays full size.
+     */
+    void setQuality(int level, int kernelSize) {
+        pyramidLevel = level < 0 ? 0 : (level > MAX_PYRAMID_LEVEL ? MAX_PYRAMID_LEVEL : level);
+        blurKernelSize = kernelSize == 3 ? 3 : 5;
+    }
+    
+    /**
+     * Process frame with edge detection or grayscale.
+     * Returns an internal Mat in the output format that stays valid until the next call.
+     */
+    const Mat& processFrame(const uint8_t* data, int width, int height, bool applyEdgeDetection) {
+        processed.create(height, width, outputType);
+        processFrame(data, processed.data, width, height, applyEdgeDetection);
+        return processed;
+    }
+    
     /**
-     * Process frame with edge detection or grayscale
+     * Process frame from caller-owned RGBA memory into caller-owned output memory.
+     * Both Mats wrap the given pointers, so no frame data is copied in or out.
      */
-    std::vector<uint8_t> processFrame(const uint8_t* data, int width, int height, bool applyEdgeDetection) {
+    void processFrame(const uint8_t* data, uint8_t* output, int width, int height, bool applyEdgeDetection) {
+        Mat rgba(height, width, CV_8UC4, (void*)data);
+        Mat result(height, width, outputType, output);
+        // Single-channel output takes the last stage's result directly
+        Mat& plane = singleChannel() ? result : gray;
+        clearTimings();
+        
         try {
-            // Create Mat from RGBA data
-            Mat rgba(height, width, CV_8UC4, (void*)data);
-            Mat processed;
-            
+            int64_t start = nowNanos();
             if (applyEdgeDetection) {
                 // Convert to grayscale
-                Mat gray;
                 cvtColor(rgba, gray, COLOR_RGBA2GRAY);
+                start = lap(TIMING_GRAYSCALE, start);
                 
-                // Apply Gaussian blur to reduce noise
-                Mat blurred;
-                GaussianBlur(gray, blurred, Size(5, 5), 1.5);
-                
-                // Apply Canny edge detection
-                Mat edges;
-                Canny(blurred, edges, 50, 150);
-                
-                // Convert back to RGBA for display
-                cvtColor(edges, processed, COLOR_GRAY2RGBA);
-                
-                LOGD("Processed frame with edge detection: %dx%d", width, height);
+                // Blur to reduce noise, then Canny edge detection
+                Mat& edgeTarget = singleChannel() ? result : edges;
+                blurAndCanny(gray, edgeTarget, start);
+                writeOutput(edgeTarget, result);
             } else {
                 // Return grayscale version
-                Mat gray;
-                cvtColor(rgba, gray, COLOR_RGBA2GRAY);
-                cvtColor(gray, processed, COLOR_GRAY2RGBA);
-                
-                LOGD("Processed frame with grayscale: %dx%d", width, height);
+                cvtColor(rgba, plane, COLOR_RGBA2GRAY);
+                writeOutput(plane, result);
+                lap(TIMING_GRAYSCALE, start);
             }
-            
-            // Convert Mat to vector
-            std::vector<uint8_t> result;
-            result.assign(processed.data, processed.data + processed.total() * processed.channels());
-            
-            return result;
-            
         } catch (const cv::Exception& e) {
             LOGE("OpenCV exception: %s", e.what());
             // Return original data on error
-            std::vector<uint8_t> result(data, data + (width * height * 4));
-            return result;
+            if (singleChannel()) {
+                result.setTo(Scalar::all(0));
+            } else {
+                rgba.copyTo(result);
+            }
+        }
+    }
+    
+    /**
+     * Process an 8-bit luminance plane (e.g. a camera Y plane) into caller-owned output memory.
+     * The plane is wrapped with its row stride, so neither a copy nor cvtColor is needed.
+     */
+    void processLuma(const uint8_t* luma, size_t rowStride, uint8_t* output, int width, int height, bool applyEdgeDetection) {
+        Mat plane(height, width, CV_8UC1, (void*)luma, rowStride);
+        Mat result(height, width, outputType, output);
+        clearTimings();
+        
+        try {
+            if (applyEdgeDetection) {
+                Mat& edgeTarget = singleChannel() ? result : edges;
+                blurAndCanny(plane, edgeTarget, nowNanos());
+                writeOutput(edgeTarget, result);
+            } else {
+                writeOutput(plane, result);
+            }
+        } catch (const cv::Exception& e) {
+            LOGE("OpenCV exception: %s", e.what());
+            writeOutput(plane, result);
+        }
+    }
+    
+    /**
+     * Canny over the regions of a luminance plane only, each packed as 255/0 bytes at its
+     * output offset. Each region is blurred and run through Canny with REGION_HALO pixels of
+     * context, clipped at the frame edges; the pyramid level does not apply.
+     */
+    void processLumaRegions(const uint8_t* luma, size_t rowStride, int width, int height,
+                            const int* layout, int count, uint8_t* output) {
+        Mat plane(height, width, CV_8UC1, (void*)luma, rowStride);
+        clearTimings();
+        
+        for (int i = 0; i < count; i++) {
+            const int* r = layout + i * REGION_FIELDS;
+            Rect region(r[REGION_X], r[REGION_Y], r[REGION_WIDTH], r[REGION_HEIGHT]);
+            Mat result(region.height, region.width, CV_8UC1, output + r[REGION_OFFSET]);
+            try {
+                int x0 = std::max(0, region.x - REGION_HALO);
+                int y0 = std::max(0, region.y - REGION_HALO);
+                Rect crop(x0, y0,
+                          std::min(width, region.x + region.width + REGION_HALO) - x0,
+                          std::min(height, region.y + region.height + REGION_HALO) - y0);
+                
+                // BORDER_ISOLATED keeps the blur inside the crop, like the Java path
+                int64_t start = nowNanos();
+                if (blurKernelSize == 3) {
+                    GaussianBlur(plane(crop), blurred, Size(3, 3), 0, 0, BORDER_DEFAULT | BORDER_ISOLATED);
+                } else {
+                    GaussianBlur(plane(crop), blurred, Size(5, 5), 1.5, 0, BORDER_DEFAULT | BORDER_ISOLATED);
+                }
+                int64_t blurEnd = nowNanos();
+                timings[TIMING_BLUR] += blurEnd - start;
+                
+                Canny(blurred, edges, 50, 150);
+                edges(Rect(region.x - x0, region.y - y0, region.width, region.height)).copyTo(result);
+                timings[TIMING_CANNY] += nowNanos() - blurEnd;
+            } catch (const cv::Exception& e) {
+                LOGE("OpenCV exception: %s", e.what());
+                result.setTo(Scalar::all(0));
+            }
+        }
+    }
+    
+private:
+    static const int MAX_PYRAMID_LEVEL = 3;
+    
+    bool singleChannel() const {
+        return outputType == CV_8UC1;
+    }
+    
+    /**
+     * Blur and Canny of a gray plane into a full-size edge Mat at the current quality.
+     * Reduced levels scale the edges back up nearest-neighbour.
+     */
+    void blurAndCanny(const Mat& plane, Mat& edgeTarget, int64_t start) {
+        const Mat* source = &plane;
+        for (int i = 0; i < pyramidLevel; i++) {
+            pyrDown(*source, pyramid[i]);
+            source = &pyramid[i];
+        }
+        if (blurKernelSize == 3) {
+            // Sigma 0 selects the fixed 1-2-1 kernel
+            GaussianBlur(*source, blurred, Size(3, 3), 0);
+        } else {
+            GaussianBlur(*source, blurred, Size(5, 5), 1.5);
+        }
+        start = lap(TIMING_BLUR, start);
+        
+        if (pyramidLevel > 0) {
+            Canny(blurred, smallEdges, 50, 150);
+            resize(smallEdges, edgeTarget, plane.size(), 0, 0, INTER_NEAREST);
+        } else {
+            Canny(blurred, edgeTarget, 50, 150);
+        }
+        lap(TIMING_CANNY, start);
+    }
+    
+    void clearTimings() {
+        for (int64_t& t : timings) {
+            t = 0;
         }
     }
+    
+    // Records the time since start for a stage; returns now, the next stage's start
+    int64_t lap(StageTiming stage, int64_t start) {
+        int64_t now = nowNanos();
+        timings[stage] = now - start;
+        return now;
+    }
+    
+    /**
+     * Writes a single-channel plane into the output Mat, expanding to RGBA if needed.
+     * A no-op when the plane already is the output.
+     */
+    static void writeOutput(const Mat& plane, Mat& result) {
+        if (result.channels() == 4) {
+            cvtColor(plane, result, COLOR_GRAY2RGBA);
+        } else if (plane.data != result.data) {
+            plane.copyTo(result);
+        }
+    }
+    
+    const int outputType;
+    
+    // Intermediates live across frames; Mat::create only reallocates when the size changes
+    Mat gray;
+    Mat blurred;
+    Mat edges;
+    Mat processed;
+    Mat pyramid[MAX_PYRAMID_LEVEL];
+    Mat smallEdges;
+    
+    int pyramidLevel = 0;
+    int blurKernelSize = 5;
+    
+    int64_t timings[TIMING_COUNT] = {};
 };
 
 // JNI method implementations
 
 extern "C" JNIEXPORT jlong JNICALL
-Java_com_example_edgedetectionviewer_MainActivity_nativeCreate(JNIEnv* env, jobject thiz) {
-    NativeProcessor* processor = new NativeProcessor();
+Java_com_example_edgedetectionviewer_NativeProcessor_nativeCreate(JNIEnv* env, jobject thiz, jint outputChannels) {
+    NativeProcessor* processor = new NativeProcessor(outputChannels);
     return reinterpret_cast<jlong>(processor);
 }
 
 extern "C" JNIEXPORT void JNICALL
-Java_com_example_edgedetectionviewer_MainActivity_nativeDestroy(JNIEnv* env, jobject thiz, jlong handle) {
+Java_com_example_edgedetectionviewer_NativeProcessor_nativeDestroy(JNIEnv* env, jobject thiz, jlong handle) {
     if (handle != 0) {
         NativeProcessor* processor = reinterpret_cast<NativeProcessor*>(handle);
         delete processor;
@@ -90,7 +267,7 @@ Java_com_example_edgedetectionviewer_MainActivity_nativeDestroy(JNIEnv* env, job
 }
 
 extern "C" JNIEXPORT jbyteArray JNICALL
-Java_com_example_edgedetectionviewer_MainActivity_nativeProcessFrame(
+Java_com_example_edgedetectionviewer_NativeProcessor_nativeProcessFrame(
     JNIEnv* env, 
     jobject thiz, 
     jlong handle, 
@@ -108,10 +285,9 @@ Java_com_example_edgedetectionviewer_MainActivity_nativeProcessFrame(
     
     // Get input data
     jbyte* inputData = env->GetByteArrayElements(data, nullptr);
-    jsize inputSize = env->GetArrayLength(data);
     
     // Process frame
-    std::vector<uint8_t> result = processor->processFrame(
+    const Mat& result = processor->processFrame(
         reinterpret_cast<uint8_t*>(inputData), 
         width, 
         height, 
@@ -121,9 +297,170 @@ Java_com_example_edgedetectionviewer_MainActivity_nativeProcessFrame(
     // Release input data
     env->ReleaseByteArrayElements(data, inputData, JNI_ABORT);
     
-    // Create output array
-    jbyteArray outputArray = env->NewByteArray(result.size());
-    env->SetByteArrayRegion(outputArray, 0, result.size(), reinterpret_cast<jbyte*>(result.data()));
+    // Copy straight from the result Mat into the output array
+    jsize resultSize = static_cast<jsize>(result.total() * result.elemSize());
+    jbyteArray outputArray = env->NewByteArray(resultSize);
+    env->SetByteArrayRegion(outputArray, 0, resultSize, reinterpret_cast<const jbyte*>(result.data));
     
     return outputArray;
 }
+
+extern "C" JNIEXPORT jboolean JNICALL
+Java_com_example_edgedetectionviewer_NativeProcessor_nativeProcessFrameDirect(
+    JNIEnv* env, 
+    jobject thiz, 
+    jlong handle, 
+    jobject input, 
+    jobject output, 
+    jint width, 
+    jint height, 
+    jboolean applyEdgeDetection
+) {
+    if (handle == 0) {
+        LOGE("Invalid native handle");
+        return JNI_FALSE;
+    }
+    
+    // Borrow the caller's direct buffers; nothing is pinned or copied
+    uint8_t* inputData = static_cast<uint8_t*>(env->GetDirectBufferAddress(input));
+    uint8_t* outputData = static_cast<uint8_t*>(env->GetDirectBufferAddress(output));
+    if (inputData == nullptr || outputData == nullptr) {
+        LOGE("Direct buffer access not supported");
+        return JNI_FALSE;
+    }
+    
+    NativeProcessor* processor = reinterpret_cast<NativeProcessor*>(handle);
+    jlong pixels = static_cast<jlong>(width) * height;
+    if (env->GetDirectBufferCapacity(input) < pixels * 4
+            || env->GetDirectBufferCapacity(output) < pixels * static_cast<jlong>(processor->outputBytesPerPixel())) {
+        LOGE("Direct buffer too small for %dx%d frame", width, height);
+        return JNI_FALSE;
+    }
+    
+    processor->processFrame(inputData, outputData, width, height, applyEdgeDetection);
+    
+    return JNI_TRUE;
+}
+
+extern "C" JNIEXPORT jboolean JNICALL
+Java_com_example_edgedetectionviewer_NativeProcessor_nativeProcessLumaDirect(
+    JNIEnv* env, 
+    jobject thiz, 
+    jlong handle, 
+    jobject luma, 
+    jint rowStride, 
+    jobject output, 
+    jint width, 
+    jint height, 
+    jboolean applyEdgeDetection
+) {
+    if (handle == 0) {
+        LOGE("Invalid native handle");
+        return JNI_FALSE;
+    }
+    
+    uint8_t* lumaData = static_cast<uint8_t*>(env->GetDirectBufferAddress(luma));
+    uint8_t* outputData = static_cast<uint8_t*>(env->GetDirectBufferAddress(output));
+    if (lumaData == nullptr || outputData == nullptr) {
+        LOGE("Direct buffer access not supported");
+        return JNI_FALSE;
+    }
+    
+    NativeProcessor* processor = reinterpret_cast<NativeProcessor*>(handle);
+    
+    // The last row of a camera plane may stop right after its last pixel
+    jlong planeSize = static_cast<jlong>(rowStride) * (height - 1) + width;
+    jlong frameSize = static_cast<jlong>(width) * height * static_cast<jlong>(processor->outputBytesPerPixel());
+    if (rowStride < width || env->GetDirectBufferCapacity(luma) < planeSize
+            || env->GetDirectBufferCapacity(output) < frameSize) {
+        LOGE("Direct buffer too small for %dx%d frame", width, height);
+        return JNI_FALSE;
+    }
+    
+    processor->processLuma(lumaData, static_cast<size_t>(rowStride), outputData, width, height, applyEdgeDetection);
+    
+    return JNI_TRUE;
+}
+
+extern "C" JNIEXPORT jboolean JNICALL
+Java_com_example_edgedetectionviewer_NativeProcessor_nativeProcessLumaRegionsDirect(
+    JNIEnv* env, 
+    jobject thiz, 
+    jlong handle, 
+    jobject luma, 
+    jint rowStride, 
+    jint width, 
+    jint height, 
+    jintArray layout, 
+    jint count, 
+    jobject output
+) {
+    if (handle == 0) {
+        LOGE("Invalid native handle");
+        return JNI_FALSE;
+    }
+    
+    uint8_t* lumaData = static_cast<uint8_t*>(env->GetDirectBufferAddress(luma));
+    uint8_t* outputData = static_cast<uint8_t*>(env->GetDirectBufferAddress(output));
+    if (lumaData == nullptr || outputData == nullptr) {
+        LOGE("Direct buffer access not supported");
+        return JNI_FALSE;
+    }
+    
+    // Only the region rectangles cross JNI; their pixels are read in place
+    static thread_local std::vector<jint> regions;
+    regions.resize(static_cast<size_t>(count) * REGION_FIELDS);
+    env->GetIntArrayRegion(layout, 0, count * REGION_FIELDS, regions.data());
+    
+    jlong planeSize = static_cast<jlong>(rowStride) * (height - 1) + width;
+    jlong packedSize = 0;
+    for (jint i = 0; i < count; i++) {
+        const jint* r = regions.data() + i * REGION_FIELDS;
+        if (r[REGION_X] < 0 || r[REGION_Y] < 0 || r[REGION_WIDTH] <= 0 || r[REGION_HEIGHT] <= 0
+                || r[REGION_X] + r[REGION_WIDTH] > width || r[REGION_Y] + r[REGION_HEIGHT] > height) {
+            LOGE("Region %d outside %dx%d frame", i, width, height);
+            return JNI_FALSE;
+        }
+        packedSize = std::max(packedSize, static_cast<jlong>(r[REGION_OFFSET]) + r[REGION_WIDTH] * r[REGION_HEIGHT]);
+    }
+    if (rowStride < width || env->GetDirectBufferCapacity(luma) < planeSize
+            || env->GetDirectBufferCapacity(output) < packedSize) {
+        LOGE("Direct buffer too small for %d regions of %dx%d frame", count, width, height);
+        return JNI_FALSE;
+    }
+    
+    NativeProcessor* processor = reinterpret_cast<NativeProcessor*>(handle);
+    processor->processLumaRegions(lumaData, static_cast<size_t>(rowStride), width, height,
+                                  regions.data(), count, outputData);
+    
+    return JNI_TRUE;
+}
+
+extern "C" JNIEXPORT void JNICALL
+Java_com_example_edgedetectionviewer_NativeProcessor_nativeSetQuality(
+    JNIEnv* env, 
+    jobject thiz, 
+    jlong handle, 
+    jint pyramidLevel, 
+    jint blurKernelSize
+) {
+    if (handle == 0) {
+        return;
+    }
+    NativeProcessor* processor = reinterpret_cast<NativeProcessor*>(handle);
+    processor->setQuality(pyramidLevel, blurKernelSize);
+}
+
+extern "C" JNIEXPORT void JNICALL
+Java_com_example_edgedetectionviewer_NativeProcessor_nativeGetStageTimings(
+    JNIEnv* env, 
+    jobject thiz, 
+    jlong handle, 
+    jlongArray out
+) {
+    if (handle == 0 || env->GetArrayLength(out) < TIMING_COUNT) {
+        return;
+    }
+    NativeProcessor* processor = reinterpret_cast<NativeProcessor*>(handle);
+    env->SetLongArrayRegion(out, 0, TIMING_COUNT, reinterpret_cast<const jlong*>(processor->stageTimings()));
+}
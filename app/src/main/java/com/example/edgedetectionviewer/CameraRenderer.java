@@ -10,14 +10,26 @@ import javax.microedition.khronos.opengles.GL10;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.FloatBuffer;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 public class CameraRenderer implements GLSurfaceView.Renderer, SurfaceTexture.OnFrameAvailableListener {
     private static final String TAG = "CameraRenderer";
     
     private MainActivity activity;
+    private final FramePipeline pipeline;
+    private final FrameMetrics metrics;
+    private final StartupTrace startup;
     private SurfaceTexture surfaceTexture;
     private int textureId;
     private int shaderProgram;
+    private int positionHandle;
+    private int texCoordHandle;
+    private int textureHandle;
+    
+    // Storage currently allocated for textureId; frames of the same shape only update it
+    private int textureWidth;
+    private int textureHeight;
+    private int textureFormat;
     
     private FloatBuffer vertexBuffer;
     private FloatBuffer textureBuffer;
@@ -25,13 +37,11 @@ public class CameraRenderer implements GLSurfaceView.Renderer, SurfaceTexture.On
     private int previewWidth = 640;
     private int previewHeight = 480;
     
-    private byte[] currentFrameData;
-    private boolean frameAvailable = false;
+    private final AtomicBoolean frameAvailable = new AtomicBoolean();
     
-    // FPS calculation
-    private long lastFrameTime = 0;
-    private int frameCount = 0;
-    private float currentFPS = 0;
+    // Presented frames, read by the UI for its FPS display; the nanoTime of the last one
+    private volatile long presentedFrames;
+    private long lastPresentNanos;
     
     // Vertex shader
     private final String vertexShaderCode =
@@ -68,8 +78,11 @@ public class CameraRenderer implements GLSurfaceView.Renderer, SurfaceTexture.On
         1.0f, 0.0f
     };
     
-    public CameraRenderer(MainActivity activity) {
+    public CameraRenderer(MainActivity activity, FramePipeline pipeline, StartupTrace startup) {
         this.activity = activity;
+        this.pipeline = pipeline;
+        this.metrics = pipeline.getMetrics();
+        this.startup = startup;
         
         // Setup buffers
         ByteBuffer vbb = ByteBuffer.allocateDirect(VERTICES.length * 4);
@@ -99,15 +112,20 @@ public class CameraRenderer implements GLSurfaceView.Renderer, SurfaceTexture.On
         GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_LINEAR);
         GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_S, GLES20.GL_CLAMP_TO_EDGE);
         GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_T, GLES20.GL_CLAMP_TO_EDGE);
+        // Single-channel rows are tightly packed, whatever the width
+        GLES20.glPixelStorei(GLES20.GL_UNPACK_ALIGNMENT, 1);
+        textureWidth = 0;
+        textureHeight = 0;
         
-        // Create shader program
-        int vertexShader = loadShader(GLES20.GL_VERTEX_SHADER, vertexShaderCode);
-        int fragmentShader = loadShader(GLES20.GL_FRAGMENT_SHADER, fragmentShaderCode);
-        
-        shaderProgram = GLES20.glCreateProgram();
-        GLES20.glAttachShader(shaderProgram, vertexShader);
-        GLES20.glAttachShader(shaderProgram, fragmentShader);
-        GLES20.glLinkProgram(shaderProgram);
+        long start = startup.start();
+        shaderProgram = createProgram();
+        if (shaderProgram != 0) {
+            positionHandle = GLES20.glGetAttribLocation(shaderProgram, "aPosition");
+            texCoordHandle = GLES20.glGetAttribLocation(shaderProgram, "aTexCoord");
+            textureHandle = GLES20.glGetUniformLocation(shaderProgram, "uTexture");
+            warmUpDraw();
+        }
+        startup.end(StartupTrace.Phase.SHADER_COMPILE, start);
         
         // Create SurfaceTexture
         surfaceTexture = new SurfaceTexture(textureId);
@@ -123,41 +141,40 @@ public class CameraRenderer implements GLSurfaceView.Renderer, SurfaceTexture.On
     public void onDrawFrame(GL10 gl) {
         GLES20.glClear(GLES20.GL_COLOR_BUFFER_BIT);
         
-        synchronized (this) {
-            if (frameAvailable) {
-                surfaceTexture.updateTexImage();
-                frameAvailable = false;
-                
-                // Read pixel data and process
-                ByteBuffer buffer = ByteBuffer.allocateDirect(previewWidth * previewHeight * 4);
-                GLES20.glReadPixels(0, 0, previewWidth, previewHeight, GLES20.GL_RGBA, GLES20.GL_UNSIGNED_BYTE, buffer);
-                
-                // Convert to byte array and process
-                byte[] data = new byte[previewWidth * previewHeight * 4];
-                buffer.get(data);
-                
-                // Process frame through native code
-                byte[] processedData = activity.processFrame(data, previewWidth, previewHeight);
-                if (processedData != null) {
-                    currentFrameData = processedData;
-                    
-                    // Upload processed texture
-                    ByteBuffer processed = ByteBuffer.wrap(processedData);
-                    GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, textureId);
-                    GLES20.glTexImage2D(GLES20.GL_TEXTURE_2D, 0, GLES20.GL_RGBA, previewWidth, previewHeight, 
-                                       0, GLES20.GL_RGBA, GLES20.GL_UNSIGNED_BYTE, processed);
-                }
-                
-                updateFPS();
-            }
+        // Capture stage: hand the camera frame to the processing thread and move on
+        if (frameAvailable.getAndSet(false)) {
+            surfaceTexture.updateTexImage();
+            
+            FrameBuffer readback = pipeline.acquireCaptureBuffer(previewWidth, previewHeight);
+            long start = metrics.start();
+            GLES20.glReadPixels(0, 0, previewWidth, previewHeight, GLES20.GL_RGBA, GLES20.GL_UNSIGNED_BYTE, readback.getData());
+            metrics.stop(FrameMetrics.Stage.READBACK, start);
+            pipeline.submit(readback);
         }
         
-        // Draw quad with texture
-        GLES20.glUseProgram(shaderProgram);
+        // Present stage: show the newest processed frame, if one arrived since the last draw
+        FrameBuffer processed = pipeline.pollProcessed();
+        if (processed != null) {
+            long start = metrics.start();
+            upload(processed);
+            metrics.stop(FrameMetrics.Stage.UPLOAD, start);
+            // glTexSubImage2D has copied the pixels; saving goes through the FrameRecorder
+            processed.release();
+            
+            countPresented();
+        }
         
-        int positionHandle = GLES20.glGetAttribLocation(shaderProgram, "aPosition");
-        int texCoordHandle = GLES20.glGetAttribLocation(shaderProgram, "aTexCoord");
-        int textureHandle = GLES20.glGetUniformLocation(shaderProgram, "uTexture");
+        // Draw quad with texture; GL runs asynchronously, so this times issuing the draw
+        long drawStart = metrics.start();
+        drawQuad();
+        metrics.stop(FrameMetrics.Stage.PRESENT, drawStart);
+    }
+    
+    private void drawQuad() {
+        if (shaderProgram == 0) {
+            return;
+        }
+        GLES20.glUseProgram(shaderProgram);
         
         GLES20.glEnableVertexAttribArray(positionHandle);
         GLES20.glVertexAttribPointer(positionHandle, 3, GLES20.GL_FLOAT, false, 0, vertexBuffer);
@@ -175,11 +192,78 @@ public class CameraRenderer implements GLSurfaceView.Renderer, SurfaceTexture.On
         GLES20.glDisableVertexAttribArray(texCoordHandle);
     }
     
+    /**
+     * Draws the quad once with a 1x1 texture and waits for it. Drivers often finish compiling
+     * a program on its first draw; this moves that cost from the first camera frame to here.
+     */
+    private void warmUpDraw() {
+        GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, textureId);
+        GLES20.glTexImage2D(GLES20.GL_TEXTURE_2D, 0, GLES20.GL_LUMINANCE, 1, 1, 0,
+                GLES20.GL_LUMINANCE, GLES20.GL_UNSIGNED_BYTE, ByteBuffer.allocateDirect(1));
+        textureWidth = 1;
+        textureHeight = 1;
+        textureFormat = GLES20.GL_LUMINANCE;
+        drawQuad();
+        GLES20.glClear(GLES20.GL_COLOR_BUFFER_BIT);
+        GLES20.glFinish();
+    }
+    
+    /**
+     * Compiles and links the shaders, logging the driver's message on failure.
+     *
+     * @return the program, or 0 if it failed; nothing is drawn then
+     */
+    private int createProgram() {
+        int vertexShader = loadShader(GLES20.GL_VERTEX_SHADER, vertexShaderCode);
+        int fragmentShader = loadShader(GLES20.GL_FRAGMENT_SHADER, fragmentShaderCode);
+        if (vertexShader == 0 || fragmentShader == 0) {
+            GLES20.glDeleteShader(vertexShader);
+            GLES20.glDeleteShader(fragmentShader);
+            return 0;
+        }
+        
+        int program = GLES20.glCreateProgram();
+        GLES20.glAttachShader(program, vertexShader);
+        GLES20.glAttachShader(program, fragmentShader);
+        GLES20.glLinkProgram(program);
+        // Flagged for deletion; freed with the program
+        GLES20.glDeleteShader(vertexShader);
+        GLES20.glDeleteShader(fragmentShader);
+        
+        int[] status = new int[1];
+        GLES20.glGetProgramiv(program, GLES20.GL_LINK_STATUS, status, 0);
+        if (status[0] != GLES20.GL_TRUE) {
+            Log.e(TAG, "Shader program failed to link: " + GLES20.glGetProgramInfoLog(program));
+            GLES20.glDeleteProgram(program);
+            return 0;
+        }
+        return program;
+    }
+    
+    /**
+     * Uploads a processed frame. Single-channel frames go up as GL_LUMINANCE, which the shader
+     * samples as gray; the texture is only reallocated when the frame shape changes.
+     */
+    private void upload(FrameBuffer frame) {
+        int format = frame.getBytesPerPixel() == 1 ? GLES20.GL_LUMINANCE : GLES20.GL_RGBA;
+        int width = frame.getWidth();
+        int height = frame.getHeight();
+        
+        GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, textureId);
+        if (width != textureWidth || height != textureHeight || format != textureFormat) {
+            GLES20.glTexImage2D(GLES20.GL_TEXTURE_2D, 0, format, width, height,
+                               0, format, GLES20.GL_UNSIGNED_BYTE, null);
+            textureWidth = width;
+            textureHeight = height;
+            textureFormat = format;
+        }
+        GLES20.glTexSubImage2D(GLES20.GL_TEXTURE_2D, 0, 0, 0, width, height,
+                              format, GLES20.GL_UNSIGNED_BYTE, frame.getData());
+    }
+    
     @Override
     public void onFrameAvailable(SurfaceTexture surfaceTexture) {
-        synchronized (this) {
-            frameAvailable = true;
-        }
+        frameAvailable.set(true);
     }
     
     public void onFrameCaptured() {
@@ -189,26 +273,46 @@ public class CameraRenderer implements GLSurfaceView.Renderer, SurfaceTexture.On
         }
     }
     
+    /**
+     * @return the compiled shader, or 0 if it failed to compile
+     */
     private int loadShader(int type, String shaderCode) {
         int shader = GLES20.glCreateShader(type);
         GLES20.glShaderSource(shader, shaderCode);
         GLES20.glCompileShader(shader);
+        
+        int[] status = new int[1];
+        GLES20.glGetShaderiv(shader, GLES20.GL_COMPILE_STATUS, status, 0);
+        if (status[0] != GLES20.GL_TRUE) {
+            Log.e(TAG, (type == GLES20.GL_VERTEX_SHADER ? "Vertex" : "Fragment")
+                    + " shader failed to compile: " + GLES20.glGetShaderInfoLog(shader));
+            GLES20.glDeleteShader(shader);
+            return 0;
+        }
         return shader;
     }
     
-    private void updateFPS() {
-        long currentTime = System.currentTimeMillis();
-        frameCount++;
-        
-        if (currentTime - lastFrameTime >= 1000) {
-            currentFPS = frameCount * 1000.0f / (currentTime - lastFrameTime);
-            frameCount = 0;
-            lastFrameTime = currentTime;
+    private void countPresented() {
+        if (presentedFrames == 0) {
+            startup.mark(StartupTrace.Phase.FIRST_PRESENT);
         }
+        if (metrics.isEnabled()) {
+            long now = System.nanoTime();
+            if (lastPresentNanos != 0) {
+                metrics.record(FrameMetrics.Stage.FRAME_INTERVAL, now - lastPresentNanos);
+            }
+            lastPresentNanos = now;
+        } else {
+            lastPresentNanos = 0;
+        }
+        presentedFrames++;
     }
     
-    public float getFPS() {
-        return currentFPS;
+    /**
+     * Processed frames shown so far; the UI derives FPS from its rate of change.
+     */
+    public long getPresentedFrameCount() {
+        return presentedFrames;
     }
     
     public SurfaceTexture getSurfaceTexture() {
@@ -218,9 +322,6 @@ public class CameraRenderer implements GLSurfaceView.Renderer, SurfaceTexture.On
     public void setPreviewSize(int width, int height) {
         this.previewWidth = width;
         this.previewHeight = height;
-    }
-    
-    public byte[] getCurrentFrameData() {
-        return currentFrameData;
+        pipeline.onFrameSizeChanged(width, height);
     }
 }
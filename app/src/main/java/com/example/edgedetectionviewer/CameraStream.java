@@ -0,0 +1,163 @@
+package com.example.edgedetectionviewer;
+
+import android.annotation.SuppressLint;
+import android.hardware.camera2.CameraAccessException;
+import android.hardware.camera2.CameraCaptureSession;
+import android.hardware.camera2.CameraDevice;
+import android.hardware.camera2.CameraManager;
+import android.hardware.camera2.CameraMetadata;
+import android.hardware.camera2.CaptureRequest;
+import android.os.Handler;
+import android.util.Log;
+import android.util.Size;
+import android.view.Surface;
+
+import androidx.annotation.NonNull;
+
+import java.util.Collections;
+
+/**
+ * A camera besides the preview one, processed as a stream of a {@link StreamManager}:
+ * camera to {@link LumaCaptureSource} to the stream's processor. Nothing shows its frames,
+ * so processed frames are released as they arrive; the stream's stats are what it reports.
+ */
+public class CameraStream {
+    private static final String TAG = "CameraStream";
+    
+    private final String cameraId;
+    private final StreamManager manager;
+    private final StreamManager.Stream stream;
+    private final FrameProcessor processor;
+    private final LumaCaptureSource source;
+    
+    // Set on the camera's handler, taken by close() on the caller's thread; guarded by this
+    private CameraDevice device;
+    private CameraCaptureSession session;
+    private boolean closed;
+    
+    /**
+     * @param processor owned by this stream from now on; released by {@link #close}
+     */
+    public CameraStream(String cameraId, Size size, StreamManager manager, FrameProcessor processor,
+            int priority, Handler handler) {
+        this.cameraId = cameraId;
+        this.manager = manager;
+        this.processor = processor;
+        stream = manager.register("camera" + cameraId, processor, priority);
+        stream.setListener(s -> {
+            FrameBuffer frame = s.pollProcessed();
+            if (frame != null) {
+                frame.release();
+            }
+        });
+        source = new LumaCaptureSource(size.getWidth(), size.getHeight(), handler);
+        source.start(stream);
+    }
+    
+    public StreamManager.Stream getStream() {
+        return stream;
+    }
+    
+    /**
+     * Opens the camera and starts repeating captures into the stream. The caller has checked
+     * the camera permission.
+     */
+    @SuppressLint("MissingPermission")
+    public void open(CameraManager cameras, Handler handler) throws CameraAccessException {
+        cameras.openCamera(cameraId, new CameraDevice.StateCallback() {
+            @Override
+            public void onOpened(@NonNull CameraDevice camera) {
+                synchronized (CameraStream.this) {
+                    if (!closed) {
+                        device = camera;
+                        startCapture(camera, handler);
+                        return;
+                    }
+                }
+                // Closed while the camera was opening
+                camera.close();
+            }
+            
+            @Override
+            public void onDisconnected(@NonNull CameraDevice camera) {
+                forget(camera);
+                camera.close();
+            }
+            
+            @Override
+            public void onError(@NonNull CameraDevice camera, int error) {
+                // Commonly ERROR_MAX_CAMERAS_IN_USE on devices that open one camera at a time
+                Log.w(TAG, "Camera " + cameraId + " failed: " + error);
+                forget(camera);
+                camera.close();
+            }
+        }, handler);
+    }
+    
+    private synchronized void forget(CameraDevice camera) {
+        if (device == camera) {
+            device = null;
+        }
+    }
+    
+    private void startCapture(CameraDevice camera, Handler handler) {
+        try {
+            Surface surface = source.getSurface();
+            CaptureRequest.Builder request = camera.createCaptureRequest(CameraDevice.TEMPLATE_PREVIEW);
+            request.addTarget(surface);
+            request.set(CaptureRequest.CONTROL_MODE, CameraMetadata.CONTROL_MODE_AUTO);
+            camera.createCaptureSession(Collections.singletonList(surface), new CameraCaptureSession.StateCallback() {
+                @Override
+                public void onConfigured(@NonNull CameraCaptureSession s) {
+                    synchronized (CameraStream.this) {
+                        if (device != camera) {
+                            // Closed or lost meanwhile
+                            s.close();
+                            return;
+                        }
+                        session = s;
+                        try {
+                            s.setRepeatingRequest(request.build(), null, handler);
+                        } catch (CameraAccessException e) {
+                            Log.e(TAG, "Failed to start camera " + cameraId, e);
+                        }
+                    }
+                }
+                
+                @Override
+                public void onConfigureFailed(@NonNull CameraCaptureSession s) {
+                    Log.e(TAG, "Configuration failed for camera " + cameraId);
+                }
+            }, handler);
+        } catch (CameraAccessException e) {
+            Log.e(TAG, "Camera access exception", e);
+        }
+    }
+    
+    /**
+     * Closes the camera, also one still opening, then removes the stream, waiting for its
+     * frame in flight, and frees the images and the processor. Call it before the camera's
+     * handler thread quits.
+     */
+    public void close() {
+        CameraCaptureSession s;
+        CameraDevice d;
+        synchronized (this) {
+            closed = true;
+            s = session;
+            d = device;
+            session = null;
+            device = null;
+        }
+        if (s != null) {
+            s.close();
+        }
+        if (d != null) {
+            d.close();
+        }
+        source.stop();
+        manager.unregister(stream);
+        source.close();
+        processor.release();
+    }
+}
@@ -0,0 +1,139 @@
+package com.example.edgedetectionviewer;
+
+import android.graphics.ImageFormat;
+import android.media.Image;
+import android.media.ImageReader;
+import android.os.Handler;
+import android.util.Log;
+import android.view.Surface;
+
+import java.util.ArrayDeque;
+
+/**
+ * Camera capture straight to luminance: an ImageReader target delivering YUV_420_888, whose
+ * Y plane goes to a {@link FramePipeline} or a {@link StreamManager} stream as a
+ * {@link LumaFrame}. This skips the GPU readback and the RGBA-to-gray conversion of the
+ * SurfaceTexture path. Each image stays open until the target releases its frame.
+ *
+ * Images arriving while the source is stopped are closed unread.
+ */
+public class LumaCaptureSource implements FrameSource, ImageReader.OnImageAvailableListener {
+    private static final String TAG = "LumaCaptureSource";
+    
+    // Everything the target may hold, plus one image for the next acquire
+    private static final int MAX_IMAGES = Math.max(FramePipeline.MAX_HELD_CAPTURES, StreamManager.MAX_HELD_CAPTURES) + 1;
+    
+    private final ImageReader imageReader;
+    
+    private volatile CaptureTarget target;
+    private volatile long deliveredCount;
+    private volatile long droppedCount;
+    
+    // Wrappers are recycled from the worker thread, so the deque is guarded by itself
+    private final ArrayDeque<LumaFrame> freeFrames = new ArrayDeque<>(MAX_IMAGES);
+    private final LumaFrame.Recycler recycler = frame -> {
+        synchronized (freeFrames) {
+            freeFrames.push(frame);
+        }
+    };
+    
+    public LumaCaptureSource(int width, int height, Handler handler) {
+        imageReader = ImageReader.newInstance(width, height, ImageFormat.YUV_420_888, MAX_IMAGES);
+        imageReader.setOnImageAvailableListener(this, handler);
+        for (int i = 0; i < MAX_IMAGES; i++) {
+            freeFrames.push(new LumaFrame(recycler));
+        }
+    }
+    
+    /**
+     * Camera output target to add to the capture session.
+     */
+    public Surface getSurface() {
+        return imageReader.getSurface();
+    }
+    
+    @Override
+    public int getWidth() {
+        return imageReader.getWidth();
+    }
+    
+    @Override
+    public int getHeight() {
+        return imageReader.getHeight();
+    }
+    
+    /**
+     * Hands images to {@code target} from the handler's thread; the camera is started
+     * separately, with {@link #getSurface()} as an output.
+     */
+    @Override
+    public void start(CaptureTarget target) {
+        this.target = target;
+    }
+    
+    @Override
+    public void stop() {
+        target = null;
+    }
+    
+    @Override
+    public long getDeliveredCount() {
+        return deliveredCount;
+    }
+    
+    @Override
+    public long getDroppedCount() {
+        return droppedCount;
+    }
+    
+    @Override
+    public void onImageAvailable(ImageReader reader) {
+        Image image;
+        try {
+            image = reader.acquireLatestImage();
+        } catch (IllegalStateException e) {
+            // Every image is still held downstream; this frame is dropped at the source
+            Log.w(TAG, "No free image, dropping frame");
+            droppedCount++;
+            return;
+        }
+        if (image == null) {
+            return;
+        }
+        CaptureTarget target = this.target;
+        if (target == null) {
+            image.close();
+            return;
+        }
+        
+        LumaFrame frame;
+        synchronized (freeFrames) {
+            frame = freeFrames.poll();
+        }
+        if (frame == null) {
+            image.close();
+            droppedCount++;
+            return;
+        }
+        
+        Image.Plane y = image.getPlanes()[0];
+        try {
+            frame.set(y.getBuffer(), image.getWidth(), image.getHeight(), y.getRowStride(), y.getPixelStride(), image);
+        } catch (IllegalArgumentException e) {
+            Log.e(TAG, "Unusable Y plane", e);
+            image.close();
+            recycler.recycle(frame);
+            return;
+        }
+        deliveredCount++;
+        target.submit(frame);
+    }
+    
+    /**
+     * Closes the reader and every image still open. Call once the target is stopped or no
+     * longer holds frames from this source.
+     */
+    public void close() {
+        imageReader.close();
+    }
+}
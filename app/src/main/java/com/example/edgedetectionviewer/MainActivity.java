@@ -2,6 +2,7 @@ package com.example.edgedetectionviewer;
 
 import android.Manifest;
 import android.content.pm.PackageManager;
+import android.graphics.ImageFormat;
 import android.graphics.SurfaceTexture;
 import android.hardware.camera2.*;
 import android.hardware.camera2.params.StreamConfigurationMap;
@@ -10,6 +11,8 @@ import android.os.Bundle;
 import android.os.Environment;
 import android.os.Handler;
 import android.os.HandlerThread;
+import android.os.Process;
+import android.os.SystemClock;
 import android.util.Log;
 import android.util.Size;
 import android.view.Surface;
@@ -22,14 +25,69 @@ import androidx.appcompat.app.AppCompatActivity;
 import androidx.core.app.ActivityCompat;
 
 import java.io.File;
-import java.io.FileOutputStream;
-import java.nio.ByteBuffer;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 public class MainActivity extends AppCompatActivity {
     private static final String TAG = "MainActivity";
     private static final int CAMERA_PERMISSION_CODE = 100;
     
+    // Feed the camera's Y plane to the processor instead of reading RGBA back from the GPU
+    private static final boolean PREFER_LUMA_CAPTURE = true;
+    
+    // Fixed camera (tripod, surveillance mount): recompute only the parts of the scene that change
+    private static final boolean FIXED_MOUNT = false;
+    
+    // Filter chain to run instead of blur and Canny, e.g. "gaussian:3,sobel,threshold:60,dilate:3"
+    // (see FilterOperator); null keeps the native Canny path
+    private static final String FILTER_GRAPH = null;
+    
+    // Detect edges only in a centred region this fraction of the frame's width and height,
+    // e.g. 0.5f for a quarter of the area; 0 processes whole frames. Luma capture only
+    private static final float CENTER_REGION_FRACTION = 0f;
+    
+    // Per-stage latency histograms, logged every 5 s and written to a file on pause
+    private static final boolean METRICS_ENABLED = true;
+    
+    // Pre-trigger ring: holds about 3 s of 720p gray frames at 30 fps, and 8x that of packed edges
+    private static final int RECORDER_CAPACITY_BYTES = 96 * 1024 * 1024;
+    private static final long SAVE_WINDOW_NANOS = TimeUnit.SECONDS.toNanos(3);
+    
+    // Trade resolution, blur and frame rate for staying within the camera's 30 fps frame period
+    private static final boolean ADAPTIVE_QUALITY = true;
+    private static final long FRAME_DEADLINE_NANOS = TimeUnit.SECONDS.toNanos(1) / 30;
+    
+    // Largest preview to ask the camera for; the governor scales processing down from there
+    private static final int MAX_PREVIEW_PIXELS = 1280 * 720;
+    
+    // Live stream of the camera for the web viewer, unauthenticated; 0 disables it. On
+    // loopback it is reached through `adb forward tcp:8090 tcp:8090` at
+    // http://localhost:8090/stream, and only the viewer's origin may read it
+    private static final int STREAM_PORT = 0;
+    private static final InetAddress STREAM_ADDRESS = InetAddress.getLoopbackAddress();
+    private static final String STREAM_VIEWER_ORIGIN = "http://localhost:8080";
+    
+    // Synthetic frames the processor runs before the first camera frame; 0 hands it over cold
+    private static final int WARM_UP_FRAMES = ProcessorLoader.DEFAULT_WARM_UP_FRAMES;
+    
+    // Also process the device's other cameras on a shared worker pool, their stats logged with
+    // the pipeline's; the preview shows the first camera only. Needs concurrent camera support
+    private static final boolean EXTRA_CAMERA_STREAMS = false;
+    
+    // Where frames come from: null for the camera, "synthetic" for generated frames, or the name
+    // of a recording in the app's external files directory to replay in a loop at its pace
+    private static final String FRAME_SOURCE = null;
+    private static final String SYNTHETIC_SOURCE = "synthetic";
+    private static final int SYNTHETIC_WIDTH = 1280;
+    private static final int SYNTHETIC_HEIGHT = 720;
+    
     private GLSurfaceView glSurfaceView;
     private CameraRenderer renderer;
     private TextView fpsText;
@@ -39,30 +97,55 @@ public class MainActivity extends AppCompatActivity {
     
     private CameraDevice cameraDevice;
     private CameraCaptureSession captureSession;
+    private long cameraOpenStart;
     private HandlerThread backgroundThread;
     private Handler backgroundHandler;
     
     private Size previewSize;
     private boolean isProcessingEnabled = true;
     
-    // Native methods
-    static {
-        System.loadLibrary("opencv_processing");
-    }
+    // Set once the first activity of the process has started; later ones time from onCreate
+    private static boolean processStarted;
     
-    private native long nativeCreate();
-    private native void nativeDestroy(long handle);
-    private native byte[] nativeProcessFrame(long handle, byte[] data, int width, int height, boolean applyEdgeDetection);
+    private final FrameMetrics metrics = new FrameMetrics();
+    private StartupTrace startup;
+    private boolean firstFrameMarked; // pipeline worker only
+    private boolean startupLogged;
+    private boolean captureStarted;
+    private ProcessorLoader processorLoader;
+    private FramePipeline pipeline;
+    private FrameRecorder recorder;
+    private FrameStreamServer streamServer;
+    private LumaCaptureSource lumaSource;
+    // The camera's luma source, or the synthetic or replay one standing in for the camera
+    private FrameSource frameSource;
+    private IncrementalEdgeDetector incrementalDetector;
+    private QualityGovernor governor;
+    private StreamManager streamManager;
+    private final List<CameraStream> extraCameras = new ArrayList<>();
+    // Preview camera whose extra cameras open once the processor is ready; UI thread only
+    private String pendingExtraCameras;
     
-    private long nativeHandle = 0;
-
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_main);
         
-        // Initialize native
-        nativeHandle = nativeCreate();
+        startup = new StartupTrace(startupOrigin());
+        
+        // The processor is created and warmed up in the background while the camera opens,
+        // then runs on the pipeline's worker thread, off the GL thread
+        metrics.setEnabled(METRICS_ENABLED);
+        pipeline = new FramePipeline(null, metrics);
+        startProcessorLoader();
+        recorder = new FrameRecorder(RECORDER_CAPACITY_BYTES);
+        pipeline.setRecorder(recorder);
+        if (ADAPTIVE_QUALITY) {
+            governor = new QualityGovernor(FRAME_DEADLINE_NANOS);
+            governor.setListener(change -> Log.i(TAG, "Quality " + change));
+            pipeline.setQualityGovernor(governor);
+        }
+        startStreamServer();
         
         // Setup views
         glSurfaceView = findViewById(R.id.glSurfaceView);
@@ -73,38 +156,94 @@ public class MainActivity extends AppCompatActivity {
         
         // Setup OpenGL
         glSurfaceView.setEGLContextClientVersion(2);
-        renderer = new CameraRenderer(this);
+        renderer = new CameraRenderer(this, pipeline, startup);
         glSurfaceView.setRenderer(renderer);
         glSurfaceView.setRenderMode(GLSurfaceView.RENDERMODE_WHEN_DIRTY);
+        pipeline.setListener(() -> {
+            if (!firstFrameMarked) {
+                startup.mark(StartupTrace.Phase.FIRST_FRAME);
+                firstFrameMarked = true;
+            }
+            glSurfaceView.requestRender();
+        });
         
         // Setup buttons
         toggleButton.setOnClickListener(v -> {
             isProcessingEnabled = !isProcessingEnabled;
+            pipeline.setEdgeDetectionEnabled(isProcessingEnabled);
             toggleButton.setText(isProcessingEnabled ? "Show Raw" : "Show Edges");
             Toast.makeText(this, isProcessingEnabled ? "Edge detection ON" : "Raw feed", Toast.LENGTH_SHORT).show();
         });
         
-        saveButton.setOnClickListener(v -> saveCurrentFrame());
+        saveButton.setOnClickListener(v -> saveRecentFrames());
         
         // Setup FPS updater
         Handler mainHandler = new Handler();
         mainHandler.postDelayed(new Runnable() {
+            private long lastStatsLog;
+            private long lastFrames;
+            private long lastNanos = System.nanoTime();
+            private LatencyHistogram.Snapshot lastIntervals = metrics.snapshot(FrameMetrics.Stage.FRAME_INTERVAL);
+            
             @Override
             public void run() {
-                float fps = renderer.getFPS();
-                fpsText.setText(String.format("FPS: %.1f", fps));
-                if (previewSize != null) {
+                long frames = renderer.getPresentedFrameCount();
+                long nanos = System.nanoTime();
+                float fps = (frames - lastFrames) * 1e9f / (nanos - lastNanos);
+                lastFrames = frames;
+                lastNanos = nanos;
+                if (metrics.isEnabled()) {
+                    // Worst frame-to-frame gap over the last half second, not just the average
+                    LatencyHistogram.Snapshot intervals = metrics.snapshot(FrameMetrics.Stage.FRAME_INTERVAL);
+                    long p99 = intervals.since(lastIntervals).getP99();
+                    lastIntervals = intervals;
+                    fpsText.setText(String.format("FPS: %.1f  p99 %.1f ms", fps, p99 / 1e6));
+                } else {
+                    fpsText.setText(String.format("FPS: %.1f", fps));
+                }
+                if (streamServer != null) {
+                    streamServer.setFps(fps);
+                }
+                if (previewSize != null && governor != null) {
+                    resolutionText.setText(String.format("Resolution: %dx%d  quality %d",
+                            previewSize.getWidth(), previewSize.getHeight(), governor.getLevelIndex()));
+                } else if (previewSize != null) {
                     resolutionText.setText(String.format("Resolution: %dx%d", previewSize.getWidth(), previewSize.getHeight()));
                 }
+                if (!startupLogged && processorLoader != null && startup.isRecorded(StartupTrace.Phase.FIRST_PRESENT)) {
+                    Log.i(TAG, "Startup: " + startup.describe() + ", warm-up frames "
+                            + processorLoader.getFirstWarmUpNanos() / 1000000 + " -> "
+                            + processorLoader.getLastWarmUpNanos() / 1000000 + " ms");
+                    startupLogged = true;
+                }
+                long now = System.currentTimeMillis();
+                if (now - lastStatsLog >= 5000) {
+                    Log.d(TAG, "Pipeline: " + pipeline.describeStats());
+                    if (metrics.isEnabled()) {
+                        Log.d(TAG, "Latency: " + metrics.describe());
+                    }
+                    if (governor != null) {
+                        Log.d(TAG, "Quality: " + governor.describeStats());
+                    }
+                    if (incrementalDetector != null) {
+                        Log.d(TAG, "Edges: " + incrementalDetector.describeStats());
+                    }
+                    if (streamServer != null) {
+                        Log.d(TAG, "Stream: " + streamServer.describeStats());
+                    }
+                    if (streamManager != null) {
+                        Log.d(TAG, "Extra cameras:\n" + streamManager.describeStats());
+                    }
+                    lastStatsLog = now;
+                }
                 mainHandler.postDelayed(this, 500);
             }
         }, 500);
         
-        // Request camera permission
-        if (checkSelfPermission(Manifest.permission.CAMERA) != PackageManager.PERMISSION_GRANTED) {
+        // Capture starts in onResume
+        if (FRAME_SOURCE == null
+                && checkSelfPermission(Manifest.permission.CAMERA) != PackageManager.PERMISSION_GRANTED) {
             requestPermissions(new String[]{Manifest.permission.CAMERA, Manifest.permission.WRITE_EXTERNAL_STORAGE}, CAMERA_PERMISSION_CODE);
-        } else {
-            setupCamera();
         }
     }
     
@@ -113,7 +252,7 @@ public class MainActivity extends AppCompatActivity {
         super.onRequestPermissionsResult(requestCode, permissions, grantResults);
         if (requestCode == CAMERA_PERMISSION_CODE) {
             if (grantResults.length > 0 && grantResults[0] == PackageManager.PERMISSION_GRANTED) {
-                setupCamera();
+                startCapture();
             } else {
                 Toast.makeText(this, "Camera permission required", Toast.LENGTH_LONG).show();
                 finish();
@@ -121,7 +260,26 @@ public class MainActivity extends AppCompatActivity {
         }
     }
     
-    private void setupCamera() {
+    /**
+ * Opens the camera, or {@link #FRAME_SOURCE}, unless capture already runs. onPause
+     * closes both, so this runs on every resume; before the camera permission is granted
+     * it does nothing, and the permission result starts it. A failed start is retried on
+     * the next resume.
+     */
+    private void startCapture() {
+        if (!captureStarted) {
+            captureStarted = FRAME_SOURCE != null ? setupFrameSource() : setupCamera();
+        }
+    }
+    
+    /**
+     * @return false if the permission is missing or the camera cannot be opened, with
+     *         nothing left running
+     */
+    private boolean setupCamera() {
+        if (ActivityCompat.checkSelfPermission(this, Manifest.permission.CAMERA) != PackageManager.PERMISSION_GRANTED) {
+            return false;
+        }
         startBackgroundThread();
         
         CameraManager manager = (CameraManager) getSystemService(CAMERA_SERVICE);
@@ -130,31 +288,160 @@ public class MainActivity extends AppCompatActivity {
             CameraCharacteristics characteristics = manager.getCameraCharacteristics(cameraId);
             StreamConfigurationMap map = characteristics.get(CameraCharacteristics.SCALER_STREAM_CONFIGURATION_MAP);
             
-            // Choose preview size (640x480 for performance)
             Size[] sizes = map.getOutputSizes(SurfaceTexture.class);
             previewSize = chooseOptimalSize(sizes);
             
             renderer.setPreviewSize(previewSize.getWidth(), previewSize.getHeight());
             
-            if (ActivityCompat.checkSelfPermission(this, Manifest.permission.CAMERA) != PackageManager.PERMISSION_GRANTED) {
-                return;
+            if (PREFER_LUMA_CAPTURE && supportsYuv(map, previewSize)) {
+                lumaSource = new LumaCaptureSource(previewSize.getWidth(), previewSize.getHeight(), backgroundHandler);
+                lumaSource.start(pipeline);
+                frameSource = lumaSource;
+            }
+            Log.i(TAG, "Capture mode: " + (lumaSource != null ? "YUV luma" : "GPU readback"));
+            // The processor warms up on frames like the camera's while the camera opens
+            processorLoader.warmUp(previewSize.getWidth(), previewSize.getHeight(), lumaSource != null);
+            if (CENTER_REGION_FRACTION > 0) {
+                pipeline.setRegions(centerRegion(previewSize.getWidth(), previewSize.getHeight()));
             }
             
+            cameraOpenStart = startup.start();
             manager.openCamera(cameraId, stateCallback, backgroundHandler);
+            if (EXTRA_CAMERA_STREAMS) {
+                pendingExtraCameras = cameraId;
+                openPendingExtraCameras();
+            }
+            return true;
         } catch (CameraAccessException e) {
             Log.e(TAG, "Camera access exception", e);
+            frameSource = null;
+            if (lumaSource != null) {
+                lumaSource.stop();
+                lumaSource.close();
+                lumaSource = null;
+            }
+            stopBackgroundThread();
+            return false;
+        }
+    }
+    
+    /**
+     * Feeds the pipeline from {@link #FRAME_SOURCE} instead of the camera, as luma frames
+     * of the source's size. A new source each resume, so a replay starts over.
+     *
+     * @return false if the replay file cannot be read
+     */
+    private boolean setupFrameSource() {
+        PacedFrameSource source;
+        if (SYNTHETIC_SOURCE.equals(FRAME_SOURCE)) {
+            source = new SyntheticFrameSource(SYNTHETIC_WIDTH, SYNTHETIC_HEIGHT, 1);
+        } else {
+            File file = new File(getExternalFilesDir(null), FRAME_SOURCE);
+            try {
+                source = new ReplayFrameSource(file);
+            } catch (IOException e) {
+                Log.e(TAG, "Cannot replay " + file, e);
+                Toast.makeText(this, "Cannot replay " + file.getName(), Toast.LENGTH_LONG).show();
+                return false;
+            }
+        }
+        previewSize = new Size(source.getWidth(), source.getHeight());
+        renderer.setPreviewSize(previewSize.getWidth(), previewSize.getHeight());
+        Log.i(TAG, "Capture mode: " + source.getClass().getSimpleName());
+        processorLoader.warmUp(previewSize.getWidth(), previewSize.getHeight(), true);
+        if (CENTER_REGION_FRACTION > 0) {
+            pipeline.setRegions(centerRegion(previewSize.getWidth(), previewSize.getHeight()));
+        }
+        frameSource = source;
+        source.start(pipeline);
+        return true;
+    }
+    
+    /**
+     * Opens the extra cameras asked for by the camera setup once the processor is ready.
+     * Their processors are made on the UI thread, which must not be the one loading the
+     * native library.
+     */
+    private void openPendingExtraCameras() {
+        FrameProcessor processor = processorLoader != null ? processorLoader.getProcessor() : null;
+        if (pendingExtraCameras == null || processor == null) {
+            return;
+        }
+        String previewId = pendingExtraCameras;
+        pendingExtraCameras = null;
+        try {
+            openExtraCameras((CameraManager) getSystemService(CAMERA_SERVICE), previewId,
+                    processor instanceof NativeProcessor);
+        } catch (CameraAccessException e) {
+            Log.e(TAG, "Camera access exception", e);
+        }
+    }
+    
+    /**
+     * Opens every camera besides {@code previewId} that has YUV output as a stream of one
+     * shared worker pool. Back-facing cameras get twice the pool time of the others.
+     * onPause closes them, and the camera setup of the next resume opens them again.
+     */
+    private void openExtraCameras(CameraManager manager, String previewId, boolean nativeEngine)
+            throws CameraAccessException {
+        closeExtraCameras();
+        streamManager = new StreamManager();
+        for (String id : manager.getCameraIdList()) {
+            if (id.equals(previewId)) {
+                continue;
+            }
+            CameraCharacteristics characteristics = manager.getCameraCharacteristics(id);
+            StreamConfigurationMap map = characteristics.get(CameraCharacteristics.SCALER_STREAM_CONFIGURATION_MAP);
+            Size[] sizes = map != null ? map.getOutputSizes(ImageFormat.YUV_420_888) : null;
+            if (sizes == null || sizes.length == 0) {
+                continue;
+            }
+            Integer facing = characteristics.get(CameraCharacteristics.LENS_FACING);
+            int priority = facing != null && facing == CameraCharacteristics.LENS_FACING_BACK
+                    ? 2 * StreamManager.DEFAULT_PRIORITY : StreamManager.DEFAULT_PRIORITY;
+            CameraStream camera = new CameraStream(id, chooseOptimalSize(sizes), streamManager,
+                    createStreamProcessor(nativeEngine), priority, backgroundHandler);
+            extraCameras.add(camera);
+            camera.open(manager, backgroundHandler);
+        }
+        streamManager.start();
+        Log.i(TAG, extraCameras.size() + " extra camera streams on " + streamManager.getThreadCount() + " threads");
+    }
+    
+    private void closeExtraCameras() {
+        for (CameraStream camera : extraCameras) {
+            camera.close();
+        }
+        extraCameras.clear();
+        if (streamManager != null) {
+            streamManager.stop();
+            streamManager = null;
         }
     }
     
-    private Size chooseOptimalSize(Size[] sizes) {
-        // Prefer 640x480 for performance
+    private static boolean supportsYuv(StreamConfigurationMap map, Size size) {
+        Size[] sizes = map.getOutputSizes(ImageFormat.YUV_420_888);
+        return sizes != null && Arrays.asList(sizes).contains(size);
+    }
+    
+    /**
+     * The largest size up to {@link #MAX_PREVIEW_PIXELS}, or the smallest one if all are
+     * larger. The list order is device-specific, so its first entry can be 4K.
+     */
+    private static Size chooseOptimalSize(Size[] sizes) {
+        Size best = null;
+        Size smallest = sizes[0];
         for (Size size : sizes) {
-            if (size.getWidth() == 640 && size.getHeight() == 480) {
-                return size;
+            long pixels = (long) size.getWidth() * size.getHeight();
+            if (pixels < (long) smallest.getWidth() * smallest.getHeight()) {
+                smallest = size;
+            }
+            if (pixels <= MAX_PREVIEW_PIXELS
+                    && (best == null || pixels > (long) best.getWidth() * best.getHeight())) {
+                best = size;
             }
         }
-        // Fallback to first available
-        return sizes[0];
+        return best != null ? best : smallest;
     }
     
     private final CameraDevice.StateCallback stateCallback = new CameraDevice.StateCallback() {
@@ -179,9 +466,15 @@ public class MainActivity extends AppCompatActivity {
     
     private void createCameraPreview() {
         try {
-            SurfaceTexture texture = renderer.getSurfaceTexture();
-            texture.setDefaultBufferSize(previewSize.getWidth(), previewSize.getHeight());
-            Surface surface = new Surface(texture);
+            Surface surface;
+            if (lumaSource != null) {
+                // Frames reach the renderer through the pipeline only; no GPU readback
+                surface = lumaSource.getSurface();
+            } else {
+                SurfaceTexture texture = renderer.getSurfaceTexture();
+                texture.setDefaultBufferSize(previewSize.getWidth(), previewSize.getHeight());
+                surface = new Surface(texture);
+            }
             
             final CaptureRequest.Builder requestBuilder = cameraDevice.createCaptureRequest(CameraDevice.TEMPLATE_PREVIEW);
             requestBuilder.addTarget(surface);
@@ -196,6 +489,7 @@ public class MainActivity extends AppCompatActivity {
                     
                     try {
                         captureSession.setRepeatingRequest(requestBuilder.build(), captureCallback, backgroundHandler);
+                        startup.end(StartupTrace.Phase.CAMERA_OPEN, cameraOpenStart);
                     } catch (CameraAccessException e) {
                         Log.e(TAG, "Failed to start camera preview", e);
                     }
@@ -206,7 +500,7 @@ public class MainActivity extends AppCompatActivity {
                     Log.e(TAG, "Configuration failed");
                 }
             }, backgroundHandler);
-            
+        
         } catch (CameraAccessException e) {
             Log.e(TAG, "Camera access exception", e);
         }
@@ -220,33 +514,119 @@ public class MainActivity extends AppCompatActivity {
         }
     };
     
-    public byte[] processFrame(byte[] data, int width, int height) {
-        if (nativeHandle != 0) {
-            return nativeProcessFrame(nativeHandle, data, width, height, isProcessingEnabled);
+    /**
+     * Time zero of the startup trace: process start for the first activity of a cold start,
+     * now for an activity recreated in a running process.
+     */
+    private static long startupOrigin() {
+        long now = System.nanoTime();
+        if (processStarted) {
+            return now;
         }
-        return data;
+        processStarted = true;
+        long sinceProcessStart = SystemClock.elapsedRealtime() - Process.getStartElapsedRealtime();
+        return now - TimeUnit.MILLISECONDS.toNanos(sinceProcessStart);
     }
     
-    private void saveCurrentFrame() {
-        byte[] frameData = renderer.getCurrentFrameData();
-        if (frameData != null) {
-            try {
-                File dir = new File(Environment.getExternalStoragePublicDirectory(Environment.DIRECTORY_PICTURES), "EdgeDetection");
-                if (!dir.exists()) dir.mkdirs();
-                
-                File file = new File(dir, "frame_" + System.currentTimeMillis() + ".raw");
-                FileOutputStream fos = new FileOutputStream(file);
-                fos.write(frameData);
-                fos.close();
-                
-                Toast.makeText(this, "Frame saved: " + file.getName(), Toast.LENGTH_SHORT).show();
-            } catch (Exception e) {
-                Log.e(TAG, "Failed to save frame", e);
-                Toast.makeText(this, "Failed to save frame", Toast.LENGTH_SHORT).show();
+    /**
+     * Creates the processor on the loader thread and hands it to the pipeline once warm.
+     * Camera frames that arrive before then wait in the pipeline's capture ring.
+     */
+    private void startProcessorLoader() {
+        processorLoader = new ProcessorLoader(this::createFrameProcessor, startup,
+                ADAPTIVE_QUALITY ? QualityLevel.DEFAULT_LADDER : Collections.singletonList(QualityLevel.FULL));
+        processorLoader.setWarmUpFrames(WARM_UP_FRAMES);
+        processorLoader.setListener(new ProcessorLoader.Listener() {
+            @Override
+            public void onProcessorReady(FrameProcessor processor) {
+                // Attached only now, so warm-up frames stay out of the latency histograms
+                if (processor instanceof NativeProcessor) {
+                    ((NativeProcessor) processor).setMetrics(metrics);
+                }
+                pipeline.setProcessor(processor);
+                runOnUiThread(MainActivity.this::openPendingExtraCameras);
             }
+            
+            @Override
+            public void onProcessorFailed(Throwable error) {
+                Log.e(TAG, "No frame processor", error);
+            }
+        });
+        processorLoader.start();
+    }
+    
+    /**
+     * OpenCV over JNI when the native library is available, the pure-Java engine otherwise.
+     * A fixed mount always uses the Java engine, which can skip unchanged blocks, and so does
+     * a custom filter chain. Runs on the loader thread.
+     */
+    private FrameProcessor createFrameProcessor() {
+        // Edges and gray are one channel; the renderer uploads them as a luminance texture
+        if (FIXED_MOUNT) {
+            // The native path always recomputes the whole frame
+            incrementalDetector = new IncrementalEdgeDetector();
+            return new JavaFrameProcessor(incrementalDetector, OutputFormat.LUMINANCE);
+        }
+        if (FILTER_GRAPH != null) {
+            FilterGraph graph = FilterGraph.parse(FILTER_GRAPH);
+            Log.i(TAG, "Filter graph " + graph + " in " + graph.getPassCount() + " passes");
+            return new JavaFrameProcessor(graph, OutputFormat.LUMINANCE);
+        }
+        try {
+            long start = startup.start();
+            NativeProcessor.loadLibrary();
+            startup.end(StartupTrace.Phase.LIBRARY_LOAD, start);
+            return new NativeProcessor(OutputFormat.LUMINANCE);
+        } catch (UnsatisfiedLinkError e) {
+            Log.w(TAG, "Native processor unavailable, using Java engine", e);
+            // Tiled so the frame is spread over all cores instead of only the processing thread
+            return new JavaFrameProcessor(new TiledEdgeDetector(), OutputFormat.LUMINANCE);
         }
     }
     
+    private static RegionSet centerRegion(int width, int height) {
+        int w = Math.max(1, Math.round(width * CENTER_REGION_FRACTION));
+        int h = Math.max(1, Math.round(height * CENTER_REGION_FRACTION));
+        RegionSet regions = new RegionSet(1);
+        regions.addRect((width - w) / 2, (height - h) / 2, w, h);
+        return regions;
+    }
+    
+    /**
+     * Processor for an extra camera stream, on the engine the loader settled on, so the
+     * native library is already loaded if used. Untiled: the stream manager already spreads
+     * the streams over the cores.
+     */
+    private static FrameProcessor createStreamProcessor(boolean nativeEngine) {
+        return nativeEngine
+                ? new NativeProcessor(OutputFormat.LUMINANCE)
+                : new JavaFrameProcessor(new CannyEdgeDetector(), OutputFormat.LUMINANCE);
+    }
+    
+    /**
+     * Saves the last few seconds of processed frames; the recorder writes them on its own
+     * thread, so neither the UI nor the render thread waits for the disk.
+     */
+    private void saveRecentFrames() {
+        File dir = new File(Environment.getExternalStoragePublicDirectory(Environment.DIRECTORY_PICTURES), "EdgeDetection");
+        if (!dir.exists()) dir.mkdirs();
+        
+        File file = new File(dir, "frames_" + System.currentTimeMillis() + ".edgr");
+        recorder.save(file, SAVE_WINDOW_NANOS, new FrameRecorder.SaveListener() {
+            @Override
+            public void onSaved(File file, int frameCount) {
+                runOnUiThread(() -> Toast.makeText(MainActivity.this,
+                        "Saved " + frameCount + " frames: " + file.getName(), Toast.LENGTH_SHORT).show());
+            }
+            
+            @Override
+            public void onSaveFailed(File file, IOException error) {
+                Log.e(TAG, "Failed to save frames", error);
+                runOnUiThread(() -> Toast.makeText(MainActivity.this, "Failed to save frames", Toast.LENGTH_SHORT).show());
+            }
+        });
+    }
+    
     private void startBackgroundThread() {
         backgroundThread = new HandlerThread("CameraBackground");
         backgroundThread.start();
@@ -269,9 +649,11 @@ public class MainActivity extends AppCompatActivity {
     @Override
     protected void onResume() {
         super.onResume();
+        pipeline.start();
         if (glSurfaceView != null) {
             glSurfaceView.onResume();
         }
+        startCapture();
     }
     
     @Override
@@ -284,18 +666,79 @@ public class MainActivity extends AppCompatActivity {
             cameraDevice.close();
             cameraDevice = null;
         }
+        // While the thread their camera callbacks run on is still there
+        closeExtraCameras();
+        pendingExtraCameras = null;
         if (glSurfaceView != null) {
             glSurfaceView.onPause();
         }
         stopBackgroundThread();
+        if (frameSource != null) {
+            frameSource.stop();
+            Log.d(TAG, "Source: delivered " + frameSource.getDeliveredCount()
+                    + " dropped " + frameSource.getDroppedCount());
+            frameSource = null;
+        }
+        // Waits for the frame in flight, so the processor is idle before onDestroy releases it
+        pipeline.stop();
+        if (lumaSource != null) {
+            lumaSource.close();
+            lumaSource = null;
+        }
+        captureStarted = false;
+        dumpMetrics();
         super.onPause();
     }
     
+    /**
+     * Writes the latency report for this session, and the startup trace, to the app's external
+     * files directory.
+     */
+    private void dumpMetrics() {
+        if (!metrics.isEnabled()) {
+            return;
+        }
+        File file = new File(getExternalFilesDir(null), "metrics_" + System.currentTimeMillis() + ".txt");
+        try (Writer writer = new FileWriter(file)) {
+            metrics.writeReport(writer);
+            writer.write('\n');
+            startup.writeReport(writer);
+            Log.d(TAG, "Latency report written to " + file);
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to write latency report", e);
+        }
+    }
+    
+    private void startStreamServer() {
+        if (STREAM_PORT == 0) {
+            return;
+        }
+        try {
+            streamServer = new FrameStreamServer(STREAM_ADDRESS, STREAM_PORT, STREAM_VIEWER_ORIGIN);
+            pipeline.setStreamServer(streamServer);
+            Log.d(TAG, "Streaming frames on port " + streamServer.getPort());
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to start the stream server", e);
+        }
+    }
+    
     @Override
     protected void onDestroy() {
-        if (nativeHandle != 0) {
-            nativeDestroy(nativeHandle);
-            nativeHandle = 0;
+        if (streamServer != null) {
+            pipeline.setStreamServer(null);
+            streamServer.close();
+            streamServer = null;
+        }
+        // Returns at once; a save in progress finishes on the recorder's thread
+        if (recorder != null) {
+            pipeline.setRecorder(null);
+            recorder.close();
+            recorder = null;
+        }
+        // Waits for a warm-up in progress, then releases the processor
+        if (processorLoader != null) {
+            processorLoader.close();
+            processorLoader = null;
         }
         super.onDestroy();
     }
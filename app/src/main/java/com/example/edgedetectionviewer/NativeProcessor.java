@@ -0,0 +1,226 @@
+package com.example.edgedetectionviewer;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Java side of the native OpenCV processor (native_processor.cpp).
+ * Owns the native handle; call {@link #release()} when done.
+ */
+public class NativeProcessor implements FrameProcessor {
+    
+    private static boolean libraryLoaded;
+    
+    private native long nativeCreate(int outputChannels);
+    private native void nativeDestroy(long handle);
+    private native byte[] nativeProcessFrame(long handle, byte[] data, int width, int height, boolean applyEdgeDetection);
+    private native boolean nativeProcessFrameDirect(long handle, ByteBuffer input, ByteBuffer output, int width, int height, boolean applyEdgeDetection);
+    private native boolean nativeProcessLumaDirect(long handle, ByteBuffer luma, int rowStride, ByteBuffer output, int width, int height, boolean applyEdgeDetection);
+    private native boolean nativeProcessLumaRegionsDirect(long handle, ByteBuffer luma, int rowStride, int width, int height, int[] layout, int regionCount, ByteBuffer output);
+    private native void nativeSetQuality(long handle, int pyramidLevel, int blurKernelSize);
+    private native void nativeGetStageTimings(long handle, long[] out);
+    
+    // Order of the timings filled in by nativeGetStageTimings (StageTiming in native_processor.cpp)
+    private static final FrameMetrics.Stage[] NATIVE_STAGES = {
+        FrameMetrics.Stage.GRAYSCALE, FrameMetrics.Stage.BLUR, FrameMetrics.Stage.CANNY
+    };
+    
+    private long nativeHandle;
+    private final OutputFormat outputFormat;
+    
+    // Staging for the byte[] fallback, reused across frames
+    private byte[] frameBytes;
+    
+    private FrameMetrics metrics = FrameMetrics.NONE;
+    private final long[] stageTimings = new long[NATIVE_STAGES.length];
+    
+    public NativeProcessor() {
+        this(OutputFormat.RGBA);
+    }
+    
+    /**
+     * With {@link OutputFormat#LUMINANCE}, Canny and RGBA2GRAY write straight into the output
+     * buffer and the GRAY2RGBA expansion is skipped.
+     */
+    public NativeProcessor(OutputFormat outputFormat) {
+        loadLibrary();
+        this.outputFormat = outputFormat;
+        nativeHandle = nativeCreate(outputFormat.getBytesPerPixel());
+    }
+    
+    /**
+     * Loads opencv_processing unless already loaded; the constructor calls it too. With
+     * OpenCV linked in, loading is slow enough to keep off the main thread. Unlike a static initializer, a failed load throws UnsatisfiedLinkError on every call
+     * rather than NoClassDefFoundError after the first.
+     *
+     * @throws UnsatisfiedLinkError if the library is missing for this ABI
+     */
+    public static synchronized void loadLibrary() {
+        if (!libraryLoaded) {
+            System.loadLibrary("opencv_processing");
+            libraryLoaded = true;
+        }
+    }
+    
+    @Override
+    public OutputFormat getOutputFormat() {
+        return outputFormat;
+    }
+    
+    /**
+     * Records the OpenCV stages of each direct call, and the rest of the call as
+     * {@link FrameMetrics.Stage#TRANSFER}. Stage timings are only fetched while enabled.
+     */
+    public void setMetrics(FrameMetrics metrics) {
+        this.metrics = metrics;
+    }
+    
+    /**
+     * Reduced levels run pyrDown, blur and Canny in OpenCV and resize the edges back up.
+     */
+    @Override
+    public void setQualityLevel(QualityLevel level) {
+        if (nativeHandle != 0) {
+            nativeSetQuality(nativeHandle, level.getPyramidLevel(), level.getBlurKernelSize());
+        }
+    }
+    
+    /**
+     * Byte-array path: the frame is copied into native memory and the result, in the output
+     * format, copied out into a new array. Kept as a fallback for callers without direct buffers.
+     */
+    public byte[] processFrame(byte[] data, int width, int height, boolean applyEdgeDetection) {
+        if (nativeHandle == 0) {
+            return data;
+        }
+        return nativeProcessFrame(nativeHandle, data, width, height, applyEdgeDetection);
+    }
+    
+    /**
+     * Zero-copy path: OpenCV reads straight from {@code input} and writes straight into
+     * {@code output}. Both must be direct buffers: a width * height * 4 byte RGBA input and an
+     * output sized for the output format.
+     *
+     * If the native side cannot resolve the buffer addresses, the frame goes through the
+     * byte[] path instead.
+     *
+     * @return false if the frame could not be processed; output is then left untouched
+     */
+    @Override
+    public boolean processFrame(ByteBuffer input, ByteBuffer output, int width, int height, boolean applyEdgeDetection) {
+        if (!input.isDirect() || !output.isDirect()) {
+            throw new IllegalArgumentException("Direct buffers required");
+        }
+        if (input.capacity() < width * height * 4) {
+            throw new IllegalArgumentException("Buffer too small for " + width + "x" + height + " RGBA frame");
+        }
+        checkOutput(output, width, height);
+        if (nativeHandle == 0) {
+            return false;
+        }
+        long start = metrics.start();
+        if (nativeProcessFrameDirect(nativeHandle, input, output, width, height, applyEdgeDetection)) {
+            recordStages(start);
+            return true;
+        }
+        return processWithArrays(input, output, width, height, applyEdgeDetection);
+    }
+    
+    /**
+     * Zero-copy luminance path: OpenCV wraps the plane with its row stride, so camera Y planes
+     * are processed in place. Both buffers must be direct.
+     */
+    @Override
+    public boolean processLuma(ByteBuffer luma, int rowStride, ByteBuffer output, int width, int height, boolean applyEdgeDetection) {
+        if (!luma.isDirect() || !output.isDirect()) {
+            throw new IllegalArgumentException("Direct buffers required");
+        }
+        LumaFrame.checkPlane(luma, width, height, rowStride);
+        checkOutput(output, width, height);
+        if (nativeHandle == 0) {
+            return false;
+        }
+        long start = metrics.start();
+        boolean ok = nativeProcessLumaDirect(nativeHandle, luma, rowStride, output, width, height, applyEdgeDetection);
+        if (ok) {
+            recordStages(start);
+        }
+        return ok;
+    }
+    
+    /**
+     * Only the region rectangles cross JNI; OpenCV crops each region and its halo from the
+     * plane in place and writes the packed results straight into {@code output}. Both
+     * buffers must be direct. Masks are applied here afterwards.
+     */
+    @Override
+    public boolean processLumaRegions(ByteBuffer luma, int rowStride, int width, int height, RegionSet regions, ByteBuffer output) {
+        if (!luma.isDirect() || !output.isDirect()) {
+            throw new IllegalArgumentException("Direct buffers required");
+        }
+        LumaFrame.checkPlane(luma, width, height, rowStride);
+        regions.checkFrame(width, height);
+        if (output.capacity() < regions.getOutputSize()) {
+            throw new IllegalArgumentException("Buffer too small for " + regions.getOutputSize() + " bytes of regions");
+        }
+        if (nativeHandle == 0) {
+            return false;
+        }
+        long start = metrics.start();
+        boolean ok = nativeProcessLumaRegionsDirect(nativeHandle, luma, rowStride, width, height,
+                regions.layout(), regions.size(), output);
+        if (ok) {
+            regions.applyMasks(output);
+            recordStages(start);
+        }
+        return ok;
+    }
+    
+    private void recordStages(long start) {
+        if (start == 0) {
+            return;
+        }
+        long total = System.nanoTime() - start;
+        nativeGetStageTimings(nativeHandle, stageTimings);
+        long work = 0;
+        for (int i = 0; i < NATIVE_STAGES.length; i++) {
+            if (stageTimings[i] > 0) {
+                metrics.record(NATIVE_STAGES[i], stageTimings[i]);
+                work += stageTimings[i];
+            }
+        }
+        metrics.record(FrameMetrics.Stage.TRANSFER, total - work);
+    }
+    
+    private void checkOutput(ByteBuffer output, int width, int height) {
+        if (output.capacity() < outputFormat.getFrameSize(width, height)) {
+            throw new IllegalArgumentException("Buffer too small for " + width + "x" + height + " " + outputFormat + " frame");
+        }
+    }
+    
+    private boolean processWithArrays(ByteBuffer input, ByteBuffer output, int width, int height, boolean applyEdgeDetection) {
+        int frameSize = width * height * 4;
+        if (frameBytes == null || frameBytes.length != frameSize) {
+            frameBytes = new byte[frameSize];
+        }
+        ByteBuffer source = input.duplicate();
+        source.rewind();
+        source.get(frameBytes);
+        
+        byte[] processedData = processFrame(frameBytes, width, height, applyEdgeDetection);
+        if (processedData == null || processedData.length != outputFormat.getFrameSize(width, height)) {
+            return false;
+        }
+        ByteBuffer target = output.duplicate();
+        target.rewind();
+        target.put(processedData);
+        return true;
+    }
+    
+    @Override
+    public void release() {
+        if (nativeHandle != 0) {
+            nativeDestroy(nativeHandle);
+            nativeHandle = 0;
+        }
+    }
+}
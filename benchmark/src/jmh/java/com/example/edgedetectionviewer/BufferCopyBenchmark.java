@@ -0,0 +1,56 @@
+package com.example.edgedetectionviewer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Bulk copies the frame path makes between heap staging arrays and direct buffers, per
+ * output format: staging in and out of the Java engine, and the direct-to-direct copy that
+ * stands in for a texture upload.
+ */
+@State(Scope.Thread)
+public class BufferCopyBenchmark extends FrameSizeState {
+    
+    @Param({"RGBA", "LUMINANCE"})
+    public OutputFormat format;
+    
+    private byte[] heap;
+    private ByteBuffer source;
+    private ByteBuffer target;
+    
+    @Setup
+    public void setUp() {
+        resolve();
+        int size = format.getFrameSize(width, height);
+        heap = new byte[size];
+        source = ByteBuffer.allocateDirect(size);
+        target = ByteBuffer.allocateDirect(size);
+    }
+    
+    @Benchmark
+    public ByteBuffer heapToDirect() {
+        target.clear();
+        target.put(heap);
+        return target;
+    }
+    
+    @Benchmark
+    public byte[] directToHeap() {
+        source.clear();
+        source.get(heap);
+        return heap;
+    }
+    
+    @Benchmark
+    public ByteBuffer directToDirect() {
+        source.clear();
+        target.clear();
+        target.put(source);
+        return target;
+    }
+}
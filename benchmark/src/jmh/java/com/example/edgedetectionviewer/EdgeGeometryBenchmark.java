@@ -0,0 +1,100 @@
+package com.example.edgedetectionviewer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Edge geometry from a processed frame, against what a consumer of the RGBA raster does
+ * today: scan every pixel for edges. Tracing points should cost well under the RGBA scan,
+ * and consuming the traced points should scale with the edge count, not the frame area;
+ * sparse frames (high Canny thresholds) show the difference.
+ */
+@State(Scope.Thread)
+public class EdgeGeometryBenchmark extends FrameSizeState {
+    
+    @Param({"dense", "sparse"})
+    public String edges;
+    
+    private byte[] rgba;
+    private ByteBuffer luma;
+    private int[] scanned;
+    private EdgeTracer tracer;
+    private EdgeGeometry geometry;
+    private EdgeGeometry traced;
+    
+    @Setup
+    public void setUp() {
+        resolve();
+        CannyEdgeDetector detector = "dense".equals(edges) ? new CannyEdgeDetector() : new CannyEdgeDetector(150, 300);
+        byte[] gray = new byte[pixels()];
+        detector.grayscale(SyntheticFrames.rgba(width, height, 1), 0, gray, width, height);
+        byte[] edgeBytes = new byte[pixels()];
+        detector.detectEdgesFromLuma(gray, edgeBytes, width, height);
+        
+        luma = ByteBuffer.allocateDirect(pixels());
+        luma.put(edgeBytes).clear();
+        rgba = new byte[pixels() * 4];
+        for (int p = 0; p < pixels(); p++) {
+            rgba[4 * p] = rgba[4 * p + 1] = rgba[4 * p + 2] = edgeBytes[p];
+            rgba[4 * p + 3] = (byte) 255;
+        }
+        scanned = new int[2 * pixels()];
+        tracer = new EdgeTracer();
+        geometry = new EdgeGeometry();
+        traced = new EdgeGeometry();
+        tracer.trace(luma, width, height, 1, 0, EdgeGeometry.Mode.POINTS, traced);
+    }
+    
+    /**
+     * Baseline: edge points pulled out of the RGBA array returned by nativeProcessFrame.
+     */
+    @Benchmark
+    public int rgbaRasterScan() {
+        int n = 0;
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                if (rgba[4 * (y * width + x)] != 0) {
+                    scanned[n++] = x;
+                    scanned[n++] = y;
+                }
+            }
+        }
+        return n;
+    }
+    
+    @Benchmark
+    public EdgeGeometry points() {
+        tracer.trace(luma, width, height, 1, 0, EdgeGeometry.Mode.POINTS, geometry);
+        return geometry;
+    }
+    
+    @Benchmark
+    public EdgeGeometry contours() {
+        tracer.trace(luma, width, height, 1, 0, EdgeGeometry.Mode.CONTOURS, geometry);
+        return geometry;
+    }
+    
+    @Benchmark
+    public EdgeGeometry segments() {
+        tracer.trace(luma, width, height, 1, 0, EdgeGeometry.Mode.SEGMENTS, geometry);
+        return geometry;
+    }
+    
+    /**
+     * Consumer side once points are delivered: a pass over the edges only.
+     */
+    @Benchmark
+    public long consumePoints() {
+        int[] points = traced.getPoints();
+        long sum = 0;
+        for (int i = 0; i < 2 * traced.getPointCount(); i += 2) {
+            sum += points[i] + 31L * points[i + 1];
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,81 @@
+package com.example.edgedetectionviewer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Converting Canny output to and from {@link EdgeMap}s, and coding consecutive maps of a
+ * still clip, where only sensor noise moves the edges, with {@link EdgeMapCodec}. Byte counts per format are printed by
+ * {@link EdgeMapSizeReport}.
+ */
+@State(Scope.Thread)
+public class EdgeMapBenchmark extends FrameSizeState {
+    private ByteBuffer luma;
+    private EdgeMap map;
+    private EdgeMap previous;
+    private EdgeMap reference;
+    private ByteBuffer runs;
+    private ByteBuffer out;
+    private int packedSize;
+    
+    @Setup
+    public void setUp() {
+        resolve();
+        byte[][] clip = EdgeMapSizeReport.edgeClip(EdgeMapSizeReport.Clip.STILL, width, height, 2);
+        // Native order, like the pipeline's frame buffers
+        luma = ByteBuffer.allocateDirect(pixels()).order(ByteOrder.nativeOrder());
+        luma.put(clip[1]).clear();
+        previous = new EdgeMap(width, height);
+        previous.packFrom(clip[0], 0);
+        map = new EdgeMap(width, height);
+        map.packFrom(clip[1], 0);
+        reference = new EdgeMap(width, height);
+        packedSize = EdgeMap.packedSize(width, height);
+        runs = ByteBuffer.allocate(packedSize);
+        out = ByteBuffer.allocate(packedSize);
+        
+        reference.copyFrom(previous);
+        if (EdgeMapCodec.encode(map, reference, runs, packedSize) < 0) {
+            throw new IllegalStateException("Delta larger than the packed map");
+        }
+        runs.flip();
+    }
+    
+    @Benchmark
+    public EdgeMap pack() {
+        map.packFrom(luma, 0);
+        return map;
+    }
+    
+    @Benchmark
+    public ByteBuffer unpack() {
+        map.unpackTo(luma, 0);
+        return luma;
+    }
+    
+    /**
+     * Includes resetting the reference to the previous map, a copy of the packed words.
+     */
+    @Benchmark
+    public int encodeDelta() {
+        reference.copyFrom(previous);
+        out.clear();
+        return EdgeMapCodec.encode(map, reference, out, packedSize);
+    }
+    
+    /**
+     * Includes resetting the map to the previous one.
+     */
+    @Benchmark
+    public EdgeMap decodeDelta() {
+        reference.copyFrom(previous);
+        runs.rewind();
+        EdgeMapCodec.decode(runs, reference);
+        return reference;
+    }
+}
@@ -0,0 +1,111 @@
+package com.example.edgedetectionviewer;
+
+import java.nio.ByteBuffer;
+import java.util.Locale;
+import java.util.zip.Deflater;
+
+/**
+ * Bytes per frame of each edge-map format over short synthetic clips run through the Java
+ * detector, as a companion to the throughput numbers of {@link EdgeMapBenchmark}:
+ * <pre>
+ *   ./gradlew :benchmark:edgeMapSizes
+ * </pre>
+ * Clips are a fixed camera on a still scene, where only sensor noise changes, and a camera
+ * panning two pixels a frame. Formats are the luminance plane the pipeline hands out, the
+ * same plane deflated, the packed {@link EdgeMap} words, {@link EdgeMapCodec} runs coded as
+ * keyframes and as deltas against the previous frame, and the smallest of the last three per
+ * frame, which is what {@link FrameRecorder} saves.
+ */
+public final class EdgeMapSizeReport {
+    static final int CLIP_FRAMES = 30;
+    static final int PAN_PIXELS_PER_FRAME = 2;
+    
+    private EdgeMapSizeReport() {
+    }
+    
+    enum Clip {
+        STILL, PAN
+    }
+    
+    /**
+     * Canny edges of each frame of a clip, as 0/255 luminance planes.
+     */
+    static byte[][] edgeClip(Clip clip, int width, int height, int frames) {
+        CannyEdgeDetector detector = new CannyEdgeDetector();
+        int margin = clip == Clip.PAN ? PAN_PIXELS_PER_FRAME * frames : 0;
+        byte[] scene = clip == Clip.PAN ? SyntheticFrames.rgba(width + margin, height, 1) : null;
+        byte[] rgba = new byte[width * height * 4];
+        byte[][] edges = new byte[frames][];
+        for (int f = 0; f < frames; f++) {
+            if (clip == Clip.PAN) {
+                int dx = PAN_PIXELS_PER_FRAME * f;
+                for (int y = 0; y < height; y++) {
+                    System.arraycopy(scene, (y * (width + margin) + dx) * 4, rgba, y * width * 4, width * 4);
+                }
+            } else {
+                // Same scene, fresh noise
+                rgba = SyntheticFrames.rgba(width, height, f + 1);
+            }
+            edges[f] = new byte[width * height];
+            detector.detectEdges(rgba, 0, edges[f], width, height);
+        }
+        return edges;
+    }
+    
+    public static void main(String[] args) {
+        System.out.println("Bytes per frame over " + CLIP_FRAMES + "-frame clips:");
+        System.out.println(String.format(Locale.US, "%-5s %-5s %6s %8s %8s %8s %8s %8s %8s",
+                "size", "clip", "edges", "luma", "deflated", "packed", "runs", "delta", "saved"));
+        int[][] sizes = {{640, 480}, {1280, 720}};
+        for (int[] size : sizes) {
+            for (Clip clip : Clip.values()) {
+                report(clip, size[0], size[1]);
+            }
+        }
+    }
+    
+    private static void report(Clip clip, int width, int height) {
+        byte[][] frames = edgeClip(clip, width, height, CLIP_FRAMES);
+        int packedSize = EdgeMap.packedSize(width, height);
+        EdgeMap map = new EdgeMap(width, height);
+        EdgeMap empty = new EdgeMap(width, height);
+        EdgeMap reference = new EdgeMap(width, height);
+        // Room for runs of noise, which can reach four times the words
+        ByteBuffer out = ByteBuffer.allocate(4 * packedSize + 8);
+        Deflater deflater = new Deflater();
+        byte[] deflated = new byte[width * height + 1024];
+        
+        long edges = 0;
+        long deflatedBytes = 0;
+        long keyBytes = 0;
+        long deltaBytes = 0;
+        long savedBytes = 0;
+        for (byte[] frame : frames) {
+            map.packFrom(frame, 0);
+            edges += map.countEdges();
+            
+            deflater.reset();
+            deflater.setInput(frame);
+            deflater.finish();
+            while (!deflater.finished()) {
+                deflatedBytes += deflater.deflate(deflated);
+            }
+            
+            out.clear();
+            empty.clear();
+            int key = EdgeMapCodec.encode(map, empty, out, out.capacity());
+            keyBytes += key;
+            
+            out.clear();
+            int delta = EdgeMapCodec.encode(map, reference, out, out.capacity());
+            deltaBytes += delta;
+            savedBytes += Math.min(packedSize, Math.min(key, delta));
+        }
+        deflater.end();
+        
+        int n = frames.length;
+        System.out.println(String.format(Locale.US, "%-5s %-5s %5.1f%% %8d %8d %8d %8d %8d %8d",
+                height + "p", clip.name().toLowerCase(Locale.US), 100.0 * edges / n / (width * height),
+                width * height, deflatedBytes / n, packedSize, keyBytes / n, deltaBytes / n, savedBytes / n));
+    }
+}
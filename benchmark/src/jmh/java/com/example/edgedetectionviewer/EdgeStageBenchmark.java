@@ -0,0 +1,74 @@
+package com.example.edgedetectionviewer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * The stages of the pure-Java Canny pipeline one at a time, plus the whole detector.
+ * Each stage reads the previous stage's real output, so data-dependent work (suppression,
+ * hysteresis) sees realistic edge density.
+ */
+@State(Scope.Thread)
+public class EdgeStageBenchmark extends FrameSizeState {
+    private CannyEdgeDetector detector;
+    private byte[] rgba;
+    private byte[] gray;
+    private byte[] blurred;
+    private int[] blurRows;
+    private byte[] map;
+    private byte[] edges;
+    private final CannyEdgeDetector.GradientRows gradientRows = new CannyEdgeDetector.GradientRows();
+    
+    @Setup
+    public void setUp() {
+        resolve();
+        detector = new CannyEdgeDetector();
+        rgba = SyntheticFrames.rgba(width, height, 1);
+        gray = new byte[pixels()];
+        blurred = new byte[pixels()];
+        blurRows = new int[pixels()];
+        map = CannyEdgeDetector.newMap(width, height);
+        edges = new byte[pixels()];
+        
+        CannyEdgeDetector.rgbaToGray(rgba, 0, width, gray, 0, 0, height);
+        CannyEdgeDetector.gaussianBlur(gray, 0, blurred, 0, blurRows, width, height, 0, height);
+    }
+    
+    @Benchmark
+    public byte[] grayscale() {
+        CannyEdgeDetector.rgbaToGray(rgba, 0, width, gray, 0, 0, height);
+        return gray;
+    }
+    
+    @Benchmark
+    public byte[] gaussianBlur() {
+        CannyEdgeDetector.gaussianBlur(gray, 0, blurred, 0, blurRows, width, height, 0, height);
+        return blurred;
+    }
+    
+    /**
+     * Sobel, non-max suppression and hysteresis on the blurred frame. Suppression rewrites
+     * the whole map, so hysteresis starts from the same state every op.
+     */
+    @Benchmark
+    public byte[] canny() {
+        CannyEdgeDetector.nonMaxSuppression(blurred, 0, map, gradientRows, width, height, 0, height,
+                detector.getLowThreshold(), detector.getHighThreshold());
+        detector.hysteresis(map, edges, width, height);
+        return edges;
+    }
+    
+    @Benchmark
+    public byte[] detectEdges() {
+        detector.detectEdges(rgba, 0, edges, width, height);
+        return edges;
+    }
+    
+    @Benchmark
+    public byte[] detectEdgesFromLuma() {
+        detector.detectEdgesFromLuma(gray, edges, width, height);
+        return edges;
+    }
+}
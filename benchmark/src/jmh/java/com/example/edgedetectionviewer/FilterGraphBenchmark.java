@@ -0,0 +1,55 @@
+package com.example.edgedetectionviewer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * The same filter graphs fused into row-streamed passes and run one operator per pass.
+ * The Canny chain has nothing to fuse but the blur and colour conversion; the others are
+ * one pass fused against one per operator unfused.
+ */
+@State(Scope.Thread)
+public class FilterGraphBenchmark extends FrameSizeState {
+    
+    @Param({"gaussian:5,canny:50:150",
+            "gaussian:3,sobel,threshold:60,dilate:3",
+            "scale:1.2:-10,box:5,laplacian,threshold:30,erode:3,dilate:3"})
+    public String graph;
+    
+    @Param({"true", "false"})
+    public boolean fused;
+    
+    private FilterGraph filters;
+    private byte[] rgba;
+    private byte[] gray;
+    private byte[] out;
+    
+    @Setup
+    public void setUp() {
+        resolve();
+        filters = FilterGraph.parse(graph);
+        filters.setFused(fused);
+        rgba = SyntheticFrames.rgba(width, height, 1);
+        gray = new byte[pixels()];
+        filters.grayscale(rgba, 0, gray, width, height);
+        out = new byte[pixels()];
+    }
+    
+    @Benchmark
+    public byte[] luma() {
+        filters.detectEdgesFromLuma(gray, out, width, height);
+        return out;
+    }
+    
+    /**
+     * Fused, the colour conversion rides along with the first pass.
+     */
+    @Benchmark
+    public byte[] rgba() {
+        filters.detectEdges(rgba, 0, out, width, height);
+        return out;
+    }
+}
@@ -0,0 +1,48 @@
+package com.example.edgedetectionviewer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Conversions between the frame layouts around the detector: GRAY2RGBA expansion for RGBA
+ * output and packing a strided camera Y plane for the luminance input path. RGBA2GRAY is
+ * {@link EdgeStageBenchmark#grayscale()}.
+ */
+@State(Scope.Thread)
+public class FormatConversionBenchmark extends FrameSizeState {
+    // Typical camera padding: rows aligned up to 64 bytes, plus one spare block
+    private static final int ROW_ALIGNMENT = 64;
+    
+    private byte[] gray;
+    private byte[] rgba;
+    private ByteBuffer yPlane;
+    private int rowStride;
+    private byte[] packed;
+    
+    @Setup
+    public void setUp() {
+        resolve();
+        gray = new byte[pixels()];
+        CannyEdgeDetector.rgbaToGray(SyntheticFrames.rgba(width, height, 1), 0, width, gray, 0, 0, height);
+        rgba = new byte[pixels() * 4];
+        rowStride = (width + ROW_ALIGNMENT - 1) / ROW_ALIGNMENT * ROW_ALIGNMENT + ROW_ALIGNMENT;
+        yPlane = SyntheticFrames.lumaPlane(gray, width, height, rowStride);
+        packed = new byte[pixels()];
+    }
+    
+    @Benchmark
+    public byte[] grayToRgba() {
+        JavaFrameProcessor.expandToRgba(gray, rgba, 0, pixels());
+        return rgba;
+    }
+    
+    @Benchmark
+    public byte[] packStridedLuma() {
+        LumaFrame.pack(yPlane, rowStride, packed, width, height);
+        return packed;
+    }
+}
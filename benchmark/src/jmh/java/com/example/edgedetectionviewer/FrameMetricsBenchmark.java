@@ -0,0 +1,32 @@
+package com.example.edgedetectionviewer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Cost of one start/stop pair around a stage, with metrics enabled and disabled. Disabled
+ * is what every instrumented hot path pays when nobody is measuring.
+ */
+@State(Scope.Thread)
+public class FrameMetricsBenchmark {
+    
+    @Param({"false", "true"})
+    public boolean enabled;
+    
+    private FrameMetrics metrics;
+    
+    @Setup
+    public void setUp() {
+        metrics = new FrameMetrics();
+        metrics.setEnabled(enabled);
+    }
+    
+    @Benchmark
+    public void timeStage() {
+        long start = metrics.start();
+        metrics.stop(FrameMetrics.Stage.BLUR, start);
+    }
+}
@@ -0,0 +1,46 @@
+package com.example.edgedetectionviewer;
+
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Frame resolutions shared by every benchmark; subclasses call {@link #resolve()} from their
+ * setup before allocating frames.
+ */
+@State(Scope.Thread)
+public abstract class FrameSizeState {
+    
+    @Param({"480p", "720p", "1080p", "4K"})
+    public String resolution;
+    
+    protected int width;
+    protected int height;
+    
+    protected void resolve() {
+        switch (resolution) {
+            case "480p":
+                width = 640;
+                height = 480;
+                break;
+            case "720p":
+                width = 1280;
+                height = 720;
+                break;
+            case "1080p":
+                width = 1920;
+                height = 1080;
+                break;
+            case "4K":
+                width = 3840;
+                height = 2160;
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown resolution: " + resolution);
+        }
+    }
+    
+    protected int pixels() {
+        return width * height;
+    }
+}
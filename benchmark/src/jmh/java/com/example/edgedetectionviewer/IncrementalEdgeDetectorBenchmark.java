@@ -0,0 +1,54 @@
+package com.example.edgedetectionviewer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Incremental detector on a static scene and on a scene where one small object moves;
+ * compare against {@link EdgeStageBenchmark#detectEdgesFromLuma()} for a full recompute.
+ */
+@State(Scope.Thread)
+public class IncrementalEdgeDetectorBenchmark extends FrameSizeState {
+    // Side of the square that changes between frames in smallChange()
+    private static final int PATCH = 64;
+    
+    private IncrementalEdgeDetector detector;
+    private byte[] still;
+    private byte[] moved;
+    private byte[] edges;
+    private boolean flip;
+    
+    @Setup
+    public void setUp() {
+        resolve();
+        detector = new IncrementalEdgeDetector();
+        still = new byte[pixels()];
+        new CannyEdgeDetector().grayscale(SyntheticFrames.rgba(width, height, 1), 0, still, width, height);
+        moved = still.clone();
+        for (int y = height / 2; y < height / 2 + PATCH; y++) {
+            for (int x = width / 2; x < width / 2 + PATCH; x++) {
+                moved[y * width + x] = (byte) ~moved[y * width + x];
+            }
+        }
+        edges = new byte[pixels()];
+        detector.detectEdgesFromLuma(still, edges, width, height);
+    }
+    
+    @Benchmark
+    public byte[] staticScene() {
+        detector.detectEdgesFromLuma(still, edges, width, height);
+        return edges;
+    }
+    
+    /**
+     * Alternates two frames that differ in one {@value #PATCH}-pixel square.
+     */
+    @Benchmark
+    public byte[] smallChange() {
+        flip = !flip;
+        detector.detectEdgesFromLuma(flip ? moved : still, edges, width, height);
+        return edges;
+    }
+}
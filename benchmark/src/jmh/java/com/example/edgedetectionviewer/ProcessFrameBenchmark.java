@@ -0,0 +1,49 @@
+package com.example.edgedetectionviewer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The full {@link JavaFrameProcessor} call as the pipeline makes it: direct buffers in and
+ * out, edge detection on, for each capture input and output format.
+ */
+@State(Scope.Thread)
+public class ProcessFrameBenchmark extends FrameSizeState {
+    
+    @Param({"RGBA", "LUMINANCE"})
+    public OutputFormat outputFormat;
+    
+    private FrameProcessor processor;
+    private ByteBuffer rgba;
+    private ByteBuffer luma;
+    private ByteBuffer output;
+    
+    @Setup
+    public void setUp() {
+        resolve();
+        processor = new JavaFrameProcessor(new CannyEdgeDetector(), outputFormat);
+        byte[] frame = SyntheticFrames.rgba(width, height, 1);
+        rgba = ByteBuffer.allocateDirect(frame.length);
+        rgba.put(frame);
+        
+        byte[] gray = new byte[pixels()];
+        CannyEdgeDetector.rgbaToGray(frame, 0, width, gray, 0, 0, height);
+        luma = SyntheticFrames.lumaPlane(gray, width, height, width);
+        output = ByteBuffer.allocateDirect(outputFormat.getFrameSize(width, height));
+    }
+    
+    @Benchmark
+    public boolean rgbaInput() {
+        return processor.processFrame(rgba, output, width, height, true);
+    }
+    
+    @Benchmark
+    public boolean lumaInput() {
+        return processor.processLuma(luma, width, output, width, height, true);
+    }
+}
@@ -0,0 +1,77 @@
+package com.example.edgedetectionviewer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Edges of a camera-like luma plane in centred regions covering a fraction of the frame's
+ * area, against the whole frame. Region time should fall with coverage, plus the halo
+ * around each region.
+ */
+@State(Scope.Thread)
+public class RegionBenchmark extends FrameSizeState {
+    
+    @Param({"0.04", "0.25", "1.0"})
+    public double coverage;
+    
+    /**
+     * Coverage split over this many side-by-side regions; more regions read more halo.
+     */
+    @Param({"1", "4"})
+    public int regionCount;
+    
+    private JavaFrameProcessor processor;
+    private ByteBuffer plane;
+    private RegionSet regions;
+    private ByteBuffer packed;
+    private ByteBuffer frame;
+    
+    @Setup
+    public void setUp() {
+        resolve();
+        processor = new JavaFrameProcessor(new CannyEdgeDetector(), OutputFormat.LUMINANCE);
+        byte[] gray = new byte[pixels()];
+        new CannyEdgeDetector().grayscale(SyntheticFrames.rgba(width, height, 1), 0, gray, width, height);
+        plane = ByteBuffer.allocateDirect(pixels());
+        plane.put(gray);
+        
+        double side = Math.sqrt(coverage);
+        int h = (int) (height * side);
+        int w = (int) (width * side) / regionCount;
+        int x = (width - w * regionCount) / 2;
+        regions = new RegionSet(regionCount);
+        for (int i = 0; i < regionCount; i++) {
+            regions.addRect(x + i * w, (height - h) / 2, w, h);
+        }
+        packed = ByteBuffer.allocateDirect(regions.getOutputSize());
+        frame = ByteBuffer.allocateDirect(pixels());
+    }
+    
+    @Benchmark
+    public ByteBuffer regions() {
+        processor.processLumaRegions(plane, width, width, height, regions, packed);
+        return packed;
+    }
+    
+    /**
+     * What the pipeline does with region results in steady state: the regions drawn last
+     * time are blanked, then this frame's are written, so nothing outside them is touched.
+     */
+    @Benchmark
+    public ByteBuffer regionsToFrame() {
+        processor.processLumaRegions(plane, width, width, height, regions, packed);
+        regions.replaceInFrame(packed, frame, width, height, OutputFormat.LUMINANCE, regions);
+        return frame;
+    }
+    
+    @Benchmark
+    public ByteBuffer wholeFrame() {
+        processor.processLuma(plane, width, frame, width, height, true);
+        return frame;
+    }
+}
@@ -0,0 +1,46 @@
+package com.example.edgedetectionviewer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Strip-tiled detector scaling with pool size; compare against
+ * {@link EdgeStageBenchmark#detectEdges()} for the single-threaded baseline.
+ */
+@State(Scope.Thread)
+public class TiledEdgeDetectorBenchmark extends FrameSizeState {
+    
+    @Param({"1", "2", "4", "8"})
+    public int threads;
+    
+    private ForkJoinPool pool;
+    private TiledEdgeDetector detector;
+    private byte[] rgba;
+    private byte[] edges;
+    
+    @Setup
+    public void setUp() {
+        resolve();
+        pool = new ForkJoinPool(threads);
+        detector = new TiledEdgeDetector(pool, new CannyEdgeDetector(), threads * 2);
+        rgba = SyntheticFrames.rgba(width, height, 1);
+        edges = new byte[pixels()];
+    }
+    
+    @TearDown
+    public void tearDown() {
+        pool.shutdown();
+    }
+    
+    @Benchmark
+    public byte[] detectEdges() {
+        detector.detectEdges(rgba, 0, edges, width, height);
+        return edges;
+    }
+}
@@ -0,0 +1,169 @@
+package com.example.edgedetectionviewer;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+
+/**
+ * {@code edge-batch}: reruns the app's grayscale/blur/Canny pipeline over stored frames on
+ * any JVM, through {@link BatchProcessor} and the pure-Java processor, whose output matches
+ * the OpenCV path pixel for pixel.
+ */
+public final class BatchCli {
+    private static final String USAGE = String.join("\n",
+            "Usage: edge-batch [options] <input> <output-dir>",
+            "  <input>            directory of .raw/.png frames, or an .edgr clip saved by the app",
+            "  --size WxH         frame size of .raw inputs",
+            "  --gray             .raw inputs are 8-bit luminance rather than RGBA",
+            "  --low N --high N   Canny thresholds (default " + CannyEdgeDetector.DEFAULT_LOW_THRESHOLD
+                    + " and " + CannyEdgeDetector.DEFAULT_HIGH_THRESHOLD + ")",
+            "  --filters SPEC     filter graph instead of blur and Canny, e.g. gaussian:3,sobel,threshold:60",
+            "                     (gaussian box sobel laplacian dilate erode threshold invert scale canny)",
+            "  --no-edges         grayscale only",
+            "  --threads N        worker threads (default: one per core)",
+            "  --batch N          frames per worker task (default 4)",
+            "  --raw              write .raw luminance instead of PNG");
+    
+    private BatchCli() {
+    }
+    
+    public static void main(String[] args) {
+        int status = run(args, System.out, System.err);
+        if (status != 0) {
+            System.exit(status);
+        }
+    }
+    
+    /**
+     * @return process exit status
+     */
+    static int run(String[] args, PrintStream out, PrintStream err) {
+        int width = 0;
+        int height = 0;
+        int rawBytesPerPixel = 4;
+        int low = CannyEdgeDetector.DEFAULT_LOW_THRESHOLD;
+        int high = CannyEdgeDetector.DEFAULT_HIGH_THRESHOLD;
+        String filters = null;
+        boolean edges = true;
+        int threads = Runtime.getRuntime().availableProcessors();
+        int batchSize = 4;
+        boolean png = true;
+        String input = null;
+        String output = null;
+        try {
+            for (int i = 0; i < args.length; i++) {
+                String arg = args[i];
+                switch (arg) {
+                    case "--size": {
+                        String[] size = value(args, ++i, arg).split("x");
+                        if (size.length != 2) {
+                            throw new IllegalArgumentException("--size takes WxH");
+                        }
+                        width = Integer.parseInt(size[0]);
+                        height = Integer.parseInt(size[1]);
+                        break;
+                    }
+                    case "--gray":
+                        rawBytesPerPixel = 1;
+                        break;
+                    case "--low":
+                        low = Integer.parseInt(value(args, ++i, arg));
+                        break;
+                    case "--high":
+                        high = Integer.parseInt(value(args, ++i, arg));
+                        break;
+                    case "--filters":
+                        filters = value(args, ++i, arg);
+                        break;
+                    case "--no-edges":
+                        edges = false;
+                        break;
+                    case "--threads":
+                        threads = Integer.parseInt(value(args, ++i, arg));
+                        break;
+                    case "--batch":
+                        batchSize = Integer.parseInt(value(args, ++i, arg));
+                        break;
+                    case "--raw":
+                        png = false;
+                        break;
+                    default:
+                        if (arg.startsWith("--")) {
+                            throw new IllegalArgumentException("Unknown option " + arg);
+                        } else if (input == null) {
+                            input = arg;
+                        } else if (output == null) {
+                            output = arg;
+                        } else {
+                            throw new IllegalArgumentException("Unexpected argument " + arg);
+                        }
+                }
+            }
+            if (input == null || output == null) {
+                throw new IllegalArgumentException("Input and output are required");
+            }
+            // Fail here on bad thresholds or filters rather than in every worker
+            new CannyEdgeDetector(low, high);
+            if (filters != null) {
+                FilterGraph.parse(filters);
+            }
+            if (threads < 1 || batchSize < 1) {
+                throw new IllegalArgumentException("--threads and --batch must be positive");
+            }
+        } catch (IllegalArgumentException e) {
+            err.println(e.getMessage());
+            err.println(USAGE);
+            return 2;
+        }
+        
+        final int lowThreshold = low;
+        final int highThreshold = high;
+        final String filterSpec = filters;
+        BatchProcessor batch = new BatchProcessor(new BatchProcessor.ProcessorFactory() {
+            @Override
+            public FrameProcessor create() {
+                EdgeDetector detector = filterSpec != null
+                        ? FilterGraph.parse(filterSpec)
+                        : new CannyEdgeDetector(lowThreshold, highThreshold);
+                return new JavaFrameProcessor(detector, OutputFormat.LUMINANCE);
+            }
+        }, threads, batchSize, edges);
+        
+        File inputFile = new File(input);
+        try {
+            FrameFileSink sink = new FrameFileSink(new File(output), png);
+            BatchProcessor.Result result;
+            if (inputFile.isDirectory()) {
+                FrameDirectorySource source = new FrameDirectorySource(inputFile, width, height, rawBytesPerPixel);
+                out.println("Reading " + source.getFileCount() + " frames from " + inputFile);
+                result = batch.run(source, sink);
+            } else {
+                RecordingFrameSource source = new RecordingFrameSource(inputFile);
+                out.println("Reading " + source.getRecordCount() + " records from " + inputFile);
+                try {
+                    result = batch.run(source, sink);
+                } finally {
+                    source.close();
+                }
+                if (source.getSkippedEdgeFrames() > 0) {
+                    out.println("Skipped " + source.getSkippedEdgeFrames() + " records that already hold edges");
+                }
+            }
+            out.println(result);
+            return 0;
+        } catch (IOException e) {
+            err.println("edge-batch: " + e.getMessage());
+            return 1;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return 1;
+        }
+    }
+    
+    private static String value(String[] args, int index, String option) {
+        if (index >= args.length) {
+            throw new IllegalArgumentException(option + " needs a value");
+        }
+        return args[index];
+    }
+}
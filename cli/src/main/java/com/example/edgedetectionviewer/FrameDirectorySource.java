@@ -0,0 +1,123 @@
+package com.example.edgedetectionviewer;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import javax.imageio.ImageIO;
+
+/**
+ * Reads a directory of {@code .raw} and PNG frames in file-name order (zero-padded names
+ * sort numerically), one file at a time.
+ *
+ * Raw files carry no header, so their size comes from the command line: RGBA as saved by
+ * the app's readback path, or 8-bit luminance. Gray PNGs are read as luminance, anything
+ * else as RGBA.
+ */
+final class FrameDirectorySource implements BatchProcessor.FrameSource {
+    private final List<File> files;
+    private final int rawWidth;
+    private final int rawHeight;
+    private final int rawBytesPerPixel;
+    private int next;
+    // Row staging for non-gray PNGs
+    private int[] argb = new int[0];
+    
+    /**
+     * @param rawWidth frame width of .raw files, or 0 if there are none
+     * @param rawBytesPerPixel 4 for RGBA .raw files, 1 for luminance
+     */
+    FrameDirectorySource(File directory, int rawWidth, int rawHeight, int rawBytesPerPixel) throws IOException {
+        File[] listed = directory.listFiles();
+        if (listed == null) {
+            throw new IOException("Not a readable directory: " + directory);
+        }
+        files = new ArrayList<>();
+        for (File file : listed) {
+            String name = file.getName().toLowerCase(Locale.US);
+            if (file.isFile() && (name.endsWith(".raw") || name.endsWith(".png"))) {
+                files.add(file);
+            }
+        }
+        Collections.sort(files);
+        this.rawWidth = rawWidth;
+        this.rawHeight = rawHeight;
+        this.rawBytesPerPixel = rawBytesPerPixel;
+    }
+    
+    int getFileCount() {
+        return files.size();
+    }
+    
+    @Override
+    public boolean read(BatchProcessor.Frame frame) throws IOException {
+        if (next == files.size()) {
+            return false;
+        }
+        File file = files.get(next++);
+        if (file.getName().toLowerCase(Locale.US).endsWith(".raw")) {
+            readRaw(file, frame);
+        } else {
+            readPng(file, frame);
+        }
+        return true;
+    }
+    
+    private void readRaw(File file, BatchProcessor.Frame frame) throws IOException {
+        if (rawWidth <= 0) {
+            throw new IOException("Frame size of " + file + " unknown; pass --size WxH");
+        }
+        long expected = (long) rawWidth * rawHeight * rawBytesPerPixel;
+        if (file.length() != expected) {
+            throw new IOException(file + " is " + file.length() + " bytes, expected " + expected
+                    + " for " + rawWidth + "x" + rawHeight + "x" + rawBytesPerPixel);
+        }
+        ByteBuffer input = frame.reset(file.getName(), rawWidth, rawHeight, rawBytesPerPixel);
+        FileChannel channel = new FileInputStream(file).getChannel();
+        try {
+            while (input.hasRemaining()) {
+                if (channel.read(input) < 0) {
+                    throw new IOException("Unexpected end of " + file);
+                }
+            }
+        } finally {
+            channel.close();
+        }
+    }
+    
+    private void readPng(File file, BatchProcessor.Frame frame) throws IOException {
+        BufferedImage image = ImageIO.read(file);
+        if (image == null) {
+            throw new IOException("Unreadable image: " + file);
+        }
+        int width = image.getWidth();
+        int height = image.getHeight();
+        if (image.getType() == BufferedImage.TYPE_BYTE_GRAY) {
+            ByteBuffer input = frame.reset(file.getName(), width, height, 1);
+            image.getRaster().getDataElements(0, 0, width, height, input.array());
+            return;
+        }
+        
+        ByteBuffer input = frame.reset(file.getName(), width, height, 4);
+        if (argb.length < width) {
+            argb = new int[width];
+        }
+        for (int y = 0; y < height; y++) {
+            image.getRGB(0, y, width, 1, argb, 0, width);
+            for (int x = 0; x < width; x++) {
+                int p = argb[x];
+                input.put((byte) (p >> 16));
+                input.put((byte) (p >> 8));
+                input.put((byte) p);
+                input.put((byte) (p >>> 24));
+            }
+        }
+        input.flip();
+    }
+}
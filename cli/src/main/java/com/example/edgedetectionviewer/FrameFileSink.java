@@ -0,0 +1,58 @@
+package com.example.edgedetectionviewer;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import javax.imageio.ImageIO;
+
+/**
+ * Writes each processed single-channel frame to its own file, named after the input frame:
+ * a gray PNG, or headerless {@code .raw} bytes.
+ */
+final class FrameFileSink implements BatchProcessor.FrameSink {
+    private final File directory;
+    private final boolean png;
+    
+    FrameFileSink(File directory, boolean png) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create " + directory);
+        }
+        this.directory = directory;
+        this.png = png;
+    }
+    
+    @Override
+    public void write(BatchProcessor.Frame frame) throws IOException {
+        String name = frame.getName();
+        int dot = name.lastIndexOf('.');
+        String base = dot > 0 ? name.substring(0, dot) : name;
+        ByteBuffer output = frame.getOutput();
+        if (output.limit() != frame.getWidth() * frame.getHeight()) {
+            throw new IOException("Expected single-channel output for " + name);
+        }
+        
+        if (png) {
+            BufferedImage image = new BufferedImage(frame.getWidth(), frame.getHeight(), BufferedImage.TYPE_BYTE_GRAY);
+            image.getRaster().setDataElements(0, 0, frame.getWidth(), frame.getHeight(), output.array());
+            File file = new File(directory, base + ".png");
+            if (!ImageIO.write(image, "png", file)) {
+                throw new IOException("No PNG writer for " + file);
+            }
+            return;
+        }
+        
+        FileChannel channel = new FileOutputStream(new File(directory, base + ".raw")).getChannel();
+        try {
+            output.rewind();
+            while (output.hasRemaining()) {
+                channel.write(output);
+            }
+            output.rewind();
+        } finally {
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package com.example.edgedetectionviewer;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@code edge-load}: pushes synthetic or recorded frames through the app's capture ring and
+ * worker with the pure-Java processor, as fast as they are processed or at a fixed rate, and
+ * reports throughput, capture-to-output latency, allocation and dropped frames.
+ */
+public final class LoadCli {
+    private static final String USAGE = String.join("\n",
+            "Usage: edge-load [options]",
+            "  --source SRC       synthetic (default), or an .edgr clip saved by the app",
+            "  --size WxH         synthetic frame size (default 1280x720)",
+            "  --fps N            frames per second to offer (default: as fast as processed)",
+            "  --real-time        replay a clip at its recorded pace instead",
+            "  --duration S       seconds to measure (default 10)",
+            "  --warm-up S        seconds to run first, not measured (default 3)",
+            "  --motion DX,DY     synthetic pan in pixels per frame (default 1,0.5)",
+            "  --noise N          synthetic noise amplitude in gray levels (default 0)",
+            "  --tiled            split each frame over all cores");
+    
+    private LoadCli() {
+    }
+    
+    public static void main(String[] args) {
+        int status = run(args, System.out, System.err);
+        if (status != 0) {
+            System.exit(status);
+        }
+    }
+    
+    /**
+     * @return process exit status
+     */
+    static int run(String[] args, PrintStream out, PrintStream err) {
+        String sourceName = "synthetic";
+        int width = 1280;
+        int height = 720;
+        double fps = 0;
+        boolean realTime = false;
+        double duration = 10;
+        double warmUp = 3;
+        float motionX = 1;
+        float motionY = 0.5f;
+        int noise = 0;
+        boolean tiled = false;
+        try {
+            for (int i = 0; i < args.length; i++) {
+                String arg = args[i];
+                switch (arg) {
+                    case "--source":
+                        sourceName = value(args, ++i, arg);
+                        break;
+                    case "--size": {
+                        String[] size = value(args, ++i, arg).split("x");
+                        if (size.length != 2) {
+                            throw new IllegalArgumentException("--size takes WxH");
+                        }
+                        width = Integer.parseInt(size[0]);
+                        height = Integer.parseInt(size[1]);
+                        break;
+                    }
+                    case "--fps":
+                        fps = Double.parseDouble(value(args, ++i, arg));
+                        break;
+                    case "--real-time":
+                        realTime = true;
+                        break;
+                    case "--duration":
+                        duration = Double.parseDouble(value(args, ++i, arg));
+                        break;
+                    case "--warm-up":
+                        warmUp = Double.parseDouble(value(args, ++i, arg));
+                        break;
+                    case "--motion": {
+                        String[] motion = value(args, ++i, arg).split(",");
+                        if (motion.length != 2) {
+                            throw new IllegalArgumentException("--motion takes DX,DY");
+                        }
+                        motionX = Float.parseFloat(motion[0]);
+                        motionY = Float.parseFloat(motion[1]);
+                        break;
+                    }
+                    case "--noise":
+                        noise = Integer.parseInt(value(args, ++i, arg));
+                        break;
+                    case "--tiled":
+                        tiled = true;
+                        break;
+                    default:
+                        throw new IllegalArgumentException(arg.startsWith("--")
+                                ? "Unknown option " + arg : "Unexpected argument " + arg);
+                }
+            }
+            if (!(duration > 0) || !(warmUp >= 0)) {
+                throw new IllegalArgumentException("--duration must be positive and --warm-up not negative");
+            }
+            if (!(fps >= 0) || Double.isInfinite(fps)) {
+                throw new IllegalArgumentException("--fps must not be negative");
+            }
+        } catch (IllegalArgumentException e) {
+            err.println(e.getMessage());
+            err.println(USAGE);
+            return 2;
+        }
+        
+        PacedFrameSource source;
+        try {
+            if ("synthetic".equals(sourceName)) {
+                SyntheticFrameSource synthetic = new SyntheticFrameSource(width, height, 1);
+                synthetic.setMotion(motionX, motionY);
+                synthetic.setNoise(noise);
+                source = synthetic;
+            } else {
+                ReplayFrameSource replay = new ReplayFrameSource(new File(sourceName));
+                replay.setRealTime(realTime);
+                out.println("Replaying " + replay.getFrameCount() + " frames from " + sourceName
+                        + (replay.getSkippedRecordCount() > 0 ? ", skipped " + replay.getSkippedRecordCount() : ""));
+                source = replay;
+            }
+            source.setFrameRate(fps);
+        } catch (IllegalArgumentException e) {
+            err.println(e.getMessage());
+            err.println(USAGE);
+            return 2;
+        } catch (IOException e) {
+            err.println("edge-load: " + e.getMessage());
+            return 1;
+        }
+        
+        EdgeDetector detector = tiled ? new TiledEdgeDetector() : new CannyEdgeDetector();
+        JavaFrameProcessor processor = new JavaFrameProcessor(detector, OutputFormat.LUMINANCE);
+        out.println(String.format("Processing %dx%d frames, %s, for %.0f s after %.0f s warm-up",
+                source.getWidth(), source.getHeight(), describeRate(fps, realTime && source instanceof ReplayFrameSource),
+                duration, warmUp));
+        try {
+            LoadDriver.Report report = new LoadDriver(processor).run(source,
+                    (long) (warmUp * TimeUnit.SECONDS.toNanos(1)), (long) (duration * TimeUnit.SECONDS.toNanos(1)));
+            out.println(report);
+            return 0;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return 1;
+        } finally {
+            processor.release();
+        }
+    }
+    
+    private static String describeRate(double fps, boolean realTime) {
+        if (realTime) {
+            return "at recorded pace";
+        }
+        return fps == 0 ? "as fast as processed" : String.format("at %.1f fps", fps);
+    }
+    
+    private static String value(String[] args, int index, String option) {
+        if (index >= args.length) {
+            throw new IllegalArgumentException(option + " needs a value");
+        }
+        return args[index];
+    }
+}
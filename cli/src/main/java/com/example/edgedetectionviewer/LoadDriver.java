@@ -0,0 +1,208 @@
+package com.example.edgedetectionviewer;
+
+import java.lang.management.ManagementFactory;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Drives a {@link FramePipeline} from a {@link FrameSource} for a set time and measures it
+ * the way the app runs it: frames go through the capture ring to the worker, and processed
+ * frames are taken off as they arrive, as the renderer would.
+ *
+ * A warm-up period lets the JIT compile the processing path before anything is counted.
+ * Latency is {@link FrameMetrics.Stage#LATENCY}, capture to processed frame; allocation
+ * is summed over every thread of the JVM, so it includes the source and the driver.
+ */
+final class LoadDriver {
+    
+    /**
+     * What one run measured, after the warm-up.
+     */
+    static final class Report {
+        final long frames;
+        final long nanos;
+        final LatencyHistogram.Snapshot latency;
+        // -1 if the JVM cannot count allocations per thread
+        final long allocatedBytes;
+        final long sourceDropped;
+        final long ringDropped;
+        final long failed;
+        
+        Report(long frames, long nanos, LatencyHistogram.Snapshot latency, long allocatedBytes,
+                long sourceDropped, long ringDropped, long failed) {
+            this.frames = frames;
+            this.nanos = nanos;
+            this.latency = latency;
+            this.allocatedBytes = allocatedBytes;
+            this.sourceDropped = sourceDropped;
+            this.ringDropped = ringDropped;
+            this.failed = failed;
+        }
+        
+        double getFramesPerSecond() {
+            return frames * 1e9 / nanos;
+        }
+        
+        /**
+         * Bytes allocated per second, or -1 if unknown.
+         */
+        double getAllocationRate() {
+            return allocatedBytes < 0 ? -1 : allocatedBytes * 1e9 / nanos;
+        }
+        
+        /**
+         * Frames captured but never processed: dropped at the source or in the capture ring,
+         * or failed in the processor.
+         */
+        long getDroppedFrames() {
+            return sourceDropped + ringDropped + failed;
+        }
+        
+        @Override
+        public String toString() {
+            StringBuilder text = new StringBuilder();
+            text.append(String.format(Locale.US, "%d frames in %.2f s: %.1f fps%n",
+                    frames, nanos / 1e9, getFramesPerSecond()));
+            text.append(String.format(Locale.US, "latency ms: p50 %.2f  p99 %.2f  p99.9 %.2f  max %.2f%n",
+                    latency.getP50() / 1e6, latency.getP99() / 1e6, latency.getP999() / 1e6, latency.getMax() / 1e6));
+            if (allocatedBytes < 0) {
+                text.append(String.format("allocation: not measured%n"));
+            } else {
+                text.append(String.format(Locale.US, "allocation: %.1f KB/s, %.0f bytes/frame%n",
+                        getAllocationRate() / 1024, frames == 0 ? 0.0 : (double) allocatedBytes / frames));
+            }
+            text.append(String.format("dropped: %d (source %d, capture ring %d, failed %d)",
+                    getDroppedFrames(), sourceDropped, ringDropped, failed));
+            return text.toString();
+        }
+    }
+    
+    private final FrameProcessor processor;
+    
+    /**
+     * @param processor used by one run at a time; the caller releases it
+     */
+    LoadDriver(FrameProcessor processor) {
+        this.processor = processor;
+    }
+    
+    /**
+     * Starts the source into a new pipeline, waits out the warm-up, measures for
+     * {@code durationNanos} (less if the source runs out first) and stops both.
+     */
+    Report run(FrameSource source, long warmUpNanos, long durationNanos) throws InterruptedException {
+        FrameMetrics metrics = new FrameMetrics();
+        metrics.setEnabled(true);
+        final FramePipeline pipeline = new FramePipeline(processor, metrics);
+        pipeline.setListener(new FramePipeline.Listener() {
+            @Override
+            public void onFrameProcessed() {
+                FrameBuffer frame = pipeline.pollProcessed();
+                if (frame != null) {
+                    frame.release();
+                }
+            }
+        });
+        pipeline.start();
+        source.start(pipeline);
+        try {
+            sleep(source, warmUpNanos);
+            
+            LatencyHistogram.Snapshot latency = latencyOfProcessed(pipeline, metrics);
+            long failed = pipeline.getFailedCount();
+            long ringDropped = pipeline.getDroppedFrameCount();
+            long sourceDropped = source.getDroppedCount();
+            Map<Long, Long> allocated = allocatedByThread();
+            long start = System.nanoTime();
+            
+            sleep(source, durationNanos);
+            
+            long nanos = System.nanoTime() - start;
+            LatencyHistogram.Snapshot end = latencyOfProcessed(pipeline, metrics);
+            return new Report(end.getCount() - latency.getCount(),
+                    nanos,
+                    end.since(latency),
+                    allocatedSince(allocated),
+                    source.getDroppedCount() - sourceDropped,
+                    pipeline.getDroppedFrameCount() - ringDropped,
+                    pipeline.getFailedCount() - failed);
+        } finally {
+            source.stop();
+            pipeline.stop();
+        }
+    }
+    
+    /**
+     * The latency of every frame processed so far. The worker records a frame's latency
+     * just before counting it as processed, so this retries until the two agree and the
+     * window's frame count matches its latency samples.
+     */
+    private static LatencyHistogram.Snapshot latencyOfProcessed(FramePipeline pipeline, FrameMetrics metrics) {
+        while (true) {
+            LatencyHistogram.Snapshot latency = metrics.snapshot(FrameMetrics.Stage.LATENCY);
+            if (latency.getCount() == pipeline.getProcessedCount()) {
+                return latency;
+            }
+            Thread.yield();
+        }
+    }
+    
+    /**
+     * Sleeps for {@code nanos}, or until a paced source has no more frames.
+     */
+    private static void sleep(FrameSource source, long nanos) throws InterruptedException {
+        long deadline = System.nanoTime() + nanos;
+        long left = nanos;
+        while (left > 0) {
+            if (source instanceof PacedFrameSource && ((PacedFrameSource) source).isFinished()) {
+                return;
+            }
+            TimeUnit.NANOSECONDS.sleep(Math.min(left, TimeUnit.MILLISECONDS.toNanos(50)));
+            left = deadline - System.nanoTime();
+        }
+    }
+    
+    private static com.sun.management.ThreadMXBean threads() {
+        java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (!(threads instanceof com.sun.management.ThreadMXBean)) {
+            return null;
+        }
+        com.sun.management.ThreadMXBean sun = (com.sun.management.ThreadMXBean) threads;
+        return sun.isThreadAllocatedMemorySupported() && sun.isThreadAllocatedMemoryEnabled() ? sun : null;
+    }
+    
+    private static Map<Long, Long> allocatedByThread() {
+        com.sun.management.ThreadMXBean threads = threads();
+        if (threads == null) {
+            return null;
+        }
+        long[] ids = threads.getAllThreadIds();
+        long[] bytes = threads.getThreadAllocatedBytes(ids);
+        Map<Long, Long> allocated = new HashMap<>();
+        for (int i = 0; i < ids.length; i++) {
+            if (bytes[i] >= 0) {
+                allocated.put(ids[i], bytes[i]);
+            }
+        }
+        return allocated;
+    }
+    
+    /**
+     * Bytes allocated by live threads since {@code before}, threads started since counted
+     * from zero; -1 if unsupported. Threads that ended in between are missed.
+     */
+    private static long allocatedSince(Map<Long, Long> before) {
+        Map<Long, Long> after = allocatedByThread();
+        if (before == null || after == null) {
+            return -1;
+        }
+        long total = 0;
+        for (Map.Entry<Long, Long> entry : after.entrySet()) {
+            Long earlier = before.get(entry.getKey());
+            total += entry.getValue() - (earlier != null ? earlier : 0);
+        }
+        return total;
+    }
+}
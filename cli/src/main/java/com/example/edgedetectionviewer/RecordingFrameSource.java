@@ -0,0 +1,49 @@
+package com.example.edgedetectionviewer;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Locale;
+
+/**
+ * Reads the gray frames of a clip saved by the app ({@code .edgr}, see {@link FrameRecorder}).
+ * Records that already hold edges cannot be run through Canny again and are skipped.
+ */
+final class RecordingFrameSource implements BatchProcessor.FrameSource, Closeable {
+    private final RecordingReader reader;
+    private long skippedEdgeFrames;
+    
+    RecordingFrameSource(File file) throws IOException {
+        reader = RecordingReader.open(file);
+    }
+    
+    int getRecordCount() {
+        return reader.getRecordCount();
+    }
+    
+    long getSkippedEdgeFrames() {
+        return skippedEdgeFrames;
+    }
+    
+    @Override
+    public boolean read(BatchProcessor.Frame frame) throws IOException {
+        while (reader.next()) {
+            if (reader.isEdges()) {
+                skippedEdgeFrames++;
+                continue;
+            }
+            String name = String.format(Locale.US, "frame_%08d", reader.getSequence());
+            ByteBuffer input = frame.reset(name, reader.getWidth(), reader.getHeight(), reader.getBytesPerPixel());
+            input.put(reader.mapPixels());
+            input.flip();
+            return true;
+        }
+        return false;
+    }
+    
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+}
@@ -0,0 +1,155 @@
+package com.example.edgedetectionviewer;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import javax.imageio.ImageIO;
+
+import static org.junit.Assert.*;
+
+public class BatchCliTest {
+    private static final int WIDTH = 80;
+    private static final int HEIGHT = 60;
+    
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+    
+    private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    private final ByteArrayOutputStream err = new ByteArrayOutputStream();
+    
+    @Test
+    public void testPngDirectory_writesMatchingEdgePngs() throws Exception {
+        File input = folder.newFolder("in");
+        for (int i = 0; i < 5; i++) {
+            byte[] rgba = SyntheticFrames.rgba(WIDTH, HEIGHT, i + 1);
+            ImageIO.write(toImage(rgba), "png", new File(input, String.format("frame_%03d.png", i)));
+        }
+        File output = new File(folder.getRoot(), "out");
+        
+        assertEquals(err.toString(), 0, run("--low", "40", "--high", "120", "--threads", "2", input.getPath(), output.getPath()));
+        
+        assertTrue(out.toString(), out.toString().contains("5 frames in"));
+        JavaFrameProcessor reference = new JavaFrameProcessor(new CannyEdgeDetector(40, 120), OutputFormat.LUMINANCE);
+        for (int i = 0; i < 5; i++) {
+            BufferedImage edges = ImageIO.read(new File(output, String.format("frame_%03d.png", i)));
+            byte[] actual = new byte[WIDTH * HEIGHT];
+            edges.getRaster().getDataElements(0, 0, WIDTH, HEIGHT, actual);
+            assertArrayEquals("Frame " + i, expected(reference, SyntheticFrames.rgba(WIDTH, HEIGHT, i + 1)), actual);
+        }
+    }
+    
+    @Test
+    public void testRawLumaDirectory_writesRawFrames() throws Exception {
+        File input = folder.newFolder("in");
+        byte[] luma = new byte[WIDTH * HEIGHT];
+        byte[] rgba = SyntheticFrames.rgba(WIDTH, HEIGHT, 9);
+        for (int i = 0; i < luma.length; i++) {
+            luma[i] = rgba[i * 4];
+        }
+        Files.write(new File(input, "a.raw").toPath(), luma);
+        File output = new File(folder.getRoot(), "out");
+        
+        assertEquals(err.toString(), 0, run("--size", WIDTH + "x" + HEIGHT, "--gray", "--raw", input.getPath(), output.getPath()));
+        
+        byte[] expected = new byte[WIDTH * HEIGHT];
+        new JavaFrameProcessor(new CannyEdgeDetector(), OutputFormat.LUMINANCE)
+                .processLuma(ByteBuffer.wrap(luma), WIDTH, ByteBuffer.wrap(expected), WIDTH, HEIGHT, true);
+        assertArrayEquals(expected, Files.readAllBytes(new File(output, "a.raw").toPath()));
+    }
+    
+    @Test
+    public void testFilters_runTheGraph() throws Exception {
+        File input = folder.newFolder("in");
+        byte[] rgba = SyntheticFrames.rgba(WIDTH, HEIGHT, 4);
+        ImageIO.write(toImage(rgba), "png", new File(input, "frame.png"));
+        File output = new File(folder.getRoot(), "out");
+        String spec = "gaussian:3,sobel,threshold:60,dilate:3";
+        
+        assertEquals(err.toString(), 0, run("--filters", spec, "--raw", input.getPath(), output.getPath()));
+        
+        JavaFrameProcessor reference = new JavaFrameProcessor(FilterGraph.parse(spec), OutputFormat.LUMINANCE);
+        assertArrayEquals(expected(reference, rgba), Files.readAllBytes(new File(output, "frame.raw").toPath()));
+        
+        assertEquals(2, run("--filters", "gaussian:4", input.getPath(), output.getPath()));
+        assertTrue(err.toString(), err.toString().contains("Gaussian size"));
+    }
+    
+    @Test
+    public void testRecording_reprocessesGrayRecordsOnly() throws Exception {
+        FrameRecorder recorder = new FrameRecorder(1 << 20);
+        FrameBufferPool pool = new FrameBufferPool();
+        // RGBA: single-channel edge frames are packed and would start a new ring
+        FrameBuffer frame = pool.acquire(WIDTH, HEIGHT, 4);
+        recorder.record(frame, false, System.nanoTime());
+        recorder.record(frame, true, System.nanoTime());
+        recorder.record(frame, false, System.nanoTime());
+        File clip = folder.newFile("clip.edgr");
+        final CountDownLatch saved = new CountDownLatch(1);
+        recorder.save(clip, TimeUnit.MINUTES.toNanos(1), new FrameRecorder.SaveListener() {
+            @Override
+            public void onSaved(File file, int frameCount) {
+                saved.countDown();
+            }
+            
+            @Override
+            public void onSaveFailed(File file, java.io.IOException error) {
+            }
+        });
+        assertTrue(saved.await(10, TimeUnit.SECONDS));
+        recorder.close();
+        File output = new File(folder.getRoot(), "out");
+        
+        assertEquals(err.toString(), 0, run(clip.getPath(), output.getPath()));
+        
+        assertTrue(out.toString(), out.toString().contains("Skipped 1 records"));
+        assertTrue(new File(output, "frame_00000000.png").isFile());
+        assertTrue(new File(output, "frame_00000002.png").isFile());
+        assertEquals(2, output.list().length);
+    }
+    
+    @Test
+    public void testBadArguments_printUsage() {
+        assertEquals(2, run("--low", "90", "--high", "10", "in", "out"));
+        assertTrue(err.toString(), err.toString().contains("Usage: edge-batch"));
+    }
+    
+    @Test
+    public void testRawWithoutSize_fails() throws Exception {
+        File input = folder.newFolder("in");
+        Files.write(new File(input, "a.raw").toPath(), new byte[16]);
+        
+        assertEquals(1, run(input.getPath(), new File(folder.getRoot(), "out").getPath()));
+        assertTrue(err.toString(), err.toString().contains("--size"));
+    }
+    
+    private int run(String... args) {
+        return BatchCli.run(args, new PrintStream(out, true), new PrintStream(err, true));
+    }
+    
+    private static byte[] expected(JavaFrameProcessor processor, byte[] rgba) {
+        byte[] edges = new byte[WIDTH * HEIGHT];
+        processor.processFrame(ByteBuffer.wrap(rgba), ByteBuffer.wrap(edges), WIDTH, HEIGHT, true);
+        return edges;
+    }
+    
+    private static BufferedImage toImage(byte[] rgba) {
+        BufferedImage image = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_ARGB);
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                int i = (y * WIDTH + x) * 4;
+                image.setRGB(x, y, (rgba[i + 3] & 0xFF) << 24 | (rgba[i] & 0xFF) << 16
+                        | (rgba[i + 1] & 0xFF) << 8 | (rgba[i + 2] & 0xFF));
+            }
+        }
+        return image;
+    }
+}
@@ -0,0 +1,60 @@
+package com.example.edgedetectionviewer;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class LoadCliTest {
+    
+    private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    private final ByteArrayOutputStream err = new ByteArrayOutputStream();
+    
+    @Test
+    public void testSynthetic_reportsThroughputLatencyAndDrops() {
+        assertEquals(err.toString(), 0, run("--size", "160x120", "--noise", "8", "--warm-up", "0.2", "--duration", "0.5"));
+        String report = out.toString();
+        assertTrue(report, report.contains(" fps"));
+        assertTrue(report, report.contains("latency ms: p50"));
+        assertTrue(report, report.contains("allocation: "));
+        assertTrue(report, report.contains("dropped: "));
+    }
+    
+    @Test
+    public void testDriver_atMaximumRateLosesNoFrames() throws Exception {
+        SyntheticFrameSource source = new SyntheticFrameSource(96, 64, 1);
+        source.setFrameRate(0);
+        LoadDriver.Report report = new LoadDriver(new JavaFrameProcessor(new CannyEdgeDetector(), OutputFormat.LUMINANCE))
+                .run(source, TimeUnit.MILLISECONDS.toNanos(100), TimeUnit.MILLISECONDS.toNanos(500));
+        
+        assertTrue(report.frames > 0);
+        assertEquals(0, report.getDroppedFrames());
+        assertEquals(report.frames, report.latency.getCount());
+    }
+    
+    @Test
+    public void testDriver_atFixedRateOffersNoMoreFrames() throws Exception {
+        SyntheticFrameSource source = new SyntheticFrameSource(96, 64, 1);
+        source.setFrameRate(20);
+        LoadDriver.Report report = new LoadDriver(new JavaFrameProcessor(new CannyEdgeDetector(), OutputFormat.LUMINANCE))
+                .run(source, 0, TimeUnit.SECONDS.toNanos(1));
+        
+        // 20 fps for a second; the bound is loose for a busy machine
+        assertTrue(report.toString(), report.frames + report.getDroppedFrames() <= 22);
+        assertTrue(report.toString(), report.frames > 0);
+    }
+    
+    @Test
+    public void testBadOptions_printUsage() {
+        assertEquals(2, run("--duration", "0"));
+        assertEquals(2, run("--motion", "3"));
+        assertTrue(err.toString(), err.toString().contains("Usage: edge-load"));
+    }
+    
+    private int run(String... args) {
+        return LoadCli.run(args, new PrintStream(out, true), new PrintStream(err, true));
+    }
+}
@@ -0,0 +1,412 @@
+package com.example.edgedetectionviewer;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Headless engine for reprocessing stored frames: the same processors as the camera path,
+ * fed from a {@link FrameSource} and written to a {@link FrameSink}, with no Activity or
+ * device involved.
+ *
+ * Three stages run at once: the calling thread reads batches of frames, a pool of workers
+ * processes them (one processor per worker) and a writer thread writes them out. Batches
+ * travel in a bounded queue of futures in reading order, so output keeps input order however
+ * the workers finish, and a fixed set of batch buffers is recycled: when the writer falls
+ * behind, reading waits rather than filling memory. Batching several frames per worker task
+ * spreads the hand-off costs over more pixels.
+ */
+public final class BatchProcessor {
+    
+    /**
+     * Creates one processor per worker thread; processors need not be thread-safe.
+     */
+    public interface ProcessorFactory {
+        FrameProcessor create();
+    }
+    
+    /**
+     * Reads frames in order, on the thread calling {@link #run}.
+     */
+    public interface FrameSource {
+        /**
+         * Fills {@code frame} via {@link Frame#reset} and {@link Frame#getInput()}.
+         *
+         * @return false once there are no more frames
+         */
+        boolean read(Frame frame) throws IOException;
+    }
+    
+    /**
+     * Receives processed frames in input order, on the writer thread.
+     */
+    public interface FrameSink {
+        void write(Frame frame) throws IOException;
+    }
+    
+    /**
+     * One frame's input and output, reused across batches.
+     */
+    public static final class Frame {
+        private String name;
+        private int width;
+        private int height;
+        private int bytesPerPixel;
+        private long index;
+        private ByteBuffer input = ByteBuffer.allocate(0);
+        private ByteBuffer output = ByteBuffer.allocate(0);
+        
+        /**
+         * Sizes the input for a new frame; {@code bytesPerPixel} is 4 for RGBA or 1 for
+         * luminance. Returns the input buffer, positioned at 0.
+         */
+        public ByteBuffer reset(String name, int width, int height, int bytesPerPixel) {
+            if (width <= 0 || height <= 0 || (bytesPerPixel != 4 && bytesPerPixel != 1)) {
+                throw new IllegalArgumentException("Invalid frame " + name + ": " + width + "x" + height + "x" + bytesPerPixel);
+            }
+            this.name = name;
+            this.width = width;
+            this.height = height;
+            this.bytesPerPixel = bytesPerPixel;
+            int size = width * height * bytesPerPixel;
+            if (input.capacity() < size) {
+                input = ByteBuffer.allocate(size);
+            }
+            input.clear();
+            input.limit(size);
+            return input;
+        }
+        
+        /**
+         * Source's name for the frame, e.g. its file name; used to name the output.
+         */
+        public String getName() {
+            return name;
+        }
+        
+        public int getWidth() {
+            return width;
+        }
+        
+        public int getHeight() {
+            return height;
+        }
+        
+        public int getBytesPerPixel() {
+            return bytesPerPixel;
+        }
+        
+        /**
+         * Position in the input, from 0.
+         */
+        public long getIndex() {
+            return index;
+        }
+        
+        public ByteBuffer getInput() {
+            return input;
+        }
+        
+        /**
+         * Processed frame in the processor's {@link OutputFormat}; position 0, limit at its end.
+         */
+        public ByteBuffer getOutput() {
+            return output;
+        }
+        
+        void process(FrameProcessor processor, boolean edges) {
+            int size = processor.getOutputFormat().getFrameSize(width, height);
+            if (output.capacity() < size) {
+                output = ByteBuffer.allocate(size);
+            }
+            output.clear();
+            output.limit(size);
+            boolean ok = bytesPerPixel == 4
+                    ? processor.processFrame(input, output, width, height, edges)
+                    : processor.processLuma(input, width, output, width, height, edges);
+            if (!ok) {
+                throw new IllegalStateException("Processor failed on frame " + name);
+            }
+        }
+    }
+    
+    /**
+     * Totals of one {@link #run}.
+     */
+    public static final class Result {
+        private final long frames;
+        private final long bytesRead;
+        private final long bytesWritten;
+        private final long elapsedNanos;
+        
+        Result(long frames, long bytesRead, long bytesWritten, long elapsedNanos) {
+            this.frames = frames;
+            this.bytesRead = bytesRead;
+            this.bytesWritten = bytesWritten;
+            this.elapsedNanos = elapsedNanos;
+        }
+        
+        public long getFrameCount() {
+            return frames;
+        }
+        
+        /**
+         * Raw input pixels, whatever the files' encoding.
+         */
+        public long getBytesRead() {
+            return bytesRead;
+        }
+        
+        public long getBytesWritten() {
+            return bytesWritten;
+        }
+        
+        public long getElapsedNanos() {
+            return elapsedNanos;
+        }
+        
+        public double getFramesPerSecond() {
+            return elapsedNanos == 0 ? 0 : frames * 1e9 / elapsedNanos;
+        }
+        
+        /**
+         * Input pixel throughput in MB/s (10^6 bytes).
+         */
+        public double getMegabytesPerSecond() {
+            return elapsedNanos == 0 ? 0 : bytesRead * 1e3 / elapsedNanos;
+        }
+        
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "%d frames in %.2f s: %.1f frames/s, %.1f MB/s in, %.1f MB/s out",
+                    frames, elapsedNanos / 1e9, getFramesPerSecond(), getMegabytesPerSecond(),
+                    elapsedNanos == 0 ? 0 : bytesWritten * 1e3 / elapsedNanos);
+        }
+    }
+    
+    private final ProcessorFactory factory;
+    private final int threads;
+    private final int batchSize;
+    private final boolean edges;
+    
+    /**
+     * @param threads worker threads
+     * @param batchSize frames per worker task
+     * @param edges Canny edges if true, grayscale otherwise
+     */
+    public BatchProcessor(ProcessorFactory factory, int threads, int batchSize, boolean edges) {
+        if (threads < 1 || batchSize < 1) {
+            throw new IllegalArgumentException("threads and batchSize must be positive: " + threads + ", " + batchSize);
+        }
+        this.factory = factory;
+        this.threads = threads;
+        this.batchSize = batchSize;
+        this.edges = edges;
+    }
+    
+    /**
+     * Batches that may be in the pipeline at once: queued, being processed or being written.
+     */
+    public int getMaxBatchesInFlight() {
+        return 2 * threads;
+    }
+    
+    /**
+     * Processes every frame of {@code source} into {@code sink}, blocking until done. The
+     * first failure stops the run and is thrown once every batch in flight is back.
+     *
+     * @throws IOException from the source or sink, or wrapping a processor's exception;
+     *         runtime exceptions from the sink and errors are thrown as they are
+     */
+    public Result run(FrameSource source, final FrameSink sink) throws IOException, InterruptedException {
+        int inFlight = getMaxBatchesInFlight();
+        final BlockingQueue<Batch> free = new ArrayBlockingQueue<>(inFlight);
+        for (int i = 0; i < inFlight; i++) {
+            free.add(new Batch(batchSize));
+        }
+        // Reading order; holds an end marker (a null batch) once the source is exhausted
+        final BlockingQueue<Future<Batch>> ordered = new ArrayBlockingQueue<>(inFlight + 1);
+        final ArrayList<FrameProcessor> processors = new ArrayList<>();
+        final ThreadLocal<FrameProcessor> processor = new ThreadLocal<FrameProcessor>() {
+            @Override
+            protected FrameProcessor initialValue() {
+                FrameProcessor p = factory.create();
+                synchronized (processors) {
+                    processors.add(p);
+                }
+                return p;
+            }
+        };
+        ExecutorService workers = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+            
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "BatchWorker-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        final Writer writer = new Writer(ordered, free, sink);
+        Thread writerThread = new Thread(writer, "BatchWriter");
+        writerThread.setDaemon(true);
+        
+        long start = System.nanoTime();
+        long frames = 0;
+        long bytesRead = 0;
+        writerThread.start();
+        try {
+            while (writer.failure == null) {
+                final Batch batch = free.take();
+                batch.count = 0;
+                while (batch.count < batchSize) {
+                    Frame frame = batch.frames[batch.count];
+                    if (!source.read(frame)) {
+                        break;
+                    }
+                    frame.index = frames++;
+                    bytesRead += frame.input.limit();
+                    batch.count++;
+                }
+                if (batch.count == 0) {
+                    free.add(batch);
+                    break;
+                }
+                ordered.put(workers.submit(new Callable<Batch>() {
+                    @Override
+                    public Batch call() {
+                        try {
+                            FrameProcessor p = processor.get();
+                            for (int i = 0; i < batch.count; i++) {
+                                batch.frames[i].process(p, edges);
+                            }
+                        } catch (Throwable e) {
+                            // Carried to the writer with the batch, which goes back to the free list
+                            batch.error = e;
+                        }
+                        return batch;
+                    }
+                }));
+                if (batch.count < batchSize) {
+                    break;
+                }
+            }
+        } finally {
+            ordered.put(END);
+            writerThread.join();
+            workers.shutdown();
+            synchronized (processors) {
+                for (FrameProcessor p : processors) {
+                    p.release();
+                }
+            }
+        }
+        
+        Throwable failure = writer.failure;
+        if (failure instanceof IOException) {
+            throw (IOException) failure;
+        } else if (failure instanceof RuntimeException) {
+            throw (RuntimeException) failure;
+        } else if (failure instanceof Error) {
+            throw (Error) failure;
+        }
+        return new Result(frames, bytesRead, writer.bytesWritten, System.nanoTime() - start);
+    }
+    
+    private static final Future<Batch> END = new FutureTask<>(new Callable<Batch>() {
+        @Override
+        public Batch call() {
+            return null;
+        }
+    });
+    
+    private static final class Batch {
+        final Frame[] frames;
+        int count;
+        Throwable error;
+        
+        Batch(int size) {
+            frames = new Frame[size];
+            for (int i = 0; i < size; i++) {
+                frames[i] = new Frame();
+            }
+        }
+    }
+    
+    /**
+     * Writes batches in reading order. After a failure it keeps draining, recycling batches
+     * so the reader never blocks, and the reader stops at its next batch.
+     */
+    private static final class Writer implements Runnable {
+        private final BlockingQueue<Future<Batch>> ordered;
+        private final BlockingQueue<Batch> free;
+        private final FrameSink sink;
+        volatile Throwable failure;
+        long bytesWritten;
+        
+        Writer(BlockingQueue<Future<Batch>> ordered, BlockingQueue<Batch> free, FrameSink sink) {
+            this.ordered = ordered;
+            this.free = free;
+            this.sink = sink;
+        }
+        
+        @Override
+        public void run() {
+            try {
+                for (Future<Batch> next = ordered.take(); next != END; next = ordered.take()) {
+                    Batch batch;
+                    try {
+                        batch = next.get();
+                    } catch (ExecutionException e) {
+                        // Tasks catch their own failures; should one escape, its batch is lost
+                        // but the others still come back
+                        fail(e.getCause());
+                        continue;
+                    }
+                    if (batch.error instanceof Error) {
+                        fail(batch.error);
+                    } else if (batch.error != null) {
+                        fail(new IOException("Processing failed: " + batch.error.getMessage(), batch.error));
+                    }
+                    if (failure == null) {
+                        write(batch);
+                    }
+                    batch.error = null;
+                    free.add(batch);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        
+        private void fail(Throwable e) {
+            if (failure == null) {
+                failure = e;
+            }
+        }
+        
+        private void write(Batch batch) {
+            try {
+                for (int i = 0; i < batch.count; i++) {
+                    Frame frame = batch.frames[i];
+                    sink.write(frame);
+                    bytesWritten += frame.output.limit();
+                }
+            } catch (Throwable e) {
+                // Whatever the sink throws, the writer lives on to recycle batches
+                fail(e);
+            }
+        }
+    }
+}
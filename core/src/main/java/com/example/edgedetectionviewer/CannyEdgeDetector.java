@@ -0,0 +1,659 @@
+package com.example.edgedetectionviewer;
+
+import java.util.Arrays;
+
+/**
+ * Pure-Java grayscale, 5x5 Gaussian and Canny pipeline, matching
+ * NativeProcessor::processFrame in native_processor.cpp.
+ *
+ * Integer arithmetic on primitive arrays only, following OpenCV's fixed-point conventions:
+ * RGBA2GRAY with 15-bit coefficients, a separable Q8 Gaussian kernel with BORDER_REFLECT_101
+ * (or the 1-2-1 kernel OpenCV uses for a 3x3 blur without sigma),
+ * 3x3 Sobel with BORDER_REPLICATE, L1 magnitude and the tan(22.5) non-max suppression test.
+ *
+ * The stage kernels work on row ranges of "windows": arrays holding full-width image rows
+ * starting at a base row. The whole-frame path uses one window covering the frame; the
+ * tiled path gives each strip its own window including halo rows. The "Rect" variants
+ * recompute a sub-rectangle of whole-frame buffers for the incremental path.
+ *
+ * Not thread-safe: scratch buffers are reused across frames.
+ */
+public final class CannyEdgeDetector implements EdgeDetector {
+    public static final int DEFAULT_LOW_THRESHOLD = 50;
+    public static final int DEFAULT_HIGH_THRESHOLD = 150;
+    
+    // Rows of input context each stage needs above and below its output rows
+    static final int BLUR_RADIUS = 2;
+    static final int SOBEL_RADIUS = 1;
+    
+    // Non-max suppression map values
+    static final byte MAP_CANDIDATE = 0;
+    static final byte MAP_NONE = 1;
+    static final byte MAP_EDGE = 2;
+    
+    // cvtColor RGBA2GRAY coefficients, Q15
+    private static final int R2Y = 9798;
+    private static final int G2Y = 19235;
+    private static final int B2Y = 3735;
+    private static final int GRAY_SHIFT = 15;
+    
+    // getGaussianKernel(5, 1.5) in Q8, symmetric: K0 outer taps, K2 centre
+    static final int K0 = 31;
+    static final int K1 = 60;
+    static final int K2 = 74;
+    
+    // tan(22.5 degrees) in Q15
+    private static final int TG22 = 13573;
+    
+    private final int lowThreshold;
+    private final int highThreshold;
+    private int blurKernelSize = 5;
+    private FrameMetrics metrics = FrameMetrics.NONE;
+    
+    // Whole-frame scratch, reallocated only when the frame size changes
+    private int width;
+    private int height;
+    private byte[] gray;
+    private byte[] blurred;
+    private int[] blurRows;
+    private byte[] map;
+    private final GradientRows gradientRows = new GradientRows();
+    private int[] stack = new int[1024];
+    
+    public CannyEdgeDetector() {
+        this(DEFAULT_LOW_THRESHOLD, DEFAULT_HIGH_THRESHOLD);
+    }
+    
+    public CannyEdgeDetector(int lowThreshold, int highThreshold) {
+        if (lowThreshold < 0 || highThreshold < lowThreshold) {
+            throw new IllegalArgumentException("Invalid thresholds: " + lowThreshold + "/" + highThreshold);
+        }
+        this.lowThreshold = lowThreshold;
+        this.highThreshold = highThreshold;
+    }
+    
+    public int getLowThreshold() {
+        return lowThreshold;
+    }
+    
+    public int getHighThreshold() {
+        return highThreshold;
+    }
+    
+    @Override
+    public void setBlurKernelSize(int size) {
+        if (size != 3 && size != 5) {
+            throw new IllegalArgumentException("Blur kernel must be 3 or 5: " + size);
+        }
+        blurKernelSize = size;
+    }
+    
+    public int getBlurKernelSize() {
+        return blurKernelSize;
+    }
+    
+    /**
+     * Times the grayscale, blur and Canny stages of whole-frame detection.
+     */
+    public void setMetrics(FrameMetrics metrics) {
+        this.metrics = metrics;
+    }
+    
+    @Override
+    public void grayscale(byte[] rgba, int rgbaOffset, byte[] out, int width, int height) {
+        checkFrame(rgba.length - rgbaOffset, out.length, width, height);
+        rgbaToGray(rgba, rgbaOffset, width, out, 0, 0, height);
+    }
+    
+    @Override
+    public void detectEdges(byte[] rgba, int rgbaOffset, byte[] edges, int width, int height) {
+        checkFrame(rgba.length - rgbaOffset, edges.length, width, height);
+        ensureCapacity(width, height);
+        
+        long start = metrics.start();
+        rgbaToGray(rgba, rgbaOffset, width, gray, 0, 0, height);
+        metrics.stop(FrameMetrics.Stage.GRAYSCALE, start);
+        blurAndCanny(gray, edges, width, height);
+    }
+    
+    @Override
+    public void detectEdgesFromLuma(byte[] luma, byte[] edges, int width, int height) {
+        checkLuma(luma.length, edges.length, width, height);
+        ensureCapacity(width, height);
+        blurAndCanny(luma, edges, width, height);
+    }
+    
+    private void blurAndCanny(byte[] gray, byte[] edges, int width, int height) {
+        long start = metrics.start();
+        if (blurKernelSize == 3) {
+            gaussianBlur3(gray, 0, blurred, 0, blurRows, width, height, 0, height);
+        } else {
+            gaussianBlur(gray, 0, blurred, 0, blurRows, width, height, 0, height);
+        }
+        metrics.stop(FrameMetrics.Stage.BLUR, start);
+        
+        start = metrics.start();
+        nonMaxSuppression(blurred, 0, map, gradientRows, width, height, 0, height, lowThreshold, highThreshold);
+        hysteresis(map, edges, width, height);
+        metrics.stop(FrameMetrics.Stage.CANNY, start);
+    }
+    
+    static void checkFrame(int rgbaLength, int outLength, int width, int height) {
+        if (width <= 0 || height <= 0) {
+            throw new IllegalArgumentException("Invalid frame size: " + width + "x" + height);
+        }
+        if (rgbaLength < width * height * 4 || outLength < width * height) {
+            throw new IllegalArgumentException("Buffer too small for " + width + "x" + height + " frame");
+        }
+    }
+    
+    static void checkLuma(int lumaLength, int outLength, int width, int height) {
+        if (width <= 0 || height <= 0) {
+            throw new IllegalArgumentException("Invalid frame size: " + width + "x" + height);
+        }
+        if (lumaLength < width * height || outLength < width * height) {
+            throw new IllegalArgumentException("Buffer too small for " + width + "x" + height + " luma frame");
+        }
+    }
+    
+    private void ensureCapacity(int width, int height) {
+        if (this.width == width && this.height == height) {
+            return;
+        }
+        this.width = width;
+        this.height = height;
+        gray = new byte[width * height];
+        blurred = new byte[width * height];
+        blurRows = new int[width * height];
+        map = newMap(width, height);
+    }
+    
+    /**
+     * Allocates a suppression map with a one-pixel {@link #MAP_NONE} border, so hysteresis
+     * can look at all eight neighbours without bounds checks.
+     */
+    static byte[] newMap(int width, int height) {
+        byte[] map = new byte[(width + 2) * (height + 2)];
+        Arrays.fill(map, MAP_NONE);
+        return map;
+    }
+    
+    /**
+     * OpenCV's BORDER_REFLECT_101: ...2 1 | 0 1 2 ... n-1 | n-2 n-3...
+     */
+    static int reflect101(int i, int n) {
+        if (n == 1) {
+            return 0;
+        }
+        while (i < 0 || i >= n) {
+            i = i < 0 ? -i : 2 * n - 2 - i;
+        }
+        return i;
+    }
+    
+    /**
+     * Writes luminance for image rows [y0, y1) into the window {@code gray} based at grayBase.
+     */
+    static void rgbaToGray(byte[] rgba, int rgbaOffset, int width, byte[] gray, int grayBase, int y0, int y1) {
+        for (int y = y0; y < y1; y++) {
+            int s = rgbaOffset + y * width * 4;
+            int d = (y - grayBase) * width;
+            int end = d + width;
+            for (; d < end; d++, s += 4) {
+                int r = rgba[s] & 0xFF;
+                int g = rgba[s + 1] & 0xFF;
+                int b = rgba[s + 2] & 0xFF;
+                gray[d] = (byte) ((r * R2Y + g * G2Y + b * B2Y + (1 << (GRAY_SHIFT - 1))) >> GRAY_SHIFT);
+            }
+        }
+    }
+    
+    /**
+     * Separable 5x5 Gaussian for output rows [y0, y1).
+     *
+     * {@code src} must hold image rows [max(0, y0 - 2), min(height, y1 + 2)); {@code tmp}
+     * needs room for that many rows of horizontally filtered Q8 values.
+     */
+    static void gaussianBlur(byte[] src, int srcBase, byte[] dst, int dstBase, int[] tmp,
+                             int width, int height, int y0, int y1) {
+        int r0 = Math.max(0, y0 - BLUR_RADIUS);
+        int r1 = Math.min(height, y1 + BLUR_RADIUS);
+        
+        // Horizontal pass, once per source row
+        for (int r = r0; r < r1; r++) {
+            blurRowHorizontal(src, (r - srcBase) * width, tmp, (r - r0) * width, width);
+        }
+        
+        // Vertical pass; reflected rows always fall inside [r0, r1)
+        for (int y = y0; y < y1; y++) {
+            int a = (reflect101(y - 2, height) - r0) * width;
+            int b = (reflect101(y - 1, height) - r0) * width;
+            int c = (y - r0) * width;
+            int e = (reflect101(y + 1, height) - r0) * width;
+            int f = (reflect101(y + 2, height) - r0) * width;
+            int d = (y - dstBase) * width;
+            for (int x = 0; x < width; x++) {
+                int v = K0 * (tmp[a + x] + tmp[f + x]) + K1 * (tmp[b + x] + tmp[e + x]) + K2 * tmp[c + x];
+                dst[d + x] = (byte) ((v + (1 << 15)) >> 16);
+            }
+        }
+    }
+    
+    /**
+     * Separable 3x3 Gaussian with the 1-2-1 kernel for output rows [y0, y1); window
+     * requirements as for {@link #gaussianBlur}, with one row of context instead of two.
+     */
+    static void gaussianBlur3(byte[] src, int srcBase, byte[] dst, int dstBase, int[] tmp,
+                              int width, int height, int y0, int y1) {
+        int r0 = Math.max(0, y0 - 1);
+        int r1 = Math.min(height, y1 + 1);
+        
+        for (int r = r0; r < r1; r++) {
+            int s = (r - srcBase) * width;
+            int o = (r - r0) * width;
+            if (width == 1) {
+                tmp[o] = 4 * (src[s] & 0xFF);
+                continue;
+            }
+            // Reflected borders: the neighbour outside the row is the one inside it
+            tmp[o] = 2 * ((src[s] & 0xFF) + (src[s + 1] & 0xFF));
+            for (int x = 1; x < width - 1; x++) {
+                int p = s + x;
+                tmp[o + x] = (src[p - 1] & 0xFF) + 2 * (src[p] & 0xFF) + (src[p + 1] & 0xFF);
+            }
+            tmp[o + width - 1] = 2 * ((src[s + width - 2] & 0xFF) + (src[s + width - 1] & 0xFF));
+        }
+        
+        for (int y = y0; y < y1; y++) {
+            int a = (reflect101(y - 1, height) - r0) * width;
+            int c = (y - r0) * width;
+            int e = (reflect101(y + 1, height) - r0) * width;
+            int d = (y - dstBase) * width;
+            for (int x = 0; x < width; x++) {
+                dst[d + x] = (byte) ((tmp[a + x] + 2 * tmp[c + x] + tmp[e + x] + 8) >> 4);
+            }
+        }
+    }
+    
+    /**
+     * Gaussian for the rectangle [x0, x1) x [y0, y1) only. {@code src}, {@code dst} and
+     * {@code tmp} are whole frames; {@code tmp} is written for the rectangle's columns over
+     * rows [max(0, y0 - 2), min(height, y1 + 2)).
+     */
+    static void gaussianBlurRect(byte[] src, byte[] dst, int[] tmp, int width, int height,
+                                 int x0, int x1, int y0, int y1) {
+        int r0 = Math.max(0, y0 - BLUR_RADIUS);
+        int r1 = Math.min(height, y1 + BLUR_RADIUS);
+        int interiorStart = Math.max(x0, BLUR_RADIUS);
+        int interiorEnd = Math.min(x1, width - BLUR_RADIUS);
+        
+        for (int r = r0; r < r1; r++) {
+            int s = r * width;
+            for (int x = x0; x < x1; x++) {
+                if (x < interiorStart || x >= interiorEnd) {
+                    tmp[s + x] = blurPixelReflected(src, s, x, width);
+                } else {
+                    int p = s + x;
+                    tmp[p] = K0 * ((src[p - 2] & 0xFF) + (src[p + 2] & 0xFF))
+                            + K1 * ((src[p - 1] & 0xFF) + (src[p + 1] & 0xFF))
+                            + K2 * (src[p] & 0xFF);
+                }
+            }
+        }
+        
+        for (int y = y0; y < y1; y++) {
+            int a = reflect101(y - 2, height) * width;
+            int b = reflect101(y - 1, height) * width;
+            int c = y * width;
+            int e = reflect101(y + 1, height) * width;
+            int f = reflect101(y + 2, height) * width;
+            for (int x = x0; x < x1; x++) {
+                int v = K0 * (tmp[a + x] + tmp[f + x]) + K1 * (tmp[b + x] + tmp[e + x]) + K2 * tmp[c + x];
+                dst[c + x] = (byte) ((v + (1 << 15)) >> 16);
+            }
+        }
+    }
+    
+    /**
+     * {@link #gaussianBlur3} for the rectangle [x0, x1) x [y0, y1) only; frames and
+     * {@code tmp} as for {@link #gaussianBlurRect}, with one row of context instead of two.
+     */
+    static void gaussianBlur3Rect(byte[] src, byte[] dst, int[] tmp, int width, int height,
+                                  int x0, int x1, int y0, int y1) {
+        int r0 = Math.max(0, y0 - 1);
+        int r1 = Math.min(height, y1 + 1);
+        int interiorStart = Math.max(x0, 1);
+        int interiorEnd = Math.min(x1, width - 1);
+        
+        for (int r = r0; r < r1; r++) {
+            int s = r * width;
+            for (int x = x0; x < x1; x++) {
+                int p = s + x;
+                if (x < interiorStart || x >= interiorEnd) {
+                    tmp[p] = (src[s + reflect101(x - 1, width)] & 0xFF) + 2 * (src[p] & 0xFF)
+                            + (src[s + reflect101(x + 1, width)] & 0xFF);
+                } else {
+                    tmp[p] = (src[p - 1] & 0xFF) + 2 * (src[p] & 0xFF) + (src[p + 1] & 0xFF);
+                }
+            }
+        }
+        
+        for (int y = y0; y < y1; y++) {
+            int a = reflect101(y - 1, height) * width;
+            int c = y * width;
+            int e = reflect101(y + 1, height) * width;
+            for (int x = x0; x < x1; x++) {
+                dst[c + x] = (byte) ((tmp[a + x] + 2 * tmp[c + x] + tmp[e + x] + 8) >> 4);
+            }
+        }
+    }
+    
+    private static void blurRowHorizontal(byte[] src, int s, int[] out, int o, int width) {
+        int interiorEnd = width - BLUR_RADIUS;
+        int x = 0;
+        // Left border
+        for (; x < Math.min(BLUR_RADIUS, width); x++) {
+            out[o + x] = blurPixelReflected(src, s, x, width);
+        }
+        // Interior: no border handling
+        for (; x < interiorEnd; x++) {
+            int p = s + x;
+            out[o + x] = K0 * ((src[p - 2] & 0xFF) + (src[p + 2] & 0xFF))
+                    + K1 * ((src[p - 1] & 0xFF) + (src[p + 1] & 0xFF))
+                    + K2 * (src[p] & 0xFF);
+        }
+        // Right border
+        for (; x < width; x++) {
+            out[o + x] = blurPixelReflected(src, s, x, width);
+        }
+    }
+    
+    private static int blurPixelReflected(byte[] src, int s, int x, int width) {
+        return K0 * ((src[s + reflect101(x - 2, width)] & 0xFF) + (src[s + reflect101(x + 2, width)] & 0xFF))
+                + K1 * ((src[s + reflect101(x - 1, width)] & 0xFF) + (src[s + reflect101(x + 1, width)] & 0xFF))
+                + K2 * (src[s + x] & 0xFF);
+    }
+    
+    /**
+     * Per-row Sobel and magnitude scratch for non-max suppression. Magnitude rows carry a
+     * zero on either side so neighbours past the frame edge read as no gradient.
+     */
+    static final class GradientRows {
+        int width = -1;
+        int[] dxCur;
+        int[] dyCur;
+        int[] dxNext;
+        int[] dyNext;
+        int[] magPrev;
+        int[] magCur;
+        int[] magNext;
+        
+        void ensureWidth(int width) {
+            if (this.width == width) {
+                return;
+            }
+            this.width = width;
+            if (dxCur == null || dxCur.length < width) {
+                dxCur = new int[width];
+                dyCur = new int[width];
+                dxNext = new int[width];
+                dyNext = new int[width];
+                magPrev = new int[width + 2];
+                magCur = new int[width + 2];
+                magNext = new int[width + 2];
+            }
+            // Rows are reused across widths (region crops vary); the right border of this
+            // width may hold a magnitude from a wider one
+            magPrev[width + 1] = 0;
+            magCur[width + 1] = 0;
+            magNext[width + 1] = 0;
+        }
+        
+        void advance() {
+            int[] t = dxCur;
+            dxCur = dxNext;
+            dxNext = t;
+            t = dyCur;
+            dyCur = dyNext;
+            dyNext = t;
+            t = magPrev;
+            magPrev = magCur;
+            magCur = magNext;
+            magNext = t;
+        }
+    }
+    
+    /**
+     * Sobel gradients and non-max suppression for image rows [y0, y1), written into the
+     * full-frame {@code map} (one-pixel border, see {@link #newMap}).
+     *
+     * {@code blurred} must hold image rows [max(0, y0 - 2), min(height, y1 + 2)).
+     */
+    static void nonMaxSuppression(byte[] blurred, int srcBase, byte[] map, GradientRows rows,
+                                  int width, int height, int y0, int y1, int low, int high) {
+        rows.ensureWidth(width);
+        int mapStep = width + 2;
+        
+        // Prime the previous and current rows
+        if (y0 > 0) {
+            sobelRow(blurred, srcBase, width, height, y0 - 1, rows.dxNext, rows.dyNext, rows.magNext);
+        } else {
+            Arrays.fill(rows.magNext, 0);
+        }
+        rows.advance();
+        sobelRow(blurred, srcBase, width, height, y0, rows.dxNext, rows.dyNext, rows.magNext);
+        rows.advance();
+        
+        for (int y = y0; y < y1; y++) {
+            if (y + 1 < height) {
+                sobelRow(blurred, srcBase, width, height, y + 1, rows.dxNext, rows.dyNext, rows.magNext);
+            } else {
+                Arrays.fill(rows.magNext, 0);
+            }
+            
+            int[] dx = rows.dxCur;
+            int[] dy = rows.dyCur;
+            int[] magP = rows.magPrev;
+            int[] magC = rows.magCur;
+            int[] magN = rows.magNext;
+            int m0 = (y + 1) * mapStep + 1;
+            
+            for (int x = 0; x < width; x++) {
+                map[m0 + x] = suppress(dx[x], dy[x], magP, magC, magN, x + 1, low, high);
+            }
+            
+            rows.advance();
+        }
+    }
+    
+    /**
+     * Like {@link #nonMaxSuppression} for the rectangle [x0, x1) x [y0, y1) only, with
+     * {@code blurred} a whole frame. Gradients are computed just for the columns the
+     * rectangle's suppression test reads.
+     */
+    static void nonMaxSuppressionRect(byte[] blurred, byte[] map, GradientRows rows, int width, int height,
+                                      int x0, int x1, int y0, int y1, int low, int high) {
+        rows.ensureWidth(width);
+        int mapStep = width + 2;
+        int xa = Math.max(0, x0 - 1);
+        int xb = Math.min(width, x1 + 1);
+        
+        if (y0 > 0) {
+            sobelRowRange(blurred, width, height, y0 - 1, xa, xb, rows.dxNext, rows.dyNext, rows.magNext);
+        } else {
+            Arrays.fill(rows.magNext, xa + 1, xb + 1, 0);
+        }
+        rows.advance();
+        sobelRowRange(blurred, width, height, y0, xa, xb, rows.dxNext, rows.dyNext, rows.magNext);
+        rows.advance();
+        
+        for (int y = y0; y < y1; y++) {
+            if (y + 1 < height) {
+                sobelRowRange(blurred, width, height, y + 1, xa, xb, rows.dxNext, rows.dyNext, rows.magNext);
+            } else {
+                Arrays.fill(rows.magNext, xa + 1, xb + 1, 0);
+            }
+            
+            int[] dx = rows.dxCur;
+            int[] dy = rows.dyCur;
+            int m0 = (y + 1) * mapStep + 1;
+            for (int x = x0; x < x1; x++) {
+                map[m0 + x] = suppress(dx[x], dy[x], rows.magPrev, rows.magCur, rows.magNext, x + 1, low, high);
+            }
+            
+            rows.advance();
+        }
+    }
+    
+    /**
+     * Non-max suppression for one pixel. magP, magC and magN are the magnitude rows above,
+     * at and below it (indexed like {@link GradientRows}), j its index in them.
+     */
+    private static byte suppress(int xs, int ys, int[] magP, int[] magC, int[] magN, int j, int low, int high) {
+        int m = magC[j];
+        byte value = MAP_NONE;
+        if (m > low) {
+            int ax = Math.abs(xs);
+            int ay = Math.abs(ys) << 15;
+            int tg22x = ax * TG22;
+            boolean peak;
+            if (ay < tg22x) {
+                peak = m > magC[j - 1] && m >= magC[j + 1];
+            } else {
+                int tg67x = tg22x + (ax << 16);
+                if (ay > tg67x) {
+                    peak = m > magP[j] && m >= magN[j];
+                } else {
+                    int s = (xs ^ ys) < 0 ? -1 : 1;
+                    peak = m > magP[j - s] && m > magN[j + s];
+                }
+            }
+            if (peak) {
+                value = m > high ? MAP_EDGE : MAP_CANDIDATE;
+            }
+        }
+        return value;
+    }
+    
+    /**
+     * 3x3 Sobel on image row y with replicated borders; mag gets |dx| + |dy| at [x + 1].
+     */
+    private static void sobelRow(byte[] src, int srcBase, int width, int height, int y,
+                                 int[] dx, int[] dy, int[] mag) {
+        int above = (Math.max(y - 1, 0) - srcBase) * width;
+        int row = (y - srcBase) * width;
+        int below = (Math.min(y + 1, height - 1) - srcBase) * width;
+        
+        sobelPixelReplicated(src, above, row, below, width, 0, dx, dy, mag);
+        // Interior: no column clamping
+        for (int x = 1; x < width - 1; x++) {
+            int tl = src[above + x - 1] & 0xFF;
+            int tr = src[above + x + 1] & 0xFF;
+            int bl = src[below + x - 1] & 0xFF;
+            int br = src[below + x + 1] & 0xFF;
+            
+            int gx = (tr - tl) + 2 * ((src[row + x + 1] & 0xFF) - (src[row + x - 1] & 0xFF)) + (br - bl);
+            int gy = (bl + 2 * (src[below + x] & 0xFF) + br) - (tl + 2 * (src[above + x] & 0xFF) + tr);
+            dx[x] = gx;
+            dy[x] = gy;
+            mag[x + 1] = Math.abs(gx) + Math.abs(gy);
+        }
+        if (width > 1) {
+            sobelPixelReplicated(src, above, row, below, width, width - 1, dx, dy, mag);
+        }
+    }
+    
+    /**
+     * {@link #sobelRow} for columns [xa, xb) of a whole-frame {@code src}.
+     */
+    private static void sobelRowRange(byte[] src, int width, int height, int y, int xa, int xb,
+                                      int[] dx, int[] dy, int[] mag) {
+        int above = Math.max(y - 1, 0) * width;
+        int row = y * width;
+        int below = Math.min(y + 1, height - 1) * width;
+        
+        for (int x = xa; x < xb; x++) {
+            if (x == 0 || x == width - 1) {
+                sobelPixelReplicated(src, above, row, below, width, x, dx, dy, mag);
+                continue;
+            }
+            int tl = src[above + x - 1] & 0xFF;
+            int tr = src[above + x + 1] & 0xFF;
+            int bl = src[below + x - 1] & 0xFF;
+            int br = src[below + x + 1] & 0xFF;
+            
+            int gx = (tr - tl) + 2 * ((src[row + x + 1] & 0xFF) - (src[row + x - 1] & 0xFF)) + (br - bl);
+            int gy = (bl + 2 * (src[below + x] & 0xFF) + br) - (tl + 2 * (src[above + x] & 0xFF) + tr);
+            dx[x] = gx;
+            dy[x] = gy;
+            mag[x + 1] = Math.abs(gx) + Math.abs(gy);
+        }
+    }
+    
+    private static void sobelPixelReplicated(byte[] src, int above, int row, int below, int width, int x,
+                                             int[] dx, int[] dy, int[] mag) {
+        int xl = x > 0 ? x - 1 : 0;
+        int xr = x < width - 1 ? x + 1 : width - 1;
+        
+        int tl = src[above + xl] & 0xFF;
+        int tc = src[above + x] & 0xFF;
+        int tr = src[above + xr] & 0xFF;
+        int ml = src[row + xl] & 0xFF;
+        int mr = src[row + xr] & 0xFF;
+        int bl = src[below + xl] & 0xFF;
+        int bc = src[below + x] & 0xFF;
+        int br = src[below + xr] & 0xFF;
+        
+        int gx = (tr - tl) + 2 * (mr - ml) + (br - bl);
+        int gy = (bl + 2 * bc + br) - (tl + 2 * tc + tr);
+        dx[x] = gx;
+        dy[x] = gy;
+        mag[x + 1] = Math.abs(gx) + Math.abs(gy);
+    }
+    
+    /**
+     * Grows strong edges through connected candidates over the whole map, then writes
+     * 255/0 edge bytes. Runs over the full frame so edges link across strip boundaries.
+     */
+    void hysteresis(byte[] map, byte[] edges, int width, int height) {
+        int mapStep = width + 2;
+        int[] stack = this.stack;
+        int top = 0;
+        
+        int last = (height + 1) * mapStep;
+        for (int i = mapStep; i < last; i++) {
+            if (map[i] == MAP_EDGE) {
+                if (top == stack.length) {
+                    stack = Arrays.copyOf(stack, stack.length * 2);
+                }
+                stack[top++] = i;
+            }
+        }
+        
+        while (top > 0) {
+            int i = stack[--top];
+            // Worst case all eight neighbours get pushed
+            if (top + 8 > stack.length) {
+                stack = Arrays.copyOf(stack, stack.length * 2);
+            }
+            int n;
+            if (map[n = i - mapStep - 1] == MAP_CANDIDATE) { map[n] = MAP_EDGE; stack[top++] = n; }
+            if (map[n = i - mapStep] == MAP_CANDIDATE) { map[n] = MAP_EDGE; stack[top++] = n; }
+            if (map[n = i - mapStep + 1] == MAP_CANDIDATE) { map[n] = MAP_EDGE; stack[top++] = n; }
+            if (map[n = i - 1] == MAP_CANDIDATE) { map[n] = MAP_EDGE; stack[top++] = n; }
+            if (map[n = i + 1] == MAP_CANDIDATE) { map[n] = MAP_EDGE; stack[top++] = n; }
+            if (map[n = i + mapStep - 1] == MAP_CANDIDATE) { map[n] = MAP_EDGE; stack[top++] = n; }
+            if (map[n = i + mapStep] == MAP_CANDIDATE) { map[n] = MAP_EDGE; stack[top++] = n; }
+            if (map[n = i + mapStep + 1] == MAP_CANDIDATE) { map[n] = MAP_EDGE; stack[top++] = n; }
+        }
+        this.stack = stack;
+        
+        for (int y = 0; y < height; y++) {
+            int m = (y + 1) * mapStep + 1;
+            int d = y * width;
+            for (int x = 0; x < width; x++) {
+                edges[d + x] = map[m + x] == MAP_EDGE ? (byte) 255 : 0;
+            }
+        }
+    }
+}
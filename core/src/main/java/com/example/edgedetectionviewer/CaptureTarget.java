@@ -0,0 +1,14 @@
+package com.example.edgedetectionviewer;
+
+/**
+ * Where a capture source hands its frames: a {@link FramePipeline}, or one stream of a
+ * {@link StreamManager}.
+ */
+public interface CaptureTarget {
+    
+    /**
+     * Takes ownership of a captured frame, which is released once processed or dropped.
+     * Never blocks.
+     */
+    void submit(CapturedFrame frame);
+}
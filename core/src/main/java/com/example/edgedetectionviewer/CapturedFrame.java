@@ -0,0 +1,42 @@
+package com.example.edgedetectionviewer;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A camera frame waiting in the capture stage of a {@link FramePipeline} or a
+ * {@link StreamManager} stream, in whatever layout the capture path delivered it.
+ */
+public interface CapturedFrame {
+    
+    int getWidth();
+    
+    int getHeight();
+    
+    /**
+     * {@link System#nanoTime()} when capture of the frame began, so the pipeline can time a
+     * frame from capture to processed.
+     */
+    long getTimestampNanos();
+    
+    /**
+     * Runs the processor on this frame, writing the result into {@code output} in the
+     * processor's {@link FrameProcessor#getOutputFormat() output format}.
+     *
+     * @return false if the frame could not be processed
+     */
+    boolean processInto(FrameProcessor processor, ByteBuffer output, boolean applyEdgeDetection);
+    
+    /**
+     * Runs edge detection on the regions of this frame only, packed into {@code packed} as
+     * {@link FrameProcessor#processLumaRegions} describes.
+     *
+     * @return false if the frame could not be processed, or its layout has no region path;
+     *         the caller then processes the whole frame
+     */
+    boolean processRegionsInto(FrameProcessor processor, RegionSet regions, ByteBuffer packed);
+    
+    /**
+     * Hands the frame's memory back to its owner. The frame must not be touched afterwards.
+     */
+    void release();
+}
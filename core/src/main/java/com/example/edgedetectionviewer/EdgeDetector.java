@@ -0,0 +1,30 @@
+package com.example.edgedetectionviewer;
+
+/**
+ * Pure-Java edge detection engine used by {@link JavaFrameProcessor}.
+ */
+public interface EdgeDetector {
+    
+    /**
+     * Converts an RGBA frame to 8-bit luminance, one byte per pixel.
+     */
+    void grayscale(byte[] rgba, int rgbaOffset, byte[] out, int width, int height);
+    
+    /**
+     * Runs grayscale, blur and Canny on an RGBA frame. {@code edges} receives one byte per
+     * pixel, 255 on edges and 0 elsewhere.
+     */
+    void detectEdges(byte[] rgba, int rgbaOffset, byte[] edges, int width, int height);
+    
+    /**
+     * Runs blur and Canny on a packed 8-bit luminance frame (width * height bytes from index
+     * 0), skipping the colour conversion. Same output format as {@link #detectEdges}.
+     */
+    void detectEdgesFromLuma(byte[] luma, byte[] edges, int width, int height);
+    
+    /**
+     * Selects the blur before Canny: 5 for the 5x5 Gaussian of the OpenCV path (the
+     * default), 3 for a cheaper 3x3 one. Applies from the next frame.
+     */
+    void setBlurKernelSize(int size);
+}
@@ -0,0 +1,217 @@
+package com.example.edgedetectionviewer;
+
+import java.nio.IntBuffer;
+
+/**
+ * Edges of one frame as coordinates rather than pixels, filled by {@link EdgeTracer}: every
+ * edge pixel as an (x, y) pair, optionally chained into contours, and optionally simplified
+ * into line segments. Storage is plain {@code int[]} arrays kept across frames, so a frame
+ * costs in proportion to its edges and allocates nothing once the arrays have grown to the
+ * busiest frame seen.
+ *
+ * Layout:
+ * <pre>
+ * points     x0 y0 x1 y1 ...          {@link #getPointCount()} pairs
+ * contours   end point index of each   points of contour i run from getContourStart(i)
+ *                                      to getContourEnd(i), neighbours in chain order
+ * segments   x0 y0 x1 y1 per segment   {@link #getSegmentCount()} quadruples
+ * </pre>
+ * Points are in raster order for {@link Mode#POINTS}, and in contour order otherwise.
+ *
+ * Not thread-safe; a listener must copy out what it keeps past its callback.
+ */
+public final class EdgeGeometry {
+    
+    /**
+     * How far edges are taken; each mode includes the ones before it.
+     */
+    public enum Mode {
+        /** Edge pixel coordinates */
+        POINTS,
+        /** Points chained into 8-connected contours */
+        CONTOURS,
+        /** Contours fitted with line segments */
+        SEGMENTS
+    }
+    
+    /**
+     * Receives the geometry of each processed frame, on the thread that traced it. The
+     * geometry is reused for the next frame once the call returns.
+     */
+    public interface Listener {
+        void onEdgeGeometry(EdgeGeometry geometry);
+    }
+    
+    private static final int INITIAL_CAPACITY = 256;
+    
+    private Mode mode = Mode.POINTS;
+    private int width;
+    private int height;
+    private long timestampNanos;
+    
+    int[] points = new int[2 * INITIAL_CAPACITY];
+    int pointCount;
+    // Second point array the tracer writes contour order into, then swaps in
+    int[] chained = new int[2 * INITIAL_CAPACITY];
+    int[] contourEnds = new int[INITIAL_CAPACITY];
+    int contourCount;
+    int[] segments = new int[4 * INITIAL_CAPACITY];
+    int segmentCount;
+    
+    /**
+     * Empties the geometry for a new frame.
+     */
+    void reset(Mode mode, int width, int height, long timestampNanos) {
+        this.mode = mode;
+        this.width = width;
+        this.height = height;
+        this.timestampNanos = timestampNanos;
+        pointCount = 0;
+        contourCount = 0;
+        segmentCount = 0;
+    }
+    
+    public Mode getMode() {
+        return mode;
+    }
+    
+    public int getWidth() {
+        return width;
+    }
+    
+    public int getHeight() {
+        return height;
+    }
+    
+    /**
+     * Capture time of the frame, on the {@link System#nanoTime()} clock.
+     */
+    public long getTimestampNanos() {
+        return timestampNanos;
+    }
+    
+    public int getPointCount() {
+        return pointCount;
+    }
+    
+    public int getX(int point) {
+        return points[2 * point];
+    }
+    
+    public int getY(int point) {
+        return points[2 * point + 1];
+    }
+    
+    /**
+     * The point array itself, valid up to {@code 2 * getPointCount()}; for iterating without
+     * a call per point.
+     */
+    public int[] getPoints() {
+        return points;
+    }
+    
+    public int getContourCount() {
+        return contourCount;
+    }
+    
+    /**
+     * Index of the first point of a contour.
+     */
+    public int getContourStart(int contour) {
+        return contour == 0 ? 0 : contourEnds[contour - 1];
+    }
+    
+    /**
+     * Index after the last point of a contour.
+     */
+    public int getContourEnd(int contour) {
+        return contourEnds[contour];
+    }
+    
+    public int getSegmentCount() {
+        return segmentCount;
+    }
+    
+    /**
+     * The segment array itself, valid up to {@code 4 * getSegmentCount()}.
+     */
+    public int[] getSegments() {
+        return segments;
+    }
+    
+    /**
+     * Appends the points, as x, y pairs, at the buffer's position.
+     *
+     * @throws java.nio.BufferOverflowException if fewer than {@code 2 * getPointCount()} ints remain
+     */
+    public void copyPointsTo(IntBuffer out) {
+        out.put(points, 0, 2 * pointCount);
+    }
+    
+    /**
+     * Appends the segments, as x0, y0, x1, y1, at the buffer's position.
+     *
+     * @throws java.nio.BufferOverflowException if fewer than {@code 4 * getSegmentCount()} ints remain
+     */
+    public void copySegmentsTo(IntBuffer out) {
+        out.put(segments, 0, 4 * segmentCount);
+    }
+    
+    void addPoint(int x, int y) {
+        if (2 * pointCount == points.length) {
+            points = grow(points);
+        }
+        points[2 * pointCount] = x;
+        points[2 * pointCount + 1] = y;
+        pointCount++;
+    }
+    
+    /**
+     * Makes room for every point in the chained array as well.
+     */
+    void ensureChainedCapacity() {
+        if (chained.length < points.length) {
+            chained = new int[points.length];
+        }
+    }
+    
+    /**
+     * Takes the chained array as the points, in the same count.
+     */
+    void swapChained() {
+        int[] swap = points;
+        points = chained;
+        chained = swap;
+    }
+    
+    void endContour(int end) {
+        if (contourCount == contourEnds.length) {
+            contourEnds = grow(contourEnds);
+        }
+        contourEnds[contourCount++] = end;
+    }
+    
+    void addSegment(int x0, int y0, int x1, int y1) {
+        if (4 * segmentCount == segments.length) {
+            segments = grow(segments);
+        }
+        int s = 4 * segmentCount;
+        segments[s] = x0;
+        segments[s + 1] = y0;
+        segments[s + 2] = x1;
+        segments[s + 3] = y1;
+        segmentCount++;
+    }
+    
+    private static int[] grow(int[] array) {
+        int[] grown = new int[array.length * 2];
+        System.arraycopy(array, 0, grown, 0, array.length);
+        return grown;
+    }
+    
+    @Override
+    public String toString() {
+        return "EdgeGeometry[" + width + "x" + height + " " + mode + " points=" + pointCount
+                + " contours=" + contourCount + " segments=" + segmentCount + "]";
+    }
+}
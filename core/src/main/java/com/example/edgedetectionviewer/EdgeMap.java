@@ -0,0 +1,249 @@
+package com.example.edgedetectionviewer;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * Canny result at one bit per pixel: pixel i (row-major, rows not padded) is bit i % 64 of
+ * word i / 64, least significant bit first. A 720p map takes 115 KB instead of the 900 KB of
+ * a luminance plane.
+ *
+ * Conversions treat any nonzero luminance byte as an edge and write edges back as 255 (gray)
+ * or opaque white (RGBA), which is what the detectors produce. The direct-buffer paths work
+ * eight pixels per long, in either byte order.
+ *
+ * Not thread-safe.
+ */
+public final class EdgeMap {
+    // 0x80 in every byte whose input byte is nonzero, computed per byte without carries
+    private static final long LOW_SEVEN_BITS = 0x7F7F7F7F7F7F7F7FL;
+    private static final long LOW_BITS = 0x0101010101010101L;
+    // Gathers the low bit of each byte into the top byte: byte k to bit k, for each byte order
+    private static final long GATHER_LITTLE_ENDIAN = 0x0102040810204080L;
+    private static final long GATHER_BIG_ENDIAN = 0x8040201008040201L;
+    // Eight pixels of 0 or 255, big-endian, for each pattern of eight bits
+    private static final long[] EXPAND = new long[256];
+    
+    static {
+        for (int bits = 0; bits < 256; bits++) {
+            long v = 0;
+            for (int k = 0; k < 8; k++) {
+                if ((bits & (1 << k)) != 0) {
+                    v |= 0xFFL << (56 - 8 * k);
+                }
+            }
+            EXPAND[bits] = v;
+        }
+    }
+    
+    private final int width;
+    private final int height;
+    private final long[] words;
+    
+    public EdgeMap(int width, int height) {
+        if (width <= 0 || height <= 0) {
+            throw new IllegalArgumentException("Invalid size: " + width + "x" + height);
+        }
+        this.width = width;
+        this.height = height;
+        this.words = new long[wordCount(width, height)];
+    }
+    
+    static int wordCount(int width, int height) {
+        return (int) (((long) width * height + 63) >>> 6);
+    }
+    
+    /**
+     * Bytes {@link #writeTo} takes for a map of this size.
+     */
+    public static int packedSize(int width, int height) {
+        return wordCount(width, height) * 8;
+    }
+    
+    public int getWidth() {
+        return width;
+    }
+    
+    public int getHeight() {
+        return height;
+    }
+    
+    /**
+     * Backing words; bits past the last pixel are always zero.
+     */
+    long[] words() {
+        return words;
+    }
+    
+    public boolean get(int x, int y) {
+        int i = y * width + x;
+        return (words[i >>> 6] & (1L << i)) != 0;
+    }
+    
+    public void set(int x, int y, boolean edge) {
+        int i = y * width + x;
+        if (edge) {
+            words[i >>> 6] |= 1L << i;
+        } else {
+            words[i >>> 6] &= ~(1L << i);
+        }
+    }
+    
+    public int countEdges() {
+        int count = 0;
+        for (long word : words) {
+            count += Long.bitCount(word);
+        }
+        return count;
+    }
+    
+    public void clear() {
+        Arrays.fill(words, 0);
+    }
+    
+    /**
+     * Makes this map equal to {@code other}, which must be the same size.
+     */
+    public void copyFrom(EdgeMap other) {
+        checkSameSize(other);
+        System.arraycopy(other.words, 0, words, 0, words.length);
+    }
+    
+    /**
+     * Packs a width * height luminance plane starting at {@code offset}.
+     */
+    public void packFrom(byte[] luma, int offset) {
+        int pixels = width * height;
+        for (int w = 0; w < words.length; w++) {
+            int start = w << 6;
+            int end = Math.min(start + 64, pixels);
+            long word = 0;
+            for (int i = start; i < end; i++) {
+                // 1 for any nonzero byte, without a branch
+                word |= (long) (((luma[offset + i] & 0xFF) + 0xFF) >>> 8) << (i - start);
+            }
+            words[w] = word;
+        }
+    }
+    
+    /**
+     * Packs a width * height luminance plane starting at absolute index {@code offset} of
+     * {@code luma}; its position and limit are left alone.
+     */
+    public void packFrom(ByteBuffer luma, int offset) {
+        long gather = luma.order() == ByteOrder.LITTLE_ENDIAN ? GATHER_LITTLE_ENDIAN : GATHER_BIG_ENDIAN;
+        int pixels = width * height;
+        int fullWords = pixels >>> 6;
+        for (int w = 0; w < fullWords; w++) {
+            int base = offset + (w << 6);
+            long word = 0;
+            for (int k = 0; k < 8; k++) {
+                long v = luma.getLong(base + 8 * k);
+                long nonzero = (((v & LOW_SEVEN_BITS) + LOW_SEVEN_BITS) | v) >>> 7 & LOW_BITS;
+                word |= ((nonzero * gather) >>> 56) << (8 * k);
+            }
+            words[w] = word;
+        }
+        if (fullWords < words.length) {
+            long word = 0;
+            for (int i = fullWords << 6; i < pixels; i++) {
+                word |= (long) (((luma.get(offset + i) & 0xFF) + 0xFF) >>> 8) << (i & 63);
+            }
+            words[fullWords] = word;
+        }
+    }
+    
+    /**
+     * Writes the map as a luminance plane of 0 and 255 starting at {@code offset}.
+     */
+    public void unpackTo(byte[] luma, int offset) {
+        int pixels = width * height;
+        for (int i = 0; i < pixels; i++) {
+            luma[offset + i] = (byte) -(int) ((words[i >>> 6] >>> i) & 1);
+        }
+    }
+    
+    /**
+     * Writes the map as a luminance plane of 0 and 255 starting at absolute index
+     * {@code offset} of {@code luma}; its position and limit are left alone.
+     */
+    public void unpackTo(ByteBuffer luma, int offset) {
+        boolean little = luma.order() == ByteOrder.LITTLE_ENDIAN;
+        int pixels = width * height;
+        int fullBytes = pixels >>> 3;
+        for (int b = 0; b < fullBytes; b++) {
+            long v = EXPAND[(int) (words[b >>> 3] >>> ((b & 7) << 3)) & 0xFF];
+            luma.putLong(offset + (b << 3), little ? Long.reverseBytes(v) : v);
+        }
+        for (int i = fullBytes << 3; i < pixels; i++) {
+            luma.put(offset + i, (byte) -(int) ((words[i >>> 6] >>> i) & 1));
+        }
+    }
+    
+    /**
+     * Writes the map as opaque RGBA, white on black, starting at absolute index
+     * {@code offset} of {@code rgba}; its position and limit are left alone.
+     */
+    public void unpackToRgba(ByteBuffer rgba, int offset) {
+        boolean little = rgba.order() == ByteOrder.LITTLE_ENDIAN;
+        int edge = 0xFFFFFFFF;
+        int background = little ? 0xFF000000 : 0x000000FF;
+        int pixels = width * height;
+        for (int i = 0; i < pixels; i++) {
+            boolean set = ((words[i >>> 6] >>> i) & 1) != 0;
+            rgba.putInt(offset + 4 * i, set ? edge : background);
+        }
+    }
+    
+    /**
+     * Writes the words at the buffer's position in its byte order, {@link #packedSize}
+     * bytes. Recordings use big-endian.
+     */
+    public void writeTo(ByteBuffer out) {
+        for (long word : words) {
+            out.putLong(word);
+        }
+    }
+    
+    /**
+     * Reads words written by {@link #writeTo} from the buffer's position, in the same byte
+     * order.
+     */
+    public void readFrom(ByteBuffer in) {
+        for (int w = 0; w < words.length; w++) {
+            words[w] = in.getLong();
+        }
+        // Keep the padding bits clear whatever the input
+        int tail = (width * height) & 63;
+        if (tail != 0) {
+            words[words.length - 1] &= (1L << tail) - 1;
+        }
+    }
+    
+    void checkSameSize(EdgeMap other) {
+        if (other.width != width || other.height != height) {
+            throw new IllegalArgumentException("Edge map is " + other.width + "x" + other.height
+                    + ", expected " + width + "x" + height);
+        }
+    }
+    
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof EdgeMap)) {
+            return false;
+        }
+        EdgeMap other = (EdgeMap) o;
+        return width == other.width && height == other.height && Arrays.equals(words, other.words);
+    }
+    
+    @Override
+    public int hashCode() {
+        return (width * 31 + height) * 31 + Arrays.hashCode(words);
+    }
+    
+    @Override
+    public String toString() {
+        return "EdgeMap[" + width + "x" + height + ", " + countEdges() + " edges]";
+    }
+}
@@ -0,0 +1,202 @@
+package com.example.edgedetectionviewer;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Run-length codec for sequences of {@link EdgeMap}s. A map is coded against a reference
+ * map the receiver holds, either the previous map (a delta) or an empty one (a keyframe),
+ * as the lengths of alternating runs of their XOR:
+ * <pre>
+ * pixels unchanged, pixels flipped, pixels unchanged, ...
+ * </pre>
+ * starting with an unchanged run (possibly 0) and stopping once the last flipped run ends.
+ *
+ * Canny contours are one or two pixels wide, so most runs are short. Each run is therefore
+ * written in 4-bit nibbles, high nibble first: 0 to 14 in one nibble, otherwise 15 followed
+ * by the length minus 15 in 3-bit groups, least significant first, with the nibble's top bit
+ * set on all but the last group. An isolated edge pixel costs a byte. A trailing half byte
+ * is padded with a zero run, which decoding ignores.
+ *
+ * Runs are found a word at a time with {@link Long#numberOfTrailingZeros}, so long unchanged
+ * stretches cost next to nothing. A map of noise can code larger than its packed form;
+ * callers pass a limit and fall back to the packed words.
+ */
+public final class EdgeMapCodec {
+    private static final int INLINE_RUN_LIMIT = 15;
+    
+    private EdgeMapCodec() {
+    }
+    
+    /**
+     * Codes {@code map} against {@code reference} into {@code out}, then updates
+     * {@code reference} to match the map, unless the runs would take more than
+     * {@code maxBytes}: then {@code out} and {@code reference} are left as they were.
+     *
+     * @return bytes written, or -1 if over the limit
+     * @param out needs {@code maxBytes} bytes remaining
+     */
+    public static int encode(EdgeMap map, EdgeMap reference, ByteBuffer out, int maxBytes) {
+        reference.checkSameSize(map);
+        long[] current = map.words();
+        long[] previous = reference.words();
+        int start = out.position();
+        long maxNibbles = 2L * maxBytes;
+        int words = current.length;
+        
+        // Runs alternate between looking for the next flipped and the next unchanged pixel
+        long nibbles = 0;
+        int pending = 0;
+        long position = 0;
+        boolean flipped = false;
+        int w = 0;
+        while (w < words) {
+            long diff = current[w] ^ previous[w];
+            if (flipped) {
+                diff = ~diff;
+            }
+            if (w == (int) (position >>> 6)) {
+                // Ignore pixels before the current position within its word
+                diff &= -1L << (position & 63);
+            }
+            if (diff == 0) {
+                w++;
+                continue;
+            }
+            // Padding bits past the last pixel never differ, so a flipped run ends there
+            long next = ((long) w << 6) + Long.numberOfTrailingZeros(diff);
+            int run = (int) (next - position);
+            nibbles += runNibbles(run);
+            if (nibbles > maxNibbles) {
+                out.position(start);
+                return -1;
+            }
+            pending = writeRun(out, pending, run);
+            position = next;
+            flipped = !flipped;
+            w = (int) (position >>> 6);
+        }
+        if (flipped) {
+            // The map ends on a word boundary inside a flipped run
+            int run = (int) ((long) map.getWidth() * map.getHeight() - position);
+            nibbles += runNibbles(run);
+            if (nibbles > maxNibbles) {
+                out.position(start);
+                return -1;
+            }
+            pending = writeRun(out, pending, run);
+        }
+        // A zero run in the low half of the last byte
+        writeNibble(out, pending, 0);
+        System.arraycopy(current, 0, previous, 0, words);
+        return out.position() - start;
+    }
+    
+    /**
+     * Applies coded runs from {@code in} (all remaining bytes) to {@code map}, which holds
+     * the reference map: the previous one for a delta, an empty one for a keyframe.
+     *
+     * @throws IllegalArgumentException if the runs overflow the map or the input ends
+     *         inside a run
+     */
+    public static void decode(ByteBuffer in, EdgeMap map) {
+        long[] words = map.words();
+        long pixels = (long) map.getWidth() * map.getHeight();
+        int base = in.position();
+        int limit = 2 * in.remaining();
+        long position = 0;
+        boolean flipped = false;
+        int nibble = 0;
+        while (nibble < limit) {
+            long run = nibbleAt(in, base, nibble++);
+            if (run == INLINE_RUN_LIMIT) {
+                long extra = 0;
+                int group;
+                int shift = 0;
+                do {
+                    if (nibble == limit || shift > 30) {
+                        throw new IllegalArgumentException("Truncated run at pixel " + position);
+                    }
+                    group = nibbleAt(in, base, nibble++);
+                    extra |= (long) (group & 7) << shift;
+                    shift += 3;
+                } while ((group & 8) != 0);
+                run += extra;
+            }
+            if (position + run > pixels) {
+                throw new IllegalArgumentException("Runs overflow the map at pixel " + position);
+            }
+            if (flipped) {
+                flip(words, position, position + run);
+            }
+            position += run;
+            flipped = !flipped;
+        }
+        in.position(in.limit());
+    }
+    
+    private static int nibbleAt(ByteBuffer in, int base, int nibble) {
+        int b = in.get(base + (nibble >>> 1));
+        return (nibble & 1) == 0 ? (b >>> 4) & 0xF : b & 0xF;
+    }
+    
+    /**
+     * Nibbles {@link #writeRun} takes for a run.
+     */
+    static int runNibbles(int run) {
+        if (run < INLINE_RUN_LIMIT) {
+            return 1;
+        }
+        int groups = 1;
+        for (int extra = (run - INLINE_RUN_LIMIT) >>> 3; extra != 0; extra >>>= 3) {
+            groups++;
+        }
+        return 1 + groups;
+    }
+    
+    /**
+     * @param pending 0 at a byte boundary, else 0x10 | a high nibble not yet written
+     * @return the new pending state
+     */
+    private static int writeRun(ByteBuffer out, int pending, int run) {
+        if (run < INLINE_RUN_LIMIT) {
+            return writeNibble(out, pending, run);
+        }
+        pending = writeNibble(out, pending, INLINE_RUN_LIMIT);
+        int extra = run - INLINE_RUN_LIMIT;
+        while ((extra & ~7) != 0) {
+            pending = writeNibble(out, pending, (extra & 7) | 8);
+            extra >>>= 3;
+        }
+        return writeNibble(out, pending, extra);
+    }
+    
+    private static int writeNibble(ByteBuffer out, int pending, int nibble) {
+        if (pending == 0) {
+            return 0x10 | nibble;
+        }
+        out.put((byte) ((pending & 0xF) << 4 | nibble));
+        return 0;
+    }
+    
+    /**
+     * XORs bits [from, to) of {@code words}.
+     */
+    private static void flip(long[] words, long from, long to) {
+        if (from == to) {
+            return;
+        }
+        int first = (int) (from >>> 6);
+        int last = (int) ((to - 1) >>> 6);
+        long firstMask = -1L << (from & 63);
+        long lastMask = -1L >>> (63 - ((to - 1) & 63));
+        if (first == last) {
+            words[first] ^= firstMask & lastMask;
+            return;
+        }
+        words[first] ^= firstMask;
+        for (int w = first + 1; w < last; w++) {
+            words[w] = ~words[w];
+        }
+        words[last] ^= lastMask;
+    }
+}
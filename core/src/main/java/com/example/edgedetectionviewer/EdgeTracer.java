@@ -0,0 +1,276 @@
+package com.example.edgedetectionviewer;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Turns an edge raster, as the processors write it, into {@link EdgeGeometry}: edge pixel
+ * coordinates, contours and line segments.
+ *
+ * Points come from one pass over the raster; single-channel rasters are read eight pixels
+ * per long, so empty stretches cost a read each. Everything after that works from the
+ * points alone and scales with the edge count:
+ * <ul>
+ *   <li>Contours: each point not yet chained starts a contour, walked in both directions
+ *       through unchained 8-neighbours, side neighbours first. A bit per pixel marks what is
+ *       left to chain; the walk clears every bit it set, so nothing is cleared per frame.
+ *       Branches end one contour and start another.</li>
+ *   <li>Segments: each contour of two points or more is simplified with Douglas-Peucker at
+ *       {@link #setSegmentTolerance the tolerance}, emitting segments end to end in chain
+ *       order.</li>
+ * </ul>
+ * Working arrays are kept across frames, so tracing allocates nothing once they have grown
+ * to the frame size and the busiest frame seen.
+ *
+ * Not thread-safe.
+ */
+public final class EdgeTracer {
+    
+    /**
+     * Farthest a contour pixel may be from its segment, in pixels.
+     */
+    public static final float DEFAULT_SEGMENT_TOLERANCE = 1.5f;
+    
+    // Side neighbours first, so a walk does not cut corners and strand the pixel it skipped
+    private static final int[] NEIGHBOUR_DX = {1, 0, -1, 0, 1, -1, -1, 1};
+    private static final int[] NEIGHBOUR_DY = {0, 1, 0, -1, 1, 1, -1, -1};
+    
+    private float segmentTolerance = DEFAULT_SEGMENT_TOLERANCE;
+    
+    // One bit per pixel: an edge pixel not chained into a contour yet
+    private long[] unchained = new long[0];
+    // Pixel indices of the first arm walked from a contour's start, reversed on output
+    private int[] arm = new int[0];
+    // Douglas-Peucker ranges still to split, as point index pairs
+    private int[] ranges = new int[64];
+    
+    public float getSegmentTolerance() {
+        return segmentTolerance;
+    }
+    
+    public void setSegmentTolerance(float tolerance) {
+        if (!(tolerance >= 0) || Float.isInfinite(tolerance)) {
+            throw new IllegalArgumentException("Invalid segment tolerance: " + tolerance);
+        }
+        segmentTolerance = tolerance;
+    }
+    
+    /**
+     * Traces an edge raster with unpadded rows into {@code out}, replacing its content.
+     * Single-channel pixels are edges when nonzero, RGBA ones when their red byte is.
+     *
+     * @param bytesPerPixel 1 or 4
+     * @param timestampNanos capture time of the frame, passed on to listeners
+     */
+    public void trace(ByteBuffer raster, int width, int height, int bytesPerPixel, long timestampNanos,
+            EdgeGeometry.Mode mode, EdgeGeometry out) {
+        if (width <= 0 || height <= 0) {
+            throw new IllegalArgumentException("Invalid frame size: " + width + "x" + height);
+        }
+        if (bytesPerPixel != 1 && bytesPerPixel != 4) {
+            throw new IllegalArgumentException("Unsupported bytes per pixel: " + bytesPerPixel);
+        }
+        if (raster.capacity() < width * height * bytesPerPixel) {
+            throw new IllegalArgumentException("Raster too small for " + width + "x" + height);
+        }
+        out.reset(mode, width, height, timestampNanos);
+        if (bytesPerPixel == 1) {
+            findLumaPoints(raster, width, height, out);
+        } else {
+            findRgbaPoints(raster, width, height, out);
+        }
+        if (mode == EdgeGeometry.Mode.POINTS) {
+            return;
+        }
+        chainContours(width, height, out);
+        if (mode == EdgeGeometry.Mode.SEGMENTS) {
+            fitSegments(out);
+        }
+    }
+    
+    private static void findLumaPoints(ByteBuffer raster, int width, int height, EdgeGeometry out) {
+        int pixels = width * height;
+        int p = 0;
+        for (; p + 8 <= pixels; p += 8) {
+            if (raster.getLong(p) == 0) {
+                continue;
+            }
+            for (int k = p; k < p + 8; k++) {
+                if (raster.get(k) != 0) {
+                    addPoint(k, width, out);
+                }
+            }
+        }
+        for (; p < pixels; p++) {
+            if (raster.get(p) != 0) {
+                addPoint(p, width, out);
+            }
+        }
+    }
+    
+    private static void findRgbaPoints(ByteBuffer raster, int width, int height, EdgeGeometry out) {
+        int pixels = width * height;
+        for (int p = 0; p < pixels; p++) {
+            if (raster.get(p * 4) != 0) {
+                addPoint(p, width, out);
+            }
+        }
+    }
+    
+    private static void addPoint(int p, int width, EdgeGeometry out) {
+        int y = p / width;
+        out.addPoint(p - y * width, y);
+    }
+    
+    private void chainContours(int width, int height, EdgeGeometry out) {
+        int words = EdgeMap.wordCount(width, height);
+        if (unchained.length < words) {
+            unchained = new long[words];
+        }
+        int count = out.pointCount;
+        if (arm.length < count) {
+            arm = new int[count];
+        }
+        int[] points = out.points;
+        for (int i = 0; i < count; i++) {
+            int p = points[2 * i + 1] * width + points[2 * i];
+            unchained[p >>> 6] |= 1L << p;
+        }
+        
+        out.ensureChainedCapacity();
+        int[] chained = out.chained;
+        int n = 0;
+        for (int i = 0; i < count; i++) {
+            int start = points[2 * i + 1] * width + points[2 * i];
+            if ((unchained[start >>> 6] & (1L << start)) == 0) {
+                continue;
+            }
+            unchained[start >>> 6] &= ~(1L << start);
+            // One arm goes in reversed, then the start, then the other arm
+            int armLength = walkArm(start, width, height);
+            for (int a = armLength - 1; a >= 0; a--) {
+                n = putPixel(chained, n, arm[a], width);
+            }
+            n = putPixel(chained, n, start, width);
+            int p = start;
+            while ((p = next(p, width, height)) >= 0) {
+                n = putPixel(chained, n, p, width);
+            }
+            out.endContour(n / 2);
+        }
+        out.swapChained();
+    }
+    
+    /**
+     * Follows unchained neighbours from {@code from} into {@link #arm}.
+     *
+     * @return pixels walked
+     */
+    private int walkArm(int from, int width, int height) {
+        int length = 0;
+        int p = from;
+        while ((p = next(p, width, height)) >= 0) {
+            arm[length++] = p;
+        }
+        return length;
+    }
+    
+    /**
+     * The first unchained neighbour of pixel {@code p}, now chained, or -1.
+     */
+    private int next(int p, int width, int height) {
+        int y = p / width;
+        int x = p - y * width;
+        for (int k = 0; k < 8; k++) {
+            int nx = x + NEIGHBOUR_DX[k];
+            int ny = y + NEIGHBOUR_DY[k];
+            if (nx < 0 || ny < 0 || nx >= width || ny >= height) {
+                continue;
+            }
+            int q = ny * width + nx;
+            long bit = 1L << q;
+            if ((unchained[q >>> 6] & bit) != 0) {
+                unchained[q >>> 6] &= ~bit;
+                return q;
+            }
+        }
+        return -1;
+    }
+    
+    private static int putPixel(int[] chained, int n, int p, int width) {
+        int y = p / width;
+        chained[n] = p - y * width;
+        chained[n + 1] = y;
+        return n + 2;
+    }
+    
+    private void fitSegments(EdgeGeometry out) {
+        int[] points = out.points;
+        float tolerance = segmentTolerance;
+        double toleranceSquared = (double) tolerance * tolerance;
+        for (int c = 0; c < out.contourCount; c++) {
+            int first = out.getContourStart(c);
+            int last = out.getContourEnd(c) - 1;
+            if (last == first) {
+                continue;
+            }
+            int top = push(0, first, last);
+            while (top > 0) {
+                top -= 2;
+                int a = ranges[top];
+                int b = ranges[top + 1];
+                int split = farthest(points, a, b, toleranceSquared);
+                if (split < 0) {
+                    out.addSegment(points[2 * a], points[2 * a + 1], points[2 * b], points[2 * b + 1]);
+                } else {
+                    // The later half is pushed first so segments come out in chain order
+                    top = push(top, split, b);
+                    top = push(top, a, split);
+                }
+            }
+        }
+    }
+    
+    private int push(int top, int a, int b) {
+        if (top + 2 > ranges.length) {
+            int[] grown = new int[ranges.length * 2];
+            System.arraycopy(ranges, 0, grown, 0, top);
+            ranges = grown;
+        }
+        ranges[top] = a;
+        ranges[top + 1] = b;
+        return top + 2;
+    }
+    
+    /**
+     * The point between {@code a} and {@code b} farthest from the chord between them, or -1
+     * if all are within tolerance. A closed contour's chord is a point; distances are then
+     * taken from it.
+     */
+    private static int farthest(int[] points, int a, int b, double toleranceSquared) {
+        long ax = points[2 * a];
+        long ay = points[2 * a + 1];
+        long dx = points[2 * b] - ax;
+        long dy = points[2 * b + 1] - ay;
+        long lengthSquared = dx * dx + dy * dy;
+        // Compared scaled by the chord's squared length, to stay in integers
+        double limit = toleranceSquared * Math.max(1, lengthSquared);
+        int split = -1;
+        double worst = limit;
+        for (int i = a + 1; i < b; i++) {
+            long px = points[2 * i] - ax;
+            long py = points[2 * i + 1] - ay;
+            double distance;
+            if (lengthSquared == 0) {
+                distance = px * px + py * py;
+            } else {
+                long cross = dx * py - dy * px;
+                distance = (double) cross * cross;
+            }
+            if (distance > worst) {
+                worst = distance;
+                split = i;
+            }
+        }
+        return split;
+    }
+}
@@ -0,0 +1,554 @@
+package com.example.edgedetectionviewer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A chain of {@link FilterOperator}s run on the luminance of each frame, as an
+ * {@link EdgeDetector} for {@link JavaFrameProcessor}. {@link #canny()} is the chain of
+ * {@link CannyEdgeDetector} with the same output; other chains swap in Sobel, Laplacian,
+ * morphology or thresholds, e.g. {@code parse("gaussian:3,sobel,threshold:60,dilate:3")}.
+ *
+ * Operators can be added, replaced, moved and removed from any thread while frames are
+ * processed; a change applies from the next frame. The chain is then planned again:
+ * <ul>
+ *   <li>runs of point operators are folded into one lookup table</li>
+ *   <li>neighbourhood operators between two Canny steps, with the tables between them, form
+ *       one pass: each input row goes through every operator as soon as the rows it needs
+ *       are in, with a ring of 2 * radius + 1 rows per operator in place of whole frames</li>
+ *   <li>Canny reads and writes whole frames</li>
+ * </ul>
+ * A fused pass reads its input and writes its output once, however many operators it
+ * holds, and keeps only a few rows per operator in cache. Colour conversion is folded
+ * into the first pass too. {@link #setFused setFused(false)} runs every operator as its
+ * own pass over whole frames instead, for comparison; the output is the same.
+ *
+ * Processing is not thread-safe: scratch rows and frames are reused across frames and
+ * reallocated only when the plan or the frame size changes.
+ */
+public final class FilterGraph implements EdgeDetector {
+    // Guarded by this
+    private final List<FilterOperator> operators = new ArrayList<>();
+    private int version;
+    
+    private volatile boolean fused = true;
+    private int maxBlurSize = 5;
+    
+    // Plan and scratch, processing thread only
+    private int plannedVersion = -1;
+    private boolean plannedFused;
+    private int plannedBlurSize;
+    private Step[] steps = new Step[0];
+    private int width;
+    private int height;
+    private byte[] gray;
+    private byte[] frameA;
+    private byte[] frameB;
+    
+    public FilterGraph() {
+    }
+    
+    public FilterGraph(List<FilterOperator> operators) {
+        this.operators.addAll(operators);
+    }
+    
+    /**
+     * 5x5 Gaussian then Canny 50/150: the output of {@link CannyEdgeDetector} and of the
+     * OpenCV path.
+     */
+    public static FilterGraph canny() {
+        return new FilterGraph(Arrays.asList(FilterOperator.gaussianBlur(5),
+                FilterOperator.canny(CannyEdgeDetector.DEFAULT_LOW_THRESHOLD, CannyEdgeDetector.DEFAULT_HIGH_THRESHOLD)));
+    }
+    
+    /**
+     * Reads a comma-separated chain of operators in their text form (see
+     * {@link FilterOperator}). An empty string is the empty chain, which copies luminance.
+     *
+     * @throws IllegalArgumentException for unknown operators or bad arguments
+     */
+    public static FilterGraph parse(String spec) {
+        FilterGraph graph = new FilterGraph();
+        if (!spec.trim().isEmpty()) {
+            for (String part : spec.split(",", -1)) {
+                graph.add(FilterOperator.parse(part));
+            }
+        }
+        return graph;
+    }
+    
+    /**
+     * Appends an operator.
+     *
+     * @return this graph
+     */
+    public synchronized FilterGraph add(FilterOperator operator) {
+        operators.add(checkNotNull(operator));
+        version++;
+        return this;
+    }
+    
+    public synchronized void add(int index, FilterOperator operator) {
+        operators.add(index, checkNotNull(operator));
+        version++;
+    }
+    
+    /**
+     * Replaces the operator at {@code index}, e.g. with different settings.
+     *
+     * @return the operator replaced
+     */
+    public synchronized FilterOperator set(int index, FilterOperator operator) {
+        FilterOperator previous = operators.set(index, checkNotNull(operator));
+        version++;
+        return previous;
+    }
+    
+    public synchronized FilterOperator remove(int index) {
+        FilterOperator removed = operators.remove(index);
+        version++;
+        return removed;
+    }
+    
+    /**
+     * Moves the operator at {@code from} so that it ends up at index {@code to}.
+     */
+    public synchronized void move(int from, int to) {
+        FilterOperator operator = operators.remove(from);
+        operators.add(to, operator);
+        version++;
+    }
+    
+    public synchronized List<FilterOperator> getOperators() {
+        return Collections.unmodifiableList(new ArrayList<>(operators));
+    }
+    
+    /**
+     * Streams neighbouring operators through one pass (the default), or runs each on its own.
+     */
+    public void setFused(boolean fused) {
+        this.fused = fused;
+    }
+    
+    public boolean isFused() {
+        return fused;
+    }
+    
+    /**
+     * Passes over frame memory per frame for the current operators and fusion setting,
+     * counting a separate colour conversion for RGBA input as one.
+     */
+    public int getPassCount() {
+        List<FilterOperator> ops = getOperators();
+        return Math.max(1, plan(ops, fused, maxBlurSize).size());
+    }
+    
+    /**
+     * Caps every Gaussian in the graph at this kernel size, 3 or 5. Quality levels use it to
+     * cheapen the blur.
+     */
+    @Override
+    public void setBlurKernelSize(int size) {
+        if (size != 3 && size != 5) {
+            throw new IllegalArgumentException("Blur kernel must be 3 or 5: " + size);
+        }
+        maxBlurSize = size;
+    }
+    
+    @Override
+    public void grayscale(byte[] rgba, int rgbaOffset, byte[] out, int width, int height) {
+        CannyEdgeDetector.checkFrame(rgba.length - rgbaOffset, out.length, width, height);
+        CannyEdgeDetector.rgbaToGray(rgba, rgbaOffset, width, out, 0, 0, height);
+    }
+    
+    /**
+     * Runs the graph on the luminance of an RGBA frame.
+     */
+    @Override
+    public void detectEdges(byte[] rgba, int rgbaOffset, byte[] edges, int width, int height) {
+        CannyEdgeDetector.checkFrame(rgba.length - rgbaOffset, edges.length, width, height);
+        prepare(width, height);
+        if (steps.length == 0) {
+            CannyEdgeDetector.rgbaToGray(rgba, rgbaOffset, width, edges, 0, 0, height);
+            return;
+        }
+        byte[] src;
+        int first;
+        if (plannedFused && steps[0] instanceof RowPass) {
+            // Rows are converted as the first pass reads them
+            byte[] dst = steps.length == 1 ? edges : frameA;
+            ((RowPass) steps[0]).runRgba(rgba, rgbaOffset, dst);
+            src = dst;
+            first = 1;
+        } else {
+            CannyEdgeDetector.rgbaToGray(rgba, rgbaOffset, width, gray, 0, 0, height);
+            src = gray;
+            first = 0;
+        }
+        runSteps(first, src, edges);
+    }
+    
+    /**
+     * Runs the graph on a packed luminance frame.
+     */
+    @Override
+    public void detectEdgesFromLuma(byte[] luma, byte[] edges, int width, int height) {
+        CannyEdgeDetector.checkLuma(luma.length, edges.length, width, height);
+        prepare(width, height);
+        if (steps.length == 0) {
+            System.arraycopy(luma, 0, edges, 0, width * height);
+            return;
+        }
+        runSteps(0, luma, edges);
+    }
+    
+    private void runSteps(int first, byte[] src, byte[] out) {
+        for (int i = first; i < steps.length; i++) {
+            byte[] dst = i == steps.length - 1 ? out : src == frameA ? frameB : frameA;
+            steps[i].run(src, dst);
+            src = dst;
+        }
+    }
+    
+    /**
+     * Plans the chain again after an edit and sizes the scratch for the frame.
+     */
+    private void prepare(int width, int height) {
+        boolean fused = this.fused;
+        boolean replan = fused != plannedFused || maxBlurSize != plannedBlurSize;
+        synchronized (this) {
+            if (version != plannedVersion || replan) {
+                steps = plan(operators, fused, maxBlurSize).toArray(new Step[0]);
+                plannedVersion = version;
+                plannedFused = fused;
+                plannedBlurSize = maxBlurSize;
+                // Force the steps to size themselves
+                this.width = 0;
+            }
+        }
+        if (this.width == width && this.height == height) {
+            return;
+        }
+        this.width = width;
+        this.height = height;
+        int pixels = width * height;
+        if (gray == null || gray.length != pixels) {
+            gray = new byte[pixels];
+            frameA = new byte[pixels];
+            frameB = new byte[pixels];
+        }
+        for (Step step : steps) {
+            step.prepare(width, height);
+        }
+    }
+    
+    /**
+     * Splits the chain into steps, each one pass over frame memory.
+     */
+    private static List<Step> plan(List<FilterOperator> operators, boolean fused, int maxBlurSize) {
+        List<Step> steps = new ArrayList<>();
+        RowPass pass = null;
+        byte[] lut = null;
+        for (FilterOperator op : operators) {
+            if (op instanceof FilterOperator.PointOperator) {
+                FilterOperator.PointOperator point = (FilterOperator.PointOperator) op;
+                if (!fused) {
+                    steps.add(new RowPass(lookupTable(null, point)));
+                } else {
+                    lut = lookupTable(lut, point);
+                }
+            } else if (op instanceof FilterOperator.NeighbourhoodOperator) {
+                if (!fused || pass == null) {
+                    pass = new RowPass(null);
+                    steps.add(pass);
+                }
+                pass.addStage(new RowStage(((FilterOperator.NeighbourhoodOperator) op).kernel(maxBlurSize), lut));
+                lut = null;
+                if (!fused) {
+                    pass = null;
+                }
+            } else if (op instanceof FilterOperator.Canny) {
+                if (lut != null) {
+                    // A table with no pass to ride on gets a pass of its own
+                    if (pass == null) {
+                        pass = new RowPass(null);
+                        steps.add(pass);
+                    }
+                    pass.outputTable = lut;
+                    lut = null;
+                }
+                FilterOperator.Canny canny = (FilterOperator.Canny) op;
+                steps.add(new CannyStep(canny.low, canny.high));
+                pass = null;
+            } else {
+                throw new AssertionError(op);
+            }
+        }
+        if (lut != null) {
+            if (pass == null) {
+                pass = new RowPass(null);
+                steps.add(pass);
+            }
+            pass.outputTable = lut;
+        }
+        return steps;
+    }
+    
+    /**
+     * {@code op} applied after {@code table}, or after the identity if null.
+     */
+    private static byte[] lookupTable(byte[] table, FilterOperator.PointOperator op) {
+        byte[] result = new byte[256];
+        for (int v = 0; v < 256; v++) {
+            int in = table == null ? v : table[v] & 0xFF;
+            result[v] = (byte) op.apply(in);
+        }
+        return result;
+    }
+    
+    @Override
+    public synchronized String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (FilterOperator op : operators) {
+            if (sb.length() > 0) {
+                sb.append(',');
+            }
+            sb.append(op);
+        }
+        return sb.toString();
+    }
+    
+    private static FilterOperator checkNotNull(FilterOperator operator) {
+        if (operator == null) {
+            throw new IllegalArgumentException("Operator is null");
+        }
+        return operator;
+    }
+    
+    /**
+     * One pass over frame memory, whole frame in, whole frame out.
+     */
+    private abstract static class Step {
+        abstract void prepare(int width, int height);
+        
+        abstract void run(byte[] src, byte[] dst);
+    }
+    
+    /**
+     * Neighbourhood stages chained row by row, with an optional table applied to the last
+     * stage's output (or to each pixel when there are no stages).
+     */
+    private static final class RowPass extends Step {
+        byte[] outputTable;
+        private RowStage first;
+        private RowStage last;
+        private int width;
+        private int height;
+        private byte[] grayRow;
+        private byte[] dst;
+        
+        RowPass(byte[] outputTable) {
+            this.outputTable = outputTable;
+        }
+        
+        void addStage(RowStage stage) {
+            if (last != null) {
+                last.next = stage;
+            } else {
+                first = stage;
+            }
+            last = stage;
+        }
+        
+        @Override
+        void prepare(int width, int height) {
+            this.width = width;
+            this.height = height;
+            grayRow = new byte[width];
+            for (RowStage stage = first; stage != null; stage = stage.next) {
+                stage.prepare(width, height, this);
+            }
+        }
+        
+        @Override
+        void run(byte[] src, byte[] dst) {
+            if (first == null) {
+                applyTable(src, 0, dst, 0, width * height);
+                return;
+            }
+            begin(dst);
+            for (int y = 0; y < height; y++) {
+                first.push(src, y * width, y);
+            }
+        }
+        
+        /**
+         * Like {@link #run} on the luminance of an RGBA frame, converting a row at a time.
+         */
+        void runRgba(byte[] rgba, int rgbaOffset, byte[] dst) {
+            if (first == null) {
+                CannyEdgeDetector.rgbaToGray(rgba, rgbaOffset, width, dst, 0, 0, height);
+                applyTable(dst, 0, dst, 0, width * height);
+                return;
+            }
+            begin(dst);
+            for (int y = 0; y < height; y++) {
+                CannyEdgeDetector.rgbaToGray(rgba, rgbaOffset, width, grayRow, y, y, y + 1);
+                first.push(grayRow, 0, y);
+            }
+        }
+        
+        private void begin(byte[] dst) {
+            for (RowStage stage = first; stage != null; stage = stage.next) {
+                stage.begin();
+            }
+            // Without a table the last stage writes straight into the frame
+            last.target = outputTable == null ? dst : null;
+            this.dst = dst;
+        }
+        
+        /**
+         * Receives the last stage's output row {@code y}.
+         */
+        void store(byte[] row, int offset, int y) {
+            applyTable(row, offset, dst, y * width, width);
+        }
+        
+        private void applyTable(byte[] src, int s, byte[] dst, int d, int length) {
+            byte[] table = outputTable;
+            if (table == null) {
+                if (src != dst || s != d) {
+                    System.arraycopy(src, s, dst, d, length);
+                }
+                return;
+            }
+            for (int i = 0; i < length; i++) {
+                dst[d + i] = table[src[s + i] & 0xFF];
+            }
+        }
+    }
+    
+    /**
+     * One neighbourhood operator in a {@link RowPass}: takes input rows in order and emits
+     * each output row once the rows below it that it needs have arrived.
+     */
+    private static final class RowStage {
+        private final FilterOperator.Kernel kernel;
+        private final byte[] inputTable;
+        private final int radius;
+        RowStage next;
+        // Frame to write output rows into directly, or null to hand them on
+        byte[] target;
+        private RowPass pass;
+        
+        private int width;
+        private int height;
+        private byte[] padded;
+        // Horizontal results of the last 2 * radius + 1 input rows, row y at y % length
+        private int[][] ring;
+        private int[][] window;
+        private byte[] out;
+        private int emitted;
+        
+        RowStage(FilterOperator.Kernel kernel, byte[] inputTable) {
+            this.kernel = kernel;
+            this.inputTable = inputTable;
+            this.radius = kernel.radius;
+        }
+        
+        void prepare(int width, int height, RowPass pass) {
+            this.width = width;
+            this.height = height;
+            this.pass = pass;
+            padded = new byte[width + 2 * radius];
+            ring = new int[2 * radius + 1][width * kernel.channels];
+            window = new int[2 * radius + 1][];
+            out = new byte[width];
+        }
+        
+        void begin() {
+            emitted = 0;
+        }
+        
+        void push(byte[] src, int offset, int y) {
+            // Pad the row for the kernel, through the input table if any
+            byte[] p = padded;
+            byte[] table = inputTable;
+            if (table == null) {
+                System.arraycopy(src, offset, p, radius, width);
+            } else {
+                for (int x = 0; x < width; x++) {
+                    p[radius + x] = table[src[offset + x] & 0xFF];
+                }
+            }
+            for (int i = 1; i <= radius; i++) {
+                p[radius - i] = p[radius + border(-i, width)];
+                p[radius + width - 1 + i] = p[radius + border(width - 1 + i, width)];
+            }
+            kernel.horizontal(p, width, ring[y % ring.length]);
+            
+            int ready = y == height - 1 ? height - 1 : y - radius;
+            while (emitted <= ready) {
+                emit(emitted++);
+            }
+        }
+        
+        private void emit(int y) {
+            for (int k = 0; k < window.length; k++) {
+                window[k] = ring[border(y - radius + k, height) % ring.length];
+            }
+            if (target != null) {
+                kernel.vertical(window, target, y * width, width);
+            } else {
+                kernel.vertical(window, out, 0, width);
+                if (next != null) {
+                    next.push(out, 0, y);
+                } else {
+                    pass.store(out, 0, y);
+                }
+            }
+        }
+        
+        private int border(int i, int n) {
+            if (kernel.replicate) {
+                return i < 0 ? 0 : i >= n ? n - 1 : i;
+            }
+            return CannyEdgeDetector.reflect101(i, n);
+        }
+    }
+    
+    /**
+     * Sobel, non-max suppression and hysteresis of {@link CannyEdgeDetector} over the
+     * whole frame.
+     */
+    private static final class CannyStep extends Step {
+        private final int low;
+        private final int high;
+        private final CannyEdgeDetector detector;
+        private final CannyEdgeDetector.GradientRows rows = new CannyEdgeDetector.GradientRows();
+        private int width;
+        private int height;
+        private byte[] map;
+        
+        CannyStep(int low, int high) {
+            this.low = low;
+            this.high = high;
+            detector = new CannyEdgeDetector(low, high);
+        }
+        
+        @Override
+        void prepare(int width, int height) {
+            this.width = width;
+            this.height = height;
+            map = CannyEdgeDetector.newMap(width, height);
+        }
+        
+        @Override
+        void run(byte[] src, byte[] dst) {
+            CannyEdgeDetector.nonMaxSuppression(src, 0, map, rows, width, height, 0, height, low, high);
+            detector.hysteresis(map, dst, width, height);
+        }
+    }
+}
@@ -0,0 +1,545 @@
+package com.example.edgedetectionviewer;
+
+import java.util.Locale;
+
+/**
+ * One step of a {@link FilterGraph}, from an 8-bit single-channel frame to another of the
+ * same size. Operators are immutable: a graph is reconfigured by replacing them.
+ *
+ * There are three kinds. {@link PointOperator}s map each pixel on its own, so a run of them
+ * composes into one lookup table. {@link NeighbourhoodOperator}s read a square window; they
+ * are split into a horizontal pass over each input row and a vertical pass producing each
+ * output row, which lets the graph stream rows through several of them at once. Canny needs
+ * the whole frame for hysteresis.
+ *
+ * Each operator has a text form, {@code name[:arg[:arg]]}, read by {@link #parse}:
+ * <pre>
+ * gaussian:5     Gaussian blur, 3 or 5 (the kernels of {@link CannyEdgeDetector})
+ * box:3          mean over an odd square window, 3 to 15
+ * sobel          L1 gradient magnitude of the 3x3 Sobel, saturated to 255
+ * laplacian      absolute 3x3 Laplacian, saturated to 255
+ * dilate:3       maximum over an odd square window, 3 to 15
+ * erode:3        minimum over an odd square window, 3 to 15
+ * threshold:60   255 above the level, 0 elsewhere
+ * invert         255 - value
+ * scale:1.5:-20  value * gain + offset, rounded and saturated
+ * canny:50:150   non-max suppression and hysteresis, no blur of its own
+ * </pre>
+ * Blurs, Sobel and Laplacian reflect at the frame border (BORDER_REFLECT_101), as OpenCV
+ * does by default; dilate and erode ignore pixels outside the frame.
+ */
+public abstract class FilterOperator {
+    
+    static final int MAX_WINDOW = 15;
+    
+    private FilterOperator() {
+    }
+    
+    public static FilterOperator gaussianBlur(int size) {
+        if (size != 3 && size != 5) {
+            throw new IllegalArgumentException("Gaussian size must be 3 or 5: " + size);
+        }
+        return new Gaussian(size);
+    }
+    
+    public static FilterOperator boxBlur(int size) {
+        return new Box(checkWindow("box", size));
+    }
+    
+    public static FilterOperator sobel() {
+        return new Sobel();
+    }
+    
+    public static FilterOperator laplacian() {
+        return new Laplacian();
+    }
+    
+    public static FilterOperator dilate(int size) {
+        return new Morphology(checkWindow("dilate", size), true);
+    }
+    
+    public static FilterOperator erode(int size) {
+        return new Morphology(checkWindow("erode", size), false);
+    }
+    
+    public static FilterOperator threshold(int level) {
+        if (level < 0 || level > 255) {
+            throw new IllegalArgumentException("Threshold must be 0 to 255: " + level);
+        }
+        return new Threshold(level);
+    }
+    
+    public static FilterOperator invert() {
+        return new Invert();
+    }
+    
+    public static FilterOperator scale(double gain, int offset) {
+        if (Double.isNaN(gain) || Double.isInfinite(gain)) {
+            throw new IllegalArgumentException("Invalid gain: " + gain);
+        }
+        return new Scale(gain, offset);
+    }
+    
+    public static FilterOperator canny(int low, int high) {
+        if (low < 0 || high < low) {
+            throw new IllegalArgumentException("Invalid thresholds: " + low + "/" + high);
+        }
+        return new Canny(low, high);
+    }
+    
+    /**
+     * Reads the text form of one operator.
+     *
+     * @throws IllegalArgumentException for unknown names or bad arguments
+     */
+    public static FilterOperator parse(String spec) {
+        String[] parts = spec.trim().split(":");
+        String name = parts[0].toLowerCase(Locale.US);
+        try {
+            switch (name) {
+                case "gaussian":
+                    checkArgs(parts, 1);
+                    return gaussianBlur(Integer.parseInt(parts[1]));
+                case "box":
+                    checkArgs(parts, 1);
+                    return boxBlur(Integer.parseInt(parts[1]));
+                case "sobel":
+                    checkArgs(parts, 0);
+                    return sobel();
+                case "laplacian":
+                    checkArgs(parts, 0);
+                    return laplacian();
+                case "dilate":
+                    checkArgs(parts, 1);
+                    return dilate(Integer.parseInt(parts[1]));
+                case "erode":
+                    checkArgs(parts, 1);
+                    return erode(Integer.parseInt(parts[1]));
+                case "threshold":
+                    checkArgs(parts, 1);
+                    return threshold(Integer.parseInt(parts[1]));
+                case "invert":
+                    checkArgs(parts, 0);
+                    return invert();
+                case "scale":
+                    checkArgs(parts, 2);
+                    return scale(Double.parseDouble(parts[1]), Integer.parseInt(parts[2]));
+                case "canny":
+                    checkArgs(parts, 2);
+                    return canny(Integer.parseInt(parts[1]), Integer.parseInt(parts[2]));
+                default:
+                    throw new IllegalArgumentException("Unknown filter: " + spec);
+            }
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid filter arguments: " + spec);
+        }
+    }
+    
+    private static void checkArgs(String[] parts, int count) {
+        if (parts.length != count + 1) {
+            throw new IllegalArgumentException(parts[0] + " takes " + count + " argument" + (count == 1 ? "" : "s"));
+        }
+    }
+    
+    private static int checkWindow(String name, int size) {
+        if (size < 3 || size > MAX_WINDOW || (size & 1) == 0) {
+            throw new IllegalArgumentException(name + " size must be odd, 3 to " + MAX_WINDOW + ": " + size);
+        }
+        return size;
+    }
+    
+    @Override
+    public boolean equals(Object o) {
+        return o != null && o.getClass() == getClass() && o.toString().equals(toString());
+    }
+    
+    @Override
+    public int hashCode() {
+        return toString().hashCode();
+    }
+    
+    /**
+     * An operator mapping each pixel on its own.
+     */
+    abstract static class PointOperator extends FilterOperator {
+        private PointOperator() {
+        }
+        
+        /**
+         * The output for input {@code value}, 0 to 255.
+         */
+        abstract int apply(int value);
+    }
+    
+    /**
+     * An operator reading a square window around each pixel.
+     */
+    abstract static class NeighbourhoodOperator extends FilterOperator {
+        private NeighbourhoodOperator() {
+        }
+        
+        /**
+         * The row kernel, with Gaussians capped at {@code maxBlurSize}.
+         */
+        abstract Kernel kernel(int maxBlurSize);
+    }
+    
+    /**
+     * A neighbourhood operator split into passes over rows. The caller pads each input row
+     * by {@link #radius} pixels on both sides, following {@link #replicate}, so kernels index
+     * without bounds checks.
+     */
+    abstract static class Kernel {
+        final int radius;
+        // Ints per pixel kept from the horizontal pass
+        final int channels;
+        // Border: repeat the edge pixel (same as ignoring for min/max), otherwise reflect-101
+        final boolean replicate;
+        
+        Kernel(int radius, int channels, boolean replicate) {
+            this.radius = radius;
+            this.channels = channels;
+            this.replicate = replicate;
+        }
+        
+        /**
+         * Horizontal pass: output pixel x reads {@code padded[x .. x + 2 * radius]}.
+         */
+        abstract void horizontal(byte[] padded, int width, int[] out);
+        
+        /**
+         * Vertical pass: {@code rows} holds the horizontal results of the 2 * radius + 1 input
+         * rows around the output row, top first, borders already resolved.
+         */
+        abstract void vertical(int[][] rows, byte[] dst, int d, int width);
+    }
+    
+    private static final class Gaussian extends NeighbourhoodOperator {
+        private final int size;
+        
+        Gaussian(int size) {
+            this.size = size;
+        }
+        
+        @Override
+        Kernel kernel(int maxBlurSize) {
+            return Math.min(size, maxBlurSize) == 3 ? new Gaussian3Kernel() : new Gaussian5Kernel();
+        }
+        
+        @Override
+        public String toString() {
+            return "gaussian:" + size;
+        }
+    }
+    
+    /**
+     * The Q8 kernel of {@link CannyEdgeDetector#gaussianBlur}, with the same rounding.
+     */
+    private static final class Gaussian5Kernel extends Kernel {
+        Gaussian5Kernel() {
+            super(2, 1, false);
+        }
+        
+        @Override
+        void horizontal(byte[] p, int width, int[] out) {
+            int k0 = CannyEdgeDetector.K0;
+            int k1 = CannyEdgeDetector.K1;
+            int k2 = CannyEdgeDetector.K2;
+            for (int x = 0; x < width; x++) {
+                out[x] = k0 * ((p[x] & 0xFF) + (p[x + 4] & 0xFF))
+                        + k1 * ((p[x + 1] & 0xFF) + (p[x + 3] & 0xFF))
+                        + k2 * (p[x + 2] & 0xFF);
+            }
+        }
+        
+        @Override
+        void vertical(int[][] rows, byte[] dst, int d, int width) {
+            int[] a = rows[0];
+            int[] b = rows[1];
+            int[] c = rows[2];
+            int[] e = rows[3];
+            int[] f = rows[4];
+            int k0 = CannyEdgeDetector.K0;
+            int k1 = CannyEdgeDetector.K1;
+            int k2 = CannyEdgeDetector.K2;
+            for (int x = 0; x < width; x++) {
+                int v = k0 * (a[x] + f[x]) + k1 * (b[x] + e[x]) + k2 * c[x];
+                dst[d + x] = (byte) ((v + (1 << 15)) >> 16);
+            }
+        }
+    }
+    
+    /**
+     * The 1-2-1 kernel of {@link CannyEdgeDetector#gaussianBlur3}.
+     */
+    private static final class Gaussian3Kernel extends Kernel {
+        Gaussian3Kernel() {
+            super(1, 1, false);
+        }
+        
+        @Override
+        void horizontal(byte[] p, int width, int[] out) {
+            for (int x = 0; x < width; x++) {
+                out[x] = (p[x] & 0xFF) + 2 * (p[x + 1] & 0xFF) + (p[x + 2] & 0xFF);
+            }
+        }
+        
+        @Override
+        void vertical(int[][] rows, byte[] dst, int d, int width) {
+            int[] a = rows[0];
+            int[] c = rows[1];
+            int[] e = rows[2];
+            for (int x = 0; x < width; x++) {
+                dst[d + x] = (byte) ((a[x] + 2 * c[x] + e[x] + 8) >> 4);
+            }
+        }
+    }
+    
+    private static final class Box extends NeighbourhoodOperator {
+        private final int size;
+        
+        Box(int size) {
+            this.size = size;
+        }
+        
+        @Override
+        Kernel kernel(int maxBlurSize) {
+            final int taps = size;
+            final int area = size * size;
+            // Exact division by the area for any window sum: floor(v * m / 2^32) with m = ceil(2^32 / area)
+            final long reciprocal = ((1L << 32) + area - 1) / area;
+            return new Kernel(size / 2, 1, false) {
+                private int[] sums = new int[0];
+                
+                @Override
+                void horizontal(byte[] p, int width, int[] out) {
+                    // Running sum across the row
+                    int sum = 0;
+                    for (int k = 0; k < taps; k++) {
+                        sum += p[k] & 0xFF;
+                    }
+                    out[0] = sum;
+                    for (int x = 1; x < width; x++) {
+                        sum += (p[x + taps - 1] & 0xFF) - (p[x - 1] & 0xFF);
+                        out[x] = sum;
+                    }
+                }
+                
+                @Override
+                void vertical(int[][] rows, byte[] dst, int d, int width) {
+                    // Row by row, so each loop runs over contiguous arrays
+                    int[] sums = this.sums;
+                    if (sums.length < width) {
+                        sums = this.sums = new int[width];
+                    }
+                    System.arraycopy(rows[0], 0, sums, 0, width);
+                    for (int k = 1; k < rows.length; k++) {
+                        int[] row = rows[k];
+                        for (int x = 0; x < width; x++) {
+                            sums[x] += row[x];
+                        }
+                    }
+                    int half = area / 2;
+                    for (int x = 0; x < width; x++) {
+                        dst[d + x] = (byte) ((sums[x] + half) * reciprocal >>> 32);
+                    }
+                }
+            };
+        }
+        
+        @Override
+        public String toString() {
+            return "box:" + size;
+        }
+    }
+    
+    private static final class Sobel extends NeighbourhoodOperator {
+        @Override
+        Kernel kernel(int maxBlurSize) {
+            // Per pixel: horizontal difference, then horizontal 1-2-1 smoothing
+            return new Kernel(1, 2, false) {
+                @Override
+                void horizontal(byte[] p, int width, int[] out) {
+                    for (int x = 0; x < width; x++) {
+                        int l = p[x] & 0xFF;
+                        int c = p[x + 1] & 0xFF;
+                        int r = p[x + 2] & 0xFF;
+                        out[2 * x] = r - l;
+                        out[2 * x + 1] = l + 2 * c + r;
+                    }
+                }
+                
+                @Override
+                void vertical(int[][] rows, byte[] dst, int d, int width) {
+                    int[] a = rows[0];
+                    int[] b = rows[1];
+                    int[] c = rows[2];
+                    for (int x = 0; x < width; x++) {
+                        int gx = a[2 * x] + 2 * b[2 * x] + c[2 * x];
+                        int gy = c[2 * x + 1] - a[2 * x + 1];
+                        dst[d + x] = (byte) Math.min(255, Math.abs(gx) + Math.abs(gy));
+                    }
+                }
+            };
+        }
+        
+        @Override
+        public String toString() {
+            return "sobel";
+        }
+    }
+    
+    private static final class Laplacian extends NeighbourhoodOperator {
+        @Override
+        Kernel kernel(int maxBlurSize) {
+            // Per pixel: horizontal second difference, then the pixel itself
+            return new Kernel(1, 2, false) {
+                @Override
+                void horizontal(byte[] p, int width, int[] out) {
+                    for (int x = 0; x < width; x++) {
+                        int c = p[x + 1] & 0xFF;
+                        out[2 * x] = (p[x] & 0xFF) - 2 * c + (p[x + 2] & 0xFF);
+                        out[2 * x + 1] = c;
+                    }
+                }
+                
+                @Override
+                void vertical(int[][] rows, byte[] dst, int d, int width) {
+                    int[] a = rows[0];
+                    int[] b = rows[1];
+                    int[] c = rows[2];
+                    for (int x = 0; x < width; x++) {
+                        int v = b[2 * x] + a[2 * x + 1] - 2 * b[2 * x + 1] + c[2 * x + 1];
+                        dst[d + x] = (byte) Math.min(255, Math.abs(v));
+                    }
+                }
+            };
+        }
+        
+        @Override
+        public String toString() {
+            return "laplacian";
+        }
+    }
+    
+    private static final class Morphology extends NeighbourhoodOperator {
+        private final int size;
+        private final boolean dilate;
+        
+        Morphology(int size, boolean dilate) {
+            this.size = size;
+            this.dilate = dilate;
+        }
+        
+        @Override
+        Kernel kernel(int maxBlurSize) {
+            final int taps = size;
+            // Erosion is dilation of the inverted values
+            final int flip = dilate ? 0 : 0xFF;
+            return new Kernel(size / 2, 1, true) {
+                private int[] max = new int[0];
+                
+                @Override
+                void horizontal(byte[] p, int width, int[] out) {
+                    for (int x = 0; x < width; x++) {
+                        int max = 0;
+                        for (int k = 0; k < taps; k++) {
+                            max = Math.max(max, (p[x + k] & 0xFF) ^ flip);
+                        }
+                        out[x] = max;
+                    }
+                }
+                
+                @Override
+                void vertical(int[][] rows, byte[] dst, int d, int width) {
+                    int[] max = this.max;
+                    if (max.length < width) {
+                        max = this.max = new int[width];
+                    }
+                    System.arraycopy(rows[0], 0, max, 0, width);
+                    for (int k = 1; k < rows.length; k++) {
+                        int[] row = rows[k];
+                        for (int x = 0; x < width; x++) {
+                            max[x] = Math.max(max[x], row[x]);
+                        }
+                    }
+                    for (int x = 0; x < width; x++) {
+                        dst[d + x] = (byte) (max[x] ^ flip);
+                    }
+                }
+            };
+        }
+        
+        @Override
+        public String toString() {
+            return (dilate ? "dilate:" : "erode:") + size;
+        }
+    }
+    
+    private static final class Threshold extends PointOperator {
+        private final int level;
+        
+        Threshold(int level) {
+            this.level = level;
+        }
+        
+        @Override
+        int apply(int value) {
+            return value > level ? 255 : 0;
+        }
+        
+        @Override
+        public String toString() {
+            return "threshold:" + level;
+        }
+    }
+    
+    private static final class Invert extends PointOperator {
+        @Override
+        int apply(int value) {
+            return 255 - value;
+        }
+        
+        @Override
+        public String toString() {
+            return "invert";
+        }
+    }
+    
+    private static final class Scale extends PointOperator {
+        private final double gain;
+        private final int offset;
+        
+        Scale(double gain, int offset) {
+            this.gain = gain;
+            this.offset = offset;
+        }
+        
+        @Override
+        int apply(int value) {
+            // saturate_cast rounds half to even
+            double v = Math.rint(value * gain + offset);
+            return v <= 0 ? 0 : v >= 255 ? 255 : (int) v;
+        }
+        
+        @Override
+        public String toString() {
+            return "scale:" + gain + ":" + offset;
+        }
+    }
+    
+    static final class Canny extends FilterOperator {
+        final int low;
+        final int high;
+        
+        Canny(int low, int high) {
+            this.low = low;
+            this.high = high;
+        }
+        
+        @Override
+        public String toString() {
+            return "canny:" + low + ":" + high;
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package com.example.edgedetectionviewer;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Direct, native-ordered frame buffer handed out by a {@link FrameBufferPool} or a
+ * {@link FrameExchange}. Call {@link #release()} once the frame has been consumed so the
+ * memory can be reused.
+ */
+public final class FrameBuffer implements CapturedFrame {
+    private final FrameBufferPool pool;
+    // Set instead of the pool for exchange frames
+    private final FrameExchange exchange;
+    private final int slot;
+    private final ByteBuffer data;
+    private final int width;
+    private final int height;
+    private final int bytesPerPixel;
+    
+    // Guarded by the owning pool's lock
+    boolean pooled;
+    long timestampNanos;
+    // Written by the exchange's writer before publishing
+    long sequence;
+    // Regions the pipeline last wrote into this frame, blank elsewhere if regionsOnly;
+    // worker thread only
+    RegionSet drawnRegions;
+    boolean regionsOnly;
+    
+    FrameBuffer(FrameBufferPool pool, int width, int height, int bytesPerPixel) {
+        this(pool, null, -1, width, height, bytesPerPixel);
+    }
+    
+    FrameBuffer(FrameExchange exchange, int slot, int width, int height, int bytesPerPixel) {
+        this(null, exchange, slot, width, height, bytesPerPixel);
+    }
+    
+    private FrameBuffer(FrameBufferPool pool, FrameExchange exchange, int slot, int width, int height,
+            int bytesPerPixel) {
+        this.pool = pool;
+        this.exchange = exchange;
+        this.slot = slot;
+        this.width = width;
+        this.height = height;
+        this.bytesPerPixel = bytesPerPixel;
+        this.data = ByteBuffer.allocateDirect(width * height * bytesPerPixel);
+        this.data.order(ByteOrder.nativeOrder());
+    }
+    
+    public ByteBuffer getData() {
+        return data;
+    }
+    
+    @Override
+    public int getWidth() {
+        return width;
+    }
+    
+    @Override
+    public int getHeight() {
+        return height;
+    }
+    
+    /**
+     * When the buffer was acquired from its pool or exchange, which for a capture buffer is
+     * when the readback into it began.
+     */
+    @Override
+    public long getTimestampNanos() {
+        return timestampNanos;
+    }
+    
+    /**
+     * Number of the frame in the {@link FrameExchange} that published it, counting from 1;
+     * 0 for pooled buffers.
+     */
+    public long getSequence() {
+        return sequence;
+    }
+    
+    public int getBytesPerPixel() {
+        return bytesPerPixel;
+    }
+    
+    public int getSizeInBytes() {
+        return data.capacity();
+    }
+    
+    /**
+     * Processes this buffer as an RGBA frame.
+     */
+    @Override
+    public boolean processInto(FrameProcessor processor, ByteBuffer output, boolean applyEdgeDetection) {
+        if (bytesPerPixel != 4) {
+            throw new IllegalStateException("Not an RGBA frame: " + bytesPerPixel + " bytes per pixel");
+        }
+        return processor.processFrame(data, output, width, height, applyEdgeDetection);
+    }
+    
+    /**
+     * RGBA frames come from GPU readback of the whole preview, so there is no region path.
+     */
+    @Override
+    public boolean processRegionsInto(FrameProcessor processor, RegionSet regions, ByteBuffer packed) {
+        return false;
+    }
+    
+    /**
+     * Returns this buffer to its pool, or lets go of it in its exchange. The buffer must not
+     * be touched afterwards.
+     */
+    @Override
+    public void release() {
+        if (exchange != null) {
+            exchange.release(slot);
+        } else {
+            pool.recycle(this);
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package com.example.edgedetectionviewer;
+
+import java.util.ArrayList;
+
+/**
+ * Pool of direct frame buffers keyed by frame size.
+ *
+ * Once every size in use has been seen, acquire/release do not allocate, so the
+ * per-frame readback and processing buffers stop producing garbage. Thread-safe;
+ * buffers may be released on a different thread than the one that acquired them.
+ */
+public class FrameBufferPool {
+    private static final int DEFAULT_MAX_BUFFERS_PER_SIZE = 4;
+    
+    private final int maxBuffersPerSize;
+    private final ArrayList<Bucket> buckets = new ArrayList<>();
+    private int allocationCount = 0;
+    
+    /**
+     * Free list for one frame size. Only a handful of sizes are ever live, so a linear
+     * scan beats a map lookup (and never boxes a key).
+     */
+    private static final class Bucket {
+        final int width;
+        final int height;
+        final int bytesPerPixel;
+        final FrameBuffer[] free;
+        int count;
+        
+        Bucket(int width, int height, int bytesPerPixel, int capacity) {
+            this.width = width;
+            this.height = height;
+            this.bytesPerPixel = bytesPerPixel;
+            this.free = new FrameBuffer[capacity];
+        }
+        
+        boolean matches(int width, int height, int bytesPerPixel) {
+            return this.width == width && this.height == height && this.bytesPerPixel == bytesPerPixel;
+        }
+    }
+    
+    public FrameBufferPool() {
+        this(DEFAULT_MAX_BUFFERS_PER_SIZE);
+    }
+    
+    public FrameBufferPool(int maxBuffersPerSize) {
+        if (maxBuffersPerSize < 1) {
+            throw new IllegalArgumentException("maxBuffersPerSize must be positive: " + maxBuffersPerSize);
+        }
+        this.maxBuffersPerSize = maxBuffersPerSize;
+    }
+    
+    /**
+     * Returns a cleared buffer of the given size, reusing a pooled one when available.
+     */
+    public synchronized FrameBuffer acquire(int width, int height, int bytesPerPixel) {
+        if (width <= 0 || height <= 0 || bytesPerPixel <= 0) {
+            throw new IllegalArgumentException("Invalid frame size: " + width + "x" + height + "x" + bytesPerPixel);
+        }
+        
+        Bucket bucket = findBucket(width, height, bytesPerPixel);
+        if (bucket != null && bucket.count > 0) {
+            FrameBuffer buffer = bucket.free[--bucket.count];
+            bucket.free[bucket.count] = null;
+            buffer.pooled = false;
+            buffer.getData().clear();
+            buffer.timestampNanos = System.nanoTime();
+            return buffer;
+        }
+        
+        if (bucket == null) {
+            buckets.add(new Bucket(width, height, bytesPerPixel, maxBuffersPerSize));
+        }
+        allocationCount++;
+        FrameBuffer buffer = new FrameBuffer(this, width, height, bytesPerPixel);
+        buffer.timestampNanos = System.nanoTime();
+        return buffer;
+    }
+    
+    synchronized void recycle(FrameBuffer buffer) {
+        if (buffer.pooled) {
+            throw new IllegalStateException("Frame buffer released twice");
+        }
+        
+        Bucket bucket = findBucket(buffer.getWidth(), buffer.getHeight(), buffer.getBytesPerPixel());
+        if (bucket == null || bucket.count == maxBuffersPerSize) {
+            // Size no longer in use or pool already full: let the GC reclaim it
+            return;
+        }
+        buffer.pooled = true;
+        bucket.free[bucket.count++] = buffer;
+    }
+    
+    /**
+     * Drops pooled buffers of every other size, e.g. after the preview size changed.
+     */
+    public synchronized void retainOnly(int width, int height, int bytesPerPixel) {
+        for (int i = buckets.size() - 1; i >= 0; i--) {
+            if (!buckets.get(i).matches(width, height, bytesPerPixel)) {
+                buckets.remove(i);
+            }
+        }
+    }
+    
+    /**
+     * Like {@link #retainOnly(int, int, int)}, keeping every pixel format of that size.
+     */
+    public synchronized void retainOnly(int width, int height) {
+        for (int i = buckets.size() - 1; i >= 0; i--) {
+            Bucket bucket = buckets.get(i);
+            if (bucket.width != width || bucket.height != height) {
+                buckets.remove(i);
+            }
+        }
+    }
+    
+    public synchronized void clear() {
+        buckets.clear();
+    }
+    
+    /**
+     * Number of buffers allocated over the pool's lifetime. Stays constant in steady state.
+     */
+    public synchronized int getAllocationCount() {
+        return allocationCount;
+    }
+    
+    public synchronized int getPooledCount() {
+        int total = 0;
+        for (int i = 0; i < buckets.size(); i++) {
+            total += buckets.get(i).count;
+        }
+        return total;
+    }
+    
+    private Bucket findBucket(int width, int height, int bytesPerPixel) {
+        // Indexed loop: an iterator would allocate on every frame
+        for (int i = 0; i < buckets.size(); i++) {
+            Bucket bucket = buckets.get(i);
+            if (bucket.matches(width, height, bytesPerPixel)) {
+                return bucket;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,108 @@
+package com.example.edgedetectionviewer;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Byte-level delta codec for streamed frames. A frame is coded against the previous frame
+ * the receiver holds as alternating runs:
+ * <pre>
+ * varint skip      bytes equal to the reference
+ * varint literal   bytes that changed, followed by their new values
+ * </pre>
+ * repeated until the frame is covered. A keyframe is coded against an all-zero reference,
+ * which suits edge maps: mostly zero, with short runs of 255.
+ *
+ * Unchanged gaps shorter than {@link #MIN_SKIP} bytes are folded into the surrounding
+ * literal, so a run pair after the first skips at least as many bytes as its varints cost
+ * (up to 16 KB literals) and even a frame of noise barely grows.
+ */
+public final class FrameDeltaCodec {
+    static final int MIN_SKIP = 3;
+    
+    private FrameDeltaCodec() {
+    }
+    
+    /**
+     * Upper bound of {@link #encode} output for a frame of {@code length} bytes.
+     */
+    public static int maxEncodedSize(int length) {
+        // First pair's varints, plus one byte per pair with a literal over 16 KB
+        return length + (length >> 14) + 16;
+    }
+    
+    /**
+     * Codes the first {@code length} bytes of {@code frame} against {@code reference} into
+     * {@code out}, then updates {@code reference} to match the frame.
+     *
+     * @param out needs {@link #maxEncodedSize(int)} bytes remaining
+     */
+    public static void encode(byte[] frame, byte[] reference, int length, ByteBuffer out) {
+        int i = 0;
+        while (i < length) {
+            int skipStart = i;
+            while (i < length && frame[i] == reference[i]) {
+                i++;
+            }
+            if (i == length) {
+                // Trailing unchanged bytes need no run; an unchanged frame codes to nothing
+                break;
+            }
+            
+            int literalStart = i;
+            int lastChanged = i;
+            while (i < length && i - lastChanged <= MIN_SKIP) {
+                if (frame[i] != reference[i]) {
+                    lastChanged = i;
+                }
+                i++;
+            }
+            int literalEnd = lastChanged + 1;
+            int literal = literalEnd - literalStart;
+            writeVarint(out, literalStart - skipStart);
+            writeVarint(out, literal);
+            out.put(frame, literalStart, literal);
+            System.arraycopy(frame, literalStart, reference, literalStart, literal);
+            i = literalEnd;
+        }
+    }
+    
+    /**
+     * Applies a coded frame from {@code in} (all remaining bytes) to {@code frame}, which
+     * holds the previous frame, or zeros for a keyframe.
+     *
+     * @throws IllegalArgumentException if the runs overflow {@code length}
+     */
+    public static void decode(ByteBuffer in, byte[] frame, int length) {
+        int position = 0;
+        while (in.hasRemaining()) {
+            int skip = readVarint(in);
+            int literal = readVarint(in);
+            if (skip < 0 || literal < 0 || (long) position + skip + literal > length) {
+                throw new IllegalArgumentException("Runs overflow the frame at byte " + position);
+            }
+            position += skip;
+            in.get(frame, position, literal);
+            position += literal;
+        }
+    }
+    
+    static void writeVarint(ByteBuffer out, int value) {
+        while ((value & ~0x7F) != 0) {
+            out.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.put((byte) value);
+    }
+    
+    static int readVarint(ByteBuffer in) {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            byte b = in.get();
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Varint longer than 5 bytes");
+    }
+}
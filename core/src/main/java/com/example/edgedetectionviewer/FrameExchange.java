@@ -0,0 +1,219 @@
+package com.example.edgedetectionviewer;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free hand-over of the newest processed frame from one writer to several readers, a
+ * triple buffer generalised to more than one reader.
+ *
+ * The writer fills a slot no reader holds and publishes it; each {@link Reader} takes the
+ * newest published frame and holds it until it calls {@link FrameBuffer#release()}. Nobody
+ * copies a frame and nobody blocks: the writer never writes a slot a reader holds, and a
+ * reader never sees a slot the writer is filling, so reads cannot tear. With one slot per
+ * reader plus the published one and the one being written, the writer always finds a free
+ * slot as long as each reader holds at most one frame.
+ *
+ * Each slot has a count of readers holding it, with a large negative offset while the
+ * writer has it. A reader raises the count of the slot it read as the newest and keeps it
+ * only if that slot is still the newest afterwards: once a slot is no longer published the
+ * writer may claim it, and a reader arriving late sees the newer frame and lets go.
+ *
+ * Frames are numbered from 1 in publishing order, so a reader can tell how many it
+ * skipped. Slot buffers are allocated on first use and when the frame shape changes.
+ */
+public final class FrameExchange {
+    
+    // Frame sequence and slot index share the published word
+    private static final int SLOT_BITS = 8;
+    private static final int SLOT_MASK = (1 << SLOT_BITS) - 1;
+    // Added to a slot's count while the writer fills it
+    private static final int WRITING = -(1 << 30);
+    
+    /**
+     * Most readers an exchange takes.
+     */
+    public static final int MAX_READERS = SLOT_MASK - 2;
+    
+    private final int maxReaders;
+    private final FrameBuffer[] frames;
+    private final AtomicIntegerArray holders;
+    private final AtomicLong published = new AtomicLong();
+    
+    // Writer state
+    private long sequence;
+    private int writing = -1;
+    
+    private int readerCount;
+    private volatile long starvedCount;
+    
+    public FrameExchange(int maxReaders) {
+        if (maxReaders < 1 || maxReaders > MAX_READERS) {
+            throw new IllegalArgumentException("Invalid reader count: " + maxReaders);
+        }
+        this.maxReaders = maxReaders;
+        frames = new FrameBuffer[maxReaders + 2];
+        holders = new AtomicIntegerArray(frames.length);
+    }
+    
+    /**
+     * A reader starting from the newest frame published so far; frames before it do not
+     * count as skipped.
+     *
+     * @throws IllegalStateException if the exchange already has its maximum of readers
+     */
+    public synchronized Reader newReader() {
+        if (readerCount == maxReaders) {
+            throw new IllegalStateException("Exchange already has " + maxReaders + " readers");
+        }
+        readerCount++;
+        return new Reader(published.get() >>> SLOT_BITS);
+    }
+    
+    /**
+     * Writer side: a frame to fill, then {@link #publish()} or {@link #abandonWrite()}.
+     * Its bytes are whatever an earlier frame left there.
+     *
+     * @return null if readers hold every slot, which only happens when one holds more than
+     *         one frame; see {@link #getStarvedCount()}
+     */
+    public FrameBuffer beginWrite(int width, int height, int bytesPerPixel) {
+        if (writing >= 0) {
+            throw new IllegalStateException("Frame already being written");
+        }
+        if (width <= 0 || height <= 0 || bytesPerPixel <= 0) {
+            throw new IllegalArgumentException("Invalid frame size: " + width + "x" + height + "x" + bytesPerPixel);
+        }
+        int newest = (int) published.get() & SLOT_MASK;
+        // Lowest free slot first, so a single reader keeps to three buffers
+        for (int slot = 0; slot < frames.length; slot++) {
+            if ((slot == newest && sequence > 0) || !holders.compareAndSet(slot, 0, WRITING)) {
+                continue;
+            }
+            FrameBuffer frame = frames[slot];
+            if (frame == null || frame.getWidth() != width || frame.getHeight() != height
+                    || frame.getBytesPerPixel() != bytesPerPixel) {
+                frame = new FrameBuffer(this, slot, width, height, bytesPerPixel);
+                frames[slot] = frame;
+            }
+            frame.getData().clear();
+            frame.timestampNanos = System.nanoTime();
+            writing = slot;
+            return frame;
+        }
+        starvedCount++;
+        return null;
+    }
+    
+    /**
+     * Writer side: makes the frame being written the newest.
+     *
+     * @return its sequence number
+     */
+    public long publish() {
+        int slot = endWrite();
+        long s = ++sequence;
+        frames[slot].sequence = s;
+        // Readers may hold the slot from here on; it becomes visible to them below
+        holders.addAndGet(slot, -WRITING);
+        published.set(s << SLOT_BITS | slot);
+        return s;
+    }
+    
+    /**
+     * Writer side: gives up the frame being written, e.g. after the processor failed on it.
+     */
+    public void abandonWrite() {
+        holders.addAndGet(endWrite(), -WRITING);
+    }
+    
+    private int endWrite() {
+        int slot = writing;
+        if (slot < 0) {
+            throw new IllegalStateException("No frame being written");
+        }
+        writing = -1;
+        return slot;
+    }
+    
+    /**
+     * Sequence number of the newest frame, 0 before the first.
+     */
+    public long getPublishedCount() {
+        return published.get() >>> SLOT_BITS;
+    }
+    
+    /**
+     * Frames the writer could not start because readers held every slot.
+     */
+    public long getStarvedCount() {
+        return starvedCount;
+    }
+    
+    // Called by FrameBuffer.release() on any reader's thread
+    void release(int slot) {
+        if (holders.decrementAndGet(slot) < 0) {
+            holders.incrementAndGet(slot);
+            throw new IllegalStateException("Frame released more often than it was acquired");
+        }
+    }
+    
+    /**
+     * One consumer of the exchange, e.g. the renderer, a snapshot or a stats collector.
+     * Used from one thread at a time; it must release each frame before acquiring the next.
+     */
+    public final class Reader {
+        private long lastSequence;
+        // Written by the reader's thread only
+        private volatile long acquiredCount;
+        private volatile long skippedCount;
+        
+        Reader(long startSequence) {
+            lastSequence = startSequence;
+        }
+        
+        /**
+         * Takes the newest frame if it is newer than the last one this reader took; the
+         * caller owns it until it calls {@link FrameBuffer#release()}. Never blocks.
+         *
+         * @return the frame, or null if nothing newer was published
+         */
+        public FrameBuffer acquireLatest() {
+            while (true) {
+                long newest = published.get();
+                long s = newest >>> SLOT_BITS;
+                if (s <= lastSequence) {
+                    return null;
+                }
+                int slot = (int) newest & SLOT_MASK;
+                holders.incrementAndGet(slot);
+                if (published.get() == newest) {
+                    skippedCount += s - lastSequence - 1;
+                    acquiredCount++;
+                    lastSequence = s;
+                    return frames[slot];
+                }
+                // Superseded meanwhile, and the writer may already be refilling the slot
+                holders.decrementAndGet(slot);
+            }
+        }
+        
+        /**
+         * Sequence number of the last frame taken, or where the reader started.
+         */
+        public long getLastSequence() {
+            return lastSequence;
+        }
+        
+        public long getAcquiredCount() {
+            return acquiredCount;
+        }
+        
+        /**
+         * Frames published after the reader started that it never took.
+         */
+        public long getSkippedCount() {
+            return skippedCount;
+        }
+    }
+}
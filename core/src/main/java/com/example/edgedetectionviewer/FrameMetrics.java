@@ -0,0 +1,172 @@
+package com.example.edgedetectionviewer;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.Locale;
+
+/**
+ * Per-stage latency histograms for the frame path, timed with {@link System#nanoTime()}.
+ *
+ * Stages time themselves with a start/stop pair:
+ * <pre>
+ * long start = metrics.start();
+ * ...
+ * metrics.stop(FrameMetrics.Stage.BLUR, start);
+ * </pre>
+ * While disabled, {@link #start()} is a volatile read returning 0 and {@link #stop} returns
+ * on that 0, so instrumented code costs next to nothing. A start taken before disabling
+ * is still recorded, a start taken before enabling is not.
+ */
+public final class FrameMetrics {
+    
+    /**
+     * What is timed. Pipeline stages, plus the interval between presented frames.
+     */
+    public enum Stage {
+        /** glReadPixels of the camera texture */
+        READBACK,
+        /** JNI call overhead: native call time minus the OpenCV work inside it */
+        TRANSFER,
+        GRAYSCALE,
+        BLUR,
+        /** Sobel, non-max suppression and hysteresis */
+        CANNY,
+        /** Whole processor call on the worker thread */
+        PROCESS,
+        /** Capture to processed frame: the wait in the capture ring plus {@link #PROCESS} */
+        LATENCY,
+        /** Tracing edge points, contours or segments out of a processed frame */
+        EDGE_GEOMETRY,
+        /** Texture upload of a processed frame */
+        UPLOAD,
+        /** Issuing the draw of the textured quad */
+        PRESENT,
+        /** Time between two presented frames */
+        FRAME_INTERVAL
+    }
+    
+    /**
+     * Never records; the default for components that were not given metrics.
+     */
+    public static final FrameMetrics NONE = new FrameMetrics(false);
+    
+    private static final Stage[] STAGES = Stage.values();
+    
+    private final LatencyHistogram[] histograms;
+    private volatile boolean enabled;
+    
+    /**
+     * Starts disabled.
+     */
+    public FrameMetrics() {
+        this(true);
+    }
+    
+    private FrameMetrics(boolean recordable) {
+        histograms = new LatencyHistogram[recordable ? STAGES.length : 0];
+        for (int i = 0; i < histograms.length; i++) {
+            histograms[i] = new LatencyHistogram();
+        }
+    }
+    
+    /**
+     * @throws IllegalStateException on enabling {@link #NONE}
+     */
+    public void setEnabled(boolean enabled) {
+        if (enabled && histograms.length == 0) {
+            throw new IllegalStateException("FrameMetrics.NONE cannot be enabled");
+        }
+        this.enabled = enabled;
+    }
+    
+    public boolean isEnabled() {
+        return enabled;
+    }
+    
+    /**
+     * @return a timestamp for {@link #stop}, or 0 while disabled
+     */
+    public long start() {
+        return enabled ? System.nanoTime() : 0;
+    }
+    
+    public void stop(Stage stage, long start) {
+        if (start != 0) {
+            histograms[stage.ordinal()].record(System.nanoTime() - start);
+        }
+    }
+    
+    /**
+     * Records a duration measured elsewhere, e.g. on the native side.
+     */
+    public void record(Stage stage, long nanos) {
+        if (enabled) {
+            histograms[stage.ordinal()].record(nanos);
+        }
+    }
+    
+    public LatencyHistogram.Snapshot snapshot(Stage stage) {
+        if (histograms.length == 0) {
+            return new LatencyHistogram().snapshot();
+        }
+        return histograms[stage.ordinal()].snapshot();
+    }
+    
+    public void reset() {
+        for (LatencyHistogram histogram : histograms) {
+            histogram.reset();
+        }
+    }
+    
+    /**
+     * One line per stage that recorded anything: count, mean, p50, p99, p99.9 and max in ms.
+     */
+    public void writeReport(Appendable out) throws IOException {
+        out.append(String.format(Locale.US, "%-15s %8s %9s %9s %9s %9s %9s%n",
+                "stage", "count", "mean_ms", "p50_ms", "p99_ms", "p99.9_ms", "max_ms"));
+        for (Stage stage : STAGES) {
+            LatencyHistogram.Snapshot s = snapshot(stage);
+            if (s.getCount() == 0) {
+                continue;
+            }
+            out.append(String.format(Locale.US, "%-15s %8d %9.3f %9.3f %9.3f %9.3f %9.3f%n",
+                    stage.name().toLowerCase(Locale.US), s.getCount(), s.getMean() / 1e6,
+                    s.getP50() / 1e6, s.getP99() / 1e6, s.getP999() / 1e6, s.getMax() / 1e6));
+        }
+    }
+    
+    /**
+     * Writes {@link #writeReport} to a file, replacing it.
+     */
+    public void dumpTo(File file) throws IOException {
+        Writer writer = new OutputStreamWriter(new FileOutputStream(file), Charset.forName("UTF-8"));
+        try {
+            writeReport(writer);
+        } finally {
+            writer.close();
+        }
+    }
+    
+    /**
+     * p50/p99 per stage on one line, for the periodic log.
+     */
+    public String describe() {
+        StringBuilder sb = new StringBuilder("metrics[");
+        for (Stage stage : STAGES) {
+            LatencyHistogram.Snapshot s = snapshot(stage);
+            if (s.getCount() == 0) {
+                continue;
+            }
+            if (sb.length() > "metrics[".length()) {
+                sb.append(' ');
+            }
+            sb.append(stage.name().toLowerCase(Locale.US))
+                    .append(String.format(Locale.US, "=%.2f/%.2f", s.getP50() / 1e6, s.getP99() / 1e6));
+        }
+        return sb.append(" ms p50/p99]").toString();
+    }
+}
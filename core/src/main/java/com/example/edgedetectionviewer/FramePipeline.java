@@ -0,0 +1,470 @@
+package com.example.edgedetectionviewer;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Capture, process and present stages connected by lock-free hand-overs.
+ *
+ * One capture thread (the render thread for GPU readback, the camera callback thread for
+ * luma planes) submits frames into a ring; a dedicated worker thread runs the
+ * {@link FrameProcessor} on them and publishes its output through a {@link FrameExchange},
+ * from which the render thread and any other readers take the newest frame. Both keep only
+ * the newest frames, so a slow frame delays nothing but itself and display latency stays
+ * bounded. Dropped captures go straight back to their owner.
+ */
+public class FramePipeline implements CaptureTarget {
+    private static final int QUEUE_CAPACITY = 2;
+    
+    /**
+     * Most captured frames the pipeline holds at once: a full capture ring plus the frame
+     * being processed. Camera-owned frames need at least one more for the next capture.
+     */
+    public static final int MAX_HELD_CAPTURES = QUEUE_CAPACITY + 1;
+    
+    // Capture ring, frame being captured and frame being processed
+    private static final int POOLED_FRAMES = QUEUE_CAPACITY + 2;
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+    
+    /**
+     * Most readers {@link #newFrameReader()} hands out, besides the renderer's.
+     */
+    public static final int MAX_FRAME_READERS = 3;
+    
+    /**
+     * Most regions {@link #setRegions} takes.
+     */
+    public static final int MAX_REGIONS = 16;
+    
+    /**
+     * Called on the worker thread whenever a processed frame is ready to present.
+     */
+    public interface Listener {
+        void onFrameProcessed();
+    }
+    
+    private static final SpscRingBuffer.DropHandler<CapturedFrame> RELEASE_CAPTURED = new SpscRingBuffer.DropHandler<CapturedFrame>() {
+        @Override
+        public void onDrop(CapturedFrame frame) {
+            frame.release();
+        }
+    };
+    
+    private volatile FrameProcessor processor;
+    private final FrameMetrics metrics;
+    private final FrameBufferPool pool = new FrameBufferPool(POOLED_FRAMES);
+    private final SpscRingBuffer<CapturedFrame> captured = new SpscRingBuffer<>("captured", QUEUE_CAPACITY, RELEASE_CAPTURED);
+    private final FrameExchange processed = new FrameExchange(1 + MAX_FRAME_READERS);
+    private final FrameExchange.Reader presenter = processed.newReader();
+    
+    private volatile Listener listener;
+    private volatile FrameRecorder recorder;
+    private volatile FrameStreamServer streamServer;
+    private volatile QualityGovernor governor;
+    // Processor of the last frame and the level it was last set to; worker thread only
+    private FrameProcessor activeProcessor;
+    private QualityLevel appliedLevel = QualityLevel.FULL;
+    private volatile boolean edgeDetectionEnabled = true;
+    
+    // Regions handed over by setRegions, guarded by themselves, and the worker's copy with
+    // its packed results
+    private final RegionSet pendingRegions = new RegionSet(MAX_REGIONS);
+    private volatile int regionsVersion;
+    private final RegionSet regions = new RegionSet(MAX_REGIONS);
+    private int appliedRegionsVersion;
+    private ByteBuffer regionOutput = ByteBuffer.allocateDirect(0);
+    
+    // Geometry traced from edge frames for the listener, set together; worker-owned storage
+    private volatile GeometryRequest geometryRequest;
+    private final EdgeTracer tracer = new EdgeTracer();
+    private final EdgeGeometry geometry = new EdgeGeometry();
+    private volatile boolean running;
+    private volatile Thread worker;
+    
+    private volatile long processedCount;
+    private volatile long failedCount;
+    private volatile RuntimeException lastError;
+    
+    public FramePipeline(FrameProcessor processor) {
+        this(processor, FrameMetrics.NONE);
+    }
+    
+    /**
+     * Times each processor call as {@link FrameMetrics.Stage#PROCESS}.
+     *
+     * @param processor null if it is still being created; see {@link #setProcessor}
+     */
+    public FramePipeline(FrameProcessor processor, FrameMetrics metrics) {
+        this.processor = processor;
+        this.metrics = metrics;
+    }
+    
+    /**
+     * Hands over the processor once it is ready, e.g. after {@link ProcessorLoader} has warmed
+     * it up. Until then captured frames wait in the capture ring, the newest kept, and the
+     * first frame after this call is processed at once. The caller keeps ownership and must
+     * not release the previous processor before {@link #stop()}.
+     */
+    public void setProcessor(FrameProcessor processor) {
+        this.processor = processor;
+        Thread thread = worker;
+        if (thread != null) {
+            LockSupport.unpark(thread);
+        }
+    }
+    
+    /**
+     * Metrics shared by the stages around this pipeline.
+     */
+    public FrameMetrics getMetrics() {
+        return metrics;
+    }
+    
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+    
+    /**
+     * Copies every processed frame into the recorder's pre-trigger ring, on the worker
+     * thread. Null stops recording.
+     */
+    public void setRecorder(FrameRecorder recorder) {
+        this.recorder = recorder;
+    }
+    
+    /**
+     * Publishes every processed frame to the server's viewers, on the worker thread. Null
+     * stops streaming.
+     */
+    public void setStreamServer(FrameStreamServer server) {
+        this.streamServer = server;
+    }
+    
+    /**
+     * Lets the governor pick the quality of edge frames from their processing time: it may
+     * skip captured frames and sets the processor's {@link QualityLevel} between frames.
+     * Grayscale frames are neither skipped nor measured. Null returns to full quality.
+     */
+    public void setQualityGovernor(QualityGovernor governor) {
+        this.governor = governor;
+    }
+    
+    /**
+     * Limits edge detection of luminance frames to these regions from the next frame on;
+     * null or empty processes whole frames again. Frames come out black outside the
+     * regions. The regions are copied, so the caller may keep editing its set; masks are
+     * shared. Regions must fit the frames. RGBA frames and grayscale frames always run whole.
+     *
+     * @throws IllegalStateException if there are more than {@link #MAX_REGIONS} regions
+     */
+    public void setRegions(RegionSet regions) {
+        synchronized (pendingRegions) {
+            if (regions == null) {
+                pendingRegions.clear();
+            } else {
+                pendingRegions.copyFrom(regions);
+            }
+            regionsVersion++;
+        }
+    }
+    
+    /**
+     * Traces every processed edge frame into {@link EdgeGeometry} as far as {@code mode}
+     * and hands it to {@code listener} on the worker thread, before the frame is offered
+     * for presenting. The geometry comes from the frame's own pixels, so it always matches
+     * the raster. Null stops tracing.
+     */
+    public void setEdgeGeometryListener(EdgeGeometry.Mode mode, EdgeGeometry.Listener listener) {
+        geometryRequest = listener != null ? new GeometryRequest(mode, listener) : null;
+    }
+    
+    /**
+     * Tolerance of the segments traced for the geometry listener; see
+     * {@link EdgeTracer#setSegmentTolerance}. Takes effect from the next frame.
+     */
+    public void setSegmentTolerance(float tolerance) {
+        tracer.setSegmentTolerance(tolerance);
+    }
+    
+    public void setEdgeDetectionEnabled(boolean enabled) {
+        edgeDetectionEnabled = enabled;
+    }
+    
+    public boolean isEdgeDetectionEnabled() {
+        return edgeDetectionEnabled;
+    }
+    
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                processLoop();
+            }
+        }, "FrameProcessing");
+        worker = thread;
+        thread.start();
+    }
+    
+    /**
+     * Stops the worker and waits for the frame in flight, then releases queued frames.
+     */
+    public synchronized void stop() {
+        Thread thread = worker;
+        if (!running || thread == null) {
+            return;
+        }
+        running = false;
+        LockSupport.unpark(thread);
+        boolean interrupted = false;
+        while (thread.isAlive()) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        worker = null;
+        captured.clear();
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+    
+    /**
+     * Capture stage: returns a buffer to read the next frame into. Pass it to
+     * {@link #submit(FrameBuffer)}, or release it if the capture is abandoned.
+     */
+    public FrameBuffer acquireCaptureBuffer(int width, int height) {
+        return pool.acquire(width, height, 4);
+    }
+    
+    /**
+     * Capture stage: hands a captured frame to the worker, which releases it once processed
+     * or dropped. Never blocks.
+     */
+    @Override
+    public void submit(CapturedFrame frame) {
+        captured.offer(frame);
+        Thread thread = worker;
+        if (thread != null) {
+            LockSupport.unpark(thread);
+        }
+    }
+    
+    /**
+     * Present stage: returns the newest processed frame, or null if none arrived since the
+     * last call. Its bytes per pixel follow the processor's {@link OutputFormat}. The caller
+     * owns it and must release it once it is off screen, before polling again.
+     */
+    public FrameBuffer pollProcessed() {
+        return presenter.acquireLatest();
+    }
+    
+    /**
+     * A reader of processed frames besides the present stage, e.g. for snapshots or stats,
+     * on a thread of its own. It shares the frames the renderer gets, without a copy; see
+     * {@link FrameExchange} for how long it may hold them.
+     *
+     * @throws IllegalStateException after {@link #MAX_FRAME_READERS} readers
+     */
+    public FrameExchange.Reader newFrameReader() {
+        return processed.newReader();
+    }
+    
+    /**
+     * Drops pooled buffers of other sizes after the preview size changed.
+     */
+    public void onFrameSizeChanged(int width, int height) {
+        pool.retainOnly(width, height);
+    }
+    
+    private void processLoop() {
+        while (running) {
+            FrameProcessor processor = this.processor;
+            if (processor == null) {
+                LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+                continue;
+            }
+            if (processor != activeProcessor) {
+                activeProcessor = processor;
+                appliedLevel = QualityLevel.FULL;
+            }
+            CapturedFrame input = captured.pollLatest();
+            if (input == null) {
+                LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+                continue;
+            }
+            
+            boolean edges = edgeDetectionEnabled;
+            QualityGovernor g = governor;
+            if (edges && g != null && !g.admitFrame()) {
+                input.release();
+                continue;
+            }
+            QualityLevel level = g != null ? g.getLevel() : QualityLevel.FULL;
+            if (!level.equals(appliedLevel)) {
+                processor.setQualityLevel(level);
+                appliedLevel = level;
+            }
+            
+            FrameBuffer output = processed.beginWrite(input.getWidth(), input.getHeight(),
+                    processor.getOutputFormat().getBytesPerPixel());
+            if (output == null) {
+                // A reader is holding more frames than it may; counted by the exchange
+                input.release();
+                continue;
+            }
+            boolean ok;
+            long start = metrics.start();
+            long begin = System.nanoTime();
+            long elapsed = 0;
+            long capturedAt = input.getTimestampNanos();
+            try {
+                ok = edges && !updateRegions().isEmpty() && processRegions(processor, input, output);
+                if (!ok) {
+                    output.regionsOnly = false;
+                    ok = input.processInto(processor, output.getData(), edges);
+                }
+                elapsed = System.nanoTime() - begin;
+                metrics.stop(FrameMetrics.Stage.PROCESS, start);
+                if (ok && start != 0) {
+                    metrics.record(FrameMetrics.Stage.LATENCY, begin + elapsed - capturedAt);
+                }
+            } catch (RuntimeException e) {
+                // Keep the pipeline alive; the frame counts as failed
+                lastError = e;
+                ok = false;
+            } finally {
+                input.release();
+            }
+            
+            if (ok) {
+                processedCount++;
+                if (edges && g != null) {
+                    g.recordFrame(elapsed);
+                }
+                FrameRecorder r = recorder;
+                if (r != null) {
+                    r.record(output, edges, System.nanoTime());
+                }
+                FrameStreamServer s = streamServer;
+                if (s != null) {
+                    s.publish(output, edges);
+                }
+                GeometryRequest request = geometryRequest;
+                if (edges && request != null) {
+                    long traceStart = metrics.start();
+                    tracer.trace(output.getData(), output.getWidth(), output.getHeight(), output.getBytesPerPixel(),
+                            capturedAt, request.mode, geometry);
+                    metrics.stop(FrameMetrics.Stage.EDGE_GEOMETRY, traceStart);
+                    request.listener.onEdgeGeometry(geometry);
+                }
+                processed.publish();
+                Listener l = listener;
+                if (l != null) {
+                    l.onFrameProcessed();
+                }
+            } else {
+                failedCount++;
+                processed.abandonWrite();
+            }
+        }
+    }
+    
+    /**
+     * The regions to process this frame, taking over any set since the last one.
+     */
+    private RegionSet updateRegions() {
+        int version = regionsVersion;
+        if (version != appliedRegionsVersion) {
+            synchronized (pendingRegions) {
+                regions.copyFrom(pendingRegions);
+                appliedRegionsVersion = regionsVersion;
+            }
+            if (regionOutput.capacity() < regions.getOutputSize()) {
+                regionOutput = ByteBuffer.allocateDirect(regions.getOutputSize());
+            }
+        }
+        return regions;
+    }
+    
+    /**
+     * @return false if the frame has no region path and must be processed whole
+     */
+    private boolean processRegions(FrameProcessor processor, CapturedFrame input, FrameBuffer output) {
+        if (!input.processRegionsInto(processor, regions, regionOutput)) {
+            return false;
+        }
+        // Only what the last region frame in this buffer drew needs blanking
+        RegionSet drawn = output.regionsOnly ? output.drawnRegions : null;
+        output.regionsOnly = false;
+        regions.replaceInFrame(regionOutput, output.getData(), input.getWidth(), input.getHeight(),
+                processor.getOutputFormat(), drawn);
+        if (output.drawnRegions == null) {
+            output.drawnRegions = new RegionSet(MAX_REGIONS);
+        }
+        output.drawnRegions.copyFrom(regions);
+        output.regionsOnly = true;
+        return true;
+    }
+    
+    public long getProcessedCount() {
+        return processedCount;
+    }
+    
+    public long getFailedCount() {
+        return failedCount;
+    }
+    
+    /**
+     * Captured frames the worker never got to: replaced in the capture ring by newer ones.
+     */
+    public long getDroppedFrameCount() {
+        return captured.getDroppedCount();
+    }
+    
+    /**
+     * Most recent exception thrown by the processor, or null.
+     */
+    public RuntimeException getLastError() {
+        return lastError;
+    }
+    
+    /**
+     * Queue depth and drop counters per stage; the stage whose input drops the most frames
+     * is the bottleneck.
+     */
+    public String describeStats() {
+        return describe(captured) + ", processed[published=" + processed.getPublishedCount()
+                + " presented=" + presenter.getAcquiredCount()
+                + " skipped=" + presenter.getSkippedCount()
+                + " starved=" + processed.getStarvedCount() + "]"
+                + ", processed=" + processedCount + " failed=" + failedCount;
+    }
+    
+    SpscRingBuffer<CapturedFrame> getCaptureQueue() {
+        return captured;
+    }
+    
+    private static String describe(SpscRingBuffer<?> queue) {
+        return queue.getName() + "[depth=" + queue.size() + "/" + queue.capacity()
+                + " max=" + queue.getMaxDepth()
+                + " in=" + queue.getPublishedCount()
+                + " dropped=" + queue.getDroppedCount() + "]";
+    }
+    
+    private static final class GeometryRequest {
+        final EdgeGeometry.Mode mode;
+        final EdgeGeometry.Listener listener;
+        
+        GeometryRequest(EdgeGeometry.Mode mode, EdgeGeometry.Listener listener) {
+            this.mode = mode;
+            this.listener = listener;
+        }
+    }
+}
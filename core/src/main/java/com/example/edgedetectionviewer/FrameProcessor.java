@@ -0,0 +1,66 @@
+package com.example.edgedetectionviewer;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Processes RGBA or luminance camera frames into display frames in the processor's
+ * {@link OutputFormat}.
+ *
+ * Implementations: {@code NativeProcessor} (OpenCV over JNI) and {@link JavaFrameProcessor}
+ * (pure Java, runs on any JVM). Frames always start at index 0 of the buffers; the buffer
+ * position is ignored.
+ */
+public interface FrameProcessor {
+    
+    /**
+     * Processes one frame.
+     *
+     * @param input RGBA frame, width * height * 4 bytes
+     * @param output receives the result, {@link OutputFormat#getFrameSize} bytes
+     * @param applyEdgeDetection Canny edges if true, plain grayscale otherwise
+     * @return false if the frame could not be processed; output is then left untouched
+     */
+    boolean processFrame(ByteBuffer input, ByteBuffer output, int width, int height, boolean applyEdgeDetection);
+    
+    /**
+     * Processes one 8-bit luminance frame, such as the Y plane of a YUV_420_888 camera image,
+     * with no colour conversion. Without edge detection the luminance is shown as is, which
+     * is the camera's Y rather than OpenCV's RGBA2GRAY of the same scene.
+     *
+     * @param luma rows of {@code width} bytes, {@code rowStride} bytes apart; at least
+     *             {@link LumaFrame#requiredCapacity} bytes
+     * @param output receives the result, {@link OutputFormat#getFrameSize} bytes
+     * @return false if the frame could not be processed; output is then left untouched
+     */
+    boolean processLuma(ByteBuffer luma, int rowStride, ByteBuffer output, int width, int height, boolean applyEdgeDetection);
+    
+    /**
+     * Detects edges in the regions of a luminance frame only. Each region is read with
+     * {@link RegionSet#HALO} pixels of context and comes back packed, one byte per pixel
+     * (255 or 0), at its {@link RegionSet#getOutputOffset}, whatever the output format;
+     * {@link RegionSet#copyToFrame} places the results in a frame. The blur of the quality
+     * level applies, its resolution does not: regions are small enough to run at full size.
+     *
+     * @param luma as for {@link #processLuma}; only the regions and their halo are read
+     * @param output receives {@link RegionSet#getOutputSize} bytes
+     * @return false if the frame could not be processed; output is then left untouched
+     */
+    boolean processLumaRegions(ByteBuffer luma, int rowStride, int width, int height, RegionSet regions, ByteBuffer output);
+    
+    /**
+     * Sets the resolution and blur of edge detection for the following frames; the frame
+     * stride is up to the caller. Output keeps the full frame size. Call it from the thread
+     * that processes frames.
+     */
+    void setQualityLevel(QualityLevel level);
+    
+    /**
+     * Layout of the frames written to {@code output}; fixed for the processor's lifetime.
+     */
+    OutputFormat getOutputFormat();
+    
+    /**
+     * Frees any resources held by the processor. It must not be used afterwards.
+     */
+    void release();
+}
@@ -0,0 +1,399 @@
+package com.example.edgedetectionviewer;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Pre-trigger recorder: every processed frame is copied into a fixed-size off-heap ring,
+ * and {@link #save} writes the last few seconds of it to a memory-mapped file on a
+ * background thread. Nothing on the recording or UI thread waits for the disk.
+ *
+ * The ring is split into equal slots, one frame each, laid out again whenever the frame
+ * size changes; older frames are overwritten as new ones arrive. Each slot is guarded by a
+ * {@link StampedLock}: the recording thread write-locks the slot it fills (never contended
+ * by the saver), while the saver copies slots under optimistic reads and drops any frame
+ * that was overwritten mid-copy. Recording therefore never blocks on a save.
+ *
+ * Single-channel edge frames are packed into an {@link EdgeMap} on the way in, so the ring
+ * holds eight times as many of them as of gray frames. Switching edge detection on or off
+ * changes the slot size and starts a new ring, like a resolution change does.
+ *
+ * File layout, all values big-endian:
+ * <pre>
+ * file header   magic "EDGR", version, record count, wall-clock millis and nanoTime at save
+ * per record    header (see {@link #RECORD_HEADER_SIZE}) then the payload
+ * </pre>
+ * The payload is width * height * bpp pixel bytes for {@link #ENCODING_RAW}. Edge maps are
+ * saved in the smallest of three forms: {@link EdgeMapCodec} runs against the previous edge
+ * record of the same size ({@link #ENCODING_DELTA}), which suits a still camera, runs on
+ * their own ({@link #ENCODING_RUNS}), which suit a moving one, or the packed words
+ * ({@link #ENCODING_BITS}). Version 1 files only have raw records. Read recordings back with
+ * {@link RecordingReader}.
+ *
+ * {@link #record} is called by one thread at a time; {@link #save} from any thread.
+ */
+public final class FrameRecorder {
+    static final int MAGIC = 0x45444752; // "EDGR"
+    static final short VERSION = 2;
+    static final int FILE_HEADER_SIZE = 32;
+    
+    /**
+     * payload size, width, height (ints), bytes per pixel, edge flag, encoding (bytes),
+     * 1 reserved, capture nanoTime and sequence number (longs)
+     */
+    static final int RECORD_HEADER_SIZE = 32;
+    
+    /** Pixel bytes as the pipeline produced them */
+    static final byte ENCODING_RAW = 0;
+    /** Edge map words, see {@link EdgeMap#writeTo} */
+    static final byte ENCODING_BITS = 1;
+    /** Edge map runs against an empty map, see {@link EdgeMapCodec} */
+    static final byte ENCODING_RUNS = 2;
+    /** Edge map runs against the previous edge record */
+    static final byte ENCODING_DELTA = 3;
+    
+    /**
+     * Told on the writer thread when a save finishes.
+     */
+    public interface SaveListener {
+        void onSaved(File file, int frameCount);
+        
+        void onSaveFailed(File file, IOException error);
+    }
+    
+    private final ByteBuffer ring;
+    private final ExecutorService writer;
+    // Recording thread: the last edge frame, packed
+    private EdgeMap packed;
+    
+    // Replaced when the frame size changes; read by the writer thread
+    private volatile Layout layout;
+    // Frames recorded so far; sequence numbers are 0-based
+    private volatile long recordedCount;
+    private volatile long droppedCount;
+    private volatile long savedFrameCount;
+    
+    /**
+     * Ring of the given size in direct memory, allocated up front.
+     */
+    public FrameRecorder(int capacityBytes) {
+        if (capacityBytes <= RECORD_HEADER_SIZE) {
+            throw new IllegalArgumentException("Capacity too small: " + capacityBytes);
+        }
+        ring = ByteBuffer.allocateDirect(capacityBytes);
+        writer = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "FrameRecorder");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+    
+    public int getCapacityBytes() {
+        return ring.capacity();
+    }
+    
+    /**
+     * Frames of the current size the ring holds before the oldest is overwritten.
+     */
+    public int getSlotCount() {
+        Layout l = layout;
+        return l == null ? 0 : l.slots.length;
+    }
+    
+    /**
+     * Copies a processed frame into the ring. Costs one memcpy of the frame, or one pass
+     * packing it for single-channel edges; the frame's position and limit are left alone.
+     *
+     * @param edges whether the frame holds edges (true) or gray
+     * @param timestampNanos {@link System#nanoTime()} when the frame was captured or processed
+     */
+    public void record(FrameBuffer frame, boolean edges, long timestampNanos) {
+        int width = frame.getWidth();
+        int height = frame.getHeight();
+        boolean pack = edges && frame.getBytesPerPixel() == 1;
+        int payload = pack ? EdgeMap.packedSize(width, height) : frame.getSizeInBytes();
+        Layout l = layout;
+        if (l == null || l.payloadSize != payload) {
+            l = relayout(payload);
+            if (l == null) {
+                droppedCount++;
+                return;
+            }
+        }
+        
+        if (pack) {
+            if (packed == null || packed.getWidth() != width || packed.getHeight() != height) {
+                packed = new EdgeMap(width, height);
+            }
+            packed.packFrom(frame.getData(), 0);
+        }
+        
+        long sequence = recordedCount;
+        int index = (int) (sequence % l.slots.length);
+        ByteBuffer slot = l.slots[index];
+        StampedLock lock = l.locks[index];
+        long stamp = lock.writeLock();
+        try {
+            slot.putInt(0, payload);
+            slot.putInt(4, width);
+            slot.putInt(8, height);
+            slot.put(12, (byte) frame.getBytesPerPixel());
+            slot.put(13, (byte) (edges ? 1 : 0));
+            slot.put(14, pack ? ENCODING_BITS : ENCODING_RAW);
+            slot.put(15, (byte) 0);
+            slot.putLong(16, timestampNanos);
+            slot.putLong(24, sequence);
+            
+            slot.position(RECORD_HEADER_SIZE);
+            if (pack) {
+                packed.writeTo(slot);
+            } else {
+                ByteBuffer source = frame.getData();
+                int position = source.position();
+                int limit = source.limit();
+                source.clear();
+                slot.put(source);
+                source.limit(limit);
+                source.position(position);
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+        recordedCount = sequence + 1;
+    }
+    
+    private Layout relayout(int payloadSize) {
+        Layout old = layout;
+        if (old != null) {
+            // Poison the old slots so a save still reading them drops what it copies
+            for (StampedLock lock : old.locks) {
+                lock.writeLock();
+            }
+        }
+        int slotSize = RECORD_HEADER_SIZE + payloadSize;
+        int count = ring.capacity() / slotSize;
+        Layout l = count == 0 ? null : new Layout(ring, payloadSize, slotSize, count, recordedCount);
+        layout = l;
+        return l;
+    }
+    
+    /**
+     * Writes the frames recorded in the last {@code windowNanos} (as many as the ring still
+     * holds) to {@code file} on the writer thread, replacing it. Returns immediately.
+     *
+     * @param listener may be null
+     */
+    public void save(final File file, long windowNanos, final SaveListener listener) {
+        final long cutoff = System.nanoTime() - windowNanos;
+        final Layout l = layout;
+        final long end = recordedCount;
+        writer.execute(new Runnable() {
+            @Override
+            public void run() {
+                int frames;
+                try {
+                    frames = write(file, l, end, cutoff);
+                } catch (IOException e) {
+                    if (listener != null) {
+                        listener.onSaveFailed(file, e);
+                    }
+                    return;
+                }
+                savedFrameCount += frames;
+                if (listener != null) {
+                    listener.onSaved(file, frames);
+                }
+            }
+        });
+    }
+    
+    /**
+     * Copies frames [max(first in layout, end - slots), end) newer than cutoff into a mapped
+     * file, skipping any the recording thread overwrote meanwhile. Run coding never makes a
+     * record larger than its slot, so the file is mapped for the worst case and truncated.
+     */
+    private static int write(File file, Layout l, long end, long cutoff) throws IOException {
+        // RandomAccessFile rather than FileChannel.open(Path), which Android only has from API 26
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            FileChannel channel = raf.getChannel();
+            long start = l == null ? end : Math.max(l.firstSequence, end - l.slots.length);
+            long maxSize = FILE_HEADER_SIZE + (l == null ? 0 : (end - start) * (long) l.slotSize);
+            MappedByteBuffer out = channel.map(FileChannel.MapMode.READ_WRITE, 0, maxSize);
+            out.position(FILE_HEADER_SIZE);
+            
+            RunCoder coder = new RunCoder();
+            int frames = 0;
+            for (long sequence = start; sequence < end; sequence++) {
+                int mark = out.position();
+                if (copySlot(l, sequence, cutoff, out)) {
+                    if (out.get(mark + 14) == ENCODING_BITS) {
+                        coder.recode(out, mark);
+                    }
+                    frames++;
+                }
+            }
+            
+            out.putInt(0, MAGIC);
+            out.putShort(4, VERSION);
+            out.putShort(6, (short) 0);
+            out.putInt(8, frames);
+            out.putInt(12, 0);
+            out.putLong(16, System.currentTimeMillis());
+            out.putLong(24, System.nanoTime());
+            int size = out.position();
+            out.force();
+            channel.truncate(size);
+            return frames;
+        } finally {
+            raf.close();
+        }
+    }
+    
+    private static boolean copySlot(Layout l, long sequence, long cutoff, MappedByteBuffer out) {
+        int index = (int) (sequence % l.slots.length);
+        ByteBuffer slot = l.readViews[index];
+        StampedLock lock = l.locks[index];
+        int mark = out.position();
+        
+        long stamp = lock.tryOptimisticRead();
+        if (stamp == 0 || slot.getLong(24) != sequence || slot.getLong(16) < cutoff) {
+            return false;
+        }
+        slot.clear();
+        out.put(slot);
+        if (!lock.validate(stamp)) {
+            // Overwritten while copying: drop the torn record
+            out.position(mark);
+            return false;
+        }
+        return true;
+    }
+    
+    /**
+     * Takes no more saves and returns at once; saves already asked for finish on the writer
+     * thread, which then ends. Safe to call from the UI thread.
+     */
+    public void close() {
+        writer.shutdown();
+    }
+    
+    public long getRecordedCount() {
+        return recordedCount;
+    }
+    
+    /**
+     * Frames too large for the ring.
+     */
+    public long getDroppedCount() {
+        return droppedCount;
+    }
+    
+    public long getSavedFrameCount() {
+        return savedFrameCount;
+    }
+    
+    /**
+     * Writer thread: rewrites copied {@link #ENCODING_BITS} records as runs where that is
+     * smaller.
+     */
+    private static final class RunCoder {
+        private EdgeMap current;
+        private EdgeMap previous;
+        private EdgeMap empty;
+        private ByteBuffer delta = ByteBuffer.allocate(0);
+        private ByteBuffer key = ByteBuffer.allocate(0);
+        
+        /**
+         * Recodes the record at {@code mark}, which ends at the position of {@code out}.
+         */
+        void recode(ByteBuffer out, int mark) {
+            int width = out.getInt(mark + 4);
+            int height = out.getInt(mark + 8);
+            int payload = out.getInt(mark);
+            boolean hasPrevious = current != null && current.getWidth() == width && current.getHeight() == height;
+            if (!hasPrevious) {
+                current = new EdgeMap(width, height);
+                previous = new EdgeMap(width, height);
+                empty = new EdgeMap(width, height);
+                delta = ByteBuffer.allocate(payload);
+                key = ByteBuffer.allocate(payload);
+            }
+            ByteBuffer words = out.duplicate();
+            words.position(mark + RECORD_HEADER_SIZE);
+            current.readFrom(words);
+            
+            // Runs are only worth it if strictly smaller than the words
+            int best = payload;
+            ByteBuffer runs = null;
+            byte encoding = ENCODING_BITS;
+            delta.clear();
+            if (hasPrevious) {
+                int size = EdgeMapCodec.encode(current, previous, delta, best - 1);
+                if (size >= 0) {
+                    best = size;
+                    runs = delta;
+                    encoding = ENCODING_DELTA;
+                }
+            }
+            key.clear();
+            empty.clear();
+            int size = EdgeMapCodec.encode(current, empty, key, best - 1);
+            if (size >= 0) {
+                best = size;
+                runs = key;
+                encoding = ENCODING_RUNS;
+            }
+            previous.copyFrom(current);
+            if (runs == null) {
+                return;
+            }
+            runs.flip();
+            out.position(mark + RECORD_HEADER_SIZE);
+            out.put(runs);
+            out.putInt(mark, best);
+            out.put(mark + 14, encoding);
+        }
+    }
+    
+    /**
+     * Slot views over the ring for one frame size.
+     */
+    private static final class Layout {
+        final int payloadSize;
+        final int slotSize;
+        final long firstSequence;
+        // Separate views per thread: ByteBuffer positions are not thread-safe
+        final ByteBuffer[] slots;
+        final ByteBuffer[] readViews;
+        final StampedLock[] locks;
+        
+        Layout(ByteBuffer ring, int payloadSize, int slotSize, int count, long firstSequence) {
+            this.payloadSize = payloadSize;
+            this.slotSize = slotSize;
+            this.firstSequence = firstSequence;
+            slots = new ByteBuffer[count];
+            readViews = new ByteBuffer[count];
+            locks = new StampedLock[count];
+            for (int i = 0; i < count; i++) {
+                ByteBuffer view = ring.duplicate();
+                view.position(i * slotSize);
+                view.limit(i * slotSize + slotSize);
+                slots[i] = view.slice();
+                readViews[i] = slots[i].duplicate();
+                locks[i] = new StampedLock();
+            }
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package com.example.edgedetectionviewer;
+
+/**
+ * Where the frames of a {@link CaptureTarget} come from: the camera on a device
+ * ({@code LumaCaptureSource}), or anywhere a {@link SyntheticFrameSource} or a
+ * {@link ReplayFrameSource}, so the processing path can be run and load-tested without one.
+ */
+public interface FrameSource {
+    
+    int getWidth();
+    
+    int getHeight();
+    
+    /**
+     * Starts handing frames to {@code target}, from the source's own thread.
+     */
+    void start(CaptureTarget target);
+    
+    /**
+     * Stops handing out frames and waits for the one being handed out. Frames the target
+     * still holds stay valid until it releases them.
+     */
+    void stop();
+    
+    /**
+     * Frames handed to the target so far.
+     */
+    long getDeliveredCount();
+    
+    /**
+     * Frames lost before reaching the target because it still held every frame buffer.
+     */
+    long getDroppedCount();
+}
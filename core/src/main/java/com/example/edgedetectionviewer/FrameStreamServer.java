@@ -0,0 +1,590 @@
+package com.example.edgedetectionviewer;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Streams processed frames to viewers over plain HTTP: {@code GET /stream} answers with an
+ * endless body of length-prefixed frame messages, which a browser reads through
+ * {@code fetch()}. One thread multiplexes every client on a {@link Selector} with
+ * non-blocking writes.
+ *
+ * Each client gets the newest frame whenever its previous message has been written out;
+ * frames that arrive meanwhile are skipped, so a slow client sees a lower frame rate and
+ * never a backlog. Frames are coded per client against the last frame that client
+ * received, starting with a keyframe: single-channel edge frames as {@link EdgeMap}s with
+ * {@link EdgeMapCodec}, falling back to the packed words when runs would not be smaller,
+ * and anything else with {@link FrameDeltaCodec}.
+ *
+ * Message layout, big-endian:
+ * <pre>
+ * 0   int    body length
+ * 4   byte   flags: {@link #FLAG_KEYFRAME}, {@link #FLAG_EDGES}, {@link #FLAG_EDGE_RUNS},
+ *               {@link #FLAG_EDGE_WORDS}
+ * 5   byte   bytes per pixel
+ * 6   short  reserved
+ * 8   int    width
+ * 12  int    height
+ * 16  int    sequence number, gaps mark skipped frames
+ * 20  float  frames per second reported by the app
+ * 24  body   {@link FrameDeltaCodec} runs, unless an edge map flag says otherwise
+ * </pre>
+ * Edge maps decode to 0 and 255; a change between edge maps and other frames is always a
+ * keyframe.
+ *
+ * {@link #publish} is called by one thread at a time and never waits for the network: it
+ * copies the frame under a {@link StampedLock} the server thread only reads optimistically.
+ *
+ * There is no authentication: whoever reaches the port sees the camera. The server listens
+ * on loopback unless given another address, and only the viewer's origin, if any, may read
+ * the stream from a browser.
+ */
+public final class FrameStreamServer {
+    static final int MESSAGE_HEADER_SIZE = 24;
+    static final int FLAG_KEYFRAME = 1;
+    static final int FLAG_EDGES = 2;
+    /** Body is {@link EdgeMapCodec} runs against the viewer's edge map, empty on a keyframe */
+    static final int FLAG_EDGE_RUNS = 4;
+    /** Body is the whole edge map as {@link EdgeMap#writeTo} words */
+    static final int FLAG_EDGE_WORDS = 8;
+    static final String STREAM_PATH = "/stream";
+    
+    private static final int MAX_REQUEST_BYTES = 4096;
+    private static final Charset ASCII = Charset.forName("US-ASCII");
+    private static final byte[] NOT_FOUND_RESPONSE = ("HTTP/1.1 404 Not Found\r\n"
+            + "Content-Length: 0\r\n"
+            + "Connection: close\r\n\r\n").getBytes(ASCII);
+    
+    private final ServerSocketChannel serverChannel;
+    private final Selector selector;
+    private final Thread thread;
+    private final int port;
+    private final byte[] streamResponse;
+    // Server thread only
+    private final ArrayList<Client> clients = new ArrayList<>();
+    
+    // Latest published frame, written under the lock's write mode by the publishing thread
+    private final StampedLock frameLock = new StampedLock();
+    private byte[] latest = new byte[0];
+    private int latestWidth;
+    private int latestHeight;
+    private int latestBytesPerPixel;
+    private boolean latestEdges;
+    private volatile long publishedCount;
+    
+    // Server thread's copy of the latest frame, encoded for each client
+    private byte[] snapshot = new byte[0];
+    // What the next snapshot is copied into, swapped in once the copy is known to be whole
+    private byte[] scratch = new byte[0];
+    private int snapshotSize;
+    private int snapshotWidth;
+    private int snapshotHeight;
+    private int snapshotBytesPerPixel;
+    private boolean snapshotEdges;
+    private long snapshotSequence = -1;
+    // The snapshot packed, for edge map clients; packed once per sequence
+    private EdgeMap snapshotMap;
+    private long packedSequence = -1;
+    
+    private volatile boolean running = true;
+    private volatile float fps;
+    private volatile int clientCount;
+    private volatile long sentCount;
+    private volatile long skippedCount;
+    
+    /**
+     * Listens on loopback only, e.g. for a viewer reaching the device through
+     * {@code adb forward}, and starts the server thread. Browsers may not read the stream
+     * from another origin.
+     *
+     * @param port 0 for any free port, see {@link #getPort()}
+     */
+    public FrameStreamServer(int port) throws IOException {
+        this(InetAddress.getLoopbackAddress(), port, null);
+    }
+    
+    /**
+     * Listens on {@code address} and starts the server thread.
+     *
+     * @param address interface to listen on; any address other than loopback exposes the
+     *                stream to that network
+     * @param port 0 for any free port, see {@link #getPort()}
+     * @param viewerOrigin origin a browser may read the stream from, e.g.
+     *                     {@code http://localhost:8080}, or null for none
+     */
+    public FrameStreamServer(InetAddress address, int port, String viewerOrigin) throws IOException {
+        streamResponse = streamResponse(viewerOrigin);
+        selector = Selector.open();
+        serverChannel = ServerSocketChannel.open();
+        try {
+            serverChannel.socket().setReuseAddress(true);
+            serverChannel.socket().bind(new InetSocketAddress(address, port));
+            serverChannel.configureBlocking(false);
+            serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+            this.port = serverChannel.socket().getLocalPort();
+        } catch (IOException e) {
+            serverChannel.close();
+            selector.close();
+            throw e;
+        }
+        thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                serve();
+            }
+        }, "FrameStreamServer");
+        thread.setDaemon(true);
+        thread.start();
+    }
+    
+    private static byte[] streamResponse(String viewerOrigin) {
+        StringBuilder response = new StringBuilder("HTTP/1.1 200 OK\r\n"
+                + "Content-Type: application/octet-stream\r\n"
+                + "Cache-Control: no-store\r\n");
+        if (viewerOrigin != null) {
+            if (viewerOrigin.isEmpty() || viewerOrigin.equals("*") || viewerOrigin.indexOf('\r') >= 0
+                    || viewerOrigin.indexOf('\n') >= 0) {
+                throw new IllegalArgumentException("Invalid viewer origin: " + viewerOrigin);
+            }
+            // The viewer is served from another origin
+            response.append("Access-Control-Allow-Origin: ").append(viewerOrigin).append("\r\n");
+        }
+        return response.append("Connection: close\r\n\r\n").toString().getBytes(ASCII);
+    }
+    
+    public int getPort() {
+        return port;
+    }
+    
+    /**
+     * The address the server listens on.
+     */
+    public InetAddress getAddress() {
+        return serverChannel.socket().getInetAddress();
+    }
+    
+    /**
+     * Frame rate sent along with each frame, as shown by the app.
+     */
+    public void setFps(float fps) {
+        this.fps = fps;
+    }
+    
+    /**
+     * Offers a processed frame to the connected clients. Costs one copy of the frame while
+     * anyone is connected, nothing otherwise. The frame's position and limit are left alone.
+     *
+     * @param edges whether the frame holds edges (true) or gray
+     */
+    public void publish(FrameBuffer frame, boolean edges) {
+        if (clientCount == 0) {
+            return;
+        }
+        storeLatest(frame, edges);
+        selector.wakeup();
+    }
+    
+    /**
+     * The copy {@link #publish} makes, for the server thread to snapshot.
+     */
+    void storeLatest(FrameBuffer frame, boolean edges) {
+        int size = frame.getSizeInBytes();
+        long stamp = frameLock.writeLock();
+        try {
+            if (latest.length != size) {
+                latest = new byte[size];
+            }
+            ByteBuffer source = frame.getData();
+            int position = source.position();
+            int limit = source.limit();
+            source.clear();
+            source.get(latest, 0, size);
+            source.limit(limit);
+            source.position(position);
+            latestWidth = frame.getWidth();
+            latestHeight = frame.getHeight();
+            latestBytesPerPixel = frame.getBytesPerPixel();
+            latestEdges = edges;
+            publishedCount++;
+        } finally {
+            frameLock.unlockWrite(stamp);
+        }
+    }
+    
+    /**
+     * Disconnects every client and stops the server thread.
+     */
+    public void close() {
+        running = false;
+        selector.wakeup();
+        boolean interrupted = false;
+        while (thread.isAlive()) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+    
+    public int getClientCount() {
+        return clientCount;
+    }
+    
+    /**
+     * Frame messages fully written, over all clients.
+     */
+    public long getSentCount() {
+        return sentCount;
+    }
+    
+    /**
+     * Frames clients never received because they were still busy with an older one.
+     */
+    public long getSkippedCount() {
+        return skippedCount;
+    }
+    
+    public String describeStats() {
+        return String.format(Locale.US, "stream[port=%d clients=%d sent=%d skipped=%d]",
+                port, clientCount, sentCount, skippedCount);
+    }
+    
+    private void serve() {
+        try {
+            while (running) {
+                selector.select();
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    if (key.isAcceptable()) {
+                        accept();
+                        continue;
+                    }
+                    Client client = (Client) key.attachment();
+                    try {
+                        if (key.isReadable()) {
+                            client.read();
+                        }
+                        if (key.isValid() && key.isWritable()) {
+                            client.flush();
+                        }
+                    } catch (IOException e) {
+                        disconnect(client);
+                    }
+                }
+                if (publishedCount != snapshotSequence + 1) {
+                    takeSnapshot();
+                }
+                sendLatest();
+            }
+        } catch (IOException e) {
+            // Selector failure: nothing left to serve
+        } finally {
+            for (int i = clients.size() - 1; i >= 0; i--) {
+                disconnect(clients.get(i));
+            }
+            closeQuietly(serverChannel);
+            try {
+                selector.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+    
+    private void accept() throws IOException {
+        SocketChannel channel = serverChannel.accept();
+        if (channel == null) {
+            return;
+        }
+        channel.configureBlocking(false);
+        channel.socket().setTcpNoDelay(true);
+        Client client = new Client(channel);
+        client.key = channel.register(selector, SelectionKey.OP_READ, client);
+        clients.add(client);
+    }
+    
+    private void disconnect(Client client) {
+        if (clients.remove(client) && client.streaming) {
+            clientCount--;
+        }
+        client.key.cancel();
+        closeQuietly(client.channel);
+    }
+    
+    /**
+     * Copies the latest frame under an optimistic read, into a scratch array that only
+     * replaces the snapshot once validated. A failed validation means {@link #publish} is
+     * mid-copy; the snapshot keeps the previous frame whole, and publish's wakeup brings the
+     * loop straight back here.
+     *
+     * @return false if validation failed
+     */
+    boolean takeSnapshot() {
+        long stamp = frameLock.tryOptimisticRead();
+        byte[] frame = latest;
+        int width = latestWidth;
+        int height = latestHeight;
+        int bytesPerPixel = latestBytesPerPixel;
+        boolean edges = latestEdges;
+        long count = publishedCount;
+        int size = frame.length;
+        if (scratch.length < size) {
+            scratch = new byte[size];
+        }
+        System.arraycopy(frame, 0, scratch, 0, size);
+        if (stamp == 0 || !frameLock.validate(stamp)) {
+            return false;
+        }
+        if (count == 0) {
+            return true;
+        }
+        byte[] swap = snapshot;
+        snapshot = scratch;
+        scratch = swap;
+        snapshotSize = size;
+        snapshotWidth = width;
+        snapshotHeight = height;
+        snapshotBytesPerPixel = bytesPerPixel;
+        snapshotEdges = edges;
+        snapshotSequence = count - 1;
+        return true;
+    }
+    
+    // The server thread's snapshot, for tests that take snapshots with the thread stopped
+    byte[] getSnapshot() {
+        return snapshot;
+    }
+    
+    int getSnapshotSize() {
+        return snapshotSize;
+    }
+    
+    long getSnapshotSequence() {
+        return snapshotSequence;
+    }
+    
+    /**
+     * The snapshot as an edge map, packed on first use.
+     */
+    private EdgeMap packedSnapshot() {
+        if (snapshotMap == null || snapshotMap.getWidth() != snapshotWidth
+                || snapshotMap.getHeight() != snapshotHeight) {
+            snapshotMap = new EdgeMap(snapshotWidth, snapshotHeight);
+            packedSequence = -1;
+        }
+        if (packedSequence != snapshotSequence) {
+            snapshotMap.packFrom(snapshot, 0);
+            packedSequence = snapshotSequence;
+        }
+        return snapshotMap;
+    }
+    
+    private void sendLatest() {
+        if (snapshotSequence < 0) {
+            return;
+        }
+        for (int i = clients.size() - 1; i >= 0; i--) {
+            Client client = clients.get(i);
+            if (!client.streaming || client.pending() || client.sentSequence == snapshotSequence) {
+                continue;
+            }
+            if (client.sentSequence >= 0) {
+                skippedCount += snapshotSequence - client.sentSequence - 1;
+            }
+            client.encode();
+            try {
+                client.flush();
+            } catch (IOException e) {
+                disconnect(client);
+            }
+        }
+    }
+    
+    private static void closeQuietly(java.io.Closeable closeable) {
+        try {
+            closeable.close();
+        } catch (IOException ignored) {
+        }
+    }
+    
+    /**
+     * Connection state, touched only by the server thread.
+     */
+    private final class Client {
+        final SocketChannel channel;
+        SelectionKey key;
+        final ByteBuffer request = ByteBuffer.allocate(MAX_REQUEST_BYTES);
+        // Response headers, then frame messages coded into frameOut
+        ByteBuffer out = ByteBuffer.allocate(0);
+        ByteBuffer frameOut = ByteBuffer.allocate(0);
+        boolean streaming;
+        boolean closeAfterFlush;
+        boolean sendingFrame;
+        
+        // Frame the viewer holds, for delta coding: bytes, or an edge map
+        byte[] reference;
+        EdgeMap edgeReference;
+        int width;
+        int height;
+        int bytesPerPixel;
+        long sentSequence = -1;
+        
+        Client(SocketChannel channel) {
+            this.channel = channel;
+        }
+        
+        boolean pending() {
+            return out.hasRemaining();
+        }
+        
+        void read() throws IOException {
+            if (streaming || closeAfterFlush) {
+                // Nothing more is expected; reading only notices the viewer going away
+                ByteBuffer discard = request;
+                discard.clear();
+                if (channel.read(discard) < 0) {
+                    throw new IOException("Closed by peer");
+                }
+                return;
+            }
+            if (channel.read(request) < 0) {
+                throw new IOException("Closed before a request");
+            }
+            int end = findHeaderEnd();
+            if (end < 0) {
+                if (!request.hasRemaining()) {
+                    throw new IOException("Request too long");
+                }
+                return;
+            }
+            String line = new String(request.array(), 0, end, ASCII);
+            int lineEnd = line.indexOf("\r\n");
+            String[] parts = (lineEnd < 0 ? line : line.substring(0, lineEnd)).split(" ");
+            if (parts.length >= 2 && parts[0].equals("GET") && pathOf(parts[1]).equals(STREAM_PATH)) {
+                streaming = true;
+                clientCount++;
+                out = ByteBuffer.wrap(streamResponse);
+            } else {
+                closeAfterFlush = true;
+                out = ByteBuffer.wrap(NOT_FOUND_RESPONSE);
+            }
+            flush();
+        }
+        
+        private int findHeaderEnd() {
+            byte[] bytes = request.array();
+            for (int i = 3; i < request.position(); i++) {
+                if (bytes[i - 3] == '\r' && bytes[i - 2] == '\n' && bytes[i - 1] == '\r' && bytes[i] == '\n') {
+                    return i - 3;
+                }
+            }
+            return -1;
+        }
+        
+        /**
+         * Codes the server's snapshot into {@link #out}, as a keyframe if this client has
+         * no frame of that size and kind yet.
+         */
+        void encode() {
+            int size = snapshotSize;
+            boolean edgeMap = snapshotEdges && snapshotBytesPerPixel == 1;
+            int flags = snapshotEdges ? FLAG_EDGES : 0;
+            if (width != snapshotWidth || height != snapshotHeight || bytesPerPixel != snapshotBytesPerPixel
+                    || (edgeMap ? edgeReference == null : reference == null || reference.length != size)) {
+                // The viewer starts over from an empty frame of the new kind
+                reference = edgeMap ? null : new byte[size];
+                edgeReference = edgeMap ? new EdgeMap(snapshotWidth, snapshotHeight) : null;
+                width = snapshotWidth;
+                height = snapshotHeight;
+                bytesPerPixel = snapshotBytesPerPixel;
+                flags |= FLAG_KEYFRAME;
+            }
+            int capacity = MESSAGE_HEADER_SIZE
+                    + (edgeMap ? EdgeMap.packedSize(width, height) : FrameDeltaCodec.maxEncodedSize(size));
+            if (frameOut.capacity() < capacity) {
+                frameOut = ByteBuffer.allocate(capacity);
+            }
+            out = frameOut;
+            out.clear();
+            out.position(MESSAGE_HEADER_SIZE);
+            if (edgeMap) {
+                flags |= encodeEdgeMap();
+            } else {
+                FrameDeltaCodec.encode(snapshot, reference, size, out);
+            }
+            out.putInt(0, out.position() - MESSAGE_HEADER_SIZE);
+            out.put(4, (byte) flags);
+            out.put(5, (byte) bytesPerPixel);
+            out.putShort(6, (short) 0);
+            out.putInt(8, width);
+            out.putInt(12, height);
+            out.putInt(16, (int) snapshotSequence);
+            out.putFloat(20, fps);
+            out.flip();
+            sentSequence = snapshotSequence;
+            sendingFrame = true;
+        }
+        
+        /**
+         * Codes the packed snapshot against {@link #edgeReference} at the position of
+         * {@link #out}, as runs if strictly smaller than the words.
+         *
+         * @return the edge map flag for the body
+         */
+        private int encodeEdgeMap() {
+            EdgeMap map = packedSnapshot();
+            int words = EdgeMap.packedSize(width, height);
+            if (EdgeMapCodec.encode(map, edgeReference, out, words - 1) >= 0) {
+                return FLAG_EDGE_RUNS;
+            }
+            map.writeTo(out);
+            edgeReference.copyFrom(map);
+            return FLAG_EDGE_WORDS;
+        }
+        
+        /**
+         * Writes as much of {@link #out} as the socket takes, waiting for
+         * {@link SelectionKey#OP_WRITE} if it is full.
+         */
+        void flush() throws IOException {
+            channel.write(out);
+            if (out.hasRemaining()) {
+                key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                return;
+            }
+            key.interestOps(SelectionKey.OP_READ);
+            if (closeAfterFlush) {
+                // Error response out: the caller disconnects
+                throw new IOException("Response sent");
+            }
+            if (sendingFrame) {
+                sendingFrame = false;
+                sentCount++;
+            }
+        }
+    }
+    
+    private static String pathOf(String target) {
+        int query = target.indexOf('?');
+        return query < 0 ? target : target.substring(0, query);
+    }
+}
@@ -0,0 +1,93 @@
+package com.example.edgedetectionviewer;
+
+/**
+ * Downscales 8-bit planes by powers of two and scales results back up, for the reduced
+ * {@link QualityLevel}s.
+ *
+ * Each level is OpenCV's pyrDown: the 5x5 1-4-6-4-1 kernel with BORDER_REFLECT_101, every
+ * other row and column kept, sizes rounded up. The way back is nearest-neighbour, so an edge
+ * pixel becomes a block of 2^level pixels on a side.
+ *
+ * Not thread-safe: scratch buffers are reused across frames.
+ */
+final class ImagePyramid {
+    // Plane of each level past 0, and the horizontal pass of the level being built
+    private final byte[][] levels = new byte[QualityLevel.MAX_PYRAMID_LEVEL + 1][];
+    private int[] rows = new int[0];
+    private int[] columns = new int[0];
+    
+    /**
+     * Returns {@code plane} reduced {@code level} times, in a buffer owned by the pyramid
+     * that stays valid until the next call. Level 0 returns the plane itself.
+     */
+    byte[] down(byte[] plane, int width, int height, int level) {
+        byte[] src = plane;
+        for (int i = 1; i <= level; i++) {
+            int dw = (width + 1) / 2;
+            int dh = (height + 1) / 2;
+            if (levels[i] == null || levels[i].length != dw * dh) {
+                levels[i] = new byte[dw * dh];
+            }
+            pyrDown(src, width, height, levels[i], dw, dh);
+            src = levels[i];
+            width = dw;
+            height = dh;
+        }
+        return src;
+    }
+    
+    /**
+     * Scales a {@code smallWidth} x {@code smallHeight} plane up to width x height,
+     * nearest-neighbour.
+     */
+    void up(byte[] small, int smallWidth, int smallHeight, byte[] out, int width, int height) {
+        if (columns.length != width) {
+            columns = new int[width];
+        }
+        for (int x = 0; x < width; x++) {
+            columns[x] = (int) ((long) x * smallWidth / width);
+        }
+        for (int y = 0; y < height; y++) {
+            int s = (int) ((long) y * smallHeight / height) * smallWidth;
+            int d = y * width;
+            for (int x = 0; x < width; x++) {
+                out[d + x] = small[s + columns[x]];
+            }
+        }
+    }
+    
+    private void pyrDown(byte[] src, int width, int height, byte[] dst, int dw, int dh) {
+        if (rows.length < height * dw) {
+            rows = new int[height * dw];
+        }
+        
+        // Horizontal 1-4-6-4-1 at every other column, once per source row
+        for (int y = 0; y < height; y++) {
+            int s = y * width;
+            int o = y * dw;
+            for (int x = 0; x < dw; x++) {
+                int c = 2 * x;
+                rows[o + x] = (src[s + CannyEdgeDetector.reflect101(c - 2, width)] & 0xFF)
+                        + (src[s + CannyEdgeDetector.reflect101(c + 2, width)] & 0xFF)
+                        + 4 * ((src[s + CannyEdgeDetector.reflect101(c - 1, width)] & 0xFF)
+                        + (src[s + CannyEdgeDetector.reflect101(c + 1, width)] & 0xFF))
+                        + 6 * (src[s + c] & 0xFF);
+            }
+        }
+        
+        // Vertical at every other row; 256 in total
+        for (int y = 0; y < dh; y++) {
+            int c = 2 * y;
+            int a = CannyEdgeDetector.reflect101(c - 2, height) * dw;
+            int b = CannyEdgeDetector.reflect101(c - 1, height) * dw;
+            int m = c * dw;
+            int e = CannyEdgeDetector.reflect101(c + 1, height) * dw;
+            int f = CannyEdgeDetector.reflect101(c + 2, height) * dw;
+            int d = y * dw;
+            for (int x = 0; x < dw; x++) {
+                int v = rows[a + x] + rows[f + x] + 4 * (rows[b + x] + rows[e + x]) + 6 * rows[m + x];
+                dst[d + x] = (byte) ((v + 128) >> 8);
+            }
+        }
+    }
+}
@@ -0,0 +1,265 @@
+package com.example.edgedetectionviewer;
+
+import java.util.Locale;
+
+/**
+ * {@link EdgeDetector} for fixed-mount cameras: keeps the previous frame's intermediates and
+ * only recomputes the blocks whose pixels changed.
+ *
+ * Each frame is compared block by block against a reference copy of the last processed
+ * luma. Unchanged frames return the cached edge map straight away. Otherwise blur is redone
+ * over the dirty blocks plus {@value CannyEdgeDetector#BLUR_RADIUS} pixels and the
+ * suppression map over the dirty blocks plus 4 pixels (blur and Sobel reach), which covers
+ * every value a changed pixel can affect. Hysteresis still runs over the whole map, since an
+ * edge can link across any distance; the output is identical to a full recompute of the
+ * reference frame.
+ *
+ * A change threshold above zero ignores per-pixel differences up to that value (sensor
+ * noise). Pixels in clean blocks then keep their reference value, so the output matches a
+ * full recompute of the reference rather than of the exact input.
+ *
+ * Not thread-safe: one frame at a time.
+ */
+public final class IncrementalEdgeDetector implements EdgeDetector {
+    public static final int DEFAULT_BLOCK_SIZE = 32;
+    
+    // A changed gray pixel reaches this far into the suppression map: blur, then Sobel and
+    // the one-pixel neighbour test of non-max suppression
+    private static final int MAP_HALO = CannyEdgeDetector.BLUR_RADIUS + CannyEdgeDetector.SOBEL_RADIUS + 1;
+    
+    private final CannyEdgeDetector detector;
+    private final int blockSize;
+    private final int changeThreshold;
+    
+    // Per-frame-size state; reference holds the luma the cached results were computed from
+    private int width;
+    private int height;
+    private int blocksX;
+    private int blocksY;
+    private byte[] reference;
+    private byte[] blurred;
+    private int[] blurRows;
+    private byte[] map;
+    private byte[] workMap;
+    private byte[] edges;
+    private boolean[] dirty;
+    private byte[] gray;
+    private final CannyEdgeDetector.GradientRows gradientRows = new CannyEdgeDetector.GradientRows();
+    
+    private long frameCount;
+    private long skippedFrameCount;
+    private long blockCount;
+    private long cleanBlockCount;
+    
+    public IncrementalEdgeDetector() {
+        this(new CannyEdgeDetector(), DEFAULT_BLOCK_SIZE, 0);
+    }
+    
+    /**
+     * @param changeThreshold largest per-pixel luma difference treated as unchanged
+     */
+    public IncrementalEdgeDetector(CannyEdgeDetector detector, int blockSize, int changeThreshold) {
+        if (blockSize < 1) {
+            throw new IllegalArgumentException("blockSize must be positive: " + blockSize);
+        }
+        if (changeThreshold < 0 || changeThreshold > 255) {
+            throw new IllegalArgumentException("Invalid changeThreshold: " + changeThreshold);
+        }
+        this.detector = detector;
+        this.blockSize = blockSize;
+        this.changeThreshold = changeThreshold;
+    }
+    
+    public int getBlockSize() {
+        return blockSize;
+    }
+    
+    /**
+     * Keeps the 5x5 kernel: the cached blur of clean blocks must come from the same kernel
+     * as the recomputed ones. Unchanged blocks already make this engine cheap.
+     */
+    @Override
+    public void setBlurKernelSize(int size) {
+        if (size != 3 && size != 5) {
+            throw new IllegalArgumentException("Blur kernel must be 3 or 5: " + size);
+        }
+    }
+    
+    @Override
+    public void grayscale(byte[] rgba, int rgbaOffset, byte[] out, int width, int height) {
+        detector.grayscale(rgba, rgbaOffset, out, width, height);
+    }
+    
+    @Override
+    public void detectEdges(byte[] rgba, int rgbaOffset, byte[] edges, int width, int height) {
+        CannyEdgeDetector.checkFrame(rgba.length - rgbaOffset, edges.length, width, height);
+        if (gray == null || gray.length != width * height) {
+            gray = new byte[width * height];
+        }
+        CannyEdgeDetector.rgbaToGray(rgba, rgbaOffset, width, gray, 0, 0, height);
+        detect(gray, edges, width, height);
+    }
+    
+    @Override
+    public void detectEdgesFromLuma(byte[] luma, byte[] edges, int width, int height) {
+        CannyEdgeDetector.checkLuma(luma.length, edges.length, width, height);
+        detect(luma, edges, width, height);
+    }
+    
+    /**
+     * Drops the cached frame, so the next one is computed in full.
+     */
+    public void reset() {
+        width = 0;
+        height = 0;
+    }
+    
+    private void detect(byte[] luma, byte[] out, int width, int height) {
+        frameCount++;
+        if (this.width != width || this.height != height) {
+            allocate(width, height);
+            System.arraycopy(luma, 0, reference, 0, width * height);
+            computeFull();
+            blockCount += blocksX * blocksY;
+        } else if (markDirtyBlocks(luma) == 0) {
+            skippedFrameCount++;
+        } else {
+            recomputeDirtyBlocks();
+        }
+        System.arraycopy(edges, 0, out, 0, width * height);
+    }
+    
+    private void allocate(int width, int height) {
+        this.width = width;
+        this.height = height;
+        blocksX = (width + blockSize - 1) / blockSize;
+        blocksY = (height + blockSize - 1) / blockSize;
+        reference = new byte[width * height];
+        blurred = new byte[width * height];
+        blurRows = new int[width * height];
+        map = CannyEdgeDetector.newMap(width, height);
+        workMap = new byte[map.length];
+        edges = new byte[width * height];
+        dirty = new boolean[blocksX * blocksY];
+    }
+    
+    private void computeFull() {
+        CannyEdgeDetector.gaussianBlur(reference, 0, blurred, 0, blurRows, width, height, 0, height);
+        CannyEdgeDetector.nonMaxSuppression(blurred, 0, map, gradientRows, width, height, 0, height,
+                detector.getLowThreshold(), detector.getHighThreshold());
+        linkEdges();
+    }
+    
+    /**
+     * Flags blocks that differ from the reference and copies them into it.
+     *
+     * @return the number of dirty blocks
+     */
+    private int markDirtyBlocks(byte[] luma) {
+        int dirtyCount = 0;
+        for (int by = 0; by < blocksY; by++) {
+            int y0 = by * blockSize;
+            int y1 = Math.min(height, y0 + blockSize);
+            for (int bx = 0; bx < blocksX; bx++) {
+                int x0 = bx * blockSize;
+                int x1 = Math.min(width, x0 + blockSize);
+                boolean changed = blockChanged(luma, x0, x1, y0, y1);
+                if (changed) {
+                    for (int y = y0; y < y1; y++) {
+                        System.arraycopy(luma, y * width + x0, reference, y * width + x0, x1 - x0);
+                    }
+                    dirtyCount++;
+                }
+                dirty[by * blocksX + bx] = changed;
+            }
+        }
+        blockCount += blocksX * blocksY;
+        cleanBlockCount += blocksX * blocksY - dirtyCount;
+        return dirtyCount;
+    }
+    
+    private boolean blockChanged(byte[] luma, int x0, int x1, int y0, int y1) {
+        int threshold = changeThreshold;
+        for (int y = y0; y < y1; y++) {
+            int end = y * width + x1;
+            for (int i = y * width + x0; i < end; i++) {
+                int d = (luma[i] & 0xFF) - (reference[i] & 0xFF);
+                if (d > threshold || d < -threshold) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+    
+    /**
+     * Redoes blur, then suppression, over each horizontal run of dirty blocks. All blurs go
+     * first: a block's suppression halo reads blurred pixels of its dirty neighbours.
+     */
+    private void recomputeDirtyBlocks() {
+        int low = detector.getLowThreshold();
+        int high = detector.getHighThreshold();
+        for (int pass = 0; pass < 2; pass++) {
+            int halo = pass == 0 ? CannyEdgeDetector.BLUR_RADIUS : MAP_HALO;
+            for (int by = 0; by < blocksY; by++) {
+                int y0 = Math.max(0, by * blockSize - halo);
+                int y1 = Math.min(height, (by + 1) * blockSize + halo);
+                int bx = 0;
+                while (bx < blocksX) {
+                    if (!dirty[by * blocksX + bx]) {
+                        bx++;
+                        continue;
+                    }
+                    int runStart = bx;
+                    while (bx < blocksX && dirty[by * blocksX + bx]) {
+                        bx++;
+                    }
+                    int x0 = Math.max(0, runStart * blockSize - halo);
+                    int x1 = Math.min(width, bx * blockSize + halo);
+                    if (pass == 0) {
+                        CannyEdgeDetector.gaussianBlurRect(reference, blurred, blurRows, width, height, x0, x1, y0, y1);
+                    } else {
+                        CannyEdgeDetector.nonMaxSuppressionRect(blurred, map, gradientRows, width, height,
+                                x0, x1, y0, y1, low, high);
+                    }
+                }
+            }
+        }
+        linkEdges();
+    }
+    
+    /**
+     * Hysteresis on a copy, so {@link #map} keeps the unlinked values later frames patch.
+     */
+    private void linkEdges() {
+        System.arraycopy(map, 0, workMap, 0, map.length);
+        detector.hysteresis(workMap, edges, width, height);
+    }
+    
+    public long getFrameCount() {
+        return frameCount;
+    }
+    
+    public long getSkippedFrameCount() {
+        return skippedFrameCount;
+    }
+    
+    /**
+     * Fraction of frames returned from cache without any recompute.
+     */
+    public double getSkippedFrameFraction() {
+        return frameCount == 0 ? 0 : (double) skippedFrameCount / frameCount;
+    }
+    
+    /**
+     * Fraction of blocks that needed no recompute, over all frames seen.
+     */
+    public double getSkippedBlockFraction() {
+        return blockCount == 0 ? 0 : (double) cleanBlockCount / blockCount;
+    }
+    
+    public String describeStats() {
+        return String.format(Locale.US, "incremental[frames=%d skipped=%.1f%% blocks skipped=%.1f%%]",
+                frameCount, 100 * getSkippedFrameFraction(), 100 * getSkippedBlockFraction());
+    }
+}
@@ -0,0 +1,248 @@
+package com.example.edgedetectionviewer;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Pure-Java {@link FrameProcessor}. Produces the same pixels as the OpenCV path and runs on
+ * any JVM, so the hot path can be tested and benchmarked without a device.
+ */
+public class JavaFrameProcessor implements FrameProcessor {
+    private final EdgeDetector detector;
+    private final OutputFormat outputFormat;
+    private QualityLevel quality = QualityLevel.FULL;
+    
+    // Staging for direct buffers and the single-channel result, reused across frames
+    private byte[] input;
+    private byte[] output;
+    private byte[] plane;
+    private byte[] luma;
+    private byte[] smallEdges;
+    private final ImagePyramid pyramid = new ImagePyramid();
+    private RegionEdgeDetector regionDetector;
+    private byte[] regionEdges;
+    
+    public JavaFrameProcessor() {
+        this(new CannyEdgeDetector());
+    }
+    
+    /**
+     * Uses the given engine, e.g. a {@link TiledEdgeDetector} to spread frames over all cores.
+     */
+    public JavaFrameProcessor(EdgeDetector detector) {
+        this(detector, OutputFormat.RGBA);
+    }
+    
+    public JavaFrameProcessor(EdgeDetector detector, OutputFormat outputFormat) {
+        this.detector = detector;
+        this.outputFormat = outputFormat;
+    }
+    
+    @Override
+    public OutputFormat getOutputFormat() {
+        return outputFormat;
+    }
+    
+    @Override
+    public void setQualityLevel(QualityLevel level) {
+        detector.setBlurKernelSize(level.getBlurKernelSize());
+        quality = level;
+    }
+    
+    @Override
+    public boolean processFrame(ByteBuffer input, ByteBuffer output, int width, int height, boolean applyEdgeDetection) {
+        int frameSize = width * height * 4;
+        if (width <= 0 || height <= 0) {
+            throw new IllegalArgumentException("Invalid frame size: " + width + "x" + height);
+        }
+        if (input.capacity() < frameSize) {
+            throw new IllegalArgumentException("Buffer too small for " + width + "x" + height + " RGBA frame");
+        }
+        checkOutput(output, width, height);
+        
+        byte[] rgba;
+        int rgbaOffset;
+        if (input.hasArray()) {
+            rgba = input.array();
+            rgbaOffset = input.arrayOffset();
+        } else {
+            if (this.input == null || this.input.length != frameSize) {
+                this.input = new byte[frameSize];
+            }
+            copyIn(input, this.input, frameSize);
+            rgba = this.input;
+            rgbaOffset = 0;
+        }
+        
+        byte[] plane = target(output, width, height);
+        if (applyEdgeDetection && quality.getPyramidLevel() > 0) {
+            byte[] gray = lumaStaging(width, height);
+            detector.grayscale(rgba, rgbaOffset, gray, width, height);
+            detectReduced(gray, plane, width, height);
+        } else if (applyEdgeDetection) {
+            detector.detectEdges(rgba, rgbaOffset, plane, width, height);
+        } else {
+            detector.grayscale(rgba, rgbaOffset, plane, width, height);
+        }
+        writeOutput(plane, output, width, height);
+        return true;
+    }
+    
+    /**
+     * Direct planes are packed into a staging array first; a heap plane without row padding
+     * is used in place.
+     */
+    @Override
+    public boolean processLuma(ByteBuffer luma, int rowStride, ByteBuffer output, int width, int height, boolean applyEdgeDetection) {
+        LumaFrame.checkPlane(luma, width, height, rowStride);
+        checkOutput(output, width, height);
+        
+        byte[] gray;
+        if (luma.hasArray() && luma.arrayOffset() == 0 && rowStride == width) {
+            gray = luma.array();
+        } else {
+            gray = lumaStaging(width, height);
+            LumaFrame.pack(luma, rowStride, gray, width, height);
+        }
+        
+        if (applyEdgeDetection) {
+            byte[] plane = target(output, width, height);
+            if (quality.getPyramidLevel() > 0) {
+                detectReduced(gray, plane, width, height);
+            } else {
+                detector.detectEdgesFromLuma(gray, plane, width, height);
+            }
+            writeOutput(plane, output, width, height);
+        } else {
+            writeOutput(gray, output, width, height);
+        }
+        return true;
+    }
+    
+    /**
+     * Crops each region straight from the plane, direct or heap; see {@link RegionEdgeDetector}.
+     */
+    @Override
+    public boolean processLumaRegions(ByteBuffer luma, int rowStride, int width, int height, RegionSet regions, ByteBuffer output) {
+        int size = regions.getOutputSize();
+        if (output.capacity() < size) {
+            throw new IllegalArgumentException("Buffer too small for " + size + " bytes of regions");
+        }
+        if (regionDetector == null) {
+            regionDetector = new RegionEdgeDetector(detector instanceof CannyEdgeDetector
+                    ? (CannyEdgeDetector) detector : new CannyEdgeDetector());
+        }
+        regionDetector.setBlurKernelSize(quality.getBlurKernelSize());
+        
+        if (output.hasArray() && output.arrayOffset() == 0) {
+            regionDetector.detect(luma, rowStride, width, height, regions, output.array(), 0);
+        } else {
+            if (regionEdges == null || regionEdges.length < size) {
+                regionEdges = new byte[size];
+            }
+            regionDetector.detect(luma, rowStride, width, height, regions, regionEdges, 0);
+            copyOut(regionEdges, output, size);
+        }
+        regions.applyMasks(output);
+        return true;
+    }
+    
+    private byte[] lumaStaging(int width, int height) {
+        if (luma == null || luma.length != width * height) {
+            luma = new byte[width * height];
+        }
+        return luma;
+    }
+    
+    /**
+     * Edges of a downscaled copy of {@code gray}, scaled back up into {@code plane}.
+     */
+    private void detectReduced(byte[] gray, byte[] plane, int width, int height) {
+        int smallWidth = quality.scale(width);
+        int smallHeight = quality.scale(height);
+        byte[] small = pyramid.down(gray, width, height, quality.getPyramidLevel());
+        if (smallEdges == null || smallEdges.length != smallWidth * smallHeight) {
+            smallEdges = new byte[smallWidth * smallHeight];
+        }
+        detector.detectEdgesFromLuma(small, smallEdges, smallWidth, smallHeight);
+        pyramid.up(smallEdges, smallWidth, smallHeight, plane, width, height);
+    }
+    
+    private void checkOutput(ByteBuffer output, int width, int height) {
+        if (output.capacity() < outputFormat.getFrameSize(width, height)) {
+            throw new IllegalArgumentException("Buffer too small for " + width + "x" + height + " " + outputFormat + " frame");
+        }
+    }
+    
+    /**
+     * Where the single-channel result goes: straight into a heap output that is already in
+     * that layout, otherwise a staging plane.
+     */
+    private byte[] target(ByteBuffer output, int width, int height) {
+        if (outputFormat == OutputFormat.LUMINANCE && output.hasArray() && output.arrayOffset() == 0) {
+            return output.array();
+        }
+        if (plane == null || plane.length != width * height) {
+            plane = new byte[width * height];
+        }
+        return plane;
+    }
+    
+    private void writeOutput(byte[] plane, ByteBuffer output, int width, int height) {
+        if (outputFormat == OutputFormat.LUMINANCE) {
+            if (!output.hasArray() || output.array() != plane) {
+                copyOut(plane, output, width * height);
+            }
+            return;
+        }
+        
+        int frameSize = width * height * 4;
+        if (output.hasArray()) {
+            expandToRgba(plane, output.array(), output.arrayOffset(), width * height);
+        } else {
+            if (this.output == null || this.output.length != frameSize) {
+                this.output = new byte[frameSize];
+            }
+            expandToRgba(plane, this.output, 0, width * height);
+            copyOut(this.output, output, frameSize);
+        }
+    }
+    
+    @Override
+    public void release() {
+        input = null;
+        output = null;
+        plane = null;
+        luma = null;
+        smallEdges = null;
+        regionEdges = null;
+    }
+    
+    /**
+     * GRAY2RGBA: replicates each value into R, G and B with opaque alpha.
+     */
+    static void expandToRgba(byte[] plane, byte[] rgba, int rgbaOffset, int pixels) {
+        int d = rgbaOffset;
+        for (int i = 0; i < pixels; i++, d += 4) {
+            byte v = plane[i];
+            rgba[d] = v;
+            rgba[d + 1] = v;
+            rgba[d + 2] = v;
+            rgba[d + 3] = (byte) 255;
+        }
+    }
+    
+    // Absolute bulk copies without duplicate(), which would allocate per frame
+    private static void copyIn(ByteBuffer source, byte[] target, int length) {
+        int position = source.position();
+        source.position(0);
+        source.get(target, 0, length);
+        source.position(position);
+    }
+    
+    private static void copyOut(byte[] source, ByteBuffer target, int length) {
+        int position = target.position();
+        target.position(0);
+        target.put(source, 0, length);
+        target.position(position);
+    }
+}
@@ -0,0 +1,149 @@
+package com.example.edgedetectionviewer;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free latency histogram with HDR-style log-linear buckets: each power-of-two range is
+ * split into 64 linear sub-buckets, so any recorded value is resolved to within 1/64 (about
+ * 1.6 %) from nanoseconds up to a minute, in a fixed 16 KB of counters.
+ *
+ * Recording is one atomic increment plus one atomic add and never allocates, so any number
+ * of threads can record into the same histogram from the frame path. Readers take a
+ * {@link Snapshot}; counts recorded while it is being copied may or may not be included.
+ */
+public final class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 7;
+    private static final int SUB_BUCKET_HALF = 1 << (SUB_BUCKET_BITS - 1);
+    
+    /**
+     * Largest value resolved; longer latencies (about 68 s) land in the top bucket.
+     */
+    public static final long HIGHEST_TRACKABLE_VALUE = (1L << 36) - 1;
+    
+    private static final int BUCKET_COUNT = (36 - SUB_BUCKET_BITS + 2) * SUB_BUCKET_HALF;
+    
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLong total = new AtomicLong();
+    
+    /**
+     * Records one value, normally a duration in nanoseconds. Negative values count as zero.
+     */
+    public void record(long value) {
+        long v = value < 0 ? 0 : Math.min(value, HIGHEST_TRACKABLE_VALUE);
+        counts.incrementAndGet(bucketIndex(v));
+        total.addAndGet(v);
+    }
+    
+    public void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            counts.set(i, 0);
+        }
+        total.set(0);
+    }
+    
+    public Snapshot snapshot() {
+        long[] copy = new long[BUCKET_COUNT];
+        long count = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            copy[i] = counts.get(i);
+            count += copy[i];
+        }
+        return new Snapshot(copy, count, total.get());
+    }
+    
+    /**
+     * Values below 128 get a bucket each; above that, the top 7 bits pick the bucket.
+     */
+    static int bucketIndex(long value) {
+        int shift = Math.max(0, Long.SIZE - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS);
+        return (shift << (SUB_BUCKET_BITS - 1)) + (int) (value >>> shift);
+    }
+    
+    static long lowestValueIn(int index) {
+        int shift = Math.max(0, (index >> (SUB_BUCKET_BITS - 1)) - 1);
+        return (long) (index - (shift << (SUB_BUCKET_BITS - 1))) << shift;
+    }
+    
+    static long highestValueIn(int index) {
+        int shift = Math.max(0, (index >> (SUB_BUCKET_BITS - 1)) - 1);
+        return lowestValueIn(index) + (1L << shift) - 1;
+    }
+    
+    /**
+     * Immutable copy of the counts at one point in time.
+     */
+    public static final class Snapshot {
+        private final long[] counts;
+        private final long count;
+        private final long total;
+        
+        Snapshot(long[] counts, long count, long total) {
+            this.counts = counts;
+            this.count = count;
+            this.total = total;
+        }
+        
+        public long getCount() {
+            return count;
+        }
+        
+        public double getMean() {
+            return count == 0 ? 0 : (double) total / count;
+        }
+        
+        /**
+         * Value at or below which the given percentage (0-100) of recorded values fall,
+         * reported as the top of its bucket, or 0 if nothing was recorded.
+         */
+        public long getValueAtPercentile(double percentile) {
+            if (count == 0) {
+                return 0;
+            }
+            long rank = Math.max(1, (long) Math.ceil(Math.min(percentile, 100) / 100 * count));
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    return highestValueIn(i);
+                }
+            }
+            return getMax();
+        }
+        
+        public long getP50() {
+            return getValueAtPercentile(50);
+        }
+        
+        public long getP99() {
+            return getValueAtPercentile(99);
+        }
+        
+        public long getP999() {
+            return getValueAtPercentile(99.9);
+        }
+        
+        public long getMax() {
+            for (int i = counts.length - 1; i >= 0; i--) {
+                if (counts[i] != 0) {
+                    return highestValueIn(i);
+                }
+            }
+            return 0;
+        }
+        
+        /**
+         * Values recorded after {@code earlier} was taken from the same histogram, e.g. for
+         * per-interval percentiles from a cumulative histogram.
+         */
+        public Snapshot since(Snapshot earlier) {
+            long[] delta = new long[counts.length];
+            long deltaCount = 0;
+            for (int i = 0; i < delta.length; i++) {
+                delta[i] = Math.max(0, counts[i] - earlier.counts[i]);
+                deltaCount += delta[i];
+            }
+            return new Snapshot(delta, deltaCount, Math.max(0, total - earlier.total));
+        }
+    }
+}
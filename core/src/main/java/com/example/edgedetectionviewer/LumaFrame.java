@@ -0,0 +1,159 @@
+package com.example.edgedetectionviewer;
+
+import java.nio.ByteBuffer;
+
+/**
+ * An 8-bit luminance plane borrowed from the camera, e.g. the Y plane of a YUV_420_888
+ * image, described in place: rows start {@code rowStride} bytes apart and the padding
+ * between them is never read, so the plane reaches the processor without a copy.
+ *
+ * Wrappers are reusable: {@link #set} points one at the next plane, and {@link #release()}
+ * closes the plane's owner (the camera image) before handing the wrapper to its recycler.
+ */
+public final class LumaFrame implements CapturedFrame {
+    
+    /**
+     * Takes back a released wrapper, on whichever thread released it.
+     */
+    public interface Recycler {
+        void recycle(LumaFrame frame);
+    }
+    
+    private final Recycler recycler;
+    
+    private ByteBuffer data;
+    private int width;
+    private int height;
+    private int rowStride;
+    private AutoCloseable owner;
+    private long timestampNanos;
+    
+    /**
+     * @param recycler receives the wrapper after release, or null if it is not reused
+     */
+    public LumaFrame(Recycler recycler) {
+        this.recycler = recycler;
+    }
+    
+    /**
+     * Points this wrapper at a plane, captured now.
+     *
+     * @param pixelStride must be 1; Y planes are never interleaved
+     * @param owner closed on {@link #release()}, or null
+     */
+    public void set(ByteBuffer data, int width, int height, int rowStride, int pixelStride, AutoCloseable owner) {
+        if (pixelStride != 1) {
+            throw new IllegalArgumentException("Interleaved luma planes are not supported: pixelStride " + pixelStride);
+        }
+        checkPlane(data, width, height, rowStride);
+        this.data = data;
+        this.width = width;
+        this.height = height;
+        this.rowStride = rowStride;
+        this.owner = owner;
+        timestampNanos = System.nanoTime();
+    }
+    
+    public ByteBuffer getData() {
+        return data;
+    }
+    
+    @Override
+    public int getWidth() {
+        return width;
+    }
+    
+    @Override
+    public int getHeight() {
+        return height;
+    }
+    
+    /**
+     * When the wrapper was last {@link #set}.
+     */
+    @Override
+    public long getTimestampNanos() {
+        return timestampNanos;
+    }
+    
+    public int getRowStride() {
+        return rowStride;
+    }
+    
+    @Override
+    public boolean processInto(FrameProcessor processor, ByteBuffer output, boolean applyEdgeDetection) {
+        return processor.processLuma(data, rowStride, output, width, height, applyEdgeDetection);
+    }
+    
+    @Override
+    public boolean processRegionsInto(FrameProcessor processor, RegionSet regions, ByteBuffer packed) {
+        return processor.processLumaRegions(data, rowStride, width, height, regions, packed);
+    }
+    
+    /**
+     * Copies the plane into {@code packed} with the row padding removed.
+     */
+    public void copyTo(byte[] packed) {
+        pack(data, rowStride, packed, width, height);
+    }
+    
+    @Override
+    public void release() {
+        AutoCloseable closeable = owner;
+        data = null;
+        owner = null;
+        try {
+            if (closeable != null) {
+                closeable.close();
+            }
+        } catch (Exception e) {
+            throw new IllegalStateException("Failed to close luma plane owner", e);
+        } finally {
+            if (recycler != null) {
+                recycler.recycle(this);
+            }
+        }
+    }
+    
+    /**
+     * Bytes a plane needs: the last row may stop right after its last pixel, as camera
+     * planes often do, so the padding of the final row is not required.
+     */
+    public static int requiredCapacity(int width, int height, int rowStride) {
+        return rowStride * (height - 1) + width;
+    }
+    
+    /**
+     * @throws IllegalArgumentException if the plane cannot hold a frame of this geometry
+     */
+    public static void checkPlane(ByteBuffer data, int width, int height, int rowStride) {
+        if (width <= 0 || height <= 0) {
+            throw new IllegalArgumentException("Invalid frame size: " + width + "x" + height);
+        }
+        if (rowStride < width) {
+            throw new IllegalArgumentException("Row stride " + rowStride + " shorter than width " + width);
+        }
+        if (data.capacity() < requiredCapacity(width, height, rowStride)) {
+            throw new IllegalArgumentException("Buffer too small for " + width + "x" + height
+                    + " luma plane with row stride " + rowStride);
+        }
+    }
+    
+    /**
+     * Strips row padding: row y of the plane lands at y * width. Absolute positioning only,
+     * so nothing is allocated; the source position is restored.
+     */
+    static void pack(ByteBuffer source, int rowStride, byte[] packed, int width, int height) {
+        int position = source.position();
+        if (rowStride == width) {
+            source.position(0);
+            source.get(packed, 0, width * height);
+        } else {
+            for (int y = 0; y < height; y++) {
+                source.position(y * rowStride);
+                source.get(packed, y * width, width);
+            }
+        }
+        source.position(position);
+    }
+}
@@ -0,0 +1,29 @@
+package com.example.edgedetectionviewer;
+
+/**
+ * Pixel layout of the frames a {@link FrameProcessor} produces.
+ *
+ * Edge and grayscale results hold one channel of data; {@link #LUMINANCE} carries exactly
+ * that, while {@link #RGBA} replicates it for consumers that need four channels.
+ */
+public enum OutputFormat {
+    /** Gray value in R, G and B with opaque alpha, 4 bytes per pixel. */
+    RGBA(4),
+    
+    /** One 8-bit value per pixel: 255/0 for edges, luminance otherwise. */
+    LUMINANCE(1);
+    
+    private final int bytesPerPixel;
+    
+    OutputFormat(int bytesPerPixel) {
+        this.bytesPerPixel = bytesPerPixel;
+    }
+    
+    public int getBytesPerPixel() {
+        return bytesPerPixel;
+    }
+    
+    public int getFrameSize(int width, int height) {
+        return width * height * bytesPerPixel;
+    }
+}
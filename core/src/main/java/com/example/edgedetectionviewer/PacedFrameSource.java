@@ -0,0 +1,294 @@
+package com.example.edgedetectionviewer;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A {@link FrameSource} producing luminance frames on its own thread, at a fixed rate or as
+ * fast as the target takes them.
+ *
+ * Frames are {@link LumaFrame}s over a few direct planes owned by the source, recycled when
+ * the target releases them, so a running source allocates nothing. At a fixed rate the
+ * source behaves like a camera: a frame due while the target holds every plane is dropped,
+ * and a frame late by a whole interval moves the schedule back rather than bursting.
+ * Unthrottled, it fills the next frame while the target works on the current one and hands
+ * it over once that one is released, so a worker that only takes the newest frame skips
+ * none, and waits only for the hand-over.
+ */
+public abstract class PacedFrameSource implements FrameSource {
+    
+    // Everything a pipeline or stream may hold, plus one to fill next
+    private static final int FRAMES = Math.max(FramePipeline.MAX_HELD_CAPTURES, StreamManager.MAX_HELD_CAPTURES) + 1;
+    
+    protected final int width;
+    protected final int height;
+    
+    private final LumaFrame[] frames = new LumaFrame[FRAMES];
+    private final ByteBuffer[] planes = new ByteBuffer[FRAMES];
+    // Free slots and frames the target holds, guarded by the array itself
+    private final int[] free = new int[FRAMES];
+    private int freeCount;
+    private int heldCount;
+    
+    private volatile long frameIntervalNanos;
+    private volatile long frameLimit = Long.MAX_VALUE;
+    
+    private Thread thread;
+    private volatile boolean running;
+    private volatile boolean finished;
+    private volatile long deliveredCount;
+    private volatile long droppedCount;
+    
+    /**
+     * @param frameRate frames per second, 0 for unthrottled
+     */
+    protected PacedFrameSource(int width, int height, double frameRate) {
+        if (width <= 0 || height <= 0) {
+            throw new IllegalArgumentException("Invalid frame size: " + width + "x" + height);
+        }
+        this.width = width;
+        this.height = height;
+        setFrameRate(frameRate);
+        LumaFrame.Recycler recycler = new LumaFrame.Recycler() {
+            @Override
+            public void recycle(LumaFrame frame) {
+                release(frame);
+            }
+        };
+        for (int i = 0; i < FRAMES; i++) {
+            frames[i] = new LumaFrame(recycler);
+            free[freeCount++] = i;
+        }
+    }
+    
+    @Override
+    public int getWidth() {
+        return width;
+    }
+    
+    @Override
+    public int getHeight() {
+        return height;
+    }
+    
+    /**
+     * @param frameRate frames per second, 0 to hand frames over as fast as the target takes them
+     */
+    public void setFrameRate(double frameRate) {
+        if (frameRate < 0 || Double.isNaN(frameRate) || Double.isInfinite(frameRate)) {
+            throw new IllegalArgumentException("Invalid frame rate: " + frameRate);
+        }
+        frameIntervalNanos = frameRate == 0 ? 0 : Math.round(TimeUnit.SECONDS.toNanos(1) / frameRate);
+    }
+    
+    /**
+     * Stops the source after this many frames, delivered or dropped.
+     */
+    public void setFrameLimit(long frames) {
+        if (frames < 0) {
+            throw new IllegalArgumentException("Negative frame limit: " + frames);
+        }
+        frameLimit = frames;
+    }
+    
+    @Override
+    public synchronized void start(final CaptureTarget target) {
+        if (thread != null) {
+            throw new IllegalStateException("Source already started");
+        }
+        running = true;
+        finished = false;
+        thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    produceLoop(target);
+                } finally {
+                    finished = true;
+                }
+            }
+        }, getClass().getSimpleName());
+        thread.start();
+    }
+    
+    @Override
+    public synchronized void stop() {
+        Thread t = thread;
+        if (t == null) {
+            return;
+        }
+        running = false;
+        synchronized (free) {
+            free.notifyAll();
+        }
+        LockSupport.unpark(t);
+        boolean interrupted = false;
+        while (t.isAlive()) {
+            try {
+                t.join();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        thread = null;
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+    
+    /**
+     * Whether the source ran out of frames or reached its frame limit.
+     */
+    public boolean isFinished() {
+        return finished;
+    }
+    
+    @Override
+    public long getDeliveredCount() {
+        return deliveredCount;
+    }
+    
+    @Override
+    public long getDroppedCount() {
+        return droppedCount;
+    }
+    
+    /**
+     * Points {@code frame} at frame {@code index}, written into {@code plane} (width bytes
+     * per row) or anywhere else the source holds, with {@link LumaFrame#set}.
+     *
+     * @return false if the source has no more frames
+     */
+    protected abstract boolean produce(long index, LumaFrame frame, ByteBuffer plane);
+    
+    /**
+     * When frame {@code index} is due, in nanoseconds after the first, or -1 for as soon as
+     * the target takes it. Evenly spaced at the frame rate unless a subclass has its own
+     * timing.
+     */
+    protected long dueNanos(long index) {
+        long interval = frameIntervalNanos;
+        return interval == 0 ? -1 : index * interval;
+    }
+    
+    private void produceLoop(CaptureTarget target) {
+        long origin = System.nanoTime();
+        for (long index = 0; running && index < frameLimit; index++) {
+            long due = dueNanos(index);
+            int slot;
+            if (due < 0) {
+                // Frames the target still holds keep their slots, and one more is filled ahead
+                slot = awaitFreeSlot();
+                if (slot < 0) {
+                    return;
+                }
+            } else {
+                long lag = waitUntil(origin + due);
+                if (!running) {
+                    return;
+                }
+                long next = dueNanos(index + 1);
+                if (next >= 0 && lag > next - due) {
+                    // A frame or more behind: later frames keep their spacing from this one
+                    // rather than bursting to catch up
+                    origin += lag;
+                }
+                slot = pollFreeSlot();
+                if (slot < 0) {
+                    droppedCount++;
+                    continue;
+                }
+            }
+            
+            LumaFrame frame = frames[slot];
+            if (planes[slot] == null) {
+                planes[slot] = ByteBuffer.allocateDirect(width * height);
+            }
+            if (!produce(index, frame, planes[slot])) {
+                pushFreeSlot(slot);
+                return;
+            }
+            if (!handOver(due < 0)) {
+                pushFreeSlot(slot);
+                return;
+            }
+            deliveredCount++;
+            target.submit(frame);
+        }
+    }
+    
+    /**
+     * @return how late the wake-up was
+     */
+    private long waitUntil(long deadline) {
+        long now = System.nanoTime();
+        while (running && now < deadline) {
+            LockSupport.parkNanos(this, deadline - now);
+            now = System.nanoTime();
+        }
+        return now - deadline;
+    }
+    
+    private int pollFreeSlot() {
+        synchronized (free) {
+            return freeCount > 0 ? free[--freeCount] : -1;
+        }
+    }
+    
+    private int awaitFreeSlot() {
+        synchronized (free) {
+            while (running && freeCount == 0) {
+                awaitRelease();
+            }
+            return running ? free[--freeCount] : -1;
+        }
+    }
+    
+    /**
+     * Counts a frame as held by the target, first waiting until it holds none if
+     * {@code whenIdle}.
+     *
+     * @return false if the source was stopped while waiting
+     */
+    private boolean handOver(boolean whenIdle) {
+        synchronized (free) {
+            while (whenIdle && running && heldCount > 0) {
+                awaitRelease();
+            }
+            if (!running) {
+                return false;
+            }
+            heldCount++;
+            return true;
+        }
+    }
+    
+    // Called holding the lock
+    private void awaitRelease() {
+        try {
+            free.wait();
+        } catch (InterruptedException e) {
+            // Only stop() ends the wait
+        }
+    }
+    
+    private void pushFreeSlot(int slot) {
+        synchronized (free) {
+            free[freeCount++] = slot;
+            free.notifyAll();
+        }
+    }
+    
+    private void release(LumaFrame frame) {
+        for (int i = 0; i < FRAMES; i++) {
+            if (frames[i] == frame) {
+                synchronized (free) {
+                    heldCount--;
+                    pushFreeSlot(i);
+                }
+                return;
+            }
+        }
+    }
+}
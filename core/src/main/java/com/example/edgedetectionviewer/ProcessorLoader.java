@@ -0,0 +1,352 @@
+package com.example.edgedetectionviewer;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Creates a {@link FrameProcessor} and warms it up on a background thread, so neither
+ * the library load nor the first slow frames hold up the UI or the camera.
+ *
+ * Creation starts with {@link #start()}, in parallel with whatever opens the camera. Once
+ * the frame size is known, {@link #warmUp} has the processor run a few synthetic frames
+ * of that size, at full quality and at each reduced resolution and blur, which pays for JIT compilation,
+ * native first-use costs and scratch allocation before any camera frame. The listener then
+ * gets the processor, typically to pass it to {@link FramePipeline#setProcessor}.
+ *
+ * The loader owns the processor and releases it in {@link #close()}.
+ */
+public final class ProcessorLoader {
+    /**
+     * Edge frames run at full quality; one more frame runs at each reduced resolution and
+     * blur, and one without edges.
+     */
+    public static final int DEFAULT_WARM_UP_FRAMES = 3;
+    
+    /**
+     * Warm-up stops early past this, leaving the rest to the first camera frames.
+     */
+    public static final long DEFAULT_WARM_UP_BUDGET_NANOS = TimeUnit.MILLISECONDS.toNanos(500);
+    
+    public interface Factory {
+        /**
+         * Called on the loader thread.
+         *
+         * @throws RuntimeException or LinkageError if no processor can be made
+         */
+        FrameProcessor create();
+    }
+    
+    public interface Listener {
+        /**
+         * Called on the loader thread once the processor is warm.
+         */
+        void onProcessorReady(FrameProcessor processor);
+        
+        /**
+         * Called on the loader thread if the factory or the warm-up failed; no processor
+         * follows.
+         */
+        void onProcessorFailed(Throwable error);
+    }
+    
+    private final Factory factory;
+    private final StartupTrace trace;
+    private final List<QualityLevel> levels;
+    private int warmUpFrames = DEFAULT_WARM_UP_FRAMES;
+    private long warmUpBudgetNanos = DEFAULT_WARM_UP_BUDGET_NANOS;
+    
+    // Guarded by this
+    private Listener listener;
+    private Thread thread;
+    private boolean closed;
+    private int width;
+    private int height;
+    private boolean luma;
+    private FrameProcessor processor;
+    private boolean ready;
+    private Throwable error;
+    
+    private volatile long firstWarmUpNanos = -1;
+    private volatile long lastWarmUpNanos = -1;
+    
+    /**
+     * @param levels quality levels the processor may be set to, each warmed up with one frame;
+     *               e.g. the governor's ladder
+     */
+    public ProcessorLoader(Factory factory, StartupTrace trace, List<QualityLevel> levels) {
+        this.factory = factory;
+        this.trace = trace;
+        this.levels = levels;
+    }
+    
+    /**
+     * Number of full-quality edge frames to warm up with; 0 skips warm-up entirely. Set it
+     * before {@link #start()}.
+     */
+    public void setWarmUpFrames(int frames) {
+        if (frames < 0) {
+            throw new IllegalArgumentException("Negative warm-up frames: " + frames);
+        }
+        warmUpFrames = frames;
+    }
+    
+    /**
+     * Set it before {@link #start()}.
+     */
+    public void setWarmUpBudget(long nanos) {
+        warmUpBudgetNanos = nanos;
+    }
+    
+    public synchronized void setListener(Listener listener) {
+        this.listener = listener;
+    }
+    
+    /**
+     * Starts creating the processor on the loader thread.
+     */
+    public synchronized void start() {
+        if (thread != null || closed) {
+            throw new IllegalStateException(closed ? "Loader closed" : "Loader already started");
+        }
+        thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                load();
+            }
+        }, "ProcessorLoader");
+        thread.start();
+    }
+    
+    /**
+     * Sets the size and kind of frames to warm up with; the processor is handed over once
+     * they have run. Only the first call counts.
+     *
+     * @param luma warm up {@link FrameProcessor#processLuma}, else {@link FrameProcessor#processFrame}
+     */
+    public synchronized void warmUp(int width, int height, boolean luma) {
+        if (width <= 0 || height <= 0) {
+            throw new IllegalArgumentException("Bad frame size " + width + "x" + height);
+        }
+        if (this.width == 0) {
+            this.width = width;
+            this.height = height;
+            this.luma = luma;
+            notifyAll();
+        }
+    }
+    
+    /**
+     * @return the processor once warm, null before
+     */
+    public synchronized FrameProcessor getProcessor() {
+        return ready ? processor : null;
+    }
+    
+    /**
+     * Waits until the processor is warm.
+     *
+     * @return false if it was not ready in time, or creation failed
+     */
+    public synchronized boolean awaitReady(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (!ready && error == null && !closed && thread != null) {
+            long left = deadline - System.nanoTime();
+            if (left <= 0) {
+                return false;
+            }
+            TimeUnit.NANOSECONDS.timedWait(this, left);
+        }
+        return ready;
+    }
+    
+    /**
+     * Time of the first warm-up frame at full quality, or -1 if none ran. Compared with
+     * {@link #getLastWarmUpNanos()} it shows what a cold first camera frame would have cost.
+     */
+    public long getFirstWarmUpNanos() {
+        return firstWarmUpNanos;
+    }
+    
+    /**
+     * Time of the last warm-up frame at full quality, or -1 if none ran.
+     */
+    public long getLastWarmUpNanos() {
+        return lastWarmUpNanos;
+    }
+    
+    /**
+     * Stops the loader after the step in progress, waits for it and releases the processor.
+     * The caller must have stopped whatever the processor was handed to.
+     */
+    public void close() {
+        Thread t;
+        synchronized (this) {
+            closed = true;
+            notifyAll();
+            t = thread;
+        }
+        if (t != null) {
+            boolean interrupted = false;
+            while (t.isAlive()) {
+                try {
+                    t.join();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        FrameProcessor p;
+        synchronized (this) {
+            p = processor;
+            processor = null;
+            ready = false;
+        }
+        if (p != null) {
+            p.release();
+        }
+    }
+    
+    private void load() {
+        FrameProcessor p;
+        long start = trace.start();
+        try {
+            p = factory.create();
+        } catch (RuntimeException | LinkageError e) {
+            fail(e);
+            return;
+        }
+        trace.end(StartupTrace.Phase.PROCESSOR_CREATE, start);
+        
+        int w;
+        int h;
+        boolean y;
+        synchronized (this) {
+            processor = p;
+            while (width == 0 && !closed) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    // Only close() ends the wait
+                }
+            }
+            if (closed) {
+                return;
+            }
+            w = width;
+            h = height;
+            y = luma;
+        }
+        
+        if (warmUpFrames > 0) {
+            start = trace.start();
+            try {
+                runWarmUp(p, w, h, y);
+            } catch (RuntimeException | LinkageError e) {
+                // A processor that fails on the synthetic frames is not handed over
+                synchronized (this) {
+                    processor = null;
+                }
+                p.release();
+                fail(e);
+                return;
+            }
+            trace.end(StartupTrace.Phase.WARM_UP, start);
+        }
+        
+        Listener l;
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            ready = true;
+            l = listener;
+            notifyAll();
+        }
+        if (l != null) {
+            l.onProcessorReady(p);
+        }
+    }
+    
+    private void fail(Throwable e) {
+        Listener l;
+        synchronized (this) {
+            error = e;
+            l = closed ? null : listener;
+            notifyAll();
+        }
+        if (l != null) {
+            l.onProcessorFailed(e);
+        }
+    }
+    
+    private void runWarmUp(FrameProcessor p, int width, int height, boolean luma) {
+        int bytesPerPixel = luma ? 1 : 4;
+        ByteBuffer input = ByteBuffer.allocateDirect(width * height * bytesPerPixel);
+        fillPattern(input, width, height, bytesPerPixel);
+        ByteBuffer output = ByteBuffer.allocateDirect(p.getOutputFormat().getFrameSize(width, height));
+        long deadline = System.nanoTime() + warmUpBudgetNanos;
+        
+        for (int i = 0; i < warmUpFrames && !isClosed(); i++) {
+            long begin = System.nanoTime();
+            runFrame(p, input, output, width, height, luma, true);
+            long elapsed = System.nanoTime() - begin;
+            if (i == 0) {
+                firstWarmUpNanos = elapsed;
+            }
+            lastWarmUpNanos = elapsed;
+            if (begin + elapsed >= deadline) {
+                break;
+            }
+        }
+        // The frame stride is the caller's; levels differing only in it do the same work
+        List<QualityLevel> warmed = new ArrayList<>();
+        warmed.add(QualityLevel.FULL);
+        for (QualityLevel level : levels) {
+            QualityLevel work = new QualityLevel(level.getPyramidLevel(), level.getBlurKernelSize(), 1);
+            if (warmed.contains(work) || System.nanoTime() > deadline || isClosed()) {
+                continue;
+            }
+            warmed.add(work);
+            p.setQualityLevel(work);
+            runFrame(p, input, output, width, height, luma, true);
+        }
+        p.setQualityLevel(QualityLevel.FULL);
+        if (System.nanoTime() <= deadline && !isClosed()) {
+            runFrame(p, input, output, width, height, luma, false);
+        }
+    }
+    
+    private static void runFrame(FrameProcessor p, ByteBuffer input, ByteBuffer output,
+            int width, int height, boolean luma, boolean edges) {
+        if (luma) {
+            p.processLuma(input, width, output, width, height, edges);
+        } else {
+            p.processFrame(input, output, width, height, edges);
+        }
+    }
+    
+    /**
+     * 16 px checkerboard of gradient and bright squares: enough edges for hysteresis to
+     * trace, so the warm-up takes the same code paths as a camera frame.
+     */
+    static void fillPattern(ByteBuffer frame, int width, int height, int bytesPerPixel) {
+        int i = 0;
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int value = (((x >> 4) + (y >> 4)) & 1) == 0 ? 40 + (x + y) % 64 : 200;
+                for (int c = 0; c < bytesPerPixel; c++) {
+                    frame.put(i++, c == 3 ? (byte) 0xFF : (byte) value);
+                }
+            }
+        }
+    }
+    
+    private synchronized boolean isClosed() {
+        return closed;
+    }
+}
@@ -0,0 +1,306 @@
+package com.example.edgedetectionviewer;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Moves edge detection along a ladder of {@link QualityLevel}s so the measured processing
+ * time per frame stays within a deadline, typically the camera's frame period.
+ *
+ * The worker thread asks {@link #admitFrame()} before each frame and reports the processor
+ * time with {@link #recordFrame(long)}. A level's budget is the deadline times its frame
+ * stride, since skipped frames give the processed ones their time.
+ *
+ * Hysteresis keeps the level from flapping:
+ * <ul>
+ * <li>Decisions use a moving average of at least {@value #MIN_FRAMES_AT_LEVEL} frames at
+ * the current level, in which a frame counts for at most twice the budget, so a single
+ * stall (GC, page fault) cannot trigger a change</li>
+ * <li>Over budget, it drops straight to the first level whose estimated cost fits; far
+ * over budget that can take a few steps, as the capped average underestimates</li>
+ * <li>It only climbs one level, after holding the current one for a while, and only when
+ * the estimated cost there is under {@value #UPGRADE_HEADROOM_PERCENT}% of that budget</li>
+ * <li>A climb to a level that has to be undone within {@link #FLAP_WINDOW_NANOS} doubles
+ * the hold before the next climb to that level; staying there longer resets it</li>
+ * </ul>
+ * Estimates scale the current average by {@link QualityLevel#getRelativeCost()}.
+ */
+public final class QualityGovernor {
+    static final int MIN_FRAMES_AT_LEVEL = 8;
+    static final int UPGRADE_HEADROOM_PERCENT = 70;
+    static final long MIN_UPGRADE_HOLD_NANOS = 2_000_000_000L;
+    static final long MAX_UPGRADE_HOLD_NANOS = 32_000_000_000L;
+    static final long FLAP_WINDOW_NANOS = 5_000_000_000L;
+    private static final int HISTORY_SIZE = 16;
+    // Weight of the newest sample in the moving average: 1/8
+    private static final int SMOOTHING_SHIFT = 3;
+    
+    /**
+     * Time source, replaceable in tests.
+     */
+    public interface Clock {
+        long nanoTime();
+    }
+    
+    public static final Clock SYSTEM_CLOCK = new Clock() {
+        @Override
+        public long nanoTime() {
+            return System.nanoTime();
+        }
+    };
+    
+    public enum Reason {
+        /** The average frame took longer than the level's budget */
+        OVER_DEADLINE,
+        /** The next better level is estimated to fit with room to spare */
+        HEADROOM
+    }
+    
+    /**
+     * One level change and the measurements behind it.
+     */
+    public static final class Change {
+        private final int fromIndex;
+        private final int toIndex;
+        private final QualityLevel to;
+        private final Reason reason;
+        private final long timeNanos;
+        private final long costNanos;
+        private final long budgetNanos;
+        
+        Change(int fromIndex, int toIndex, QualityLevel to, Reason reason, long timeNanos, long costNanos, long budgetNanos) {
+            this.fromIndex = fromIndex;
+            this.toIndex = toIndex;
+            this.to = to;
+            this.reason = reason;
+            this.timeNanos = timeNanos;
+            this.costNanos = costNanos;
+            this.budgetNanos = budgetNanos;
+        }
+        
+        public int getFromIndex() {
+            return fromIndex;
+        }
+        
+        public int getToIndex() {
+            return toIndex;
+        }
+        
+        public QualityLevel getLevel() {
+            return to;
+        }
+        
+        public Reason getReason() {
+            return reason;
+        }
+        
+        /**
+         * Clock time of the change.
+         */
+        public long getTimeNanos() {
+            return timeNanos;
+        }
+        
+        /**
+         * Average frame cost that triggered it: measured for {@link Reason#OVER_DEADLINE},
+         * estimated at the new level for {@link Reason#HEADROOM}.
+         */
+        public long getCostNanos() {
+            return costNanos;
+        }
+        
+        /**
+         * Budget the cost was compared against.
+         */
+        public long getBudgetNanos() {
+            return budgetNanos;
+        }
+        
+        @Override
+        public String toString() {
+            String why = reason == Reason.OVER_DEADLINE
+                    ? String.format(Locale.US, "over deadline, %.1f ms per frame > %.1f ms budget", costNanos / 1e6, budgetNanos / 1e6)
+                    : String.format(Locale.US, "headroom, %.1f ms per frame expected within %.1f ms budget", costNanos / 1e6, budgetNanos / 1e6);
+            return "level " + fromIndex + " -> " + toIndex + " (" + to + "): " + why;
+        }
+    }
+    
+    /**
+     * Called on the worker thread after each level change.
+     */
+    public interface Listener {
+        void onLevelChanged(Change change);
+    }
+    
+    private final List<QualityLevel> ladder;
+    private final long deadlineNanos;
+    private final Clock clock;
+    private final ArrayDeque<Change> history = new ArrayDeque<>();
+    private volatile Listener listener;
+    
+    private volatile int index;
+    private volatile long smoothedCostNanos;
+    private volatile long skippedFrames;
+    private int framesAtLevel;
+    private long frameCounter;
+    private long levelSinceNanos;
+    // Time to hold a level before climbing to each level
+    private final long[] upgradeHoldNanos;
+    private Change lastChange;
+    
+    /**
+     * Uses {@link QualityLevel#DEFAULT_LADDER} and the system clock.
+     */
+    public QualityGovernor(long deadlineNanos) {
+        this(QualityLevel.DEFAULT_LADDER, deadlineNanos, SYSTEM_CLOCK);
+    }
+    
+    /**
+     * @param ladder levels from best to cheapest; starts at the first
+     */
+    public QualityGovernor(List<QualityLevel> ladder, long deadlineNanos, Clock clock) {
+        if (ladder.isEmpty()) {
+            throw new IllegalArgumentException("Empty quality ladder");
+        }
+        if (deadlineNanos <= 0) {
+            throw new IllegalArgumentException("Deadline must be positive: " + deadlineNanos);
+        }
+        this.ladder = new ArrayList<>(ladder);
+        this.deadlineNanos = deadlineNanos;
+        this.clock = clock;
+        upgradeHoldNanos = new long[ladder.size()];
+        Arrays.fill(upgradeHoldNanos, MIN_UPGRADE_HOLD_NANOS);
+        levelSinceNanos = clock.nanoTime();
+    }
+    
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+    
+    public QualityLevel getLevel() {
+        return ladder.get(index);
+    }
+    
+    /**
+     * Position of the current level in the ladder, 0 being the best.
+     */
+    public int getLevelIndex() {
+        return index;
+    }
+    
+    public long getDeadlineNanos() {
+        return deadlineNanos;
+    }
+    
+    /**
+     * Moving average of the processing time per frame at the current level.
+     */
+    public long getSmoothedCostNanos() {
+        return smoothedCostNanos;
+    }
+    
+    public long getSkippedFrameCount() {
+        return skippedFrames;
+    }
+    
+    /**
+     * Worker thread: whether to process the next frame, following the current level's
+     * frame stride. Skipped frames are not reported to {@link #recordFrame}.
+     */
+    public boolean admitFrame() {
+        int stride = ladder.get(index).getFrameStride();
+        if (frameCounter++ % stride == 0) {
+            return true;
+        }
+        skippedFrames++;
+        return false;
+    }
+    
+    /**
+     * Worker thread: reports the processing time of an admitted frame and changes the level
+     * if needed.
+     */
+    public void recordFrame(long processingNanos) {
+        QualityLevel current = ladder.get(index);
+        long sample = Math.min(processingNanos, 2 * budget(current));
+        long cost = framesAtLevel == 0 ? sample
+                : smoothedCostNanos + ((sample - smoothedCostNanos) >> SMOOTHING_SHIFT);
+        smoothedCostNanos = cost;
+        if (++framesAtLevel < MIN_FRAMES_AT_LEVEL) {
+            return;
+        }
+        
+        long now = clock.nanoTime();
+        if (cost > budget(current)) {
+            // Cheapest level if none is expected to fit
+            int target = ladder.size() - 1;
+            for (int i = index + 1; i < ladder.size(); i++) {
+                if (estimate(cost, current, ladder.get(i)) <= budget(ladder.get(i))) {
+                    target = i;
+                    break;
+                }
+            }
+            if (target != index) {
+                change(target, Reason.OVER_DEADLINE, now, cost, budget(current));
+            }
+        } else if (index > 0 && now - levelSinceNanos >= upgradeHoldNanos[index - 1]) {
+            QualityLevel better = ladder.get(index - 1);
+            long estimate = estimate(cost, current, better);
+            long budget = budget(better);
+            if (estimate * 100 < budget * UPGRADE_HEADROOM_PERCENT) {
+                change(index - 1, Reason.HEADROOM, now, estimate, budget);
+            }
+        }
+    }
+    
+    /**
+     * Level changes, oldest first; at most the last {@value #HISTORY_SIZE}.
+     */
+    public List<Change> getRecentChanges() {
+        synchronized (history) {
+            return new ArrayList<>(history);
+        }
+    }
+    
+    public String describeStats() {
+        return String.format(Locale.US, "quality[level=%d/%d (%s) cost=%.1f/%.1f ms skipped=%d changes=%d]",
+                index, ladder.size() - 1, getLevel(), smoothedCostNanos / 1e6, budget(getLevel()) / 1e6,
+                skippedFrames, getRecentChanges().size());
+    }
+    
+    private long budget(QualityLevel level) {
+        return deadlineNanos * level.getFrameStride();
+    }
+    
+    private static long estimate(long cost, QualityLevel from, QualityLevel to) {
+        return (long) (cost * to.getRelativeCost() / from.getRelativeCost());
+    }
+    
+    private void change(int target, Reason reason, long now, long cost, long budget) {
+        if (now - levelSinceNanos >= FLAP_WINDOW_NANOS) {
+            upgradeHoldNanos[index] = MIN_UPGRADE_HOLD_NANOS;
+        } else if (reason == Reason.OVER_DEADLINE && lastChange != null
+                && lastChange.reason == Reason.HEADROOM && lastChange.toIndex == index) {
+            // The climb here did not hold
+            upgradeHoldNanos[index] = Math.min(upgradeHoldNanos[index] * 2, MAX_UPGRADE_HOLD_NANOS);
+        }
+        Change change = new Change(index, target, ladder.get(target), reason, now, cost, budget);
+        index = target;
+        framesAtLevel = 0;
+        levelSinceNanos = now;
+        lastChange = change;
+        synchronized (history) {
+            if (history.size() == HISTORY_SIZE) {
+                history.removeFirst();
+            }
+            history.addLast(change);
+        }
+        Listener l = listener;
+        if (l != null) {
+            l.onLevelChanged(change);
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package com.example.edgedetectionviewer;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * How much work edge detection spends on a frame: the pyramid level it runs at, the blur
+ * kernel and how many captured frames it takes. Output is always full-size; reduced
+ * levels run blur and Canny on a pyrDown'ed frame and scale the edges back up.
+ *
+ * Only {@link #FULL} is pixel-identical between the Java and OpenCV engines.
+ */
+public final class QualityLevel {
+    
+    /**
+     * Full resolution, 5x5 blur, every frame: the pipeline's default.
+     */
+    public static final QualityLevel FULL = new QualityLevel(0, 5, 1);
+    
+    /**
+     * Best to cheapest. Each step cuts the work per second by at least a fifth.
+     */
+    public static final List<QualityLevel> DEFAULT_LADDER = Collections.unmodifiableList(Arrays.asList(
+            FULL,
+            new QualityLevel(0, 3, 1),
+            new QualityLevel(1, 3, 1),
+            new QualityLevel(2, 3, 1),
+            new QualityLevel(2, 3, 2),
+            new QualityLevel(2, 3, 3)));
+    
+    public static final int MAX_PYRAMID_LEVEL = 3;
+    
+    private final int pyramidLevel;
+    private final int blurKernelSize;
+    private final int frameStride;
+    
+    /**
+     * @param pyramidLevel 0 for full resolution, n to halve width and height n times
+     * @param blurKernelSize 5 or 3
+     * @param frameStride process one captured frame in this many
+     */
+    public QualityLevel(int pyramidLevel, int blurKernelSize, int frameStride) {
+        if (pyramidLevel < 0 || pyramidLevel > MAX_PYRAMID_LEVEL) {
+            throw new IllegalArgumentException("Pyramid level out of range: " + pyramidLevel);
+        }
+        if (blurKernelSize != 3 && blurKernelSize != 5) {
+            throw new IllegalArgumentException("Blur kernel must be 3 or 5: " + blurKernelSize);
+        }
+        if (frameStride < 1) {
+            throw new IllegalArgumentException("Frame stride must be positive: " + frameStride);
+        }
+        this.pyramidLevel = pyramidLevel;
+        this.blurKernelSize = blurKernelSize;
+        this.frameStride = frameStride;
+    }
+    
+    public int getPyramidLevel() {
+        return pyramidLevel;
+    }
+    
+    public int getBlurKernelSize() {
+        return blurKernelSize;
+    }
+    
+    public int getFrameStride() {
+        return frameStride;
+    }
+    
+    /**
+     * Estimated cost of one processed frame relative to {@link #FULL}: blur and Canny scale
+     * with the pixel count, and the 3x3 blur saves about a fifth. The frame stride does not
+     * change the cost of a frame, only how many there are.
+     */
+    public double getRelativeCost() {
+        return (blurKernelSize == 3 ? 0.8 : 1.0) / (1 << (2 * pyramidLevel));
+    }
+    
+    /**
+     * Width or height of a frame dimension at this level, as pyrDown rounds it.
+     */
+    public int scale(int size) {
+        for (int i = 0; i < pyramidLevel; i++) {
+            size = (size + 1) / 2;
+        }
+        return size;
+    }
+    
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof QualityLevel)) {
+            return false;
+        }
+        QualityLevel other = (QualityLevel) o;
+        return pyramidLevel == other.pyramidLevel && blurKernelSize == other.blurKernelSize
+                && frameStride == other.frameStride;
+    }
+    
+    @Override
+    public int hashCode() {
+        return (pyramidLevel * 31 + blurKernelSize) * 31 + frameStride;
+    }
+    
+    @Override
+    public String toString() {
+        return String.format(Locale.US, "1/%d scale, %dx%d blur, %s", 1 << pyramidLevel, blurKernelSize,
+                blurKernelSize, frameStride == 1 ? "every frame" : "1 in " + frameStride + " frames");
+    }
+}
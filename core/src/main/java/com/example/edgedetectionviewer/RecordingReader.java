@@ -0,0 +1,284 @@
+package com.example.edgedetectionviewer;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Scans a recording written by {@link FrameRecorder}. Headers are read through a small
+ * reused buffer and raw pixels are memory-mapped one record at a time, so files of any
+ * length are walked without loading them onto the heap.
+ *
+ * <pre>
+ * RecordingReader reader = RecordingReader.open(file);
+ * try {
+ *     while (reader.next()) {
+ *         if (reader.isPacked()) {
+ *             reader.readEdges(edges);
+ *         } else {
+ *             ByteBuffer pixels = reader.mapPixels();
+ *         }
+ *         ...
+ *     }
+ * } finally {
+ *     reader.close();
+ * }
+ * </pre>
+ * Packed edge records are decoded by {@link #next()} itself, since each one is coded
+ * against the one before.
+ *
+ * Not thread-safe.
+ */
+public final class RecordingReader implements Closeable {
+    private final FileChannel channel;
+    private final int recordCount;
+    private final long savedAtMillis;
+    private final long savedAtNanos;
+    private final ByteBuffer header = ByteBuffer.allocate(FrameRecorder.RECORD_HEADER_SIZE);
+    
+    // Current record, valid after next() returned true
+    private int index = -1;
+    private long nextOffset = FrameRecorder.FILE_HEADER_SIZE;
+    private long pixelOffset;
+    private int payloadSize;
+    private int width;
+    private int height;
+    private int bytesPerPixel;
+    private boolean edges;
+    private byte encoding;
+    private long timestampNanos;
+    private long sequence;
+    // Last packed edge record, decoded; deltas apply to it
+    private EdgeMap edgeMap;
+    private ByteBuffer payload = ByteBuffer.allocate(0);
+    
+    private RecordingReader(FileChannel channel, int recordCount, long savedAtMillis, long savedAtNanos) {
+        this.channel = channel;
+        this.recordCount = recordCount;
+        this.savedAtMillis = savedAtMillis;
+        this.savedAtNanos = savedAtNanos;
+    }
+    
+    /**
+     * @throws IOException if the file is not a recording of a known version
+     */
+    public static RecordingReader open(File file) throws IOException {
+        FileChannel channel = new RandomAccessFile(file, "r").getChannel();
+        try {
+            ByteBuffer header = ByteBuffer.allocate(FrameRecorder.FILE_HEADER_SIZE);
+            readFully(channel, header, 0);
+            if (header.getInt(0) != FrameRecorder.MAGIC) {
+                throw new IOException("Not a frame recording: " + file);
+            }
+            short version = header.getShort(4);
+            if (version < 1 || version > FrameRecorder.VERSION) {
+                throw new IOException("Unsupported recording version " + header.getShort(4) + ": " + file);
+            }
+            return new RecordingReader(channel, header.getInt(8), header.getLong(16), header.getLong(24));
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+    
+    public int getRecordCount() {
+        return recordCount;
+    }
+    
+    /**
+     * Wall-clock time of the save, for turning record timestamps into dates together with
+     * {@link #getSavedAtNanos()}.
+     */
+    public long getSavedAtMillis() {
+        return savedAtMillis;
+    }
+    
+    /**
+     * {@link System#nanoTime()} at the save, on the same clock as record timestamps.
+     */
+    public long getSavedAtNanos() {
+        return savedAtNanos;
+    }
+    
+    /**
+     * Advances to the next record.
+     *
+     * @return false after the last one
+     * @throws IOException if the file is truncated, or a header or packed record is
+     *         inconsistent
+     */
+    public boolean next() throws IOException {
+        if (index + 1 >= recordCount) {
+            return false;
+        }
+        header.clear();
+        readFully(channel, header, nextOffset);
+        payloadSize = header.getInt(0);
+        width = header.getInt(4);
+        height = header.getInt(8);
+        bytesPerPixel = header.get(12);
+        edges = header.get(13) != 0;
+        encoding = header.get(14);
+        timestampNanos = header.getLong(16);
+        sequence = header.getLong(24);
+        if (width <= 0 || height <= 0 || bytesPerPixel <= 0 || !validPayload()) {
+            throw new IOException("Corrupt record header at offset " + nextOffset);
+        }
+        pixelOffset = nextOffset + FrameRecorder.RECORD_HEADER_SIZE;
+        if (pixelOffset + payloadSize > channel.size()) {
+            throw new IOException("Truncated record at offset " + nextOffset);
+        }
+        if (encoding != FrameRecorder.ENCODING_RAW) {
+            decodeEdges();
+        }
+        nextOffset = pixelOffset + payloadSize;
+        index++;
+        return true;
+    }
+    
+    private boolean validPayload() {
+        long pixels = (long) width * height;
+        switch (encoding) {
+            case FrameRecorder.ENCODING_RAW:
+                return payloadSize == pixels * bytesPerPixel;
+            case FrameRecorder.ENCODING_BITS:
+                return edges && payloadSize == EdgeMap.packedSize(width, height);
+            case FrameRecorder.ENCODING_RUNS:
+            case FrameRecorder.ENCODING_DELTA:
+                return edges && payloadSize >= 0 && payloadSize < EdgeMap.packedSize(width, height);
+            default:
+                return false;
+        }
+    }
+    
+    private void decodeEdges() throws IOException {
+        if (edgeMap == null || edgeMap.getWidth() != width || edgeMap.getHeight() != height) {
+            if (encoding == FrameRecorder.ENCODING_DELTA) {
+                throw new IOException("Edge delta without a previous map at offset " + nextOffset);
+            }
+            edgeMap = new EdgeMap(width, height);
+        }
+        if (payload.capacity() < payloadSize) {
+            payload = ByteBuffer.allocate(payloadSize);
+        }
+        payload.clear();
+        payload.limit(payloadSize);
+        readFully(channel, payload, pixelOffset);
+        payload.flip();
+        if (encoding == FrameRecorder.ENCODING_BITS) {
+            edgeMap.readFrom(payload);
+            return;
+        }
+        if (encoding == FrameRecorder.ENCODING_RUNS) {
+            edgeMap.clear();
+        }
+        try {
+            EdgeMapCodec.decode(payload, edgeMap);
+        } catch (IllegalArgumentException | BufferUnderflowException e) {
+            throw new IOException("Corrupt edge runs at offset " + nextOffset, e);
+        }
+    }
+    
+    /**
+     * Read-only mapping of the current record's pixels, width * height * bpp bytes. Stays
+     * valid after the reader moves on or is closed.
+     *
+     * @throws IllegalStateException for a packed record; see {@link #readEdges}
+     */
+    public MappedByteBuffer mapPixels() throws IOException {
+        checkRecord();
+        if (encoding != FrameRecorder.ENCODING_RAW) {
+            throw new IllegalStateException("Packed edge record: use readEdges");
+        }
+        return channel.map(FileChannel.MapMode.READ_ONLY, pixelOffset, payloadSize);
+    }
+    
+    /**
+     * Copies the current record's edges into {@code target}, which must be the record's
+     * size. Works for packed records and raw single-channel edge records.
+     *
+     * @throws IllegalStateException for gray or RGBA records
+     */
+    public void readEdges(EdgeMap target) throws IOException {
+        checkRecord();
+        if (encoding != FrameRecorder.ENCODING_RAW) {
+            target.copyFrom(edgeMap);
+        } else if (edges && bytesPerPixel == 1) {
+            if (target.getWidth() != width || target.getHeight() != height) {
+                throw new IllegalArgumentException("Edge map is " + target.getWidth() + "x" + target.getHeight()
+                        + ", record is " + width + "x" + height);
+            }
+            target.packFrom(mapPixels(), 0);
+        } else {
+            throw new IllegalStateException("Not a single-channel edge record");
+        }
+    }
+    
+    /**
+     * Whether the current record holds an edge map rather than pixel bytes.
+     */
+    public boolean isPacked() {
+        return encoding != FrameRecorder.ENCODING_RAW;
+    }
+    
+    /**
+     * Bytes the current record takes in the file after its header.
+     */
+    public int getPayloadSize() {
+        return payloadSize;
+    }
+    
+    private void checkRecord() {
+        if (index < 0) {
+            throw new IllegalStateException("No current record");
+        }
+    }
+    
+    public int getWidth() {
+        return width;
+    }
+    
+    public int getHeight() {
+        return height;
+    }
+    
+    public int getBytesPerPixel() {
+        return bytesPerPixel;
+    }
+    
+    /**
+     * Whether the record holds edges rather than gray (or RGBA) frames.
+     */
+    public boolean isEdges() {
+        return edges;
+    }
+    
+    public long getTimestampNanos() {
+        return timestampNanos;
+    }
+    
+    /**
+     * Position of the frame in the recorder's stream; gaps mark frames that were dropped.
+     */
+    public long getSequence() {
+        return sequence;
+    }
+    
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+    
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long offset) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, offset + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of recording at offset " + (offset + buffer.position()));
+            }
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package com.example.edgedetectionviewer;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Canny over the regions of a {@link RegionSet} only, for
+ * {@link JavaFrameProcessor#processLumaRegions}.
+ *
+ * Each region is cropped from the plane with {@link RegionSet#HALO} pixels of context
+ * (clipped at the frame edges) and run through the detector's kernels on the crop: blur over
+ * the region plus the Sobel reach, suppression over the region, hysteresis over the region.
+ * Work and bytes read scale with the regions' area, not the frame's. Suppression values match
+ * whole-frame detection; an edge that only links to a strong one outside its region is
+ * dropped.
+ *
+ * Scratch grows to the largest cropped region and is then reused, so a steady set of
+ * regions allocates nothing per frame. Not thread-safe.
+ */
+public final class RegionEdgeDetector {
+    private final CannyEdgeDetector detector;
+    private int blurKernelSize = 5;
+    
+    private byte[] crop = new byte[0];
+    private byte[] blurred = new byte[0];
+    private int[] blurRows = new int[0];
+    private byte[] map = new byte[0];
+    private byte[] edges = new byte[0];
+    private final CannyEdgeDetector.GradientRows gradientRows = new CannyEdgeDetector.GradientRows();
+    
+    public RegionEdgeDetector() {
+        this(new CannyEdgeDetector());
+    }
+    
+    /**
+     * Uses {@code detector}'s thresholds.
+     */
+    public RegionEdgeDetector(CannyEdgeDetector detector) {
+        this.detector = detector;
+    }
+    
+    public void setBlurKernelSize(int size) {
+        if (size != 3 && size != 5) {
+            throw new IllegalArgumentException("Blur kernel must be 3 or 5: " + size);
+        }
+        blurKernelSize = size;
+    }
+    
+    /**
+     * Detects edges in each region of a luminance plane into {@code out}, packed as the
+     * region set lays them out from {@code outOffset}.
+     *
+     * @param luma rows of {@code width} bytes, {@code rowStride} bytes apart; only the
+     *             regions and their halo are read
+     */
+    public void detect(ByteBuffer luma, int rowStride, int width, int height, RegionSet regions,
+            byte[] out, int outOffset) {
+        LumaFrame.checkPlane(luma, width, height, rowStride);
+        regions.checkFrame(width, height);
+        if (out.length - outOffset < regions.getOutputSize()) {
+            throw new IllegalArgumentException("Output too small for " + regions.getOutputSize() + " bytes of regions");
+        }
+        int position = luma.position();
+        for (int i = 0; i < regions.size(); i++) {
+            detectRegion(luma, rowStride, width, height, regions.getX(i), regions.getY(i),
+                    regions.getWidth(i), regions.getHeight(i), out, outOffset + regions.getOutputOffset(i));
+        }
+        luma.position(position);
+    }
+    
+    private void detectRegion(ByteBuffer luma, int rowStride, int width, int height,
+            int x, int y, int w, int h, byte[] out, int outOffset) {
+        int cx0 = Math.max(0, x - RegionSet.HALO);
+        int cy0 = Math.max(0, y - RegionSet.HALO);
+        int cw = Math.min(width, x + w + RegionSet.HALO) - cx0;
+        int ch = Math.min(height, y + h + RegionSet.HALO) - cy0;
+        ensureCapacity(cw, ch);
+        
+        for (int r = 0; r < ch; r++) {
+            luma.position((cy0 + r) * rowStride + cx0);
+            luma.get(crop, r * cw, cw);
+        }
+        
+        // The region in crop coordinates, and the blurred pixels its gradients read
+        int rx0 = x - cx0;
+        int ry0 = y - cy0;
+        int reach = CannyEdgeDetector.SOBEL_RADIUS + 1;
+        int bx0 = Math.max(0, rx0 - reach);
+        int bx1 = Math.min(cw, rx0 + w + reach);
+        int by0 = Math.max(0, ry0 - reach);
+        int by1 = Math.min(ch, ry0 + h + reach);
+        if (blurKernelSize == 3) {
+            CannyEdgeDetector.gaussianBlur3Rect(crop, blurred, blurRows, cw, ch, bx0, bx1, by0, by1);
+        } else {
+            CannyEdgeDetector.gaussianBlurRect(crop, blurred, blurRows, cw, ch, bx0, bx1, by0, by1);
+        }
+        
+        // Suppression over the region only; the rest of the map stays empty, so hysteresis
+        // cannot link through the halo
+        Arrays.fill(map, 0, (cw + 2) * (ch + 2), CannyEdgeDetector.MAP_NONE);
+        CannyEdgeDetector.nonMaxSuppressionRect(blurred, map, gradientRows, cw, ch, rx0, rx0 + w, ry0, ry0 + h,
+                detector.getLowThreshold(), detector.getHighThreshold());
+        detector.hysteresis(map, edges, cw, ch);
+        
+        for (int r = 0; r < h; r++) {
+            System.arraycopy(edges, (ry0 + r) * cw + rx0, out, outOffset + r * w, w);
+        }
+    }
+    
+    private void ensureCapacity(int cw, int ch) {
+        int pixels = cw * ch;
+        if (crop.length < pixels) {
+            crop = new byte[pixels];
+            blurred = new byte[pixels];
+            blurRows = new int[pixels];
+            edges = new byte[pixels];
+        }
+        int mapSize = (cw + 2) * (ch + 2);
+        if (map.length < mapSize) {
+            map = new byte[mapSize];
+        }
+    }
+}
@@ -0,0 +1,356 @@
+package com.example.edgedetectionviewer;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Regions of interest for {@link FrameProcessor#processLumaRegions}: rectangles, each
+ * optionally narrowed by a mask, with the layout of their packed results.
+ *
+ * Region i's edges come back as {@code getWidth(i) * getHeight(i)} bytes, one per pixel,
+ * 255 or 0, at {@code getOutputOffset(i)} of the output; {@link #copyToFrame} places them
+ * at {@code getX(i), getY(i)} of a full frame. Pixels a mask leaves out read 0.
+ *
+ * The set has a fixed capacity, so regions can be moved, added and removed between frames
+ * without allocating. Masks are held by reference, not copied: editing one in place takes
+ * effect from the next frame. Not thread-safe; see {@link FramePipeline#setRegions} for
+ * handing regions to a running pipeline.
+ */
+public final class RegionSet {
+    
+    /**
+     * Pixels of context read around each region: the blur radius, then Sobel and the
+     * neighbour test of non-max suppression. With it, suppression inside a region matches
+     * the whole frame's; hysteresis links edges within the region only.
+     */
+    public static final int HALO = CannyEdgeDetector.BLUR_RADIUS + CannyEdgeDetector.SOBEL_RADIUS + 1;
+    
+    // Fields of one region in the layout array, in the order native_processor.cpp reads them
+    static final int X = 0;
+    static final int Y = 1;
+    static final int WIDTH = 2;
+    static final int HEIGHT = 3;
+    static final int OFFSET = 4;
+    static final int FIELDS = 5;
+    
+    private final int[] layout;
+    private final byte[][] masks;
+    private int size;
+    // One blank frame row for bulk clearing, kept across frames; opaque black if rgbaBlank
+    private byte[] blankRow = new byte[0];
+    private boolean rgbaBlank;
+    
+    public RegionSet(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+        }
+        layout = new int[capacity * FIELDS];
+        masks = new byte[capacity][];
+    }
+    
+    public int capacity() {
+        return masks.length;
+    }
+    
+    public int size() {
+        return size;
+    }
+    
+    public boolean isEmpty() {
+        return size == 0;
+    }
+    
+    public void clear() {
+        Arrays.fill(masks, 0, size, null);
+        size = 0;
+    }
+    
+    /**
+     * @return the new region's index
+     * @throws IllegalStateException if the set is full
+     */
+    public int addRect(int x, int y, int width, int height) {
+        return addMask(x, y, width, height, null);
+    }
+    
+    /**
+     * Adds the bounding rectangle of a mask region. Edges are detected over the whole
+     * rectangle, then cleared where the mask is 0.
+     *
+     * @param mask width * height bytes, row by row, nonzero inside the region; null for all of it
+     * @return the new region's index
+     * @throws IllegalStateException if the set is full
+     */
+    public int addMask(int x, int y, int width, int height, byte[] mask) {
+        if (size == masks.length) {
+            throw new IllegalStateException("Region set full: " + size);
+        }
+        checkRegion(x, y, width, height, mask);
+        int index = size++;
+        set(index, x, y, width, height, mask);
+        return index;
+    }
+    
+    /**
+     * Moves or resizes region {@code index}, keeping its mask. A mask no longer matching the
+     * new size is rejected.
+     */
+    public void set(int index, int x, int y, int width, int height) {
+        set(index, x, y, width, height, masks[checkIndex(index)]);
+    }
+    
+    public void set(int index, int x, int y, int width, int height, byte[] mask) {
+        checkIndex(index);
+        checkRegion(x, y, width, height, mask);
+        int f = index * FIELDS;
+        layout[f + X] = x;
+        layout[f + Y] = y;
+        layout[f + WIDTH] = width;
+        layout[f + HEIGHT] = height;
+        masks[index] = mask;
+        updateOffsets(index);
+    }
+    
+    /**
+     * Removes region {@code index}; later regions move down one index.
+     */
+    public void remove(int index) {
+        checkIndex(index);
+        System.arraycopy(layout, (index + 1) * FIELDS, layout, index * FIELDS, (size - index - 1) * FIELDS);
+        System.arraycopy(masks, index + 1, masks, index, size - index - 1);
+        size--;
+        masks[size] = null;
+        updateOffsets(index);
+    }
+    
+    /**
+     * Makes this set a copy of {@code other}, masks shared. Allocates nothing.
+     *
+     * @throws IllegalStateException if other has more regions than this set can hold
+     */
+    public void copyFrom(RegionSet other) {
+        if (other.size > masks.length) {
+            throw new IllegalStateException("Region set full: " + other.size + " regions need copying");
+        }
+        System.arraycopy(other.layout, 0, layout, 0, other.size * FIELDS);
+        System.arraycopy(other.masks, 0, masks, 0, other.size);
+        if (size > other.size) {
+            Arrays.fill(masks, other.size, size, null);
+        }
+        size = other.size;
+    }
+    
+    public int getX(int index) {
+        return layout[checkIndex(index) * FIELDS + X];
+    }
+    
+    public int getY(int index) {
+        return layout[checkIndex(index) * FIELDS + Y];
+    }
+    
+    public int getWidth(int index) {
+        return layout[checkIndex(index) * FIELDS + WIDTH];
+    }
+    
+    public int getHeight(int index) {
+        return layout[checkIndex(index) * FIELDS + HEIGHT];
+    }
+    
+    /**
+     * @return the region's mask, or null if it covers its whole rectangle
+     */
+    public byte[] getMask(int index) {
+        return masks[checkIndex(index)];
+    }
+    
+    /**
+     * Where region {@code index}'s results start in the packed output.
+     */
+    public int getOutputOffset(int index) {
+        return layout[checkIndex(index) * FIELDS + OFFSET];
+    }
+    
+    /**
+     * Bytes of packed output for all regions: their total area.
+     */
+    public int getOutputSize() {
+        if (size == 0) {
+            return 0;
+        }
+        int f = (size - 1) * FIELDS;
+        return layout[f + OFFSET] + layout[f + WIDTH] * layout[f + HEIGHT];
+    }
+    
+    /**
+     * @throws IllegalArgumentException if a region reaches past a {@code width} x {@code height} frame
+     */
+    public void checkFrame(int width, int height) {
+        for (int i = 0; i < size; i++) {
+            int f = i * FIELDS;
+            if (layout[f + X] + layout[f + WIDTH] > width || layout[f + Y] + layout[f + HEIGHT] > height) {
+                throw new IllegalArgumentException("Region " + describe(i) + " outside " + width + "x" + height + " frame");
+            }
+        }
+    }
+    
+    /**
+     * Clears the pixels each region's mask leaves out of the packed output.
+     */
+    void applyMasks(ByteBuffer packed) {
+        for (int i = 0; i < size; i++) {
+            byte[] mask = masks[i];
+            if (mask == null) {
+                continue;
+            }
+            int f = i * FIELDS;
+            int offset = layout[f + OFFSET];
+            int pixels = layout[f + WIDTH] * layout[f + HEIGHT];
+            for (int p = 0; p < pixels; p++) {
+                if (mask[p] == 0) {
+                    packed.put(offset + p, (byte) 0);
+                }
+            }
+        }
+    }
+    
+    /**
+     * Writes packed results into a {@code frameWidth}-wide frame at the regions' positions,
+     * as 255/0 bytes or, in an RGBA frame, opaque white/black. Only region pixels are
+     * written, and of mask regions only those inside the mask, so the rest of the frame keeps
+     * its content. Where regions overlap the later wins.
+     */
+    public void copyToFrame(ByteBuffer packed, ByteBuffer frame, int frameWidth, OutputFormat format) {
+        boolean rgba = format == OutputFormat.RGBA;
+        for (int i = 0; i < size; i++) {
+            int f = i * FIELDS;
+            int x = layout[f + X];
+            int y = layout[f + Y];
+            int width = layout[f + WIDTH];
+            int height = layout[f + HEIGHT];
+            int offset = layout[f + OFFSET];
+            byte[] mask = masks[i];
+            for (int r = 0; r < height; r++) {
+                int s = offset + r * width;
+                int d = (y + r) * frameWidth + x;
+                for (int c = 0; c < width; c++) {
+                    if (mask != null && mask[r * width + c] == 0) {
+                        continue;
+                    }
+                    byte v = packed.get(s + c);
+                    if (rgba) {
+                        int p = (d + c) * 4;
+                        frame.put(p, v);
+                        frame.put(p + 1, v);
+                        frame.put(p + 2, v);
+                        frame.put(p + 3, (byte) 255);
+                    } else {
+                        frame.put(d + c, v);
+                    }
+                }
+            }
+        }
+    }
+    
+    /**
+     * Like {@link #copyToFrame}, but leaves the frame blank (0, or opaque black in RGBA)
+     * outside these regions. The frame must be blank except inside the rectangles of
+     * {@code drawn}, typically the regions last written into it, which are blanked first;
+     * if {@code drawn} is null the whole frame is. Either way only the pixels of both sets
+     * of regions are written, so the cost follows their area rather than the frame's.
+     *
+     * @param drawn regions already written into the frame, or null if unknown; may be this set
+     */
+    public void replaceInFrame(ByteBuffer packed, ByteBuffer frame, int frameWidth, int frameHeight,
+            OutputFormat format, RegionSet drawn) {
+        boolean rgba = format == OutputFormat.RGBA;
+        int rowBytes = frameWidth * format.getBytesPerPixel();
+        if (blankRow.length < rowBytes || rgbaBlank != rgba) {
+            blankRow = new byte[Math.max(rowBytes, blankRow.length)];
+            if (rgba) {
+                for (int p = 3; p < blankRow.length; p += 4) {
+                    blankRow[p] = (byte) 255;
+                }
+            }
+            rgbaBlank = rgba;
+        }
+        int position = frame.position();
+        int limit = frame.limit();
+        frame.clear();
+        if (drawn == null) {
+            for (int y = 0; y < frameHeight; y++) {
+                frame.put(blankRow, 0, rowBytes);
+            }
+        } else {
+            int bytesPerPixel = format.getBytesPerPixel();
+            for (int i = 0; i < drawn.size; i++) {
+                int f = i * FIELDS;
+                int x = drawn.layout[f + X];
+                int y = drawn.layout[f + Y];
+                int width = drawn.layout[f + WIDTH] * bytesPerPixel;
+                for (int r = 0; r < drawn.layout[f + HEIGHT]; r++) {
+                    frame.position(((y + r) * frameWidth + x) * bytesPerPixel);
+                    frame.put(blankRow, 0, width);
+                }
+            }
+        }
+        frame.limit(limit);
+        frame.position(position);
+        copyToFrame(packed, frame, frameWidth, format);
+    }
+    
+    /**
+     * The layout array handed to native code: {@link #FIELDS} ints per region.
+     */
+    int[] layout() {
+        return layout;
+    }
+    
+    private void updateOffsets(int from) {
+        int offset = from == 0 ? 0 : layout[(from - 1) * FIELDS + OFFSET]
+                + layout[(from - 1) * FIELDS + WIDTH] * layout[(from - 1) * FIELDS + HEIGHT];
+        for (int i = from; i < size; i++) {
+            int f = i * FIELDS;
+            layout[f + OFFSET] = offset;
+            offset += layout[f + WIDTH] * layout[f + HEIGHT];
+        }
+    }
+    
+    private static void checkRegion(int x, int y, int width, int height, byte[] mask) {
+        if (width <= 0 || height <= 0) {
+            throw new IllegalArgumentException("Invalid region size: " + width + "x" + height);
+        }
+        if (x < 0 || y < 0) {
+            throw new IllegalArgumentException("Region outside the frame: " + x + "," + y);
+        }
+        if (mask != null && mask.length < width * height) {
+            throw new IllegalArgumentException("Mask too small for " + width + "x" + height + " region");
+        }
+    }
+    
+    private int checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Region " + index + " of " + size);
+        }
+        return index;
+    }
+    
+    private String describe(int index) {
+        int f = index * FIELDS;
+        return layout[f + WIDTH] + "x" + layout[f + HEIGHT] + "+" + layout[f + X] + "+" + layout[f + Y];
+    }
+    
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("regions[");
+        for (int i = 0; i < size; i++) {
+            if (i > 0) {
+                sb.append(' ');
+            }
+            sb.append(describe(i));
+            if (masks[i] != null) {
+                sb.append(" masked");
+            }
+        }
+        return sb.append(']').toString();
+    }
+}
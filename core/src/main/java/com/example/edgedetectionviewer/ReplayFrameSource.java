@@ -0,0 +1,163 @@
+package com.example.edgedetectionviewer;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Plays a recording saved by {@link FrameRecorder} back as luminance frames, either at the
+ * pace it was captured or as fast as the target takes them.
+ *
+ * The file is scanned once when the source is built. Raw single-channel records (gray
+ * frames, or edges saved unpacked) are memory-mapped and handed to the target in place,
+ * without a copy; packed edge records are decoded up front and unpacked into the source's
+ * own planes, one per frame. Records in RGBA, or of a different size from the first usable
+ * one, are skipped; see {@link #getSkippedRecordCount()}.
+ *
+ * At real-time pace frames keep their recorded spacing, with playback looping after a
+ * mean frame interval. Otherwise the frame rate set on the source applies, unthrottled by
+ * default.
+ */
+public final class ReplayFrameSource extends PacedFrameSource implements Closeable {
+    
+    // One of these per frame: a mapped raw record or a decoded edge map
+    private final ByteBuffer[] mapped;
+    private final EdgeMap[] edgeMaps;
+    private final long[] timestamps;
+    private final int skipped;
+    // Time from the first frame of one loop to the first of the next
+    private final long loopNanos;
+    
+    private volatile boolean realTime = true;
+    private volatile boolean looping = true;
+    
+    /**
+     * @throws IOException if the file cannot be read or holds no single-channel records
+     */
+    public ReplayFrameSource(File file) throws IOException {
+        this(scan(file));
+    }
+    
+    private ReplayFrameSource(Scan scan) {
+        super(scan.width, scan.height, 0);
+        int n = scan.timestamps.size();
+        mapped = scan.mapped.toArray(new ByteBuffer[n]);
+        edgeMaps = scan.edgeMaps.toArray(new EdgeMap[n]);
+        timestamps = new long[n];
+        for (int i = 0; i < n; i++) {
+            timestamps[i] = scan.timestamps.get(i);
+        }
+        skipped = scan.skipped;
+        long span = Math.max(0, timestamps[n - 1] - timestamps[0]);
+        loopNanos = n > 1 ? span + span / (n - 1) : 0;
+    }
+    
+    /**
+     * Whether frames follow their recorded timestamps; when off, the frame rate set with
+     * {@link #setFrameRate} applies.
+     */
+    public void setRealTime(boolean realTime) {
+        this.realTime = realTime;
+    }
+    
+    /**
+     * Whether playback starts over after the last frame, or ends the source.
+     */
+    public void setLooping(boolean looping) {
+        this.looping = looping;
+    }
+    
+    public int getFrameCount() {
+        return timestamps.length;
+    }
+    
+    /**
+     * Records left out for being RGBA or of another size.
+     */
+    public int getSkippedRecordCount() {
+        return skipped;
+    }
+    
+    @Override
+    protected long dueNanos(long index) {
+        if (!realTime) {
+            return super.dueNanos(index);
+        }
+        int n = timestamps.length;
+        long loop = index / n;
+        return loop * loopNanos + timestamps[(int) (index % n)] - timestamps[0];
+    }
+    
+    @Override
+    protected boolean produce(long index, LumaFrame frame, ByteBuffer plane) {
+        if (index >= timestamps.length && !looping) {
+            return false;
+        }
+        int i = (int) (index % timestamps.length);
+        if (mapped[i] != null) {
+            frame.set(mapped[i], width, height, width, 1, null);
+        } else {
+            edgeMaps[i].unpackTo(plane, 0);
+            frame.set(plane, width, height, width, 1, null);
+        }
+        return true;
+    }
+    
+    /**
+     * Stops playback. Mappings are released by the garbage collector once frames the target
+     * still holds are gone.
+     */
+    @Override
+    public void close() {
+        stop();
+    }
+    
+    private static Scan scan(File file) throws IOException {
+        Scan scan = new Scan();
+        RecordingReader reader = RecordingReader.open(file);
+        try {
+            while (reader.next()) {
+                boolean packed = reader.isPacked();
+                if (!packed && reader.getBytesPerPixel() != 1) {
+                    scan.skipped++;
+                    continue;
+                }
+                if (scan.timestamps.isEmpty()) {
+                    scan.width = reader.getWidth();
+                    scan.height = reader.getHeight();
+                } else if (reader.getWidth() != scan.width || reader.getHeight() != scan.height) {
+                    scan.skipped++;
+                    continue;
+                }
+                if (packed) {
+                    EdgeMap edges = new EdgeMap(scan.width, scan.height);
+                    reader.readEdges(edges);
+                    scan.edgeMaps.add(edges);
+                    scan.mapped.add(null);
+                } else {
+                    scan.mapped.add(reader.mapPixels());
+                    scan.edgeMaps.add(null);
+                }
+                scan.timestamps.add(reader.getTimestampNanos());
+            }
+        } finally {
+            reader.close();
+        }
+        if (scan.timestamps.isEmpty()) {
+            throw new IOException("No single-channel frames to replay in " + file);
+        }
+        return scan;
+    }
+    
+    private static final class Scan {
+        int width;
+        int height;
+        int skipped;
+        final List<ByteBuffer> mapped = new ArrayList<>();
+        final List<EdgeMap> edgeMaps = new ArrayList<>();
+        final List<Long> timestamps = new ArrayList<>();
+    }
+}
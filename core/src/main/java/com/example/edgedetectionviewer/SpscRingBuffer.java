@@ -0,0 +1,156 @@
+package com.example.edgedetectionviewer;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Lock-free bounded ring between one producer thread and one consumer thread, with a
+ * "latest frame wins" policy: a full ring evicts its oldest entry instead of blocking or
+ * rejecting the new one, and {@link #pollLatest()} skips straight to the newest entry.
+ * Either way the stale entries go to the {@link DropHandler}, so pooled frames can be
+ * released and latency never builds up.
+ *
+ * The producer may evict from the consumer's end, so the head index is advanced by CAS on
+ * both sides; the tail is written by the producer only.
+ */
+public final class SpscRingBuffer<T> {
+    
+    /**
+     * Receives entries that were skipped or evicted, on whichever thread dropped them.
+     */
+    public interface DropHandler<T> {
+        void onDrop(T item);
+    }
+    
+    private final String name;
+    private final AtomicReferenceArray<T> slots;
+    private final int mask;
+    private final DropHandler<T> dropHandler;
+    
+    private final AtomicLong head = new AtomicLong();
+    private final AtomicLong tail = new AtomicLong();
+    
+    // Stats; each counter has a single writer
+    private volatile long publishedCount;
+    private volatile long evictedCount;
+    private volatile long skippedCount;
+    private volatile int maxDepth;
+    
+    /**
+     * @param capacity rounded up to a power of two
+     */
+    public SpscRingBuffer(String name, int capacity, DropHandler<T> dropHandler) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        }
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) {
+            size <<= 1;
+        }
+        this.name = name;
+        this.slots = new AtomicReferenceArray<>(size);
+        this.mask = size - 1;
+        this.dropHandler = dropHandler;
+    }
+    
+    /**
+     * Producer side. Evicts the oldest entry if the ring is full.
+     *
+     * @return false if an entry had to be evicted to make room
+     */
+    public boolean offer(T item) {
+        long t = tail.get();
+        boolean evicted = false;
+        while (t - head.get() > mask) {
+            long h = head.get();
+            T oldest = slots.get((int) h & mask);
+            if (h < t && head.compareAndSet(h, h + 1)) {
+                evictedCount++;
+                evicted = true;
+                dropHandler.onDrop(oldest);
+            }
+        }
+        
+        slots.lazySet((int) t & mask, item);
+        tail.lazySet(t + 1);
+        
+        publishedCount++;
+        int depth = (int) (t + 1 - head.get());
+        if (depth > maxDepth) {
+            maxDepth = depth;
+        }
+        return !evicted;
+    }
+    
+    /**
+     * Consumer side. Returns the oldest entry, or null if the ring is empty.
+     */
+    public T poll() {
+        while (true) {
+            long h = head.get();
+            if (h >= tail.get()) {
+                return null;
+            }
+            // Read before claiming: once head moves the producer may reuse the slot
+            T item = slots.get((int) h & mask);
+            if (head.compareAndSet(h, h + 1)) {
+                return item;
+            }
+        }
+    }
+    
+    /**
+     * Consumer side. Returns the newest entry and drops everything older, or null if empty.
+     */
+    public T pollLatest() {
+        T latest = poll();
+        if (latest == null) {
+            return null;
+        }
+        T next;
+        while ((next = poll()) != null) {
+            skippedCount++;
+            dropHandler.onDrop(latest);
+            latest = next;
+        }
+        return latest;
+    }
+    
+    /**
+     * Consumer side. Drops every queued entry.
+     */
+    public void clear() {
+        T item;
+        while ((item = poll()) != null) {
+            dropHandler.onDrop(item);
+        }
+    }
+    
+    public String getName() {
+        return name;
+    }
+    
+    public int capacity() {
+        return mask + 1;
+    }
+    
+    public int size() {
+        long h = head.get();
+        return (int) Math.max(0, tail.get() - h);
+    }
+    
+    public int getMaxDepth() {
+        return maxDepth;
+    }
+    
+    public long getPublishedCount() {
+        return publishedCount;
+    }
+    
+    /**
+     * Entries dropped by either side: evicted by the producer or skipped by the consumer.
+     */
+    public long getDroppedCount() {
+        return evictedCount + skippedCount;
+    }
+}
@@ -0,0 +1,162 @@
+package com.example.edgedetectionviewer;
+
+import java.io.IOException;
+import java.util.Locale;
+
+/**
+ * Timings of the phases between start-up and the first processed frame, relative to an
+ * origin such as process start. Phases run on several threads and overlap: the library
+ * loads and the processor warms up while the camera opens.
+ *
+ * Each phase is recorded once; later recordings, e.g. the camera reopening after a pause,
+ * are ignored, as they are not part of a cold start. Recording is thread-safe.
+ */
+public final class StartupTrace {
+    
+    public enum Phase {
+        /** Loading the native library */
+        LIBRARY_LOAD,
+        /** Creating the processor, library load included */
+        PROCESSOR_CREATE,
+        /** Processing synthetic frames until JIT and first-use costs are paid */
+        WARM_UP,
+        /** Compiling, linking and first use of the shader program */
+        SHADER_COMPILE,
+        /** From asking for the camera to its first capture request */
+        CAMERA_OPEN,
+        /** Up to the first frame out of the processor, a mark with no duration of its own */
+        FIRST_FRAME,
+        /** Up to the first processed frame on screen */
+        FIRST_PRESENT
+    }
+    
+    private static final Phase[] PHASES = Phase.values();
+    
+    private final long origin;
+    // Nanos since origin, guarded by this; an end of 0 is not recorded yet
+    private final long[] starts = new long[PHASES.length];
+    private final long[] ends = new long[PHASES.length];
+    
+    /**
+     * Starts the clock now.
+     */
+    public StartupTrace() {
+        this(System.nanoTime());
+    }
+    
+    /**
+     * @param originNanos {@link System#nanoTime()} when start-up began, possibly in the past
+     */
+    public StartupTrace(long originNanos) {
+        this.origin = originNanos;
+    }
+    
+    /**
+     * @return a timestamp for {@link #end}
+     */
+    public long start() {
+        return System.nanoTime();
+    }
+    
+    /**
+     * Records {@code phase} as running from {@code start} until now.
+     *
+     * @return false if the phase was already recorded
+     */
+    public boolean end(Phase phase, long start) {
+        return record(phase, start, System.nanoTime());
+    }
+    
+    /**
+     * Records that {@code phase} was reached now, e.g. {@link Phase#FIRST_FRAME}.
+     *
+     * @return false if the phase was already recorded
+     */
+    public boolean mark(Phase phase) {
+        return end(phase, origin);
+    }
+    
+    /**
+     * @return false if the phase was already recorded
+     */
+    public synchronized boolean record(Phase phase, long startNanos, long endNanos) {
+        if (endNanos < startNanos) {
+            throw new IllegalArgumentException("Phase ends before it starts");
+        }
+        int i = phase.ordinal();
+        if (ends[i] != 0) {
+            return false;
+        }
+        // 1 ns past the origin at least, so a phase ending there still reads as recorded
+        ends[i] = Math.max(1, endNanos - origin);
+        starts[i] = startNanos - origin;
+        return true;
+    }
+    
+    public synchronized boolean isRecorded(Phase phase) {
+        return ends[phase.ordinal()] != 0;
+    }
+    
+    /**
+     * @return nanos from the origin to the end of the phase, or -1 if not recorded
+     */
+    public synchronized long getElapsedNanos(Phase phase) {
+        long end = ends[phase.ordinal()];
+        return end != 0 ? end : -1;
+    }
+    
+    /**
+     * @return nanos the phase took, or -1 if not recorded
+     */
+    public synchronized long getDurationNanos(Phase phase) {
+        int i = phase.ordinal();
+        return ends[i] != 0 ? ends[i] - starts[i] : -1;
+    }
+    
+    /**
+     * Time to first processed frame, the figure a restart is judged by, or -1 before it.
+     */
+    public long getTimeToFirstFrameNanos() {
+        return getElapsedNanos(Phase.FIRST_FRAME);
+    }
+    
+    /**
+     * One line per recorded phase: start and end from the origin, and duration, in ms.
+     */
+    public synchronized void writeReport(Appendable out) throws IOException {
+        out.append(String.format(Locale.US, "%-16s %10s %10s %10s%n", "phase", "start_ms", "end_ms", "took_ms"));
+        for (Phase phase : PHASES) {
+            long end = ends[phase.ordinal()];
+            if (end == 0) {
+                continue;
+            }
+            long start = starts[phase.ordinal()];
+            out.append(String.format(Locale.US, "%-16s %10.1f %10.1f %10.1f%n",
+                    phase.name().toLowerCase(Locale.US), start / 1e6, end / 1e6, (end - start) / 1e6));
+        }
+    }
+    
+    /**
+     * Recorded phases as start+duration from the origin, on one line for the log.
+     */
+    public synchronized String describe() {
+        StringBuilder sb = new StringBuilder("startup[");
+        for (Phase phase : PHASES) {
+            long end = ends[phase.ordinal()];
+            if (end == 0) {
+                continue;
+            }
+            if (sb.length() > "startup[".length()) {
+                sb.append(' ');
+            }
+            long start = starts[phase.ordinal()];
+            sb.append(phase.name().toLowerCase(Locale.US)).append('=');
+            if (start == 0) {
+                sb.append(String.format(Locale.US, "%.1f", end / 1e6));
+            } else {
+                sb.append(String.format(Locale.US, "%.1f+%.1f", start / 1e6, (end - start) / 1e6));
+            }
+        }
+        return sb.append(" ms]").toString();
+    }
+}
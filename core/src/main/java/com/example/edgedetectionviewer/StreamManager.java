@@ -0,0 +1,521 @@
+package com.example.edgedetectionviewer;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.PriorityQueue;
+
+/**
+ * Processes several camera streams (front and back, or the logical cameras of a rig) on one
+ * shared pool of worker threads, one per core by default.
+ *
+ * Each registered {@link Stream} has its own {@link FrameProcessor}, capture and present
+ * rings and buffer pool, like a {@link FramePipeline}: capture rings keep only the newest
+ * frames, so a stream that cannot keep up drops frames instead of building latency. A stream
+ * is processed by at most one worker at a time, so its processor never sees two threads at
+ * once, while different streams run in parallel.
+ *
+ * Workers pick the next stream by stride scheduling over processing time: every stream has
+ * a virtual time that advances by the time its frames take divided by its priority, and the
+ * ready stream with the lowest virtual time goes first. When every stream has frames waiting,
+ * each gets pool time in proportion to its priority, whatever its frame size or rate; a
+ * stream waking from idle starts at the current virtual time, so it cannot bank time while
+ * idle and then starve the others.
+ */
+public final class StreamManager {
+    private static final int QUEUE_CAPACITY = 2;
+    
+    /**
+     * Most captured frames a stream holds at once: a full capture ring plus the frame being
+     * processed. Camera-owned frames need at least one more for the next capture.
+     */
+    public static final int MAX_HELD_CAPTURES = QUEUE_CAPACITY + 1;
+    
+    public static final int DEFAULT_PRIORITY = 1;
+    public static final int MAX_PRIORITY = 100;
+    
+    // Per stream: capture ring and frame being captured, frame being processed and its
+    // output, present ring and the frame being shown
+    private static final int POOLED_FRAMES = 2 * QUEUE_CAPACITY + 4;
+    
+    /**
+     * Called on a worker thread whenever a stream has a processed frame ready to present.
+     */
+    public interface Listener {
+        void onFrameProcessed(Stream stream);
+    }
+    
+    private static final SpscRingBuffer.DropHandler<CapturedFrame> RELEASE_CAPTURED = new SpscRingBuffer.DropHandler<CapturedFrame>() {
+        @Override
+        public void onDrop(CapturedFrame frame) {
+            frame.release();
+        }
+    };
+    
+    private static final SpscRingBuffer.DropHandler<FrameBuffer> RELEASE = new SpscRingBuffer.DropHandler<FrameBuffer>() {
+        @Override
+        public void onDrop(FrameBuffer frame) {
+            frame.release();
+        }
+    };
+    
+    private static final Comparator<Stream> BY_VIRTUAL_TIME = new Comparator<Stream>() {
+        @Override
+        public int compare(Stream a, Stream b) {
+            if (a.virtualTime != b.virtualTime) {
+                return a.virtualTime < b.virtualTime ? -1 : 1;
+            }
+            return Integer.compare(a.id, b.id);
+        }
+    };
+    
+    private final int threadCount;
+    private final Object lock = new Object();
+    // Guarded by lock
+    private final List<Stream> streams = new ArrayList<>();
+    private final PriorityQueue<Stream> ready = new PriorityQueue<>(8, BY_VIRTUAL_TIME);
+    private long virtualNow;
+    private int nextId;
+    
+    private boolean running;
+    private Thread[] workers;
+    
+    /**
+     * One worker per available core.
+     */
+    public StreamManager() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+    
+    public StreamManager(int threadCount) {
+        if (threadCount < 1) {
+            throw new IllegalArgumentException("Thread count must be positive: " + threadCount);
+        }
+        this.threadCount = threadCount;
+    }
+    
+    public int getThreadCount() {
+        return threadCount;
+    }
+    
+    /**
+     * Adds a stream; it is scheduled as soon as frames are submitted to it.
+     *
+     * @param processor used by this stream only; the caller releases it after
+     *                  {@link #unregister}
+     * @param priority 1 to {@value #MAX_PRIORITY}: the stream's share of pool time relative
+     *                 to the others when they all have frames waiting
+     */
+    public Stream register(String name, FrameProcessor processor, int priority) {
+        checkPriority(priority);
+        synchronized (lock) {
+            Stream stream = new Stream(this, nextId++, name, processor, priority);
+            stream.virtualTime = virtualNow;
+            streams.add(stream);
+            return stream;
+        }
+    }
+    
+    /**
+     * Removes a stream, waiting for a frame of it in flight, and releases its queued frames.
+     * Frames submitted afterwards are released straight away.
+     */
+    public void unregister(Stream stream) {
+        boolean interrupted = false;
+        synchronized (lock) {
+            if (!streams.remove(stream)) {
+                return;
+            }
+            stream.closed = true;
+            ready.remove(stream);
+            stream.queued = false;
+            while (stream.inService) {
+                try {
+                    lock.wait();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        }
+        stream.captured.clear();
+        stream.processed.clear();
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+    
+    /**
+     * Registered streams, in registration order.
+     */
+    public List<Stream> getStreams() {
+        synchronized (lock) {
+            return new ArrayList<>(streams);
+        }
+    }
+    
+    public void start() {
+        synchronized (lock) {
+            if (running) {
+                return;
+            }
+            running = true;
+            workers = new Thread[threadCount];
+            for (int i = 0; i < threadCount; i++) {
+                workers[i] = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        workLoop();
+                    }
+                }, "StreamWorker-" + i);
+                workers[i].start();
+            }
+        }
+    }
+    
+    /**
+     * Stops the workers, waiting for frames in flight, then releases queued frames.
+     */
+    public void stop() {
+        Thread[] threads;
+        synchronized (lock) {
+            if (!running) {
+                return;
+            }
+            running = false;
+            threads = workers;
+            workers = null;
+            lock.notifyAll();
+        }
+        boolean interrupted = false;
+        for (Thread thread : threads) {
+            while (thread.isAlive()) {
+                try {
+                    thread.join();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        }
+        for (Stream stream : getStreams()) {
+            stream.captured.clear();
+            stream.processed.clear();
+        }
+        synchronized (lock) {
+            ready.clear();
+            for (Stream stream : streams) {
+                stream.queued = false;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+    
+    /**
+     * One line per stream.
+     */
+    public String describeStats() {
+        StringBuilder sb = new StringBuilder();
+        for (Stream stream : getStreams()) {
+            if (sb.length() > 0) {
+                sb.append('\n');
+            }
+            sb.append(stream.describeStats());
+        }
+        return sb.toString();
+    }
+    
+    /**
+     * Capture thread: queues the stream unless it is queued or being processed already, in
+     * which case the worker requeues it when it is done.
+     */
+    void onSubmitted(Stream stream) {
+        synchronized (lock) {
+            if (stream.queued || stream.inService || stream.closed) {
+                return;
+            }
+            enqueue(stream);
+        }
+    }
+    
+    private void enqueue(Stream stream) {
+        // No credit for time spent idle
+        stream.virtualTime = Math.max(stream.virtualTime, virtualNow);
+        stream.queued = true;
+        ready.add(stream);
+        lock.notify();
+    }
+    
+    private void workLoop() {
+        while (true) {
+            Stream stream;
+            synchronized (lock) {
+                while (running && ready.isEmpty()) {
+                    try {
+                        lock.wait();
+                    } catch (InterruptedException e) {
+                        // Only stop() ends the loop
+                    }
+                }
+                if (!running) {
+                    return;
+                }
+                stream = ready.poll();
+                stream.queued = false;
+                stream.inService = true;
+                virtualNow = stream.virtualTime;
+            }
+            
+            long cost = stream.processNext();
+            
+            synchronized (lock) {
+                stream.inService = false;
+                stream.virtualTime += cost / stream.priority;
+                if (stream.closed) {
+                    lock.notifyAll();
+                } else if (running && stream.captured.size() > 0) {
+                    enqueue(stream);
+                }
+            }
+        }
+    }
+    
+    private static void checkPriority(int priority) {
+        if (priority < 1 || priority > MAX_PRIORITY) {
+            throw new IllegalArgumentException("Priority out of range: " + priority);
+        }
+    }
+    
+    /**
+     * One camera stream: submit captured frames, poll processed ones. Capture and present
+     * sides follow the threading rules of {@link FramePipeline}.
+     */
+    public static final class Stream implements CaptureTarget {
+        private final StreamManager manager;
+        private final int id;
+        private final String name;
+        private final FrameProcessor processor;
+        private final FrameBufferPool pool = new FrameBufferPool(POOLED_FRAMES);
+        private final SpscRingBuffer<CapturedFrame> captured;
+        private final SpscRingBuffer<FrameBuffer> processed;
+        private final LatencyHistogram latency = new LatencyHistogram();
+        private final LatencyHistogram processingTime = new LatencyHistogram();
+        private final long registeredNanos = System.nanoTime();
+        
+        private volatile Listener listener;
+        private volatile boolean edgeDetectionEnabled = true;
+        
+        // Scheduling state, guarded by the manager's lock
+        private int priority;
+        private long virtualTime;
+        private boolean queued;
+        private boolean inService;
+        private volatile boolean closed;
+        
+        // Stats; each counter has a single writer at a time
+        private volatile long lastSubmitNanos;
+        private volatile long submittedCount;
+        private volatile long processedCount;
+        private volatile long failedCount;
+        private volatile long busyNanos;
+        private volatile RuntimeException lastError;
+        
+        Stream(StreamManager manager, int id, String name, FrameProcessor processor, int priority) {
+            this.manager = manager;
+            this.id = id;
+            this.name = name;
+            this.processor = processor;
+            this.priority = priority;
+            captured = new SpscRingBuffer<>(name + ".captured", QUEUE_CAPACITY, RELEASE_CAPTURED);
+            processed = new SpscRingBuffer<>(name + ".processed", QUEUE_CAPACITY, RELEASE);
+        }
+        
+        public String getName() {
+            return name;
+        }
+        
+        public int getPriority() {
+            synchronized (manager.lock) {
+                return priority;
+            }
+        }
+        
+        /**
+         * Takes effect from the stream's next frame.
+         */
+        public void setPriority(int priority) {
+            checkPriority(priority);
+            synchronized (manager.lock) {
+                this.priority = priority;
+            }
+        }
+        
+        public void setListener(Listener listener) {
+            this.listener = listener;
+        }
+        
+        public void setEdgeDetectionEnabled(boolean enabled) {
+            edgeDetectionEnabled = enabled;
+        }
+        
+        public boolean isEdgeDetectionEnabled() {
+            return edgeDetectionEnabled;
+        }
+        
+        /**
+         * Capture side: returns an RGBA buffer to read the next frame into. Pass it to
+         * {@link #submit}, or release it if the capture is abandoned.
+         */
+        public FrameBuffer acquireCaptureBuffer(int width, int height) {
+            return pool.acquire(width, height, 4);
+        }
+        
+        /**
+         * Capture side: queues a frame for the pool, evicting older ones. Never blocks on
+         * processing; the frame is released once processed or dropped.
+         */
+        @Override
+        public void submit(CapturedFrame frame) {
+            if (closed) {
+                frame.release();
+                return;
+            }
+            lastSubmitNanos = System.nanoTime();
+            submittedCount++;
+            captured.offer(frame);
+            manager.onSubmitted(this);
+        }
+        
+        /**
+         * Present side: the newest processed frame, or null if none arrived since the last
+         * call. The caller owns it and must release it.
+         */
+        public FrameBuffer pollProcessed() {
+            return processed.pollLatest();
+        }
+        
+        /**
+         * Drops pooled buffers of other sizes after the stream's frame size changed.
+         */
+        public void onFrameSizeChanged(int width, int height) {
+            pool.retainOnly(width, height);
+        }
+        
+        /**
+         * Worker thread, with the stream in service: processes the newest captured frame.
+         *
+         * @return nanoseconds spent, 0 if there was no frame
+         */
+        long processNext() {
+            CapturedFrame input = captured.pollLatest();
+            if (input == null) {
+                return 0;
+            }
+            long submittedAt = lastSubmitNanos;
+            FrameBuffer output = pool.acquire(input.getWidth(), input.getHeight(),
+                    processor.getOutputFormat().getBytesPerPixel());
+            boolean ok;
+            long begin = System.nanoTime();
+            try {
+                ok = input.processInto(processor, output.getData(), edgeDetectionEnabled);
+            } catch (RuntimeException e) {
+                // Keep the stream alive; the frame counts as failed
+                lastError = e;
+                ok = false;
+            } finally {
+                input.release();
+            }
+            long end = System.nanoTime();
+            long cost = end - begin;
+            busyNanos += cost;
+            processingTime.record(cost);
+            
+            if (ok) {
+                processedCount++;
+                latency.record(end - submittedAt);
+                processed.offer(output);
+                Listener l = listener;
+                if (l != null) {
+                    l.onFrameProcessed(this);
+                }
+            } else {
+                failedCount++;
+                output.release();
+            }
+            return cost;
+        }
+        
+        public long getSubmittedCount() {
+            return submittedCount;
+        }
+        
+        public long getProcessedCount() {
+            return processedCount;
+        }
+        
+        public long getFailedCount() {
+            return failedCount;
+        }
+        
+        /**
+         * Captured frames dropped for newer ones before a worker got to them.
+         */
+        public long getDroppedCount() {
+            return captured.getDroppedCount();
+        }
+        
+        /**
+         * Pool time spent on this stream's frames.
+         */
+        public long getBusyNanos() {
+            return busyNanos;
+        }
+        
+        /**
+         * Processed frames per second since the stream was registered.
+         */
+        public double getThroughput() {
+            long elapsed = System.nanoTime() - registeredNanos;
+            return elapsed <= 0 ? 0 : processedCount * 1e9 / elapsed;
+        }
+        
+        /**
+         * Submit to processed, per frame. Measured from the latest submit before the frame
+         * was taken, so it leaves out time a frame spent waiting to be replaced.
+         */
+        public LatencyHistogram.Snapshot getLatency() {
+            return latency.snapshot();
+        }
+        
+        /**
+         * Processor time per frame.
+         */
+        public LatencyHistogram.Snapshot getProcessingTime() {
+            return processingTime.snapshot();
+        }
+        
+        /**
+         * Most recent exception thrown by the processor, or null.
+         */
+        public RuntimeException getLastError() {
+            return lastError;
+        }
+        
+        public String describeStats() {
+            LatencyHistogram.Snapshot l = latency.snapshot();
+            LatencyHistogram.Snapshot p = processingTime.snapshot();
+            return String.format(Locale.US,
+                    "%s[priority=%d %.1f fps in=%d processed=%d dropped=%d failed=%d"
+                            + " latency p50=%.1f p99=%.1f ms process p50=%.1f p99=%.1f ms busy=%.1f s]",
+                    name, getPriority(), getThroughput(), submittedCount, processedCount, getDroppedCount(),
+                    failedCount, l.getP50() / 1e6, l.getP99() / 1e6, p.getP50() / 1e6, p.getP99() / 1e6,
+                    busyNanos / 1e9);
+        }
+        
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+}
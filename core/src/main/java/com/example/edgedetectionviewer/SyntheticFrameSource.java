@@ -0,0 +1,107 @@
+package com.example.edgedetectionviewer;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Procedural luminance frames for running the pipeline without a camera: a checkerboard
+ * panning at a set speed with a bright disc circling over it, plus optional noise. Every
+ * frame has edges for the detector to find, and the motion keeps them moving the way a
+ * hand-held camera's do.
+ *
+ * Frame {@code i} depends only on the seed, the settings and {@code i}, so two sources
+ * built alike produce the same frames however fast they are drained.
+ */
+public final class SyntheticFrameSource extends PacedFrameSource {
+    
+    public static final double DEFAULT_FRAME_RATE = 30;
+    
+    private static final int CHECKER_SIZE = 16;
+    
+    private final int seed;
+    private final byte[] row;
+    
+    private volatile float motionX = 1;
+    private volatile float motionY = 0.5f;
+    private volatile int noise;
+    
+    public SyntheticFrameSource(int width, int height, int seed) {
+        super(width, height, DEFAULT_FRAME_RATE);
+        this.seed = seed;
+        row = new byte[width];
+    }
+    
+    /**
+     * Pixels the checkerboard moves per frame, in each direction.
+     */
+    public void setMotion(float dx, float dy) {
+        motionX = dx;
+        motionY = dy;
+    }
+    
+    /**
+     * Adds uniform noise of up to {@code amplitude} levels either way to every pixel; 0
+     * turns it off.
+     */
+    public void setNoise(int amplitude) {
+        if (amplitude < 0 || amplitude > 255) {
+            throw new IllegalArgumentException("Noise amplitude out of range: " + amplitude);
+        }
+        noise = amplitude;
+    }
+    
+    @Override
+    protected boolean produce(long index, LumaFrame frame, ByteBuffer plane) {
+        render(index, plane);
+        frame.set(plane, width, height, width, 1, null);
+        return true;
+    }
+    
+    /**
+     * Writes frame {@code index} into {@code plane}, {@code width} bytes per row.
+     */
+    void render(long index, ByteBuffer plane) {
+        int offsetX = (int) Math.floor(index * motionX);
+        int offsetY = (int) Math.floor(index * motionY);
+        int amplitude = noise;
+        
+        // The disc circles the centre once every 120 frames
+        double angle = 2 * Math.PI * (index % 120) / 120;
+        int radius = Math.max(2, Math.min(width, height) / 8);
+        int cx = width / 2 + (int) (Math.cos(angle) * (width / 4));
+        int cy = height / 2 + (int) (Math.sin(angle) * (height / 4));
+        
+        int state = mix(seed, index);
+        for (int y = 0; y < height; y++) {
+            int cellY = Math.floorDiv(y + offsetY, CHECKER_SIZE);
+            int dy = y - cy;
+            for (int x = 0; x < width; x++) {
+                int cellX = Math.floorDiv(x + offsetX, CHECKER_SIZE);
+                int v = ((cellX ^ cellY) & 1) == 0 ? 60 : 170;
+                int dx = x - cx;
+                if (dx * dx + dy * dy <= radius * radius) {
+                    v = 240;
+                }
+                if (amplitude != 0) {
+                    state ^= state << 13;
+                    state ^= state >>> 17;
+                    state ^= state << 5;
+                    v += (int) ((state & 0x7FFFFFFFL) % (2 * amplitude + 1)) - amplitude;
+                    v = v < 0 ? 0 : v > 255 ? 255 : v;
+                }
+                row[x] = (byte) v;
+            }
+            plane.position(y * width);
+            plane.put(row);
+        }
+        plane.clear();
+    }
+    
+    private static int mix(int seed, long index) {
+        long z = seed * 0x9E3779B97F4A7C15L + index;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        int state = (int) (z ^ (z >>> 31));
+        // Xorshift never leaves zero
+        return state == 0 ? 1 : state;
+    }
+}
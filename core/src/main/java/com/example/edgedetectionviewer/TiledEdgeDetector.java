@@ -0,0 +1,186 @@
+package com.example.edgedetectionviewer;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Multi-core {@link EdgeDetector}: splits each frame into horizontal strips and runs
+ * grayscale, blur, gradient and non-max suppression for every strip on a work-stealing pool.
+ *
+ * Each strip recomputes the halo rows its neighbours own (4 gray rows and 2 blurred rows on
+ * either side) into its own small buffers, so strips never wait on each other and the
+ * intermediates stay cache-sized instead of being full-frame passes. Hysteresis then runs
+ * once over the shared suppression map, so edges connect across strip boundaries exactly as
+ * in the single-threaded {@link CannyEdgeDetector}; the output is identical.
+ *
+ * Not thread-safe: one frame at a time.
+ */
+public final class TiledEdgeDetector implements EdgeDetector {
+    // Suppression on a row compares magnitudes one row away, each of which needs Sobel context
+    private static final int BLUR_HALO = CannyEdgeDetector.SOBEL_RADIUS + 1;
+    private static final int GRAY_HALO = BLUR_HALO + CannyEdgeDetector.BLUR_RADIUS;
+    
+    private final ForkJoinPool pool;
+    private final CannyEdgeDetector detector;
+    private final int stripCount;
+    
+    // Per-frame-size state
+    private int width;
+    private int height;
+    private byte[] map;
+    private Strip[] strips;
+    private final FrameTask frameTask = new FrameTask();
+    
+    // Inputs of the frame in flight, read by the strip tasks: RGBA, or luma when set
+    private byte[] rgba;
+    private int rgbaOffset;
+    private byte[] luma;
+    
+    /**
+     * Uses the common pool with two strips per core, so stealing can even out uneven strips.
+     */
+    public TiledEdgeDetector() {
+        this(ForkJoinPool.commonPool(), new CannyEdgeDetector(), ForkJoinPool.commonPool().getParallelism() * 2);
+    }
+    
+    public TiledEdgeDetector(ForkJoinPool pool, CannyEdgeDetector detector, int stripCount) {
+        if (stripCount < 1) {
+            throw new IllegalArgumentException("stripCount must be positive: " + stripCount);
+        }
+        this.pool = pool;
+        this.detector = detector;
+        this.stripCount = stripCount;
+    }
+    
+    public int getStripCount() {
+        return stripCount;
+    }
+    
+    /**
+     * Strips keep halos sized for the 5x5 kernel; the 3x3 one needs less.
+     */
+    @Override
+    public void setBlurKernelSize(int size) {
+        detector.setBlurKernelSize(size);
+    }
+    
+    @Override
+    public void grayscale(byte[] rgba, int rgbaOffset, byte[] out, int width, int height) {
+        // One pass with no neighbourhood: not worth forking
+        detector.grayscale(rgba, rgbaOffset, out, width, height);
+    }
+    
+    @Override
+    public void detectEdges(byte[] rgba, int rgbaOffset, byte[] edges, int width, int height) {
+        CannyEdgeDetector.checkFrame(rgba.length - rgbaOffset, edges.length, width, height);
+        this.rgba = rgba;
+        this.rgbaOffset = rgbaOffset;
+        try {
+            runStrips(width, height);
+        } finally {
+            this.rgba = null;
+        }
+        detector.hysteresis(map, edges, width, height);
+    }
+    
+    @Override
+    public void detectEdgesFromLuma(byte[] luma, byte[] edges, int width, int height) {
+        CannyEdgeDetector.checkLuma(luma.length, edges.length, width, height);
+        this.luma = luma;
+        try {
+            runStrips(width, height);
+        } finally {
+            this.luma = null;
+        }
+        detector.hysteresis(map, edges, width, height);
+    }
+    
+    private void runStrips(int width, int height) {
+        ensureStrips(width, height);
+        frameTask.reinitialize();
+        pool.invoke(frameTask);
+    }
+    
+    private void ensureStrips(int width, int height) {
+        if (this.width == width && this.height == height) {
+            return;
+        }
+        this.width = width;
+        this.height = height;
+        map = CannyEdgeDetector.newMap(width, height);
+        
+        int count = Math.min(stripCount, height);
+        int rows = (height + count - 1) / count;
+        count = (height + rows - 1) / rows;
+        strips = new Strip[count];
+        for (int i = 0; i < count; i++) {
+            strips[i] = new Strip(i * rows, Math.min(height, (i + 1) * rows), width, height);
+        }
+    }
+    
+    /**
+     * Forks every strip and waits for all of them. Reused across frames via reinitialize().
+     */
+    @SuppressWarnings("serial") // Never serialized: tasks hold the detector's buffers
+    private final class FrameTask extends RecursiveAction {
+        @Override
+        protected void compute() {
+            for (Strip strip : strips) {
+                strip.reinitialize();
+            }
+            invokeAll(strips);
+        }
+    }
+    
+    /**
+     * One horizontal strip with private windows covering its rows plus halo.
+     */
+    @SuppressWarnings("serial")
+    private final class Strip extends RecursiveAction {
+        final int y0;
+        final int y1;
+        final int grayStart;
+        final int grayEnd;
+        final int blurStart;
+        final int blurEnd;
+        final byte[] gray;
+        final byte[] blurred;
+        final int[] blurRows;
+        final CannyEdgeDetector.GradientRows gradientRows = new CannyEdgeDetector.GradientRows();
+        
+        Strip(int y0, int y1, int width, int height) {
+            this.y0 = y0;
+            this.y1 = y1;
+            grayStart = Math.max(0, y0 - GRAY_HALO);
+            grayEnd = Math.min(height, y1 + GRAY_HALO);
+            blurStart = Math.max(0, y0 - BLUR_HALO);
+            blurEnd = Math.min(height, y1 + BLUR_HALO);
+            gray = new byte[(grayEnd - grayStart) * width];
+            blurred = new byte[(blurEnd - blurStart) * width];
+            blurRows = new int[(grayEnd - grayStart) * width];
+        }
+        
+        @Override
+        protected void compute() {
+            if (luma != null) {
+                // The frame is already gray; blur straight from it
+                blur(luma, 0);
+            } else {
+                CannyEdgeDetector.rgbaToGray(rgba, rgbaOffset, width, gray, grayStart, grayStart, grayEnd);
+                blur(gray, grayStart);
+            }
+            CannyEdgeDetector.nonMaxSuppression(blurred, blurStart, map, gradientRows, width, height, y0, y1,
+                    detector.getLowThreshold(), detector.getHighThreshold());
+        }
+        
+        private void blur(byte[] src, int srcBase) {
+            if (detector.getBlurKernelSize() == 3) {
+                CannyEdgeDetector.gaussianBlur3(src, srcBase, blurred, blurStart, blurRows,
+                        width, height, blurStart, blurEnd);
+            } else {
+                CannyEdgeDetector.gaussianBlur(src, srcBase, blurred, blurStart, blurRows,
+                        width, height, blurStart, blurEnd);
+            }
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package com.example.edgedetectionviewer;
+
+import java.lang.management.ManagementFactory;
+
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Measures heap bytes allocated by the current thread (HotSpot only).
+ */
+final class AllocationMeter {
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    
+    private AllocationMeter() {
+    }
+    
+    static void assumeSupported() {
+        assumeTrue("Thread allocation accounting not available",
+                THREADS.isThreadAllocatedMemorySupported() && THREADS.isThreadAllocatedMemoryEnabled());
+    }
+    
+    static long allocatedBytes() {
+        return THREADS.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+    
+    /**
+     * Bytes allocated while running the task, minus the cost of the measurement itself.
+     */
+    static long measure(Runnable task) {
+        long overhead = allocatedBytes();
+        overhead = allocatedBytes() - overhead;
+        
+        long before = allocatedBytes();
+        task.run();
+        return Math.max(0, allocatedBytes() - before - overhead);
+    }
+}
@@ -0,0 +1,249 @@
+package com.example.edgedetectionviewer;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class BatchProcessorTest {
+    private static final int WIDTH = 96;
+    private static final int HEIGHT = 64;
+    
+    @Test
+    public void testRun_keepsInputOrderAndMatchesProcessor() throws Exception {
+        final int frameCount = 40;
+        BatchProcessor batch = new BatchProcessor(new BatchProcessor.ProcessorFactory() {
+            @Override
+            public FrameProcessor create() {
+                // Uneven delays so workers finish out of order
+                return new SlowProcessor();
+            }
+        }, 4, 3, true);
+        
+        final List<Long> indices = new ArrayList<>();
+        final List<Long> crcs = new ArrayList<>();
+        BatchProcessor.Result result = batch.run(new SyntheticSource(frameCount), new BatchProcessor.FrameSink() {
+            @Override
+            public void write(BatchProcessor.Frame frame) {
+                indices.add(frame.getIndex());
+                crcs.add(crc(frame.getOutput()));
+            }
+        });
+        
+        assertEquals(frameCount, result.getFrameCount());
+        assertEquals(frameCount * WIDTH * HEIGHT, result.getBytesWritten());
+        JavaFrameProcessor reference = new JavaFrameProcessor(new CannyEdgeDetector(), OutputFormat.LUMINANCE);
+        for (int i = 0; i < frameCount; i++) {
+            assertEquals(i, (long) indices.get(i));
+            BatchProcessor.Frame expected = new BatchProcessor.Frame();
+            SyntheticSource.fill(expected, i);
+            expected.process(reference, true);
+            assertEquals("Frame " + i, crc(expected.getOutput()), (long) crcs.get(i));
+        }
+    }
+    
+    @Test
+    public void testRun_slowSinkBoundsFramesInFlight() throws Exception {
+        final int batchSize = 2;
+        final BatchProcessor batch = new BatchProcessor(new BatchProcessor.ProcessorFactory() {
+            @Override
+            public FrameProcessor create() {
+                return new JavaFrameProcessor();
+            }
+        }, 2, batchSize, false);
+        final AtomicInteger written = new AtomicInteger();
+        final AtomicInteger maxAhead = new AtomicInteger();
+        final SyntheticSource source = new SyntheticSource(30) {
+            @Override
+            public boolean read(BatchProcessor.Frame frame) {
+                maxAhead.set(Math.max(maxAhead.get(), getReadCount() - written.get()));
+                return super.read(frame);
+            }
+        };
+        
+        batch.run(source, new BatchProcessor.FrameSink() {
+            @Override
+            public void write(BatchProcessor.Frame frame) throws IOException {
+                try {
+                    Thread.sleep(2);
+                } catch (InterruptedException e) {
+                    throw new IOException(e);
+                }
+                written.incrementAndGet();
+            }
+        });
+        
+        assertEquals(30, written.get());
+        assertTrue("Read ahead by " + maxAhead.get(), maxAhead.get() <= batch.getMaxBatchesInFlight() * batchSize);
+    }
+    
+    @Test
+    public void testRun_processorFailureStopsTheRun() throws Exception {
+        BatchProcessor batch = new BatchProcessor(new BatchProcessor.ProcessorFactory() {
+            @Override
+            public FrameProcessor create() {
+                return new JavaFrameProcessor() {
+                    @Override
+                    public boolean processLuma(ByteBuffer luma, int rowStride, ByteBuffer output, int width, int height, boolean edges) {
+                        return luma.get(0) != 6 && super.processLuma(luma, rowStride, output, width, height, edges);
+                    }
+                };
+            }
+        }, 3, 1, true);
+        final List<Long> indices = new ArrayList<>();
+        
+        try {
+            batch.run(new SyntheticSource(100), new BatchProcessor.FrameSink() {
+                @Override
+                public void write(BatchProcessor.Frame frame) {
+                    indices.add(frame.getIndex());
+                }
+            });
+            fail("Expected the failure to surface");
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("frame-6"));
+        }
+        // Everything before the failed frame, in order, and nothing after it
+        assertEquals(6, indices.size());
+        for (int i = 0; i < indices.size(); i++) {
+            assertEquals(i, (long) indices.get(i));
+        }
+    }
+    
+    @Test(timeout = 10000)
+    public void testRun_sinkRuntimeExceptionStopsTheRun() throws Exception {
+        BatchProcessor batch = new BatchProcessor(new BatchProcessor.ProcessorFactory() {
+            @Override
+            public FrameProcessor create() {
+                return new JavaFrameProcessor();
+            }
+        }, 2, 1, true);
+        final IllegalStateException thrown = new IllegalStateException("Sink full");
+        final AtomicInteger written = new AtomicInteger();
+        
+        try {
+            batch.run(new SyntheticSource(100), new BatchProcessor.FrameSink() {
+                @Override
+                public void write(BatchProcessor.Frame frame) {
+                    if (frame.getIndex() == 3) {
+                        throw thrown;
+                    }
+                    written.incrementAndGet();
+                }
+            });
+            fail("Expected the sink's exception");
+        } catch (IllegalStateException e) {
+            assertSame(thrown, e);
+        }
+        assertEquals(3, written.get());
+    }
+    
+    @Test(timeout = 10000)
+    public void testRun_processorErrorStopsTheRun() throws Exception {
+        final AssertionError thrown = new AssertionError("Processor broke");
+        BatchProcessor batch = new BatchProcessor(new BatchProcessor.ProcessorFactory() {
+            @Override
+            public FrameProcessor create() {
+                return new JavaFrameProcessor() {
+                    @Override
+                    public boolean processLuma(ByteBuffer luma, int rowStride, ByteBuffer output, int width, int height, boolean edges) {
+                        if (luma.get(0) == 4) {
+                            throw thrown;
+                        }
+                        return super.processLuma(luma, rowStride, output, width, height, edges);
+                    }
+                };
+            }
+        }, 3, 2, true);
+        
+        try {
+            batch.run(new SyntheticSource(100), new BatchProcessor.FrameSink() {
+                @Override
+                public void write(BatchProcessor.Frame frame) {
+                }
+            });
+            fail("Expected the processor's error");
+        } catch (AssertionError e) {
+            assertSame(thrown, e);
+        }
+    }
+    
+    private static long crc(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.limit()];
+        buffer.get(bytes);
+        buffer.rewind();
+        return SyntheticFrames.crc(bytes);
+    }
+    
+    /**
+     * Odd frames are RGBA, even frames luminance with the frame number in the first pixel.
+     */
+    private static class SyntheticSource implements BatchProcessor.FrameSource {
+        private final int frameCount;
+        private int read;
+        
+        SyntheticSource(int frameCount) {
+            this.frameCount = frameCount;
+        }
+        
+        int getReadCount() {
+            return read;
+        }
+        
+        @Override
+        public boolean read(BatchProcessor.Frame frame) {
+            if (read == frameCount) {
+                return false;
+            }
+            fill(frame, read++);
+            return true;
+        }
+        
+        static void fill(BatchProcessor.Frame frame, int index) {
+            byte[] rgba = SyntheticFrames.rgba(WIDTH, HEIGHT, index + 1);
+            if (index % 2 == 1) {
+                frame.reset("frame-" + index, WIDTH, HEIGHT, 4).put(rgba);
+                return;
+            }
+            ByteBuffer luma = frame.reset("frame-" + index, WIDTH, HEIGHT, 1);
+            for (int i = 0; i < WIDTH * HEIGHT; i++) {
+                luma.put(rgba[i * 4 + 1]);
+            }
+            luma.put(0, (byte) index);
+        }
+    }
+    
+    private static final class SlowProcessor extends JavaFrameProcessor {
+        private final Random random = new Random();
+        
+        SlowProcessor() {
+            super(new CannyEdgeDetector(), OutputFormat.LUMINANCE);
+        }
+        
+        private void pause() {
+            try {
+                Thread.sleep(random.nextInt(5));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        
+        @Override
+        public boolean processFrame(ByteBuffer input, ByteBuffer output, int width, int height, boolean edges) {
+            pause();
+            return super.processFrame(input, output, width, height, edges);
+        }
+        
+        @Override
+        public boolean processLuma(ByteBuffer luma, int rowStride, ByteBuffer output, int width, int height, boolean edges) {
+            pause();
+            return super.processLuma(luma, rowStride, output, width, height, edges);
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package com.example.edgedetectionviewer;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class EdgeMapCodecTest {
+    
+    @Test
+    public void testRoundTrip_sparseChangesAcrossMaps() {
+        Random random = new Random(7);
+        // 64 * 48 fills its words exactly; 61 * 47 leaves a partial one
+        for (int[] size : new int[][]{{64, 48}, {61, 47}}) {
+            int width = size[0];
+            int height = size[1];
+            EdgeMap map = new EdgeMap(width, height);
+            EdgeMap encoderReference = new EdgeMap(width, height);
+            EdgeMap decoded = new EdgeMap(width, height);
+            ByteBuffer out = ByteBuffer.allocate(EdgeMap.packedSize(width, height) * 8);
+            for (int f = 0; f < 20; f++) {
+                for (int i = 0; i < 50; i++) {
+                    map.set(random.nextInt(width), random.nextInt(height), random.nextBoolean());
+                }
+                // Runs touching the first and last pixel, and a flipped run across words
+                map.set(0, 0, f % 2 == 0);
+                map.set(width - 1, height - 1, f % 3 == 0);
+                for (int x = 0; x < width; x++) {
+                    map.set(x, 5, f % 2 == 1);
+                }
+                
+                out.clear();
+                int size0 = EdgeMapCodec.encode(map, encoderReference, out, out.capacity());
+                assertEquals(out.position(), size0);
+                out.flip();
+                EdgeMapCodec.decode(out, decoded);
+                
+                assertEquals(width + "x" + height + " map " + f, map, decoded);
+                assertEquals(map, encoderReference);
+            }
+        }
+    }
+    
+    @Test
+    public void testEncode_keyframeOfALineAndStaticMapAreTiny() {
+        int width = 320;
+        int height = 240;
+        EdgeMap map = new EdgeMap(width, height);
+        for (int x = 0; x < width; x++) {
+            map.set(x, 100, true);
+        }
+        EdgeMap reference = new EdgeMap(width, height);
+        ByteBuffer out = ByteBuffer.allocate(64);
+        
+        // One unchanged run, one flipped run
+        assertEquals(5, EdgeMapCodec.encode(map, reference, out, out.capacity()));
+        out.clear();
+        assertEquals(0, EdgeMapCodec.encode(map, reference, out, out.capacity()));
+    }
+    
+    @Test
+    public void testEncode_overLimitLeavesOutputAndReference() {
+        Random random = new Random(3);
+        EdgeMap map = new EdgeMap(128, 64);
+        for (int y = 0; y < 64; y++) {
+            for (int x = 0; x < 128; x++) {
+                map.set(x, y, random.nextBoolean());
+            }
+        }
+        EdgeMap reference = new EdgeMap(128, 64);
+        int packed = EdgeMap.packedSize(128, 64);
+        ByteBuffer out = ByteBuffer.allocate(packed);
+        out.put((byte) 1);
+        
+        assertEquals(-1, EdgeMapCodec.encode(map, reference, out, packed - 1));
+        
+        assertEquals(1, out.position());
+        assertEquals(0, reference.countEdges());
+    }
+    
+    @Test
+    public void testEncode_longRunsUseEscapedGroups() {
+        // 4K: the only edge is the last pixel, after a run of 2^23 - 1 unchanged pixels
+        EdgeMap map = new EdgeMap(3840, 2160);
+        map.set(3839, 2159, true);
+        EdgeMap reference = new EdgeMap(3840, 2160);
+        ByteBuffer out = ByteBuffer.allocate(64);
+        
+        int size = EdgeMapCodec.encode(map, reference, out, out.capacity());
+        
+        int nibbles = EdgeMapCodec.runNibbles(3840 * 2160 - 1) + EdgeMapCodec.runNibbles(1);
+        assertEquals((nibbles + 1) / 2, size);
+        out.flip();
+        EdgeMap decoded = new EdgeMap(3840, 2160);
+        EdgeMapCodec.decode(out, decoded);
+        assertEquals(map, decoded);
+        assertEquals(1, EdgeMapCodec.runNibbles(14));
+        assertEquals(2, EdgeMapCodec.runNibbles(15 + 7));
+        assertEquals(3, EdgeMapCodec.runNibbles(15 + 8));
+    }
+    
+    @Test(expected = IllegalArgumentException.class)
+    public void testDecode_rejectsRunsPastTheMap() {
+        // Runs of 0, 10, 0 and 10 pixels over 16
+        ByteBuffer in = ByteBuffer.wrap(new byte[]{0x0A, 0x0A});
+        
+        EdgeMapCodec.decode(in, new EdgeMap(4, 4));
+    }
+}
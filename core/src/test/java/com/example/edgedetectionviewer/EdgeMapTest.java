@@ -0,0 +1,107 @@
+package com.example.edgedetectionviewer;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for packing edge maps and converting them back to gray and RGBA
+ */
+public class EdgeMapTest {
+    
+    private static byte[] randomEdges(int pixels, long seed) {
+        Random random = new Random(seed);
+        byte[] luma = new byte[pixels];
+        for (int i = 0; i < pixels; i++) {
+            luma[i] = (byte) (random.nextInt(4) == 0 ? 255 : 0);
+        }
+        return luma;
+    }
+    
+    @Test
+    public void testPackFrom_bufferMatchesArrayInBothByteOrders() {
+        // 37 * 23 is not a multiple of 64, so the last word is partial
+        int width = 37;
+        int height = 23;
+        byte[] luma = randomEdges(width * height, 1);
+        // Any nonzero byte is an edge, including ones with only the top or bottom bit set
+        luma[3] = (byte) 0x80;
+        luma[5] = 1;
+        EdgeMap expected = new EdgeMap(width, height);
+        expected.packFrom(luma, 0);
+        assertTrue(expected.get(3, 0));
+        assertTrue(expected.get(5, 0));
+        
+        for (ByteOrder order : new ByteOrder[]{ByteOrder.BIG_ENDIAN, ByteOrder.LITTLE_ENDIAN}) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(luma.length + 3).order(order);
+            buffer.position(3);
+            buffer.put(luma);
+            EdgeMap map = new EdgeMap(width, height);
+            map.packFrom(buffer, 3);
+            assertEquals(order.toString(), expected, map);
+            assertEquals(luma.length + 3, buffer.position());
+        }
+    }
+    
+    @Test
+    public void testUnpackTo_roundTripsToZeroAnd255() {
+        int width = 50;
+        int height = 20;
+        byte[] luma = randomEdges(width * height, 2);
+        EdgeMap map = new EdgeMap(width, height);
+        map.packFrom(luma, 0);
+        
+        byte[] array = new byte[luma.length];
+        map.unpackTo(array, 0);
+        assertArrayEquals(luma, array);
+        for (ByteOrder order : new ByteOrder[]{ByteOrder.BIG_ENDIAN, ByteOrder.LITTLE_ENDIAN}) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(luma.length).order(order);
+            map.unpackTo(buffer, 0);
+            byte[] unpacked = new byte[luma.length];
+            buffer.get(unpacked);
+            assertArrayEquals(order.toString(), luma, unpacked);
+        }
+    }
+    
+    @Test
+    public void testUnpackToRgba_opaqueWhiteOnBlack() {
+        EdgeMap map = new EdgeMap(3, 1);
+        map.set(1, 0, true);
+        for (ByteOrder order : new ByteOrder[]{ByteOrder.BIG_ENDIAN, ByteOrder.LITTLE_ENDIAN}) {
+            ByteBuffer rgba = ByteBuffer.allocate(12).order(order);
+            map.unpackToRgba(rgba, 0);
+            assertArrayEquals(order.toString(), new byte[]{
+                    0, 0, 0, -1,
+                    -1, -1, -1, -1,
+                    0, 0, 0, -1}, rgba.array());
+        }
+    }
+    
+    @Test
+    public void testWriteTo_readFromRoundTripsAndCountsEdges() {
+        EdgeMap map = new EdgeMap(100, 7);
+        map.packFrom(randomEdges(700, 3), 0);
+        ByteBuffer buffer = ByteBuffer.allocate(EdgeMap.packedSize(100, 7));
+        assertEquals(11 * 8, buffer.capacity());
+        
+        map.writeTo(buffer);
+        assertFalse(buffer.hasRemaining());
+        buffer.flip();
+        EdgeMap read = new EdgeMap(100, 7);
+        read.readFrom(buffer);
+        
+        assertEquals(map, read);
+        assertEquals(map.hashCode(), read.hashCode());
+        int count = 0;
+        for (int y = 0; y < 7; y++) {
+            for (int x = 0; x < 100; x++) {
+                count += read.get(x, y) ? 1 : 0;
+            }
+        }
+        assertEquals(count, read.countEdges());
+    }
+}
@@ -0,0 +1,198 @@
+package com.example.edgedetectionviewer;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class EdgeTracerTest {
+    
+    private static final int WIDTH = 96;
+    private static final int HEIGHT = 72;
+    
+    private static ByteBuffer cannyEdges(int seed) {
+        byte[] gray = new byte[WIDTH * HEIGHT];
+        CannyEdgeDetector detector = new CannyEdgeDetector();
+        detector.grayscale(SyntheticFrames.rgba(WIDTH, HEIGHT, seed), 0, gray, WIDTH, HEIGHT);
+        byte[] edges = new byte[WIDTH * HEIGHT];
+        detector.detectEdgesFromLuma(gray, edges, WIDTH, HEIGHT);
+        return ByteBuffer.wrap(edges);
+    }
+    
+    private static ByteBuffer draw(int width, int height, int... xy) {
+        ByteBuffer raster = ByteBuffer.allocate(width * height);
+        for (int i = 0; i < xy.length; i += 2) {
+            raster.put(xy[i + 1] * width + xy[i], (byte) 255);
+        }
+        return raster;
+    }
+    
+    private static EdgeGeometry trace(ByteBuffer raster, int width, int height, EdgeGeometry.Mode mode) {
+        EdgeGeometry geometry = new EdgeGeometry();
+        new EdgeTracer().trace(raster, width, height, 1, 0, mode, geometry);
+        return geometry;
+    }
+    
+    @Test
+    public void testPoints_matchRasterInRasterOrder() {
+        ByteBuffer edges = cannyEdges(1);
+        EdgeGeometry geometry = trace(edges, WIDTH, HEIGHT, EdgeGeometry.Mode.POINTS);
+        
+        int n = 0;
+        for (int p = 0; p < WIDTH * HEIGHT; p++) {
+            if (edges.get(p) != 0) {
+                assertEquals(p % WIDTH, geometry.getX(n));
+                assertEquals(p / WIDTH, geometry.getY(n));
+                n++;
+            }
+        }
+        assertTrue(n > 0);
+        assertEquals(n, geometry.getPointCount());
+        assertEquals(0, geometry.getContourCount());
+        
+        IntBuffer out = IntBuffer.allocate(2 * n);
+        geometry.copyPointsTo(out);
+        assertEquals(0, out.remaining());
+        assertEquals(geometry.getX(n - 1), out.get(2 * n - 2));
+    }
+    
+    @Test
+    public void testRgbaRaster_givesSamePoints() {
+        ByteBuffer edges = cannyEdges(2);
+        ByteBuffer rgba = ByteBuffer.allocate(WIDTH * HEIGHT * 4);
+        for (int p = 0; p < WIDTH * HEIGHT; p++) {
+            byte v = edges.get(p);
+            rgba.put(4 * p, v).put(4 * p + 1, v).put(4 * p + 2, v).put(4 * p + 3, (byte) 255);
+        }
+        EdgeGeometry gray = trace(edges, WIDTH, HEIGHT, EdgeGeometry.Mode.CONTOURS);
+        EdgeGeometry color = new EdgeGeometry();
+        new EdgeTracer().trace(rgba, WIDTH, HEIGHT, 4, 0, EdgeGeometry.Mode.CONTOURS, color);
+        
+        assertEquals(gray.getPointCount(), color.getPointCount());
+        for (int i = 0; i < 2 * gray.getPointCount(); i++) {
+            assertEquals(gray.getPoints()[i], color.getPoints()[i]);
+        }
+    }
+    
+    @Test
+    public void testContours_chainEveryPointOnceThroughNeighbours() {
+        ByteBuffer edges = cannyEdges(3);
+        EdgeGeometry geometry = trace(edges, WIDTH, HEIGHT, EdgeGeometry.Mode.CONTOURS);
+        
+        boolean[] seen = new boolean[WIDTH * HEIGHT];
+        assertTrue(geometry.getContourCount() > 0);
+        assertEquals(geometry.getPointCount(), geometry.getContourEnd(geometry.getContourCount() - 1));
+        for (int c = 0; c < geometry.getContourCount(); c++) {
+            int start = geometry.getContourStart(c);
+            int end = geometry.getContourEnd(c);
+            assertTrue(end > start);
+            for (int i = start; i < end; i++) {
+                int p = geometry.getY(i) * WIDTH + geometry.getX(i);
+                assertTrue("Edge pixel", edges.get(p) != 0);
+                assertFalse("Chained twice", seen[p]);
+                seen[p] = true;
+                if (i > start) {
+                    assertTrue("Neighbours", Math.abs(geometry.getX(i) - geometry.getX(i - 1)) <= 1
+                            && Math.abs(geometry.getY(i) - geometry.getY(i - 1)) <= 1);
+                }
+            }
+        }
+    }
+    
+    @Test
+    public void testContour_startedMidLine_isChainedEndToEnd() {
+        // A V: raster order finds its bottom-left arm's top first, in the middle of nothing;
+        // the vertex at the bottom is reached from both arms' tops
+        ByteBuffer raster = draw(8, 5, 1, 0, 1, 1, 2, 2, 3, 3, 4, 2, 5, 1, 6, 0);
+        EdgeGeometry geometry = trace(raster, 8, 5, EdgeGeometry.Mode.CONTOURS);
+        
+        assertEquals(1, geometry.getContourCount());
+        assertEquals(7, geometry.getPointCount());
+        int[] ends = {geometry.getX(0), geometry.getX(6)};
+        Arrays.sort(ends);
+        assertArrayEquals(new int[] {1, 6}, ends);
+    }
+    
+    @Test
+    public void testSegments_fitLinesAndCorners() {
+        // An L: ten pixels down, then ten right
+        int[] xy = new int[2 * 19];
+        for (int i = 0; i < 10; i++) {
+            xy[2 * i] = 2;
+            xy[2 * i + 1] = 2 + i;
+        }
+        for (int i = 1; i < 10; i++) {
+            xy[2 * (9 + i)] = 2 + i;
+            xy[2 * (9 + i) + 1] = 11;
+        }
+        EdgeGeometry geometry = trace(draw(16, 16, xy), 16, 16, EdgeGeometry.Mode.SEGMENTS);
+        
+        assertEquals(1, geometry.getContourCount());
+        assertEquals(2, geometry.getSegmentCount());
+        int[] s = geometry.getSegments();
+        // End to end, in chain order from either end of the L
+        assertEquals(s[2], s[4]);
+        assertEquals(s[3], s[5]);
+        assertEquals(2, s[2]);
+        assertEquals(11, s[3]);
+        
+        // A loose tolerance takes the corner off
+        EdgeGeometry loose = new EdgeGeometry();
+        EdgeTracer tracer = new EdgeTracer();
+        tracer.setSegmentTolerance(10);
+        tracer.trace(draw(16, 16, xy), 16, 16, 1, 0, EdgeGeometry.Mode.SEGMENTS, loose);
+        assertEquals(1, loose.getSegmentCount());
+    }
+    
+    @Test
+    public void testClosedContour_isSplitIntoSegments() {
+        // Outline of a 6x6 square
+        ByteBuffer raster = ByteBuffer.allocate(10 * 10);
+        for (int i = 0; i < 6; i++) {
+            raster.put(2 * 10 + 2 + i, (byte) 255);
+            raster.put(7 * 10 + 2 + i, (byte) 255);
+            raster.put((2 + i) * 10 + 2, (byte) 255);
+            raster.put((2 + i) * 10 + 7, (byte) 255);
+        }
+        EdgeGeometry geometry = trace(raster, 10, 10, EdgeGeometry.Mode.SEGMENTS);
+        
+        assertEquals(1, geometry.getContourCount());
+        assertEquals(20, geometry.getPointCount());
+        assertTrue(geometry.toString(), geometry.getSegmentCount() >= 3 && geometry.getSegmentCount() <= 5);
+    }
+    
+    @Test
+    public void testEmptyRaster_hasNoGeometry() {
+        EdgeGeometry geometry = trace(ByteBuffer.allocate(13 * 7), 13, 7, EdgeGeometry.Mode.SEGMENTS);
+        assertEquals(0, geometry.getPointCount());
+        assertEquals(0, geometry.getContourCount());
+        assertEquals(0, geometry.getSegmentCount());
+    }
+    
+    @Test
+    public void testSteadyState_allocatesNothingPerFrame() {
+        AllocationMeter.assumeSupported();
+        final ByteBuffer[] frames = {cannyEdges(4), cannyEdges(5), cannyEdges(6)};
+        final EdgeTracer tracer = new EdgeTracer();
+        final EdgeGeometry geometry = new EdgeGeometry();
+        final int count = 30;
+        Runnable run = new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 0; i < count; i++) {
+                    tracer.trace(frames[i % frames.length], WIDTH, HEIGHT, 1, i, EdgeGeometry.Mode.SEGMENTS, geometry);
+                }
+            }
+        };
+        // Several rounds, so the JIT has settled before the measured one
+        for (int i = 0; i < 5; i++) {
+            run.run();
+        }
+        long allocated = AllocationMeter.measure(run);
+        
+        assertEquals("Bytes allocated per frame", 0, allocated / count);
+    }
+}
@@ -0,0 +1,328 @@
+package com.example.edgedetectionviewer;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * Filter graphs against a per-pixel reference, fused and unfused.
+ */
+public class FilterGraphTest {
+    
+    private static final int[][] SIZES = {{64, 48}, {33, 17}, {7, 5}, {64, 1}, {1, 9}, {2, 2}};
+    
+    private static final String[] GRAPHS = {
+        "",
+        "invert",
+        "gaussian:5",
+        "gaussian:3,box:5,laplacian",
+        "scale:1.5:-20,sobel,threshold:40,dilate:3,erode:5",
+        "threshold:100,invert,box:15,scale:0.5:3",
+        "erode:3,gaussian:5,canny:20:60,dilate:3",
+        "sobel,invert,canny:50:150,invert",
+        "canny:10:30,gaussian:3,canny:10:30",
+    };
+    
+    private static byte[] luma(int width, int height, int seed) {
+        byte[] gray = new byte[width * height];
+        CannyEdgeDetector.rgbaToGray(SyntheticFrames.rgba(width, height, seed), 0, width, gray, 0, 0, height);
+        return gray;
+    }
+    
+    private static byte[] run(FilterGraph graph, byte[] luma, int width, int height) {
+        byte[] out = new byte[width * height];
+        graph.detectEdgesFromLuma(luma, out, width, height);
+        return out;
+    }
+    
+    @Test
+    public void testCannyGraph_matchesCannyEdgeDetector() {
+        for (int[] size : SIZES) {
+            int width = size[0];
+            int height = size[1];
+            byte[] rgba = SyntheticFrames.rgba(width, height, width * height);
+            byte[] expected = new byte[width * height];
+            new CannyEdgeDetector().detectEdges(rgba, 0, expected, width, height);
+            
+            for (boolean fused : new boolean[]{true, false}) {
+                FilterGraph graph = FilterGraph.canny();
+                graph.setFused(fused);
+                byte[] edges = new byte[width * height];
+                graph.detectEdges(rgba, 0, edges, width, height);
+                assertArrayEquals(width + "x" + height + " fused=" + fused, expected, edges);
+            }
+        }
+    }
+    
+    @Test
+    public void testBlurCap_matchesCannyWithSmallBlur() {
+        byte[] gray = luma(64, 48, 5);
+        CannyEdgeDetector detector = new CannyEdgeDetector();
+        detector.setBlurKernelSize(3);
+        byte[] expected = new byte[64 * 48];
+        detector.detectEdgesFromLuma(gray, expected, 64, 48);
+        
+        FilterGraph graph = FilterGraph.canny();
+        byte[] full = run(graph, gray, 64, 48);
+        graph.setBlurKernelSize(3);
+        assertArrayEquals(expected, run(graph, gray, 64, 48));
+        graph.setBlurKernelSize(5);
+        assertArrayEquals(full, run(graph, gray, 64, 48));
+    }
+    
+    @Test
+    public void testGraphs_matchReference() {
+        for (String spec : GRAPHS) {
+            for (int[] size : SIZES) {
+                int width = size[0];
+                int height = size[1];
+                byte[] gray = luma(width, height, spec.length() + width);
+                byte[] expected = Reference.run(spec, gray, width, height);
+                
+                FilterGraph graph = FilterGraph.parse(spec);
+                assertArrayEquals(spec + " " + width + "x" + height, expected, run(graph, gray, width, height));
+                graph.setFused(false);
+                assertArrayEquals(spec + " unfused " + width + "x" + height, expected, run(graph, gray, width, height));
+            }
+        }
+    }
+    
+    @Test
+    public void testRgbaInput_matchesGrayInput() {
+        for (String spec : GRAPHS) {
+            byte[] rgba = SyntheticFrames.rgba(33, 17, 9);
+            byte[] gray = new byte[33 * 17];
+            CannyEdgeDetector.rgbaToGray(rgba, 0, 33, gray, 0, 0, 17);
+            
+            FilterGraph graph = FilterGraph.parse(spec);
+            byte[] out = new byte[33 * 17];
+            graph.detectEdges(rgba, 0, out, 33, 17);
+            assertArrayEquals(spec, run(FilterGraph.parse(spec), gray, 33, 17), out);
+        }
+    }
+    
+    @Test
+    public void testPassCount_fusesNeighbouringOperators() {
+        FilterGraph graph = FilterGraph.parse("scale:1.2:0,gaussian:3,sobel,threshold:50,dilate:3,invert");
+        assertEquals(1, graph.getPassCount());
+        graph.setFused(false);
+        assertEquals(6, graph.getPassCount());
+        
+        assertEquals(2, FilterGraph.canny().getPassCount());
+        assertEquals(3, FilterGraph.parse("invert,canny:1:2,invert").getPassCount());
+        assertEquals(1, FilterGraph.parse("").getPassCount());
+    }
+    
+    @Test
+    public void testEdits_applyFromNextFrame() {
+        byte[] gray = luma(64, 48, 2);
+        FilterGraph graph = FilterGraph.parse("gaussian:5,threshold:100");
+        byte[] before = run(graph, gray, 64, 48);
+        
+        graph.add(FilterOperator.dilate(3));
+        graph.move(2, 0);
+        assertEquals("dilate:3,gaussian:5,threshold:100", graph.toString());
+        assertArrayEquals(Reference.run("dilate:3,gaussian:5,threshold:100", gray, 64, 48), run(graph, gray, 64, 48));
+        
+        assertEquals(FilterOperator.threshold(100), graph.set(2, FilterOperator.threshold(30)));
+        graph.remove(0);
+        assertArrayEquals(Reference.run("gaussian:5,threshold:30", gray, 64, 48), run(graph, gray, 64, 48));
+        
+        graph.set(1, FilterOperator.threshold(100));
+        assertArrayEquals(before, run(graph, gray, 64, 48));
+    }
+    
+    @Test
+    public void testSteadyState_allocatesNothingPerFrame() {
+        AllocationMeter.assumeSupported();
+        final int frames = 50;
+        final byte[] gray = luma(160, 120, 4);
+        final byte[] out = new byte[160 * 120];
+        final FilterGraph graph = FilterGraph.parse("gaussian:5,sobel,threshold:60,dilate:3,canny:50:150");
+        Runnable run = new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 0; i < frames; i++) {
+                    graph.detectEdgesFromLuma(gray, out, 160, 120);
+                }
+            }
+        };
+        // Warm-up plans the graph and sizes its scratch
+        run.run();
+        long allocated = AllocationMeter.measure(run);
+        
+        // Stray bytes from the JVM itself are fine, anything per frame is not
+        assertEquals("Bytes allocated per frame", 0, allocated / frames);
+    }
+    
+    @Test
+    public void testParse_roundTrips() {
+        String spec = "gaussian:3,box:7,sobel,laplacian,dilate:5,erode:3,threshold:9,invert,scale:0.5:-4,canny:1:2";
+        FilterGraph graph = FilterGraph.parse(spec);
+        assertEquals(spec, graph.toString());
+        assertEquals(graph.getOperators(), FilterGraph.parse(graph.toString()).getOperators());
+        assertEquals(FilterOperator.sobel(), FilterOperator.parse(" SOBEL "));
+    }
+    
+    @Test
+    public void testParse_rejectsBadSpecs() {
+        String[] bad = {"blur:3", "gaussian", "gaussian:7", "box:4", "dilate:17", "threshold:256",
+                "sobel:1", "canny:150:50", "scale:x:1", ","};
+        for (String spec : bad) {
+            try {
+                FilterGraph.parse(spec);
+                fail(spec);
+            } catch (IllegalArgumentException expected) {
+                // Expected
+            }
+        }
+    }
+    
+    /**
+     * Straightforward whole-frame versions of each operator.
+     */
+    private static final class Reference {
+        
+        static byte[] run(String spec, byte[] gray, int width, int height) {
+            byte[] frame = gray.clone();
+            if (spec.isEmpty()) {
+                return frame;
+            }
+            for (String part : spec.split(",")) {
+                String[] a = part.split(":");
+                switch (a[0]) {
+                    case "gaussian":
+                        frame = gaussian(frame, width, height, Integer.parseInt(a[1]));
+                        break;
+                    case "box":
+                        frame = box(frame, width, height, Integer.parseInt(a[1]));
+                        break;
+                    case "sobel":
+                        frame = sobel(frame, width, height);
+                        break;
+                    case "laplacian":
+                        frame = laplacian(frame, width, height);
+                        break;
+                    case "dilate":
+                        frame = morphology(frame, width, height, Integer.parseInt(a[1]), true);
+                        break;
+                    case "erode":
+                        frame = morphology(frame, width, height, Integer.parseInt(a[1]), false);
+                        break;
+                    case "canny": {
+                        byte[] map = CannyEdgeDetector.newMap(width, height);
+                        int low = Integer.parseInt(a[1]);
+                        int high = Integer.parseInt(a[2]);
+                        CannyEdgeDetector.nonMaxSuppression(frame, 0, map, new CannyEdgeDetector.GradientRows(),
+                                width, height, 0, height, low, high);
+                        byte[] edges = new byte[width * height];
+                        new CannyEdgeDetector(low, high).hysteresis(map, edges, width, height);
+                        frame = edges;
+                        break;
+                    }
+                    default: {
+                        FilterOperator.PointOperator op = (FilterOperator.PointOperator) FilterOperator.parse(part);
+                        for (int i = 0; i < frame.length; i++) {
+                            frame[i] = (byte) op.apply(frame[i] & 0xFF);
+                        }
+                    }
+                }
+            }
+            return frame;
+        }
+        
+        private static int at(byte[] f, int width, int height, int x, int y) {
+            return f[CannyEdgeDetector.reflect101(y, height) * width + CannyEdgeDetector.reflect101(x, width)] & 0xFF;
+        }
+        
+        private static byte[] gaussian(byte[] f, int width, int height, int size) {
+            byte[] out = new byte[f.length];
+            if (size == 3) {
+                int[] k = {1, 2, 1};
+                for (int y = 0; y < height; y++) {
+                    for (int x = 0; x < width; x++) {
+                        int sum = 0;
+                        for (int j = -1; j <= 1; j++) {
+                            for (int i = -1; i <= 1; i++) {
+                                sum += k[j + 1] * k[i + 1] * at(f, width, height, x + i, y + j);
+                            }
+                        }
+                        out[y * width + x] = (byte) ((sum + 8) >> 4);
+                    }
+                }
+            } else {
+                CannyEdgeDetector.gaussianBlur(f, 0, out, 0, new int[f.length], width, height, 0, height);
+            }
+            return out;
+        }
+        
+        private static byte[] box(byte[] f, int width, int height, int size) {
+            byte[] out = new byte[f.length];
+            int r = size / 2;
+            for (int y = 0; y < height; y++) {
+                for (int x = 0; x < width; x++) {
+                    int sum = 0;
+                    for (int j = -r; j <= r; j++) {
+                        for (int i = -r; i <= r; i++) {
+                            sum += at(f, width, height, x + i, y + j);
+                        }
+                    }
+                    out[y * width + x] = (byte) Math.round((float) sum / (size * size));
+                }
+            }
+            return out;
+        }
+        
+        private static byte[] sobel(byte[] f, int width, int height) {
+            byte[] out = new byte[f.length];
+            for (int y = 0; y < height; y++) {
+                for (int x = 0; x < width; x++) {
+                    int gx = 0;
+                    int gy = 0;
+                    for (int j = -1; j <= 1; j++) {
+                        for (int i = -1; i <= 1; i++) {
+                            int v = at(f, width, height, x + i, y + j);
+                            gx += i * (2 - Math.abs(j)) * v;
+                            gy += j * (2 - Math.abs(i)) * v;
+                        }
+                    }
+                    out[y * width + x] = (byte) Math.min(255, Math.abs(gx) + Math.abs(gy));
+                }
+            }
+            return out;
+        }
+        
+        private static byte[] laplacian(byte[] f, int width, int height) {
+            byte[] out = new byte[f.length];
+            for (int y = 0; y < height; y++) {
+                for (int x = 0; x < width; x++) {
+                    int v = at(f, width, height, x - 1, y) + at(f, width, height, x + 1, y)
+                            + at(f, width, height, x, y - 1) + at(f, width, height, x, y + 1)
+                            - 4 * at(f, width, height, x, y);
+                    out[y * width + x] = (byte) Math.min(255, Math.abs(v));
+                }
+            }
+            return out;
+        }
+        
+        private static byte[] morphology(byte[] f, int width, int height, int size, boolean dilate) {
+            byte[] out = new byte[f.length];
+            int r = size / 2;
+            for (int y = 0; y < height; y++) {
+                for (int x = 0; x < width; x++) {
+                    int best = dilate ? 0 : 255;
+                    for (int j = Math.max(0, y - r); j <= Math.min(height - 1, y + r); j++) {
+                        for (int i = Math.max(0, x - r); i <= Math.min(width - 1, x + r); i++) {
+                            int v = f[j * width + i] & 0xFF;
+                            best = dilate ? Math.max(best, v) : Math.min(best, v);
+                        }
+                    }
+                    out[y * width + x] = (byte) best;
+                }
+            }
+            return out;
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package com.example.edgedetectionviewer;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the pooled frame buffers used by the render loop
+ */
+public class FrameBufferPoolTest {
+    
+    private static final int WIDTH = 640;
+    private static final int HEIGHT = 480;
+    private static final int FRAMES = 2000;
+    
+    @Test
+    public void testAcquire_returnsDirectBufferOfFrameSize() {
+        FrameBufferPool pool = new FrameBufferPool();
+        FrameBuffer buffer = pool.acquire(WIDTH, HEIGHT, 4);
+        
+        ByteBuffer data = buffer.getData();
+        assertTrue(data.isDirect());
+        assertEquals(ByteOrder.nativeOrder(), data.order());
+        assertEquals(WIDTH * HEIGHT * 4, data.capacity());
+        assertEquals(WIDTH * HEIGHT * 4, data.remaining());
+    }
+    
+    @Test
+    public void testRelease_reusesBufferAndResetsPosition() {
+        FrameBufferPool pool = new FrameBufferPool();
+        FrameBuffer first = pool.acquire(WIDTH, HEIGHT, 4);
+        first.getData().position(100);
+        first.release();
+        
+        FrameBuffer second = pool.acquire(WIDTH, HEIGHT, 4);
+        assertSame(first, second);
+        assertEquals(0, second.getData().position());
+        assertEquals(1, pool.getAllocationCount());
+    }
+    
+    @Test
+    public void testAcquire_keyedBySize() {
+        FrameBufferPool pool = new FrameBufferPool();
+        pool.acquire(WIDTH, HEIGHT, 4).release();
+        
+        // Same byte count, different shape: must not be handed out
+        FrameBuffer other = pool.acquire(HEIGHT, WIDTH, 4);
+        assertEquals(HEIGHT, other.getWidth());
+        assertEquals(2, pool.getAllocationCount());
+    }
+    
+    @Test
+    public void testRelease_boundedPerSize() {
+        FrameBufferPool pool = new FrameBufferPool(2);
+        FrameBuffer a = pool.acquire(WIDTH, HEIGHT, 4);
+        FrameBuffer b = pool.acquire(WIDTH, HEIGHT, 4);
+        FrameBuffer c = pool.acquire(WIDTH, HEIGHT, 4);
+        a.release();
+        b.release();
+        c.release();
+        
+        assertEquals(2, pool.getPooledCount());
+    }
+    
+    @Test(expected = IllegalStateException.class)
+    public void testRelease_twiceFails() {
+        FrameBufferPool pool = new FrameBufferPool();
+        FrameBuffer buffer = pool.acquire(WIDTH, HEIGHT, 4);
+        buffer.release();
+        buffer.release();
+    }
+    
+    @Test
+    public void testRetainOnly_dropsOtherSizes() {
+        FrameBufferPool pool = new FrameBufferPool();
+        pool.acquire(WIDTH, HEIGHT, 4).release();
+        pool.acquire(1280, 720, 4).release();
+        
+        pool.retainOnly(1280, 720, 4);
+        
+        assertEquals(1, pool.getPooledCount());
+        pool.acquire(1280, 720, 4);
+        assertEquals(2, pool.getAllocationCount());
+    }
+    
+    @Test
+    public void testRetainOnlySize_keepsEveryPixelFormat() {
+        FrameBufferPool pool = new FrameBufferPool();
+        pool.acquire(WIDTH, HEIGHT, 4).release();
+        pool.acquire(WIDTH, HEIGHT, 1).release();
+        pool.acquire(1280, 720, 1).release();
+        
+        pool.retainOnly(WIDTH, HEIGHT);
+        
+        assertEquals(2, pool.getPooledCount());
+        pool.acquire(WIDTH, HEIGHT, 1);
+        pool.acquire(WIDTH, HEIGHT, 4);
+        assertEquals(3, pool.getAllocationCount());
+    }
+    
+    @Test(expected = IllegalArgumentException.class)
+    public void testAcquire_invalidSize() {
+        new FrameBufferPool().acquire(0, HEIGHT, 4);
+    }
+    
+    @Test
+    public void testSteadyStateFrames_allocateNothing() {
+        AllocationMeter.assumeSupported();
+        
+        final FrameBufferPool pool = new FrameBufferPool(2);
+        final byte[] staging = new byte[WIDTH * HEIGHT * 4];
+        Runnable frames = new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 0; i < FRAMES; i++) {
+                    // Same shape as the render loop: readback, copy out, release
+                    FrameBuffer readback = pool.acquire(WIDTH, HEIGHT, 4);
+                    FrameBuffer output = pool.acquire(WIDTH, HEIGHT, 4);
+                    readback.getData().put(0, (byte) i);
+                    readback.getData().get(staging, 0, 64);
+                    readback.release();
+                    output.release();
+                }
+            }
+        };
+        
+        // Warm-up populates the pool and gets the loop compiled
+        frames.run();
+        long allocated = AllocationMeter.measure(frames);
+        
+        // Allow for stray bytes from the JVM itself (deoptimization, safepoints), but
+        // nothing that scales with the frame count
+        assertEquals("Bytes allocated per frame", 0, allocated / FRAMES);
+        assertEquals(2, pool.getAllocationCount());
+    }
+}
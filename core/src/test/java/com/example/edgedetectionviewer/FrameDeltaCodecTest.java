@@ -0,0 +1,101 @@
+package com.example.edgedetectionviewer;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class FrameDeltaCodecTest {
+    
+    @Test
+    public void testRoundTrip_sparseChangesAcrossFrames() {
+        Random random = new Random(7);
+        int length = 64 * 48;
+        byte[] frame = new byte[length];
+        byte[] encoderReference = new byte[length];
+        byte[] decoded = new byte[length];
+        for (int f = 0; f < 20; f++) {
+            for (int i = 0; i < 100; i++) {
+                frame[random.nextInt(length)] = (byte) random.nextInt(256);
+            }
+            // Gaps of every length, including ones below MIN_SKIP
+            frame[length - 1] = (byte) f;
+            frame[length - 3] = (byte) (f + 1);
+            
+            ByteBuffer out = ByteBuffer.allocate(FrameDeltaCodec.maxEncodedSize(length));
+            FrameDeltaCodec.encode(frame, encoderReference, length, out);
+            out.flip();
+            FrameDeltaCodec.decode(out, decoded, length);
+            
+            assertArrayEquals("Frame " + f, frame, decoded);
+            assertArrayEquals(frame, encoderReference);
+        }
+    }
+    
+    @Test
+    public void testEncode_edgeKeyframeAndStaticFrameAreSmall() {
+        int width = 320;
+        int height = 240;
+        byte[] edges = new byte[width * height];
+        for (int x = 0; x < width; x++) {
+            edges[100 * width + x] = (byte) 255;
+        }
+        byte[] reference = new byte[edges.length];
+        ByteBuffer out = ByteBuffer.allocate(FrameDeltaCodec.maxEncodedSize(edges.length));
+        
+        FrameDeltaCodec.encode(edges, reference, edges.length, out);
+        assertTrue("Keyframe of " + out.position() + " bytes", out.position() < width + 16);
+        
+        out.clear();
+        FrameDeltaCodec.encode(edges, reference, edges.length, out);
+        assertEquals(0, out.position());
+    }
+    
+    @Test
+    public void testEncode_noiseStaysWithinBound() {
+        Random random = new Random(3);
+        int length = 1 << 20;
+        byte[] frame = new byte[length];
+        random.nextBytes(frame);
+        // Every other byte changed: short gaps fold into one literal over the whole frame
+        byte[] reference = frame.clone();
+        for (int i = 0; i < length; i += 2) {
+            reference[i]++;
+        }
+        ByteBuffer out = ByteBuffer.allocate(FrameDeltaCodec.maxEncodedSize(length));
+        
+        FrameDeltaCodec.encode(frame, reference, length, out);
+        
+        assertTrue(out.position() <= FrameDeltaCodec.maxEncodedSize(length));
+        assertArrayEquals(frame, reference);
+    }
+    
+    @Test(expected = IllegalArgumentException.class)
+    public void testDecode_rejectsRunsPastTheFrame() {
+        ByteBuffer in = ByteBuffer.allocate(16);
+        FrameDeltaCodec.writeVarint(in, 10);
+        FrameDeltaCodec.writeVarint(in, 1);
+        in.put((byte) 1);
+        in.flip();
+        
+        FrameDeltaCodec.decode(in, new byte[8], 8);
+    }
+    
+    @Test
+    public void testVarint_roundTripsLargeValues() {
+        ByteBuffer buffer = ByteBuffer.allocate(64);
+        int[] values = {0, 1, 127, 128, 16383, 16384, Integer.MAX_VALUE};
+        for (int value : values) {
+            FrameDeltaCodec.writeVarint(buffer, value);
+        }
+        buffer.flip();
+        int[] read = new int[values.length];
+        for (int i = 0; i < values.length; i++) {
+            read[i] = FrameDeltaCodec.readVarint(buffer);
+        }
+        assertEquals(Arrays.toString(values), Arrays.toString(read));
+    }
+}
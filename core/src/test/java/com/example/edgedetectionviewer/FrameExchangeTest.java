@@ -0,0 +1,264 @@
+package com.example.edgedetectionviewer;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for the lock-free hand-over of processed frames to their readers
+ */
+public class FrameExchangeTest {
+    
+    private static long write(FrameExchange exchange, int value) {
+        FrameBuffer frame = exchange.beginWrite(4, 2, 4);
+        assertNotNull(frame);
+        frame.getData().putInt(0, value);
+        return exchange.publish();
+    }
+    
+    @Test
+    public void testReader_getsNewestFrameOnceWithItsSequence() {
+        FrameExchange exchange = new FrameExchange(1);
+        FrameExchange.Reader reader = exchange.newReader();
+        assertNull(reader.acquireLatest());
+        
+        assertEquals(1, write(exchange, 10));
+        FrameBuffer frame = reader.acquireLatest();
+        assertEquals(10, frame.getData().getInt(0));
+        assertEquals(1, frame.getSequence());
+        frame.release();
+        assertNull(reader.acquireLatest());
+        
+        write(exchange, 20);
+        write(exchange, 30);
+        frame = reader.acquireLatest();
+        assertEquals(30, frame.getData().getInt(0));
+        assertEquals(3, frame.getSequence());
+        assertEquals(1, reader.getSkippedCount());
+        assertEquals(2, reader.getAcquiredCount());
+        frame.release();
+    }
+    
+    @Test
+    public void testReaders_shareTheSameFrame() {
+        FrameExchange exchange = new FrameExchange(2);
+        write(exchange, 1);
+        // Frames before a reader started are not skipped ones
+        FrameExchange.Reader first = exchange.newReader();
+        FrameExchange.Reader second = exchange.newReader();
+        assertNull(first.acquireLatest());
+        
+        write(exchange, 2);
+        FrameBuffer a = first.acquireLatest();
+        FrameBuffer b = second.acquireLatest();
+        assertSame(a, b);
+        assertEquals(0, first.getSkippedCount());
+        
+        // Both hold frame 2 in a single slot, leaving the writer enough of the others
+        write(exchange, 3);
+        write(exchange, 4);
+        a.release();
+        b.release();
+        assertEquals(4, first.acquireLatest().getSequence());
+    }
+    
+    @Test
+    public void testHeldFrame_isNeverRewritten() {
+        FrameExchange exchange = new FrameExchange(1);
+        FrameExchange.Reader reader = exchange.newReader();
+        write(exchange, 7);
+        FrameBuffer held = reader.acquireLatest();
+        for (int i = 0; i < 10; i++) {
+            FrameBuffer next = exchange.beginWrite(4, 2, 4);
+            assertNotSame(held, next);
+            next.getData().putInt(0, 100 + i);
+            exchange.publish();
+        }
+        assertEquals(7, held.getData().getInt(0));
+        assertEquals(1, held.getSequence());
+        held.release();
+    }
+    
+    @Test
+    public void testReaderHoldingTwoFrames_starvesTheWriter() {
+        FrameExchange exchange = new FrameExchange(1);
+        FrameExchange.Reader reader = exchange.newReader();
+        write(exchange, 1);
+        FrameBuffer first = reader.acquireLatest();
+        write(exchange, 2);
+        // Against the contract: the first frame is still held
+        FrameBuffer second = reader.acquireLatest();
+        write(exchange, 3);
+        
+        assertNull(exchange.beginWrite(4, 2, 4));
+        assertEquals(1, exchange.getStarvedCount());
+        first.release();
+        assertNotNull(exchange.beginWrite(4, 2, 4));
+        exchange.publish();
+        second.release();
+    }
+    
+    @Test
+    public void testAbandonedWrite_isNotPublished() {
+        FrameExchange exchange = new FrameExchange(1);
+        FrameExchange.Reader reader = exchange.newReader();
+        write(exchange, 1);
+        exchange.beginWrite(4, 2, 4).getData().putInt(0, 99);
+        exchange.abandonWrite();
+        
+        assertEquals(1, exchange.getPublishedCount());
+        FrameBuffer frame = reader.acquireLatest();
+        assertEquals(1, frame.getData().getInt(0));
+        frame.release();
+    }
+    
+    @Test
+    public void testShapeChange_reallocatesSlot() {
+        FrameExchange exchange = new FrameExchange(1);
+        FrameExchange.Reader reader = exchange.newReader();
+        write(exchange, 1);
+        FrameBuffer gray = exchange.beginWrite(6, 3, 1);
+        assertEquals(6, gray.getWidth());
+        assertEquals(18, gray.getSizeInBytes());
+        exchange.publish();
+        assertSame(gray, reader.acquireLatest());
+        gray.release();
+    }
+    
+    @Test
+    public void testMisuse_isRejected() {
+        FrameExchange exchange = new FrameExchange(1);
+        FrameExchange.Reader reader = exchange.newReader();
+        try {
+            exchange.newReader();
+            fail("Reader beyond the maximum");
+        } catch (IllegalStateException expected) {
+        }
+        try {
+            exchange.publish();
+            fail("Publish without a write");
+        } catch (IllegalStateException expected) {
+        }
+        write(exchange, 1);
+        FrameBuffer frame = reader.acquireLatest();
+        frame.release();
+        try {
+            frame.release();
+            fail("Released twice");
+        } catch (IllegalStateException expected) {
+        }
+        // The slot is still usable
+        write(exchange, 2);
+        write(exchange, 3);
+        write(exchange, 4);
+    }
+    
+    /**
+     * One writer stamping every int of each frame with its sequence, readers checking every
+     * frame they hold against its sequence number before and after a pause. A frame written
+     * while held, or handed out half-written, fails the check.
+     */
+    @Test
+    public void testConcurrentReaders_neverSeeTornFrames() throws Exception {
+        final int readers = 3;
+        final int width = 32;
+        final int height = 32;
+        final FrameExchange exchange = new FrameExchange(readers);
+        final AtomicReference<String> failure = new AtomicReference<>();
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(2);
+        final long[] checked = new long[readers];
+        
+        Thread writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                long next = 1;
+                while (System.nanoTime() < deadline && failure.get() == null) {
+                    FrameBuffer frame = exchange.beginWrite(width, height, 4);
+                    if (frame == null) {
+                        failure.compareAndSet(null, "Writer starved at frame " + next);
+                        return;
+                    }
+                    ByteBuffer data = frame.getData();
+                    for (int p = 0; p < width * height * 4; p += 4) {
+                        data.putInt(p, stamp(next));
+                    }
+                    exchange.publish();
+                    next++;
+                }
+            }
+        }, "writer");
+        
+        Thread[] threads = new Thread[readers];
+        final FrameExchange.Reader[] views = new FrameExchange.Reader[readers];
+        for (int r = 0; r < readers; r++) {
+            final int index = r;
+            final FrameExchange.Reader reader = exchange.newReader();
+            views[r] = reader;
+            threads[r] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    long last = 0;
+                    while (System.nanoTime() < deadline && failure.get() == null) {
+                        FrameBuffer frame = reader.acquireLatest();
+                        if (frame == null) {
+                            Thread.yield();
+                            continue;
+                        }
+                        long sequence = frame.getSequence();
+                        if (sequence <= last) {
+                            failure.compareAndSet(null, "Frame " + sequence + " after " + last);
+                        }
+                        last = sequence;
+                        check(frame, sequence, failure);
+                        // Hold it a while, giving the writer time to run over it if it could
+                        if ((sequence & 7) == index) {
+                            Thread.yield();
+                        }
+                        check(frame, sequence, failure);
+                        frame.release();
+                        checked[index]++;
+                    }
+                }
+            }, "reader" + r);
+        }
+        
+        writer.start();
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        writer.join();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        
+        assertNull(failure.get(), failure.get());
+        assertEquals(0, exchange.getStarvedCount());
+        long published = exchange.getPublishedCount();
+        assertTrue("Frames published: " + published, published > 100);
+        for (int r = 0; r < readers; r++) {
+            assertTrue("Frames checked by reader " + r, checked[r] > 0);
+            // Every frame up to the last one taken was either taken or counted as skipped
+            FrameExchange.Reader reader = views[r];
+            assertEquals(reader.getLastSequence(), reader.getAcquiredCount() + reader.getSkippedCount());
+        }
+    }
+    
+    private static int stamp(long sequence) {
+        return (int) (sequence * 0x9E3779B1L);
+    }
+    
+    private static void check(FrameBuffer frame, long sequence, AtomicReference<String> failure) {
+        ByteBuffer data = frame.getData();
+        int expected = stamp(sequence);
+        for (int p = 0; p < data.capacity(); p += 4) {
+            if (data.getInt(p) != expected) {
+                failure.compareAndSet(null, "Torn frame " + sequence + " at byte " + p);
+                return;
+            }
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package com.example.edgedetectionviewer;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+
+import static org.junit.Assert.*;
+
+public class FrameMetricsTest {
+    
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+    
+    @Test
+    public void testDisabled_recordsNothing() {
+        FrameMetrics metrics = new FrameMetrics();
+        long start = metrics.start();
+        assertEquals(0, start);
+        metrics.stop(FrameMetrics.Stage.BLUR, start);
+        metrics.record(FrameMetrics.Stage.TRANSFER, 1000);
+        
+        for (FrameMetrics.Stage stage : FrameMetrics.Stage.values()) {
+            assertEquals(stage.name(), 0, metrics.snapshot(stage).getCount());
+        }
+    }
+    
+    @Test
+    public void testEnabled_recordsStageTimings() throws InterruptedException {
+        FrameMetrics metrics = new FrameMetrics();
+        metrics.setEnabled(true);
+        long start = metrics.start();
+        Thread.sleep(2);
+        metrics.stop(FrameMetrics.Stage.PROCESS, start);
+        metrics.record(FrameMetrics.Stage.TRANSFER, 1500);
+        
+        assertEquals(1, metrics.snapshot(FrameMetrics.Stage.PROCESS).getCount());
+        assertTrue(metrics.snapshot(FrameMetrics.Stage.PROCESS).getMax() >= 2000000);
+        assertEquals(1500.0, metrics.snapshot(FrameMetrics.Stage.TRANSFER).getMean(), 1e-9);
+        
+        metrics.reset();
+        assertEquals(0, metrics.snapshot(FrameMetrics.Stage.PROCESS).getCount());
+    }
+    
+    @Test
+    public void testCannyEdgeDetector_recordsItsStages() {
+        FrameMetrics metrics = new FrameMetrics();
+        metrics.setEnabled(true);
+        CannyEdgeDetector detector = new CannyEdgeDetector();
+        detector.setMetrics(metrics);
+        byte[] edges = new byte[64 * 48];
+        
+        detector.detectEdges(SyntheticFrames.rgba(64, 48, 1), 0, edges, 64, 48);
+        detector.detectEdgesFromLuma(edges.clone(), edges, 64, 48);
+        
+        assertEquals(1, metrics.snapshot(FrameMetrics.Stage.GRAYSCALE).getCount());
+        assertEquals(2, metrics.snapshot(FrameMetrics.Stage.BLUR).getCount());
+        assertEquals(2, metrics.snapshot(FrameMetrics.Stage.CANNY).getCount());
+    }
+    
+    @Test
+    public void testDumpTo_writesOneLinePerRecordedStage() throws IOException {
+        FrameMetrics metrics = new FrameMetrics();
+        metrics.setEnabled(true);
+        for (int i = 1; i <= 100; i++) {
+            metrics.record(FrameMetrics.Stage.UPLOAD, i * 100000L);
+        }
+        metrics.record(FrameMetrics.Stage.BLUR, 3000000);
+        
+        File file = folder.newFile("metrics.txt");
+        metrics.dumpTo(file);
+        String[] lines = new String(Files.readAllBytes(file.toPath()), Charset.forName("UTF-8")).split("\\R");
+        
+        assertEquals(3, lines.length);
+        assertTrue(lines[0], lines[0].startsWith("stage"));
+        assertTrue(lines[1], lines[1].matches("blur +1 +3\\.000 .*"));
+        assertTrue(lines[2], lines[2].matches("upload +100 +5\\.050 .*"));
+        assertTrue(metrics.describe(), metrics.describe().contains("upload=5.0"));
+    }
+    
+    @Test(expected = IllegalStateException.class)
+    public void testNone_cannotBeEnabled() {
+        FrameMetrics.NONE.setEnabled(true);
+    }
+}
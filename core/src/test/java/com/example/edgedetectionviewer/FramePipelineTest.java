@@ -0,0 +1,430 @@
+package com.example.edgedetectionviewer;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for the capture/process/present pipeline, driven from the test thread
+ */
+public class FramePipelineTest {
+    
+    private static final int WIDTH = 64;
+    private static final int HEIGHT = 48;
+    
+    private FramePipeline pipeline;
+    
+    private abstract static class StubProcessor implements FrameProcessor {
+        @Override
+        public boolean processLuma(ByteBuffer luma, int rowStride, ByteBuffer output, int width, int height, boolean edges) {
+            return processFrame(luma, output, width, height, edges);
+        }
+        
+        @Override
+        public boolean processLumaRegions(ByteBuffer luma, int rowStride, int width, int height, RegionSet regions, ByteBuffer output) {
+            return false;
+        }
+        
+        @Override
+        public OutputFormat getOutputFormat() {
+            return OutputFormat.RGBA;
+        }
+        
+        @Override
+        public void setQualityLevel(QualityLevel level) {
+        }
+        
+        @Override
+        public void release() {
+        }
+    }
+    
+    @After
+    public void tearDown() {
+        if (pipeline != null) {
+            pipeline.stop();
+        }
+    }
+    
+    @Test
+    public void testProcessedFrameMatchesProcessor() throws Exception {
+        pipeline = new FramePipeline(new JavaFrameProcessor());
+        final CountDownLatch ready = new CountDownLatch(1);
+        pipeline.setListener(new FramePipeline.Listener() {
+            @Override
+            public void onFrameProcessed() {
+                ready.countDown();
+            }
+        });
+        pipeline.start();
+        
+        byte[] frame = SyntheticFrames.rgba(WIDTH, HEIGHT, 1);
+        FrameBuffer capture = pipeline.acquireCaptureBuffer(WIDTH, HEIGHT);
+        capture.getData().put(frame);
+        pipeline.submit(capture);
+        
+        assertTrue(ready.await(5, TimeUnit.SECONDS));
+        FrameBuffer result = pipeline.pollProcessed();
+        assertNotNull(result);
+        
+        ByteBuffer expected = ByteBuffer.allocate(frame.length);
+        new JavaFrameProcessor().processFrame(ByteBuffer.wrap(frame), expected, WIDTH, HEIGHT, true);
+        result.getData().rewind();
+        assertEquals(expected, result.getData());
+        result.release();
+    }
+    
+    @Test
+    public void testFrameReader_sharesPresentedFrames() throws Exception {
+        pipeline = new FramePipeline(new JavaFrameProcessor(new CannyEdgeDetector(), OutputFormat.LUMINANCE));
+        FrameExchange.Reader snapshots = pipeline.newFrameReader();
+        pipeline.start();
+        
+        byte[] gray = new byte[WIDTH * HEIGHT];
+        new CannyEdgeDetector().grayscale(SyntheticFrames.rgba(WIDTH, HEIGHT, 4), 0, gray, WIDTH, HEIGHT);
+        FrameBuffer presented = submitLuma(gray);
+        FrameBuffer snapshot = snapshots.acquireLatest();
+        assertSame(presented, snapshot);
+        assertEquals(1, snapshot.getSequence());
+        presented.release();
+        snapshot.release();
+        
+        // The renderer lagging behind skips frames; the reader that kept up does not
+        for (int i = 0; i < 3; i++) {
+            submitLumaAndWait(gray, 2 + i);
+            snapshots.acquireLatest().release();
+        }
+        presented = pipeline.pollProcessed();
+        assertEquals(4, presented.getSequence());
+        presented.release();
+        assertEquals(0, snapshots.getSkippedCount());
+        assertTrue(pipeline.describeStats(), pipeline.describeStats().contains("skipped=2"));
+    }
+    
+    @Test
+    public void testSlowProcessor_dropsFramesInsteadOfQueueing() throws Exception {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        pipeline = new FramePipeline(new StubProcessor() {
+            @Override
+            public boolean processFrame(ByteBuffer input, ByteBuffer output, int width, int height, boolean edges) {
+                started.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                output.put(0, input.get(0));
+                return true;
+            }
+                    });
+        pipeline.start();
+        
+        // The worker blocks on the first frame while 20 more arrive
+        for (int i = 0; i < 21; i++) {
+            FrameBuffer capture = pipeline.acquireCaptureBuffer(WIDTH, HEIGHT);
+            capture.getData().put(0, (byte) i);
+            pipeline.submit(capture);
+            if (i == 0) {
+                assertTrue(started.await(5, TimeUnit.SECONDS));
+            }
+        }
+        SpscRingBuffer<CapturedFrame> captured = pipeline.getCaptureQueue();
+        assertTrue(captured.size() <= captured.capacity());
+        release.countDown();
+        
+        // Only the newest capture is processed after the stalled one
+        FrameBuffer result;
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (System.nanoTime() < deadline && pipeline.getProcessedCount() < 2) {
+            Thread.sleep(5);
+        }
+        result = pipeline.pollProcessed();
+        assertNotNull(result);
+        assertEquals(20, result.getData().get(0));
+        assertEquals(2, pipeline.getProcessedCount());
+        // 18 evicted by the full ring, 1 skipped for the newest
+        assertEquals(19, captured.getDroppedCount());
+        result.release();
+    }
+    
+    @Test
+    public void testProcessorException_countsAsFailed() throws Exception {
+        pipeline = new FramePipeline(new StubProcessor() {
+            @Override
+            public boolean processFrame(ByteBuffer input, ByteBuffer output, int width, int height, boolean edges) {
+                throw new IllegalStateException("boom");
+            }
+                    });
+        pipeline.start();
+        pipeline.submit(pipeline.acquireCaptureBuffer(WIDTH, HEIGHT));
+        
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (System.nanoTime() < deadline && pipeline.getFailedCount() == 0) {
+            Thread.sleep(5);
+        }
+        assertEquals(1, pipeline.getFailedCount());
+        assertNull(pipeline.pollProcessed());
+        assertEquals("boom", pipeline.getLastError().getMessage());
+    }
+    
+    @Test
+    public void testLuminanceProcessor_producesSingleChannelFrames() throws Exception {
+        pipeline = new FramePipeline(new JavaFrameProcessor(new CannyEdgeDetector(), OutputFormat.LUMINANCE));
+        pipeline.start();
+        
+        byte[] frame = SyntheticFrames.rgba(WIDTH, HEIGHT, 1);
+        FrameBuffer capture = pipeline.acquireCaptureBuffer(WIDTH, HEIGHT);
+        capture.getData().put(frame);
+        pipeline.submit(capture);
+        
+        FrameBuffer result = null;
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (result == null && System.nanoTime() < deadline) {
+            result = pipeline.pollProcessed();
+        }
+        assertNotNull(result);
+        assertEquals(1, result.getBytesPerPixel());
+        
+        byte[] edges = new byte[WIDTH * HEIGHT];
+        new CannyEdgeDetector().detectEdges(frame, 0, edges, WIDTH, HEIGHT);
+        result.getData().rewind();
+        assertEquals(ByteBuffer.wrap(edges), result.getData());
+        result.release();
+    }
+    
+    @Test
+    public void testGeometryListener_seesEdgesOfEachProcessedFrame() throws Exception {
+        pipeline = new FramePipeline(new JavaFrameProcessor(new CannyEdgeDetector(), OutputFormat.LUMINANCE));
+        final List<int[]> segments = new CopyOnWriteArrayList<>();
+        final List<Integer> points = new CopyOnWriteArrayList<>();
+        pipeline.setEdgeGeometryListener(EdgeGeometry.Mode.SEGMENTS, new EdgeGeometry.Listener() {
+            @Override
+            public void onEdgeGeometry(EdgeGeometry geometry) {
+                points.add(geometry.getPointCount());
+                segments.add(Arrays.copyOf(geometry.getSegments(), 4 * geometry.getSegmentCount()));
+            }
+        });
+        pipeline.start();
+        
+        byte[] gray = new byte[WIDTH * HEIGHT];
+        new CannyEdgeDetector().grayscale(SyntheticFrames.rgba(WIDTH, HEIGHT, 3), 0, gray, WIDTH, HEIGHT);
+        FrameBuffer result = submitLuma(gray);
+        
+        // Traced from the frame that was presented, before it was offered
+        assertEquals(1, points.size());
+        EdgeGeometry expected = new EdgeGeometry();
+        new EdgeTracer().trace(result.getData(), WIDTH, HEIGHT, 1, 0, EdgeGeometry.Mode.SEGMENTS, expected);
+        assertTrue(expected.getPointCount() > 0);
+        assertEquals(expected.getPointCount(), (int) points.get(0));
+        assertArrayEquals(Arrays.copyOf(expected.getSegments(), 4 * expected.getSegmentCount()), segments.get(0));
+        result.release();
+        
+        // Grayscale frames have no edges to trace
+        pipeline.setEdgeDetectionEnabled(false);
+        submitLuma(gray).release();
+        pipeline.setEdgeGeometryListener(EdgeGeometry.Mode.POINTS, null);
+        pipeline.setEdgeDetectionEnabled(true);
+        submitLuma(gray).release();
+        assertEquals(1, points.size());
+    }
+    
+    @Test
+    public void testRegions_processLumaFramesInsideThemOnly() throws Exception {
+        pipeline = new FramePipeline(new JavaFrameProcessor(new CannyEdgeDetector(), OutputFormat.RGBA));
+        RegionSet regions = new RegionSet(1);
+        regions.addRect(8, 6, 30, 20);
+        pipeline.setRegions(regions);
+        // The pipeline keeps its own copy
+        regions.set(0, 0, 0, 1, 1);
+        pipeline.start();
+        
+        byte[] gray = new byte[WIDTH * HEIGHT];
+        new CannyEdgeDetector().grayscale(SyntheticFrames.rgba(WIDTH, HEIGHT, 2), 0, gray, WIDTH, HEIGHT);
+        FrameBuffer result = submitLuma(gray);
+        
+        RegionSet expectedRegions = new RegionSet(1);
+        expectedRegions.addRect(8, 6, 30, 20);
+        byte[] packed = new byte[expectedRegions.getOutputSize()];
+        new RegionEdgeDetector().detect(ByteBuffer.wrap(gray), WIDTH, WIDTH, HEIGHT, expectedRegions, packed, 0);
+        ByteBuffer frame = result.getData();
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                boolean inside = x >= 8 && x < 38 && y >= 6 && y < 26;
+                byte v = inside ? packed[(y - 6) * 30 + x - 8] : 0;
+                int p = (y * WIDTH + x) * 4;
+                assertEquals(v, frame.get(p));
+                assertEquals(v, frame.get(p + 2));
+                assertEquals((byte) 255, frame.get(p + 3));
+            }
+        }
+        result.release();
+        
+        // Without regions frames run whole again
+        pipeline.setRegions(null);
+        result = submitLuma(gray);
+        byte[] edges = new byte[WIDTH * HEIGHT];
+        new CannyEdgeDetector().detectEdgesFromLuma(gray, edges, WIDTH, HEIGHT);
+        for (int p = 0; p < WIDTH * HEIGHT; p++) {
+            assertEquals(edges[p], result.getData().get(p * 4));
+        }
+        result.release();
+    }
+    
+    @Test
+    public void testRegionFrames_writeOnlyTheirRegions() throws Exception {
+        pipeline = new FramePipeline(new JavaFrameProcessor(new CannyEdgeDetector(), OutputFormat.LUMINANCE));
+        RegionSet first = new RegionSet(1);
+        first.addRect(4, 4, 20, 16);
+        pipeline.setRegions(first);
+        pipeline.start();
+        byte[] gray = new byte[WIDTH * HEIGHT];
+        new CannyEdgeDetector().grayscale(SyntheticFrames.rgba(WIDTH, HEIGHT, 5), 0, gray, WIDTH, HEIGHT);
+        for (int i = 0; i < 3; i++) {
+            submitLuma(gray).release();
+        }
+        
+        // Moved: the old region is blanked in every buffer it was drawn into
+        RegionSet second = new RegionSet(1);
+        second.addRect(40, 30, 16, 12);
+        pipeline.setRegions(second);
+        Set<FrameBuffer> marked = new HashSet<>();
+        int checked = 0;
+        for (int i = 0; i < 6; i++) {
+            FrameBuffer result = submitLuma(gray);
+            ByteBuffer frame = result.getData();
+            boolean wasMarked = marked.contains(result);
+            for (int y = 0; y < HEIGHT; y++) {
+                for (int x = 0; x < WIDTH; x++) {
+                    if (x >= 40 && x < 56 && y >= 30 && y < 42) {
+                        continue;
+                    }
+                    int p = y * WIDTH + x;
+                    // Marked outside the region while held; later frames in the same buffer
+                    // keep the mark, as the worker writes nothing there
+                    assertEquals("Pixel " + x + "," + y + " of frame " + i, wasMarked ? 0x55 : 0, frame.get(p));
+                    frame.put(p, (byte) 0x55);
+                }
+            }
+            if (wasMarked) {
+                checked++;
+            }
+            marked.add(result);
+            result.release();
+        }
+        assertTrue(checked > 0);
+    }
+    
+    private FrameBuffer submitLuma(byte[] gray) {
+        LumaFrame capture = new LumaFrame(null);
+        capture.set(SyntheticFrames.lumaPlane(gray, WIDTH, HEIGHT, WIDTH + 16), WIDTH, HEIGHT, WIDTH + 16, 1, null);
+        pipeline.submit(capture);
+        FrameBuffer result = null;
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (result == null && System.nanoTime() < deadline) {
+            result = pipeline.pollProcessed();
+        }
+        assertNotNull(result);
+        return result;
+    }
+    
+    private void submitLumaAndWait(byte[] gray, long processed) throws InterruptedException {
+        LumaFrame capture = new LumaFrame(null);
+        capture.set(SyntheticFrames.lumaPlane(gray, WIDTH, HEIGHT, WIDTH), WIDTH, HEIGHT, WIDTH, 1, null);
+        pipeline.submit(capture);
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (System.nanoTime() < deadline && pipeline.getProcessedCount() < processed) {
+            Thread.sleep(1);
+        }
+        assertEquals(processed, pipeline.getProcessedCount());
+    }
+    
+    @Test
+    public void testQualityGovernor_setsLevelAndSkipsFrames() throws Exception {
+        final QualityLevel level = new QualityLevel(1, 3, 2);
+        final List<QualityLevel> applied = new CopyOnWriteArrayList<>();
+        pipeline = new FramePipeline(new StubProcessor() {
+            @Override
+            public boolean processFrame(ByteBuffer input, ByteBuffer output, int width, int height, boolean edges) {
+                return true;
+            }
+            
+            @Override
+            public void setQualityLevel(QualityLevel level) {
+                applied.add(level);
+            }
+        });
+        QualityGovernor governor = new QualityGovernor(Collections.singletonList(level),
+                TimeUnit.SECONDS.toNanos(1), QualityGovernor.SYSTEM_CLOCK);
+        pipeline.setQualityGovernor(governor);
+        pipeline.start();
+        
+        // One frame at a time, so none is dropped by the capture ring instead
+        for (int i = 1; i <= 6; i++) {
+            pipeline.submit(pipeline.acquireCaptureBuffer(WIDTH, HEIGHT));
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (System.nanoTime() < deadline && pipeline.getProcessedCount() + governor.getSkippedFrameCount() < i) {
+                Thread.sleep(1);
+            }
+        }
+        
+        assertEquals(3, pipeline.getProcessedCount());
+        assertEquals(3, governor.getSkippedFrameCount());
+        assertEquals(Collections.singletonList(level), applied);
+        
+        // Grayscale frames are all processed
+        pipeline.setEdgeDetectionEnabled(false);
+        for (int i = 0; i < 2; i++) {
+            pipeline.submit(pipeline.acquireCaptureBuffer(WIDTH, HEIGHT));
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (System.nanoTime() < deadline && pipeline.getProcessedCount() < 4 + i) {
+                Thread.sleep(1);
+            }
+        }
+        assertEquals(5, pipeline.getProcessedCount());
+        assertEquals(3, governor.getSkippedFrameCount());
+    }
+    
+    @Test
+    public void testNoProcessorYet_framesWaitForIt() throws Exception {
+        pipeline = new FramePipeline(null, FrameMetrics.NONE);
+        pipeline.start();
+        for (int i = 0; i < 3; i++) {
+            FrameBuffer capture = pipeline.acquireCaptureBuffer(WIDTH, HEIGHT);
+            capture.getData().put(0, (byte) i);
+            pipeline.submit(capture);
+        }
+        Thread.sleep(50);
+        assertEquals(0, pipeline.getProcessedCount());
+        assertEquals(0, pipeline.getFailedCount());
+        
+        pipeline.setProcessor(new StubProcessor() {
+            @Override
+            public boolean processFrame(ByteBuffer input, ByteBuffer output, int width, int height, boolean edges) {
+                output.put(0, input.get(0));
+                return true;
+            }
+        });
+        FrameBuffer result = null;
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (result == null && System.nanoTime() < deadline) {
+            result = pipeline.pollProcessed();
+        }
+        assertNotNull(result);
+        // The newest frame that waited in the capture ring
+        assertEquals(2, result.getData().get(0));
+        assertEquals(1, pipeline.getProcessedCount());
+        result.release();
+    }
+}
@@ -0,0 +1,397 @@
+package com.example.edgedetectionviewer;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+/**
+ * Round trips through the pre-trigger ring, the mapped writer and {@link RecordingReader}.
+ */
+public class FrameRecorderTest {
+    
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+    
+    private final FrameBufferPool pool = new FrameBufferPool();
+    private FrameRecorder recorder;
+    
+    @After
+    public void tearDown() {
+        if (recorder != null) {
+            recorder.close();
+        }
+    }
+    
+    @Test
+    public void testSave_keepsNewestFramesInOrder() throws Exception {
+        int width = 16;
+        int height = 8;
+        // Room for five frames
+        recorder = new FrameRecorder(5 * (FrameRecorder.RECORD_HEADER_SIZE + width * height));
+        long now = System.nanoTime();
+        for (int i = 0; i < 8; i++) {
+            recordFilled(width, height, 1, i, false, now + i);
+        }
+        assertEquals(5, recorder.getSlotCount());
+        
+        File file = save(TimeUnit.MINUTES.toNanos(1));
+        RecordingReader reader = RecordingReader.open(file);
+        try {
+            assertEquals(5, reader.getRecordCount());
+            for (int i = 3; i < 8; i++) {
+                assertTrue(reader.next());
+                assertEquals(i, reader.getSequence());
+                assertEquals(width, reader.getWidth());
+                assertEquals(height, reader.getHeight());
+                assertEquals(1, reader.getBytesPerPixel());
+                assertFalse(reader.isEdges());
+                assertFalse(reader.isPacked());
+                assertEquals(now + i, reader.getTimestampNanos());
+                assertFilled(reader.mapPixels(), i);
+            }
+            assertFalse(reader.next());
+        } finally {
+            reader.close();
+        }
+        assertEquals(FrameRecorder.FILE_HEADER_SIZE + 5 * (FrameRecorder.RECORD_HEADER_SIZE + width * height),
+                file.length());
+    }
+    
+    @Test
+    public void testSave_onlyFramesInsideWindow() throws Exception {
+        recorder = new FrameRecorder(1 << 20);
+        long now = System.nanoTime();
+        recordFilled(8, 8, 4, 1, true, now - TimeUnit.SECONDS.toNanos(10));
+        recordFilled(8, 8, 4, 2, true, now - TimeUnit.SECONDS.toNanos(4));
+        recordFilled(8, 8, 4, 3, true, now - TimeUnit.SECONDS.toNanos(1));
+        
+        RecordingReader reader = RecordingReader.open(save(TimeUnit.SECONDS.toNanos(5)));
+        try {
+            assertEquals(2, reader.getRecordCount());
+            assertTrue(reader.next());
+            assertEquals(1, reader.getSequence());
+            assertEquals(4, reader.getBytesPerPixel());
+            assertFilled(reader.mapPixels(), 2);
+            assertTrue(reader.next());
+            assertFilled(reader.mapPixels(), 3);
+        } finally {
+            reader.close();
+        }
+    }
+    
+    @Test
+    public void testSizeChange_startsANewRing() throws Exception {
+        recorder = new FrameRecorder(1 << 16);
+        long now = System.nanoTime();
+        recordFilled(32, 32, 1, 1, false, now);
+        recordFilled(16, 16, 1, 2, false, now);
+        recordFilled(16, 16, 1, 3, false, now);
+        
+        RecordingReader reader = RecordingReader.open(save(TimeUnit.MINUTES.toNanos(1)));
+        try {
+            assertEquals(2, reader.getRecordCount());
+            while (reader.next()) {
+                assertEquals(16, reader.getWidth());
+                assertFilled(reader.mapPixels(), (int) reader.getSequence() + 1);
+            }
+        } finally {
+            reader.close();
+        }
+    }
+    
+    @Test
+    public void testEdges_packedInRingAndSavedAsRuns() throws Exception {
+        int width = 64;
+        int height = 48;
+        int packedSlot = FrameRecorder.RECORD_HEADER_SIZE + EdgeMap.packedSize(width, height);
+        // Room for four gray frames, or seven times as many packed ones
+        recorder = new FrameRecorder(4 * (FrameRecorder.RECORD_HEADER_SIZE + width * height));
+        long now = System.nanoTime();
+        EdgeMap[] expected = new EdgeMap[6];
+        for (int i = 0; i < expected.length; i++) {
+            // A square outline moving right by a pixel a frame
+            byte[] luma = new byte[width * height];
+            for (int k = 0; k < 20; k++) {
+                luma[10 * width + 5 + i + k] = (byte) 255;
+                luma[30 * width + 5 + i + k] = (byte) 255;
+                luma[(10 + k) * width + 5 + i] = (byte) 255;
+                luma[(10 + k) * width + 25 + i] = (byte) 255;
+            }
+            expected[i] = new EdgeMap(width, height);
+            expected[i].packFrom(luma, 0);
+            FrameBuffer frame = pool.acquire(width, height, 1);
+            frame.getData().clear();
+            frame.getData().put(luma);
+            recorder.record(frame, true, now + i);
+            frame.release();
+        }
+        assertEquals(recorder.getCapacityBytes() / packedSlot, recorder.getSlotCount());
+        
+        File file = save(TimeUnit.MINUTES.toNanos(1));
+        RecordingReader reader = RecordingReader.open(file);
+        EdgeMap edges = new EdgeMap(width, height);
+        long payload = 0;
+        try {
+            assertEquals(expected.length, reader.getRecordCount());
+            for (EdgeMap map : expected) {
+                assertTrue(reader.next());
+                assertTrue(reader.isEdges());
+                assertTrue(reader.isPacked());
+                assertEquals(1, reader.getBytesPerPixel());
+                assertTrue(reader.getPayloadSize() < EdgeMap.packedSize(width, height));
+                payload += reader.getPayloadSize();
+                reader.readEdges(edges);
+                assertEquals(map, edges);
+            }
+            assertFalse(reader.next());
+        } finally {
+            reader.close();
+        }
+        assertEquals(FrameRecorder.FILE_HEADER_SIZE + expected.length * FrameRecorder.RECORD_HEADER_SIZE + payload,
+                file.length());
+        // Deltas code only the two moving vertical sides
+        assertTrue("Payload " + payload, payload < 2 * EdgeMap.packedSize(width, height));
+    }
+    
+    @Test
+    public void testEdges_noiseSavedAsBits() throws Exception {
+        int width = 40;
+        int height = 30;
+        recorder = new FrameRecorder(1 << 16);
+        Random random = new Random(7);
+        EdgeMap[] expected = new EdgeMap[3];
+        for (int i = 0; i < expected.length; i++) {
+            byte[] luma = new byte[width * height];
+            for (int p = 0; p < luma.length; p++) {
+                luma[p] = (byte) (random.nextBoolean() ? 255 : 0);
+            }
+            expected[i] = new EdgeMap(width, height);
+            expected[i].packFrom(luma, 0);
+            FrameBuffer frame = pool.acquire(width, height, 1);
+            frame.getData().clear();
+            frame.getData().put(luma);
+            recorder.record(frame, true, System.nanoTime());
+            frame.release();
+        }
+        
+        RecordingReader reader = RecordingReader.open(save(TimeUnit.MINUTES.toNanos(1)));
+        EdgeMap edges = new EdgeMap(width, height);
+        try {
+            for (EdgeMap map : expected) {
+                assertTrue(reader.next());
+                assertEquals(EdgeMap.packedSize(width, height), reader.getPayloadSize());
+                reader.readEdges(edges);
+                assertEquals(map, edges);
+            }
+        } finally {
+            reader.close();
+        }
+    }
+    
+    @Test(expected = IllegalStateException.class)
+    public void testMapPixels_rejectsPackedRecord() throws Exception {
+        recorder = new FrameRecorder(1 << 16);
+        recordFilled(16, 16, 1, 255, true, System.nanoTime());
+        RecordingReader reader = RecordingReader.open(save(TimeUnit.MINUTES.toNanos(1)));
+        try {
+            assertTrue(reader.next());
+            reader.mapPixels();
+        } finally {
+            reader.close();
+        }
+    }
+    
+    @Test
+    public void testRecord_frameLargerThanRingIsDropped() throws Exception {
+        recorder = new FrameRecorder(256);
+        recordFilled(64, 64, 1, 1, true, System.nanoTime());
+        
+        assertEquals(1, recorder.getDroppedCount());
+        assertEquals(0, recorder.getRecordedCount());
+        RecordingReader reader = RecordingReader.open(save(TimeUnit.MINUTES.toNanos(1)));
+        try {
+            assertEquals(0, reader.getRecordCount());
+            assertFalse(reader.next());
+        } finally {
+            reader.close();
+        }
+    }
+    
+    @Test
+    public void testSave_whileRecordingNeverWritesTornFrames() throws Exception {
+        int width = 512;
+        int height = 512;
+        // The saver starts with the oldest slot, the next one the producer overwrites
+        recorder = new FrameRecorder(8 * (FrameRecorder.RECORD_HEADER_SIZE + width * height));
+        final FrameBuffer frame = pool.acquire(width, height, 1);
+        final byte[] fill = new byte[width * height];
+        Thread producer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                for (int value = 1; !Thread.currentThread().isInterrupted(); value++) {
+                    Arrays.fill(fill, (byte) value);
+                    frame.getData().clear();
+                    frame.getData().put(fill);
+                    recorder.record(frame, false, System.nanoTime());
+                }
+            }
+        });
+        producer.start();
+        try {
+            for (int i = 0; i < 200; i++) {
+                RecordingReader reader = RecordingReader.open(save(TimeUnit.MINUTES.toNanos(1)));
+                try {
+                    long last = -1;
+                    while (reader.next()) {
+                        assertTrue(reader.getSequence() > last);
+                        last = reader.getSequence();
+                        // Each frame is filled with its own value; a mix means a torn copy
+                        ByteBuffer pixels = reader.mapPixels();
+                        assertFilled(pixels, pixels.get(0));
+                    }
+                } finally {
+                    reader.close();
+                }
+            }
+        } finally {
+            producer.interrupt();
+            producer.join();
+        }
+    }
+    
+    @Test
+    public void testSave_whileRecordingEdgesNeverWritesTornMaps() throws Exception {
+        int width = 512;
+        int height = 512;
+        recorder = new FrameRecorder(8 * (FrameRecorder.RECORD_HEADER_SIZE + EdgeMap.packedSize(width, height)));
+        final FrameBuffer frame = pool.acquire(width, height, 1);
+        final byte[] fill = new byte[width * height];
+        Thread producer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                // Alternately all edges and none
+                for (int value = 0; !Thread.currentThread().isInterrupted(); value++) {
+                    Arrays.fill(fill, (byte) (value % 2 == 0 ? 0 : 255));
+                    frame.getData().clear();
+                    frame.getData().put(fill);
+                    recorder.record(frame, true, System.nanoTime());
+                }
+            }
+        });
+        producer.start();
+        EdgeMap edges = new EdgeMap(width, height);
+        try {
+            for (int i = 0; i < 200; i++) {
+                RecordingReader reader = RecordingReader.open(save(TimeUnit.MINUTES.toNanos(1)));
+                try {
+                    while (reader.next()) {
+                        reader.readEdges(edges);
+                        int count = edges.countEdges();
+                        assertTrue("Edges " + count, count == 0 || count == width * height);
+                        // Even sequence numbers are empty maps
+                        assertEquals(reader.getSequence() % 2 == 1, count > 0);
+                    }
+                } finally {
+                    reader.close();
+                }
+            }
+        } finally {
+            producer.interrupt();
+            producer.join();
+        }
+    }
+    
+    @Test(expected = IOException.class)
+    public void testOpen_rejectsOtherFiles() throws IOException {
+        File file = folder.newFile("not-a-recording.raw");
+        java.nio.file.Files.write(file.toPath(), new byte[64]);
+        RecordingReader.open(file);
+    }
+    
+    @Test
+    public void testClose_returnsAtOnceAndLetsSavesFinish() throws Exception {
+        recorder = new FrameRecorder(4 * (FrameRecorder.RECORD_HEADER_SIZE + 16 * 8));
+        recordFilled(16, 8, 1, 1, false, System.nanoTime());
+        final CountDownLatch gate = new CountDownLatch(1);
+        final CountDownLatch saved = new CountDownLatch(2);
+        FrameRecorder.SaveListener listener = new FrameRecorder.SaveListener() {
+            @Override
+            public void onSaved(File file, int frameCount) {
+                try {
+                    // Holds the writer thread as a slow disk would
+                    gate.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                saved.countDown();
+            }
+            
+            @Override
+            public void onSaveFailed(File file, IOException error) {
+            }
+        };
+        recorder.save(folder.newFile(), TimeUnit.MINUTES.toNanos(1), listener);
+        recorder.save(folder.newFile(), TimeUnit.MINUTES.toNanos(1), listener);
+        
+        long start = System.nanoTime();
+        recorder.close();
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(1));
+        assertEquals(2, saved.getCount());
+        gate.countDown();
+        assertTrue(saved.await(10, TimeUnit.SECONDS));
+    }
+    
+    private void recordFilled(int width, int height, int bytesPerPixel, int value, boolean edges, long timestamp) {
+        FrameBuffer frame = pool.acquire(width, height, bytesPerPixel);
+        fill(frame.getData(), value);
+        recorder.record(frame, edges, timestamp);
+        frame.release();
+    }
+    
+    private File save(long windowNanos) throws Exception {
+        File file = folder.newFile();
+        final CountDownLatch done = new CountDownLatch(1);
+        final AtomicReference<IOException> failure = new AtomicReference<>();
+        recorder.save(file, windowNanos, new FrameRecorder.SaveListener() {
+            @Override
+            public void onSaved(File file, int frameCount) {
+                done.countDown();
+            }
+            
+            @Override
+            public void onSaveFailed(File file, IOException error) {
+                failure.set(error);
+                done.countDown();
+            }
+        });
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        if (failure.get() != null) {
+            throw failure.get();
+        }
+        return file;
+    }
+    
+    private static void fill(ByteBuffer data, int value) {
+        for (int i = 0; i < data.capacity(); i++) {
+            data.put(i, (byte) value);
+        }
+    }
+    
+    private static void assertFilled(ByteBuffer pixels, int value) {
+        for (int i = 0; i < pixels.capacity(); i++) {
+            assertEquals("Byte " + i, (byte) value, pixels.get(i));
+        }
+    }
+}
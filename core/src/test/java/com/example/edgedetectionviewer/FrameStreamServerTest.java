@@ -0,0 +1,352 @@
+package com.example.edgedetectionviewer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Drives the server with plain sockets standing in for the browser.
+ */
+public class FrameStreamServerTest {
+    private static final Charset ASCII = Charset.forName("US-ASCII");
+    
+    private final FrameBufferPool pool = new FrameBufferPool();
+    private FrameStreamServer server;
+    
+    @Before
+    public void setUp() throws IOException {
+        server = new FrameStreamServer(0);
+    }
+    
+    @After
+    public void tearDown() {
+        server.close();
+    }
+    
+    @Test
+    public void testStream_keyframeThenDeltasDecodeToPublishedFrames() throws Exception {
+        StreamClient client = new StreamClient(server.getPort(), "/stream");
+        try {
+            awaitClients(1);
+            server.setFps(24.5f);
+            FrameBuffer frame = pool.acquire(40, 30, 1);
+            byte[] pixels = new byte[frame.getSizeInBytes()];
+            Random random = new Random(11);
+            for (int f = 0; f < 5; f++) {
+                pixels[random.nextInt(pixels.length)] = (byte) 255;
+                frame.getData().clear();
+                frame.getData().put(pixels);
+                server.publish(frame, true);
+                
+                client.readMessage();
+                assertEquals(f == 0, client.keyframe);
+                assertTrue(client.edges);
+                assertEquals(40, client.width);
+                assertEquals(30, client.height);
+                assertEquals(1, client.bytesPerPixel);
+                assertEquals(f, client.sequence);
+                assertEquals(24.5f, client.fps, 0f);
+                assertEquals(FrameStreamServer.FLAG_EDGE_RUNS, client.edgeMapFlags);
+                assertArrayEquals(pixels, client.frame);
+            }
+            // Deltas carry only the runs around the new edge pixel
+            assertTrue(client.lastBodyLength < 8);
+        } finally {
+            client.close();
+        }
+    }
+    
+    @Test
+    public void testEdgeNoise_fallsBackToWordsThenRunsAgain() throws Exception {
+        StreamClient client = new StreamClient(server.getPort(), "/stream");
+        try {
+            awaitClients(1);
+            FrameBuffer frame = pool.acquire(64, 16, 1);
+            byte[] pixels = new byte[frame.getSizeInBytes()];
+            Random random = new Random(3);
+            for (int i = 0; i < pixels.length; i++) {
+                pixels[i] = random.nextBoolean() ? (byte) 255 : 0;
+            }
+            frame.getData().put(pixels);
+            server.publish(frame, true);
+            client.readMessage();
+            assertTrue(client.keyframe);
+            assertEquals(FrameStreamServer.FLAG_EDGE_WORDS, client.edgeMapFlags);
+            assertEquals(EdgeMap.packedSize(64, 16), client.lastBodyLength);
+            assertArrayEquals(pixels, client.frame);
+            
+            pixels[100] = (byte) ~pixels[100];
+            frame.getData().clear();
+            frame.getData().put(pixels);
+            server.publish(frame, true);
+            client.readMessage();
+            assertFalse(client.keyframe);
+            assertEquals(FrameStreamServer.FLAG_EDGE_RUNS, client.edgeMapFlags);
+            assertArrayEquals(pixels, client.frame);
+            
+            // Grey frames start over with a byte keyframe
+            server.publish(frame, false);
+            client.readMessage();
+            assertTrue(client.keyframe);
+            assertEquals(0, client.edgeMapFlags);
+            assertArrayEquals(pixels, client.frame);
+        } finally {
+            client.close();
+        }
+    }
+    
+    @Test
+    public void testSlowClient_skipsFramesInsteadOfQueueing() throws Exception {
+        StreamClient client = new StreamClient(server.getPort(), "/stream");
+        try {
+            awaitClients(1);
+            // Noise does not compress, so a client that stops reading fills its socket quickly
+            FrameBuffer frame = pool.acquire(512, 512, 1);
+            byte[] pixels = new byte[frame.getSizeInBytes()];
+            Random random = new Random(5);
+            int published = 200;
+            for (int f = 0; f < published; f++) {
+                random.nextBytes(pixels);
+                frame.getData().clear();
+                frame.getData().put(pixels);
+                server.publish(frame, false);
+                Thread.sleep(1);
+            }
+            
+            int received = 0;
+            do {
+                client.readMessage();
+                received++;
+            } while (client.sequence != published - 1);
+            
+            assertArrayEquals(pixels, client.frame);
+            assertTrue("Received " + received, received < published);
+            assertTrue(server.getSkippedCount() > 0);
+        } finally {
+            client.close();
+        }
+    }
+    
+    @Test
+    public void testClients_eachGetTheStreamAndLeaveCleanly() throws Exception {
+        StreamClient first = new StreamClient(server.getPort(), "/stream");
+        StreamClient second = new StreamClient(server.getPort(), "/stream?camera=0");
+        awaitClients(2);
+        FrameBuffer frame = pool.acquire(8, 8, 4);
+        frame.getData().put(0, (byte) 9);
+        server.publish(frame, false);
+        
+        first.readMessage();
+        second.readMessage();
+        assertEquals(9, first.frame[0]);
+        assertEquals(9, second.frame[0]);
+        assertFalse(second.edges);
+        
+        first.close();
+        awaitClients(1);
+        second.close();
+        awaitClients(0);
+    }
+    
+    @Test
+    public void testSnapshot_duringPublish_keepsAWholeFrame() throws Exception {
+        // Snapshots taken here instead of on the server thread
+        server.close();
+        final int size = 256 * 1024;
+        final int frames = 400;
+        final FrameBuffer[] published = new FrameBuffer[2];
+        for (int i = 0; i < published.length; i++) {
+            published[i] = pool.acquire(size, 1, 1);
+        }
+        Thread publisher = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                for (int k = 0; k < frames; k++) {
+                    FrameBuffer frame = published[k % 2];
+                    byte stamp = stamp(k);
+                    for (int p = 0; p < size; p++) {
+                        frame.getData().put(p, stamp);
+                    }
+                    server.storeLatest(frame, true);
+                }
+            }
+        });
+        publisher.start();
+        
+        int failed = 0;
+        int taken = 0;
+        while (publisher.isAlive()) {
+            if (server.takeSnapshot()) {
+                taken++;
+            } else {
+                failed++;
+            }
+            long sequence = server.getSnapshotSequence();
+            if (sequence < 0) {
+                continue;
+            }
+            assertEquals(size, server.getSnapshotSize());
+            byte[] snapshot = server.getSnapshot();
+            for (int p = 0; p < size; p++) {
+                if (snapshot[p] != stamp(sequence)) {
+                    fail("Frame " + sequence + " torn at byte " + p + " after " + failed + " failed snapshots");
+                }
+            }
+        }
+        publisher.join();
+        assertTrue(server.takeSnapshot());
+        assertEquals(frames - 1, server.getSnapshotSequence());
+        assertTrue(taken > 0);
+    }
+    
+    private static byte stamp(long sequence) {
+        return (byte) (sequence * 31 + 7);
+    }
+    
+    @Test
+    public void testOtherPaths_get404() throws Exception {
+        Socket socket = new Socket(InetAddress.getLoopbackAddress(), server.getPort());
+        try {
+            socket.getOutputStream().write("GET /index.html HTTP/1.1\r\nHost: x\r\n\r\n".getBytes(ASCII));
+            BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), ASCII));
+            assertEquals("HTTP/1.1 404 Not Found", reader.readLine());
+        } finally {
+            socket.close();
+        }
+        assertEquals(0, server.getClientCount());
+    }
+    
+    @Test
+    public void testDefaultServer_listensOnLoopbackWithoutCors() throws Exception {
+        assertTrue(server.getAddress().isLoopbackAddress());
+        StreamClient client = new StreamClient(server.getPort(), "/stream");
+        try {
+            assertFalse(client.headers, client.headers.contains("Access-Control-Allow-Origin"));
+        } finally {
+            client.close();
+        }
+    }
+    
+    @Test
+    public void testViewerOrigin_isTheOnlyOneAllowed() throws Exception {
+        FrameStreamServer viewerServer = new FrameStreamServer(InetAddress.getLoopbackAddress(), 0,
+                "http://localhost:8080");
+        try {
+            StreamClient client = new StreamClient(viewerServer.getPort(), "/stream");
+            try {
+                assertTrue(client.headers, client.headers.contains("\r\nAccess-Control-Allow-Origin: http://localhost:8080\r\n"));
+            } finally {
+                client.close();
+            }
+        } finally {
+            viewerServer.close();
+        }
+        try {
+            new FrameStreamServer(InetAddress.getLoopbackAddress(), 0, "*");
+            fail("Wildcard origin");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+    
+    private void awaitClients(int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (server.getClientCount() != count) {
+            assertTrue("Clients: " + server.getClientCount(), System.currentTimeMillis() < deadline);
+            Thread.sleep(5);
+        }
+    }
+    
+    /**
+     * Reads the stream the way the web viewer does.
+     */
+    private static final class StreamClient {
+        final Socket socket;
+        final DataInputStream in;
+        byte[] frame;
+        EdgeMap edgeMap;
+        boolean keyframe;
+        boolean edges;
+        int edgeMapFlags;
+        int bytesPerPixel;
+        int width;
+        int height;
+        int sequence;
+        float fps;
+        int lastBodyLength;
+        final String headers;
+        
+        StreamClient(int port, String path) throws IOException {
+            socket = new Socket(InetAddress.getLoopbackAddress(), port);
+            socket.setSoTimeout(10000);
+            socket.setReceiveBufferSize(16 * 1024);
+            OutputStream out = socket.getOutputStream();
+            out.write(("GET " + path + " HTTP/1.1\r\nHost: localhost\r\n\r\n").getBytes(ASCII));
+            out.flush();
+            in = new DataInputStream(socket.getInputStream());
+            headers = readHeaders(in);
+            assertTrue(headers, headers.startsWith("HTTP/1.1 200 OK\r\n"));
+        }
+        
+        void readMessage() throws IOException {
+            int bodyLength = in.readInt();
+            int flags = in.readUnsignedByte();
+            bytesPerPixel = in.readUnsignedByte();
+            in.readShort();
+            width = in.readInt();
+            height = in.readInt();
+            sequence = in.readInt();
+            fps = in.readFloat();
+            byte[] body = new byte[bodyLength];
+            in.readFully(body);
+            
+            keyframe = (flags & FrameStreamServer.FLAG_KEYFRAME) != 0;
+            edges = (flags & FrameStreamServer.FLAG_EDGES) != 0;
+            edgeMapFlags = flags & (FrameStreamServer.FLAG_EDGE_RUNS | FrameStreamServer.FLAG_EDGE_WORDS);
+            int length = width * height * bytesPerPixel;
+            if (keyframe) {
+                frame = new byte[length];
+                edgeMap = new EdgeMap(width, height);
+            }
+            if (edgeMapFlags == FrameStreamServer.FLAG_EDGE_RUNS) {
+                EdgeMapCodec.decode(ByteBuffer.wrap(body), edgeMap);
+                edgeMap.unpackTo(frame, 0);
+            } else if (edgeMapFlags == FrameStreamServer.FLAG_EDGE_WORDS) {
+                edgeMap.readFrom(ByteBuffer.wrap(body));
+                edgeMap.unpackTo(frame, 0);
+            } else {
+                FrameDeltaCodec.decode(ByteBuffer.wrap(body), frame, length);
+            }
+            lastBodyLength = bodyLength;
+        }
+        
+        void close() throws IOException {
+            socket.close();
+        }
+        
+        private static String readHeaders(InputStream in) throws IOException {
+            StringBuilder headers = new StringBuilder();
+            while (!headers.toString().endsWith("\r\n\r\n")) {
+                int b = in.read();
+                if (b < 0) {
+                    throw new IOException("Closed in headers: " + headers);
+                }
+                headers.append((char) b);
+            }
+            return headers.toString();
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package com.example.edgedetectionviewer;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for the pyrDown and nearest-neighbour scaling of reduced quality levels
+ */
+public class ImagePyramidTest {
+    
+    @Test
+    public void testDown_flatPlaneStaysFlat() {
+        byte[] plane = new byte[37 * 23];
+        Arrays.fill(plane, (byte) 200);
+        
+        byte[] small = new ImagePyramid().down(plane, 37, 23, 2);
+        
+        assertEquals(10 * 6, small.length);
+        for (byte b : small) {
+            assertEquals(200, b & 0xFF);
+        }
+    }
+    
+    @Test
+    public void testDown_matchesKernelWithReflectedBorder() {
+        // A single column of 255 at x = 0 in a 4x2 plane
+        byte[] plane = new byte[8];
+        plane[0] = (byte) 255;
+        plane[4] = (byte) 255;
+        
+        byte[] small = new ImagePyramid().down(plane, 4, 2, 1);
+        
+        // Column 0 weighs 6/16, column 2 reaches it at 1/16 on both sides after reflection
+        assertEquals(2, small.length);
+        assertEquals((6 * 255 * 16 + 128) >> 8, small[0] & 0xFF);
+        assertEquals((255 * 16 + 128) >> 8, small[1] & 0xFF);
+    }
+    
+    @Test
+    public void testDown_levelZeroReturnsInput() {
+        byte[] plane = new byte[16];
+        assertSame(plane, new ImagePyramid().down(plane, 4, 4, 0));
+    }
+    
+    @Test
+    public void testUp_repeatsEachPixel() {
+        byte[] small = {1, 2, 3, 4};
+        byte[] out = new byte[4 * 4];
+        
+        new ImagePyramid().up(small, 2, 2, out, 4, 4);
+        
+        assertArrayEquals(new byte[]{
+                1, 1, 2, 2,
+                1, 1, 2, 2,
+                3, 3, 4, 4,
+                3, 3, 4, 4}, out);
+    }
+}
@@ -0,0 +1,141 @@
+package com.example.edgedetectionviewer;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * The incremental detector must give exactly the full-recompute output on every frame of a
+ * sequence, however the changed regions fall on the block grid.
+ */
+public class IncrementalEdgeDetectorTest {
+    
+    @Test
+    public void testDetectEdgesFromLuma_matchesFullRecomputeOverSequence() {
+        int[][] sizes = {{320, 240}, {97, 61}, {33, 17}, {7, 5}};
+        int[] blockSizes = {1, 8, 32, 1000};
+        for (int[] size : sizes) {
+            int width = size[0];
+            int height = size[1];
+            for (int blockSize : blockSizes) {
+                IncrementalEdgeDetector incremental = new IncrementalEdgeDetector(new CannyEdgeDetector(), blockSize, 0);
+                CannyEdgeDetector full = new CannyEdgeDetector();
+                Random random = new Random(width * 31 + blockSize);
+                byte[] luma = gray(SyntheticFrames.rgba(width, height, blockSize));
+                
+                for (int frame = 0; frame < 12; frame++) {
+                    // Every third frame is unchanged; the others get patches anywhere, borders included
+                    if (frame % 3 != 0) {
+                        for (int patch = random.nextInt(3) + 1; patch > 0; patch--) {
+                            paintPatch(luma, width, height, random);
+                        }
+                    }
+                    byte[] expected = new byte[width * height];
+                    byte[] edges = new byte[width * height];
+                    full.detectEdgesFromLuma(luma, expected, width, height);
+                    incremental.detectEdgesFromLuma(luma, edges, width, height);
+                    assertArrayEquals(width + "x" + height + " blocks of " + blockSize + ", frame " + frame,
+                            expected, edges);
+                }
+            }
+        }
+    }
+    
+    @Test
+    public void testDetectEdges_matchesFullRecomputeAcrossSizes() {
+        IncrementalEdgeDetector incremental = new IncrementalEdgeDetector();
+        CannyEdgeDetector full = new CannyEdgeDetector();
+        int[][] sizes = {{320, 240}, {320, 240}, {160, 90}, {320, 240}};
+        for (int i = 0; i < sizes.length; i++) {
+            int width = sizes[i][0];
+            int height = sizes[i][1];
+            byte[] frame = SyntheticFrames.rgba(width, height, i + 1);
+            byte[] expected = new byte[width * height];
+            byte[] edges = new byte[width * height];
+            full.detectEdges(frame, 0, expected, width, height);
+            incremental.detectEdges(frame, 0, edges, width, height);
+            assertArrayEquals("Frame " + i, expected, edges);
+        }
+    }
+    
+    @Test
+    public void testChangeThreshold_matchesFullRecomputeOfReference() {
+        int width = 128;
+        int height = 96;
+        IncrementalEdgeDetector incremental = new IncrementalEdgeDetector(new CannyEdgeDetector(), 16, 4);
+        byte[] reference = gray(SyntheticFrames.rgba(width, height, 7));
+        byte[] edges = new byte[width * height];
+        incremental.detectEdgesFromLuma(reference, edges, width, height);
+        
+        // Noise within the threshold everywhere, plus one real change
+        byte[] noisy = reference.clone();
+        Random random = new Random(7);
+        for (int i = 0; i < noisy.length; i++) {
+            noisy[i] = (byte) Math.max(0, Math.min(255, (noisy[i] & 0xFF) + random.nextInt(9) - 4));
+        }
+        for (int y = 40; y < 60; y++) {
+            for (int x = 50; x < 70; x++) {
+                noisy[y * width + x] = (byte) 255;
+            }
+        }
+        incremental.detectEdgesFromLuma(noisy, edges, width, height);
+        
+        // Expected: the old frame with only the changed blocks (16-px grid) taken from the new one
+        for (int y = 32; y < 64; y++) {
+            System.arraycopy(noisy, y * width + 48, reference, y * width + 48, 32);
+        }
+        byte[] expected = new byte[width * height];
+        new CannyEdgeDetector().detectEdgesFromLuma(reference, expected, width, height);
+        assertArrayEquals(expected, edges);
+        // 48 blocks computed in full, then 44 of 48 clean
+        assertEquals(44.0 / 96, incremental.getSkippedBlockFraction(), 1e-9);
+    }
+    
+    @Test
+    public void testStats_countSkippedFramesAndBlocks() {
+        int width = 64;
+        int height = 64;
+        IncrementalEdgeDetector incremental = new IncrementalEdgeDetector(new CannyEdgeDetector(), 32, 0);
+        byte[] luma = gray(SyntheticFrames.rgba(width, height, 3));
+        byte[] edges = new byte[width * height];
+        
+        incremental.detectEdgesFromLuma(luma, edges, width, height);
+        incremental.detectEdgesFromLuma(luma, edges, width, height);
+        luma[0] ^= 1;
+        incremental.detectEdgesFromLuma(luma, edges, width, height);
+        incremental.detectEdgesFromLuma(luma, edges, width, height);
+        
+        // The first frame computes all 4 blocks; then 4 + 3 + 4 of 12 are clean
+        assertEquals(4, incremental.getFrameCount());
+        assertEquals(2, incremental.getSkippedFrameCount());
+        assertEquals(0.5, incremental.getSkippedFrameFraction(), 1e-9);
+        assertEquals(11.0 / 16, incremental.getSkippedBlockFraction(), 1e-9);
+        
+        incremental.reset();
+        incremental.detectEdgesFromLuma(luma, edges, width, height);
+        assertEquals(2, incremental.getSkippedFrameCount());
+    }
+    
+    private static byte[] gray(byte[] rgba) {
+        byte[] gray = new byte[rgba.length / 4];
+        CannyEdgeDetector detector = new CannyEdgeDetector();
+        detector.grayscale(rgba, 0, gray, gray.length, 1);
+        return gray;
+    }
+    
+    private static void paintPatch(byte[] luma, int width, int height, Random random) {
+        int w = 1 + random.nextInt(Math.min(width, 12));
+        int h = 1 + random.nextInt(Math.min(height, 12));
+        // Bias towards the frame edges, where the border modes apply
+        int x = random.nextBoolean() ? random.nextInt(width - w + 1) : (random.nextBoolean() ? 0 : width - w);
+        int y = random.nextBoolean() ? random.nextInt(height - h + 1) : (random.nextBoolean() ? 0 : height - h);
+        boolean bright = random.nextBoolean();
+        for (int row = y; row < y + h; row++) {
+            for (int col = x; col < x + w; col++) {
+                luma[row * width + col] = bright ? (byte) (200 + random.nextInt(56)) : (byte) random.nextInt(40);
+            }
+        }
+    }
+}
@@ -0,0 +1,262 @@
+package com.example.edgedetectionviewer;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for the pure-Java processing path.
+ *
+ * Golden checksums are CRC32s of the single-channel output of OpenCV 4.9
+ * (cvtColor RGBA2GRAY, GaussianBlur 5x5 sigma 1.5, Canny 50/150) on {@link SyntheticFrames},
+ * so a match means the Java engine is bit-exact with the native path.
+ */
+public class JavaFrameProcessorTest {
+    
+    // width, height, seed, grayscale CRC, edges CRC
+    private static final long[][] GOLDEN = {
+        {640, 480, 1, 0x7E7562B5L, 0x68166BEBL},
+        {640, 480, 2, 0xEE81A5A2L, 0x31B8045EL},
+        {1280, 720, 3, 0xC44F0941L, 0xA9C0DA63L},
+        {33, 17, 4, 0xE598077FL, 0x6F5F82E8L},
+        {3, 3, 5, 0xB8264FF8L, 0xE60914AEL},
+    };
+    
+    @Test
+    public void testEdgeDetection_matchesGoldenFrames() {
+        CannyEdgeDetector detector = new CannyEdgeDetector();
+        for (long[] golden : GOLDEN) {
+            int width = (int) golden[0];
+            int height = (int) golden[1];
+            byte[] frame = SyntheticFrames.rgba(width, height, (int) golden[2]);
+            byte[] edges = new byte[width * height];
+            
+            detector.detectEdges(frame, 0, edges, width, height);
+            
+            assertEquals("Edges " + width + "x" + height, golden[4], SyntheticFrames.crc(edges));
+        }
+    }
+    
+    @Test
+    public void testGrayscaleConversion_matchesGoldenFrames() {
+        CannyEdgeDetector detector = new CannyEdgeDetector();
+        for (long[] golden : GOLDEN) {
+            int width = (int) golden[0];
+            int height = (int) golden[1];
+            byte[] frame = SyntheticFrames.rgba(width, height, (int) golden[2]);
+            byte[] gray = new byte[width * height];
+            
+            detector.grayscale(frame, 0, gray, width, height);
+            
+            assertEquals("Gray " + width + "x" + height, golden[3], SyntheticFrames.crc(gray));
+        }
+    }
+    
+    @Test
+    public void testProcessFrame_directAndHeapBuffersAgree() {
+        int width = 640;
+        int height = 480;
+        byte[] frame = SyntheticFrames.rgba(width, height, 1);
+        
+        ByteBuffer heapIn = ByteBuffer.wrap(frame);
+        ByteBuffer heapOut = ByteBuffer.allocate(frame.length);
+        ByteBuffer directIn = ByteBuffer.allocateDirect(frame.length);
+        ByteBuffer directOut = ByteBuffer.allocateDirect(frame.length);
+        directIn.put(frame);
+        
+        FrameProcessor processor = new JavaFrameProcessor();
+        assertTrue(processor.processFrame(heapIn, heapOut, width, height, true));
+        assertTrue(processor.processFrame(directIn, directOut, width, height, true));
+        
+        directOut.rewind();
+        assertEquals(heapOut, directOut);
+        // Buffer positions are left alone
+        assertEquals(frame.length, directIn.position());
+    }
+    
+    @Test
+    public void testProcessFrame_outputIsOpaqueGrayRgba() {
+        int width = 33;
+        int height = 17;
+        byte[] frame = SyntheticFrames.rgba(width, height, 4);
+        ByteBuffer output = ByteBuffer.allocate(frame.length);
+        
+        new JavaFrameProcessor().processFrame(ByteBuffer.wrap(frame), output, width, height, false);
+        
+        byte[] rgba = output.array();
+        for (int i = 0; i < rgba.length; i += 4) {
+            assertEquals(rgba[i], rgba[i + 1]);
+            assertEquals(rgba[i], rgba[i + 2]);
+            assertEquals((byte) 255, rgba[i + 3]);
+        }
+    }
+    
+    @Test
+    public void testEdgeDetection_flatFrameHasNoEdges() {
+        int width = 64;
+        int height = 48;
+        byte[] frame = new byte[width * height * 4];
+        java.util.Arrays.fill(frame, (byte) 128);
+        byte[] edges = new byte[width * height];
+        
+        new CannyEdgeDetector().detectEdges(frame, 0, edges, width, height);
+        
+        for (byte edge : edges) {
+            assertEquals(0, edge);
+        }
+    }
+    
+    @Test
+    public void testEdgeDetection_findsVerticalStep() {
+        int width = 64;
+        int height = 48;
+        byte[] frame = new byte[width * height * 4];
+        for (int i = 0; i < width * height; i++) {
+            byte v = (i % width) < width / 2 ? 0 : (byte) 255;
+            frame[i * 4] = v;
+            frame[i * 4 + 1] = v;
+            frame[i * 4 + 2] = v;
+        }
+        byte[] edges = new byte[width * height];
+        
+        new CannyEdgeDetector().detectEdges(frame, 0, edges, width, height);
+        
+        // Every row has exactly one edge pixel, next to the step
+        for (int y = 0; y < height; y++) {
+            int count = 0;
+            for (int x = 0; x < width; x++) {
+                if (edges[y * width + x] != 0) {
+                    count++;
+                    assertTrue("Edge at x=" + x, Math.abs(x - width / 2) <= 1);
+                }
+            }
+            assertEquals("Edges in row " + y, 1, count);
+        }
+    }
+    
+    @Test
+    public void testLuminanceOutput_matchesGoldenFrames() {
+        FrameProcessor processor = new JavaFrameProcessor(new CannyEdgeDetector(), OutputFormat.LUMINANCE);
+        for (long[] golden : GOLDEN) {
+            int width = (int) golden[0];
+            int height = (int) golden[1];
+            ByteBuffer input = ByteBuffer.wrap(SyntheticFrames.rgba(width, height, (int) golden[2]));
+            byte[] heap = new byte[width * height];
+            ByteBuffer direct = ByteBuffer.allocateDirect(width * height);
+            
+            assertTrue(processor.processFrame(input, ByteBuffer.wrap(heap), width, height, true));
+            assertEquals("Edges " + width + "x" + height, golden[4], SyntheticFrames.crc(heap));
+            
+            assertTrue(processor.processFrame(input, direct, width, height, false));
+            direct.get(heap);
+            assertEquals("Gray " + width + "x" + height, golden[3], SyntheticFrames.crc(heap));
+        }
+    }
+    
+    @Test
+    public void testLuminanceOutput_needsOnlyOneBytePerPixel() {
+        int width = 33;
+        int height = 17;
+        FrameProcessor processor = new JavaFrameProcessor(new CannyEdgeDetector(), OutputFormat.LUMINANCE);
+        assertEquals(width * height, processor.getOutputFormat().getFrameSize(width, height));
+        
+        processor.processLuma(ByteBuffer.allocateDirect(width * height), width,
+                ByteBuffer.allocateDirect(width * height), width, height, true);
+    }
+    
+    @Test
+    public void testQualityLevel_backToFullMatchesGoldenFrames() {
+        FrameProcessor processor = new JavaFrameProcessor(new CannyEdgeDetector(), OutputFormat.LUMINANCE);
+        long[] golden = GOLDEN[0];
+        int width = (int) golden[0];
+        int height = (int) golden[1];
+        ByteBuffer input = ByteBuffer.wrap(SyntheticFrames.rgba(width, height, (int) golden[2]));
+        byte[] edges = new byte[width * height];
+        
+        processor.setQualityLevel(new QualityLevel(2, 3, 1));
+        assertTrue(processor.processFrame(input, ByteBuffer.wrap(edges), width, height, true));
+        assertNotEquals(golden[4], SyntheticFrames.crc(edges));
+        
+        processor.setQualityLevel(QualityLevel.FULL);
+        assertTrue(processor.processFrame(input, ByteBuffer.wrap(edges), width, height, true));
+        assertEquals(golden[4], SyntheticFrames.crc(edges));
+    }
+    
+    @Test
+    public void testReducedLevel_findsVerticalStepAtFullSize() {
+        int width = 64;
+        int height = 48;
+        byte[] luma = new byte[width * height];
+        for (int i = 0; i < luma.length; i++) {
+            luma[i] = (i % width) < width / 2 ? 0 : (byte) 255;
+        }
+        byte[] edges = new byte[width * height];
+        FrameProcessor processor = new JavaFrameProcessor(new CannyEdgeDetector(), OutputFormat.LUMINANCE);
+        
+        processor.setQualityLevel(new QualityLevel(1, 3, 1));
+        processor.processLuma(ByteBuffer.wrap(luma), width, ByteBuffer.wrap(edges), width, height, true);
+        
+        // One half-scale edge pixel per row, two pixels wide at full size
+        for (int y = 0; y < height; y++) {
+            int count = 0;
+            for (int x = 0; x < width; x++) {
+                if (edges[y * width + x] != 0) {
+                    count++;
+                    assertTrue("Edge at x=" + x, Math.abs(x - width / 2) <= 2);
+                }
+            }
+            assertEquals("Edges in row " + y, 2, count);
+        }
+    }
+    
+    @Test
+    public void testBlur3x3_impulseResponse() {
+        byte[] plane = new byte[5 * 5];
+        plane[12] = (byte) 255;
+        byte[] blurred = new byte[plane.length];
+        
+        CannyEdgeDetector.gaussianBlur3(plane, 0, blurred, 0, new int[plane.length], 5, 5, 0, 5);
+        
+        // 1-2-1 squared over 16: centre 4/16, sides 2/16, corners 1/16
+        assertEquals(64, blurred[12] & 0xFF);
+        assertEquals(32, blurred[11] & 0xFF);
+        assertEquals(32, blurred[7] & 0xFF);
+        assertEquals(16, blurred[6] & 0xFF);
+        assertEquals(0, blurred[10] & 0xFF);
+    }
+    
+    @Test
+    public void testBlur3x3Rect_matchesWholeFrameInsideAndLeavesTheRest() {
+        int width = 23;
+        int height = 17;
+        byte[] plane = new byte[width * height];
+        for (int p = 0; p < plane.length; p++) {
+            plane[p] = (byte) (p * 37 + p / width * 11);
+        }
+        byte[] whole = new byte[plane.length];
+        CannyEdgeDetector.gaussianBlur3(plane, 0, whole, 0, new int[plane.length], width, height, 0, height);
+        
+        // Rectangles touching each frame edge, and one inside
+        int[][] rects = {{0, 5, 0, 4}, {18, 23, 12, 17}, {0, 23, 16, 17}, {6, 14, 3, 11}};
+        for (int[] rect : rects) {
+            byte[] blurred = new byte[plane.length];
+            Arrays.fill(blurred, (byte) 7);
+            CannyEdgeDetector.gaussianBlur3Rect(plane, blurred, new int[plane.length], width, height,
+                    rect[0], rect[1], rect[2], rect[3]);
+            for (int y = 0; y < height; y++) {
+                for (int x = 0; x < width; x++) {
+                    boolean inside = x >= rect[0] && x < rect[1] && y >= rect[2] && y < rect[3];
+                    assertEquals(x + "," + y, inside ? whole[y * width + x] : 7, blurred[y * width + x]);
+                }
+            }
+        }
+    }
+    
+    @Test(expected = IllegalArgumentException.class)
+    public void testProcessFrame_bufferTooSmall() {
+        new JavaFrameProcessor().processFrame(ByteBuffer.allocate(16), ByteBuffer.allocate(16), 640, 480, true);
+    }
+}
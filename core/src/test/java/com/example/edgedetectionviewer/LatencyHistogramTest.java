@@ -0,0 +1,117 @@
+package com.example.edgedetectionviewer;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class LatencyHistogramTest {
+    
+    @Test
+    public void testBuckets_coverEveryValueWithinPrecision() {
+        Random random = new Random(1);
+        for (int i = 0; i < 100000; i++) {
+            long value = random.nextLong() >>> (28 + random.nextInt(36));
+            int index = LatencyHistogram.bucketIndex(value);
+            long low = LatencyHistogram.lowestValueIn(index);
+            long high = LatencyHistogram.highestValueIn(index);
+            assertTrue(value + " in [" + low + ", " + high + "]", low <= value && value <= high);
+            assertTrue("Bucket width at " + value, high - low <= Math.max(0, value / 64));
+        }
+        // Small values are exact
+        for (int v = 0; v < 128; v++) {
+            assertEquals(v, LatencyHistogram.lowestValueIn(LatencyHistogram.bucketIndex(v)));
+            assertEquals(v, LatencyHistogram.highestValueIn(LatencyHistogram.bucketIndex(v)));
+        }
+    }
+    
+    @Test
+    public void testPercentiles_uniformValues() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long v = 1; v <= 10000; v++) {
+            histogram.record(v * 1000);
+        }
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        
+        assertEquals(10000, snapshot.getCount());
+        assertEquals(5000500.0, snapshot.getMean(), 1e-6);
+        assertWithinPrecision(5000000, snapshot.getP50());
+        assertWithinPrecision(9900000, snapshot.getP99());
+        assertWithinPrecision(9990000, snapshot.getP999());
+        assertWithinPrecision(10000000, snapshot.getMax());
+    }
+    
+    @Test
+    public void testPercentiles_tailIsVisible() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 0; i < 990; i++) {
+            histogram.record(2000000);
+        }
+        for (int i = 0; i < 10; i++) {
+            histogram.record(50000000);
+        }
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        
+        assertWithinPrecision(2000000, snapshot.getP50());
+        assertWithinPrecision(2000000, snapshot.getP99());
+        assertWithinPrecision(50000000, snapshot.getP999());
+    }
+    
+    @Test
+    public void testSnapshotSince_coversOnlyLaterValues() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(1000000);
+        LatencyHistogram.Snapshot first = histogram.snapshot();
+        histogram.record(3000);
+        histogram.record(5000);
+        
+        LatencyHistogram.Snapshot delta = histogram.snapshot().since(first);
+        assertEquals(2, delta.getCount());
+        assertEquals(4000.0, delta.getMean(), 1e-9);
+        assertWithinPrecision(5000, delta.getMax());
+    }
+    
+    @Test
+    public void testRecord_clampsOutOfRangeValues() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(-5);
+        histogram.record(Long.MAX_VALUE);
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        
+        assertEquals(2, snapshot.getCount());
+        assertEquals(0, snapshot.getValueAtPercentile(0));
+        assertEquals(LatencyHistogram.HIGHEST_TRACKABLE_VALUE, snapshot.getMax());
+        
+        histogram.reset();
+        assertEquals(0, histogram.snapshot().getCount());
+        assertEquals(0, histogram.snapshot().getP99());
+    }
+    
+    @Test
+    public void testRecord_concurrentWritersLoseNothing() throws InterruptedException {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            final int seed = t;
+            threads[t] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    Random random = new Random(seed);
+                    for (int i = 0; i < 100000; i++) {
+                        histogram.record(random.nextInt(1000000));
+                    }
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(400000, histogram.snapshot().getCount());
+    }
+    
+    private static void assertWithinPrecision(long expected, long actual) {
+        assertEquals(expected, actual, expected / 64.0);
+    }
+}
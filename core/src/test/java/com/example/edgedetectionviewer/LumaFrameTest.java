@@ -0,0 +1,180 @@
+package com.example.edgedetectionviewer;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for the luminance capture path, on synthetic Y planes laid out like camera images
+ */
+public class LumaFrameTest {
+    
+    // width, height, seed, edges CRC from JavaFrameProcessorTest
+    private static final long[][] GOLDEN = {
+        {640, 480, 1, 0x68166BEBL},
+        {33, 17, 4, 0x6F5F82E8L},
+    };
+    
+    private static byte[] gray(int width, int height, int seed) {
+        byte[] gray = new byte[width * height];
+        new CannyEdgeDetector().grayscale(SyntheticFrames.rgba(width, height, seed), 0, gray, width, height);
+        return gray;
+    }
+    
+    @Test
+    public void testDetectEdgesFromLuma_matchesRgbaPath() {
+        EdgeDetector[] detectors = {
+            new CannyEdgeDetector(),
+            new TiledEdgeDetector(new ForkJoinPool(3), new CannyEdgeDetector(), 5),
+        };
+        for (EdgeDetector detector : detectors) {
+            for (long[] golden : GOLDEN) {
+                int width = (int) golden[0];
+                int height = (int) golden[1];
+                byte[] edges = new byte[width * height];
+                
+                detector.detectEdgesFromLuma(gray(width, height, (int) golden[2]), edges, width, height);
+                
+                assertEquals(detector.getClass().getSimpleName() + " " + width + "x" + height,
+                        golden[3], SyntheticFrames.crc(edges));
+            }
+        }
+    }
+    
+    @Test
+    public void testProcessLuma_paddedPlaneMatchesPacked() {
+        int width = 33;
+        int height = 17;
+        byte[] gray = gray(width, height, 4);
+        ByteBuffer expected = ByteBuffer.allocate(width * height * 4);
+        ByteBuffer actual = ByteBuffer.allocateDirect(width * height * 4);
+        FrameProcessor processor = new JavaFrameProcessor();
+        
+        assertTrue(processor.processLuma(ByteBuffer.wrap(gray), width, expected, width, height, true));
+        assertTrue(processor.processLuma(SyntheticFrames.lumaPlane(gray, width, height, 64), 64,
+                actual, width, height, true));
+        
+        actual.rewind();
+        assertEquals(expected, actual);
+    }
+    
+    @Test
+    public void testProcessLuma_withoutEdgesShowsLuma() {
+        int width = 33;
+        int height = 17;
+        byte[] gray = gray(width, height, 4);
+        ByteBuffer output = ByteBuffer.allocate(width * height * 4);
+        
+        new JavaFrameProcessor().processLuma(SyntheticFrames.lumaPlane(gray, width, height, 48), 48,
+                output, width, height, false);
+        
+        byte[] rgba = output.array();
+        for (int i = 0; i < gray.length; i++) {
+            assertEquals(gray[i], rgba[i * 4]);
+            assertEquals(gray[i], rgba[i * 4 + 2]);
+            assertEquals((byte) 255, rgba[i * 4 + 3]);
+        }
+    }
+    
+    @Test
+    public void testCopyTo_stripsRowPadding() {
+        int width = 5;
+        int height = 3;
+        byte[] luma = new byte[width * height];
+        for (int i = 0; i < luma.length; i++) {
+            luma[i] = (byte) i;
+        }
+        ByteBuffer plane = SyntheticFrames.lumaPlane(luma, width, height, 8);
+        assertEquals(21, plane.capacity());
+        plane.position(7);
+        
+        LumaFrame frame = new LumaFrame(null);
+        frame.set(plane, width, height, 8, 1, null);
+        byte[] packed = new byte[width * height];
+        frame.copyTo(packed);
+        
+        assertArrayEquals(luma, packed);
+        assertEquals(7, plane.position());
+    }
+    
+    @Test(expected = IllegalArgumentException.class)
+    public void testSet_interleavedPlaneRejected() {
+        new LumaFrame(null).set(ByteBuffer.allocateDirect(64), 4, 4, 8, 2, null);
+    }
+    
+    @Test(expected = IllegalArgumentException.class)
+    public void testSet_strideShorterThanWidthRejected() {
+        new LumaFrame(null).set(ByteBuffer.allocateDirect(64), 8, 4, 6, 1, null);
+    }
+    
+    @Test(expected = IllegalArgumentException.class)
+    public void testSet_planeTooSmallRejected() {
+        new LumaFrame(null).set(ByteBuffer.allocateDirect(LumaFrame.requiredCapacity(8, 4, 16) - 1), 8, 4, 16, 1, null);
+    }
+    
+    @Test
+    public void testRelease_closesOwnerThenRecycles() {
+        final List<String> events = new ArrayList<>();
+        LumaFrame frame = new LumaFrame(new LumaFrame.Recycler() {
+            @Override
+            public void recycle(LumaFrame frame) {
+                events.add("recycled");
+            }
+        });
+        frame.set(ByteBuffer.allocateDirect(16), 4, 4, 4, 1, new AutoCloseable() {
+            @Override
+            public void close() {
+                events.add("closed");
+            }
+        });
+        
+        frame.release();
+        
+        assertEquals(Arrays.asList("closed", "recycled"), events);
+        assertNull(frame.getData());
+    }
+    
+    @Test
+    public void testPipeline_processesAndReleasesLumaFrames() throws Exception {
+        int width = 33;
+        int height = 17;
+        byte[] gray = gray(width, height, 4);
+        final CountDownLatch closed = new CountDownLatch(1);
+        FramePipeline pipeline = new FramePipeline(new JavaFrameProcessor());
+        pipeline.start();
+        try {
+            LumaFrame frame = new LumaFrame(null);
+            frame.set(SyntheticFrames.lumaPlane(gray, width, height, 40), width, height, 40, 1, new AutoCloseable() {
+                @Override
+                public void close() {
+                    closed.countDown();
+                }
+            });
+            pipeline.submit(frame);
+            
+            assertTrue(closed.await(5, TimeUnit.SECONDS));
+            FrameBuffer result = null;
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (result == null && System.nanoTime() < deadline) {
+                result = pipeline.pollProcessed();
+            }
+            assertNotNull(result);
+            
+            ByteBuffer expected = ByteBuffer.allocate(width * height * 4);
+            new JavaFrameProcessor().processLuma(ByteBuffer.wrap(gray), width, expected, width, height, true);
+            result.getData().rewind();
+            assertEquals(expected, result.getData());
+            result.release();
+        } finally {
+            pipeline.stop();
+        }
+    }
+}
@@ -0,0 +1,285 @@
+package com.example.edgedetectionviewer;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+public class ProcessorLoaderTest {
+    
+    private static final int WIDTH = 96;
+    private static final int HEIGHT = 64;
+    
+    private ProcessorLoader loader;
+    
+    /**
+     * Logs each call as "luma|rgba edges|gray pyramid/blur", and setQualityLevel calls.
+     */
+    private static class RecordingProcessor implements FrameProcessor {
+        final List<String> calls = new ArrayList<>();
+        QualityLevel level = QualityLevel.FULL;
+        volatile boolean released;
+        
+        @Override
+        public synchronized boolean processFrame(ByteBuffer input, ByteBuffer output, int width, int height, boolean edges) {
+            calls.add(describe("rgba", width, height, edges));
+            return true;
+        }
+        
+        @Override
+        public synchronized boolean processLuma(ByteBuffer luma, int rowStride, ByteBuffer output, int width, int height, boolean edges) {
+            calls.add(describe("luma", width, height, edges));
+            return true;
+        }
+        
+        @Override
+        public synchronized boolean processLumaRegions(ByteBuffer luma, int rowStride, int width, int height, RegionSet regions, ByteBuffer output) {
+            calls.add(describe("regions", width, height, true));
+            return true;
+        }
+        
+        private String describe(String kind, int width, int height, boolean edges) {
+            return kind + " " + width + "x" + height + " " + (edges ? "edges" : "gray") + " "
+                    + level.getPyramidLevel() + "/" + level.getBlurKernelSize();
+        }
+        
+        @Override
+        public synchronized void setQualityLevel(QualityLevel level) {
+            this.level = level;
+        }
+        
+        @Override
+        public OutputFormat getOutputFormat() {
+            return OutputFormat.LUMINANCE;
+        }
+        
+        @Override
+        public void release() {
+            released = true;
+        }
+    }
+    
+    private static ProcessorLoader.Factory factoryOf(final FrameProcessor processor) {
+        return new ProcessorLoader.Factory() {
+            @Override
+            public FrameProcessor create() {
+                return processor;
+            }
+        };
+    }
+    
+    @After
+    public void tearDown() {
+        if (loader != null) {
+            loader.close();
+        }
+    }
+    
+    @Test
+    public void testWarmUp_runsEveryDistinctLevelBeforeHandOver() throws Exception {
+        RecordingProcessor processor = new RecordingProcessor();
+        StartupTrace trace = new StartupTrace();
+        loader = new ProcessorLoader(factoryOf(processor), trace, QualityLevel.DEFAULT_LADDER);
+        loader.setWarmUpBudget(TimeUnit.SECONDS.toNanos(30));
+        final AtomicReference<FrameProcessor> handedOver = new AtomicReference<>();
+        final CountDownLatch ready = new CountDownLatch(1);
+        loader.setListener(new ProcessorLoader.Listener() {
+            @Override
+            public void onProcessorReady(FrameProcessor p) {
+                handedOver.set(p);
+                ready.countDown();
+            }
+            
+            @Override
+            public void onProcessorFailed(Throwable error) {
+                fail("Unexpected failure " + error);
+            }
+        });
+        loader.start();
+        loader.warmUp(WIDTH, HEIGHT, true);
+        
+        assertTrue(ready.await(10, TimeUnit.SECONDS));
+        assertSame(processor, handedOver.get());
+        assertSame(processor, loader.getProcessor());
+        // The ladder's last levels differ only in frame stride
+        assertEquals(Arrays.asList(
+                "luma 96x64 edges 0/5", "luma 96x64 edges 0/5", "luma 96x64 edges 0/5",
+                "luma 96x64 edges 0/3", "luma 96x64 edges 1/3", "luma 96x64 edges 2/3",
+                "luma 96x64 gray 0/5"), processor.calls);
+        assertEquals(QualityLevel.FULL, processor.level);
+        assertTrue(loader.getFirstWarmUpNanos() >= 0);
+        assertTrue(loader.getLastWarmUpNanos() >= 0);
+        assertTrue(trace.isRecorded(StartupTrace.Phase.PROCESSOR_CREATE));
+        assertTrue(trace.isRecorded(StartupTrace.Phase.WARM_UP));
+        assertTrue(trace.getElapsedNanos(StartupTrace.Phase.WARM_UP) >= trace.getElapsedNanos(StartupTrace.Phase.PROCESSOR_CREATE));
+        
+        loader.close();
+        assertTrue(processor.released);
+        assertNull(loader.getProcessor());
+        loader = null;
+    }
+    
+    @Test
+    public void testHandOver_waitsForTheFrameSize() throws Exception {
+        RecordingProcessor processor = new RecordingProcessor();
+        loader = new ProcessorLoader(factoryOf(processor), new StartupTrace(), QualityLevel.DEFAULT_LADDER);
+        loader.start();
+        
+        assertFalse(loader.awaitReady(100, TimeUnit.MILLISECONDS));
+        assertNull(loader.getProcessor());
+        assertTrue(processor.calls.isEmpty());
+        
+        loader.warmUp(WIDTH, HEIGHT, false);
+        assertTrue(loader.awaitReady(10, TimeUnit.SECONDS));
+        assertTrue(processor.calls.get(0).startsWith("rgba 96x64 edges"));
+    }
+    
+    @Test
+    public void testWarmUpBudget_cutsWarmUpShort() throws Exception {
+        RecordingProcessor processor = new RecordingProcessor();
+        loader = new ProcessorLoader(factoryOf(processor), new StartupTrace(), QualityLevel.DEFAULT_LADDER);
+        loader.setWarmUpBudget(0);
+        loader.warmUp(WIDTH, HEIGHT, true);
+        loader.start();
+        
+        assertTrue(loader.awaitReady(10, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList("luma 96x64 edges 0/5"), processor.calls);
+        assertEquals(QualityLevel.FULL, processor.level);
+    }
+    
+    @Test
+    public void testNoWarmUpFrames_handsOverAtOnce() throws Exception {
+        RecordingProcessor processor = new RecordingProcessor();
+        StartupTrace trace = new StartupTrace();
+        loader = new ProcessorLoader(factoryOf(processor), trace, QualityLevel.DEFAULT_LADDER);
+        loader.setWarmUpFrames(0);
+        loader.start();
+        loader.warmUp(WIDTH, HEIGHT, true);
+        
+        assertTrue(loader.awaitReady(10, TimeUnit.SECONDS));
+        assertTrue(processor.calls.isEmpty());
+        assertFalse(trace.isRecorded(StartupTrace.Phase.WARM_UP));
+        assertEquals(-1, loader.getFirstWarmUpNanos());
+    }
+    
+    @Test
+    public void testFactoryFailure_isReported() throws Exception {
+        StartupTrace trace = new StartupTrace();
+        loader = new ProcessorLoader(new ProcessorLoader.Factory() {
+            @Override
+            public FrameProcessor create() {
+                throw new UnsatisfiedLinkError("no opencv_processing");
+            }
+        }, trace, QualityLevel.DEFAULT_LADDER);
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        loader.setListener(new ProcessorLoader.Listener() {
+            @Override
+            public void onProcessorReady(FrameProcessor p) {
+                fail("No processor expected");
+            }
+            
+            @Override
+            public void onProcessorFailed(Throwable error) {
+                failure.set(error);
+            }
+        });
+        loader.start();
+        
+        long start = System.nanoTime();
+        assertFalse(loader.awaitReady(10, TimeUnit.SECONDS));
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5));
+        loader.close();
+        assertTrue(failure.get() instanceof UnsatisfiedLinkError);
+        assertFalse(trace.isRecorded(StartupTrace.Phase.PROCESSOR_CREATE));
+        loader = null;
+    }
+    
+    @Test
+    public void testWarmUpFailure_releasesProcessorAndIsReported() throws Exception {
+        final IllegalStateException thrown = new IllegalStateException("No scratch for the frame");
+        RecordingProcessor processor = new RecordingProcessor() {
+            @Override
+            public synchronized void setQualityLevel(QualityLevel level) {
+                throw thrown;
+            }
+        };
+        StartupTrace trace = new StartupTrace();
+        loader = new ProcessorLoader(factoryOf(processor), trace, QualityLevel.DEFAULT_LADDER);
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        final CountDownLatch reported = new CountDownLatch(1);
+        loader.setListener(new ProcessorLoader.Listener() {
+            @Override
+            public void onProcessorReady(FrameProcessor p) {
+                fail("No processor expected");
+            }
+            
+            @Override
+            public void onProcessorFailed(Throwable error) {
+                failure.set(error);
+                reported.countDown();
+            }
+        });
+        loader.start();
+        loader.warmUp(WIDTH, HEIGHT, true);
+        
+        long start = System.nanoTime();
+        assertFalse(loader.awaitReady(10, TimeUnit.SECONDS));
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5));
+        assertTrue(reported.await(10, TimeUnit.SECONDS));
+        assertSame(thrown, failure.get());
+        assertTrue(processor.released);
+        assertNull(loader.getProcessor());
+        assertTrue(trace.isRecorded(StartupTrace.Phase.PROCESSOR_CREATE));
+        assertFalse(trace.isRecorded(StartupTrace.Phase.WARM_UP));
+    }
+    
+    @Test
+    public void testClose_beforeHandOver_releasesProcessor() throws Exception {
+        RecordingProcessor processor = new RecordingProcessor();
+        loader = new ProcessorLoader(factoryOf(processor), new StartupTrace(), QualityLevel.DEFAULT_LADDER);
+        final CountDownLatch ready = new CountDownLatch(1);
+        loader.setListener(new ProcessorLoader.Listener() {
+            @Override
+            public void onProcessorReady(FrameProcessor p) {
+                ready.countDown();
+            }
+            
+            @Override
+            public void onProcessorFailed(Throwable error) {
+            }
+        });
+        loader.start();
+        loader.close();
+        
+        assertTrue(processor.released);
+        assertEquals(1, ready.getCount());
+        loader = null;
+    }
+    
+    @Test
+    public void testWarmedProcessor_matchesColdOne() throws Exception {
+        JavaFrameProcessor warmed = new JavaFrameProcessor(new CannyEdgeDetector(), OutputFormat.LUMINANCE);
+        loader = new ProcessorLoader(factoryOf(warmed), new StartupTrace(), QualityLevel.DEFAULT_LADDER);
+        loader.setWarmUpBudget(TimeUnit.SECONDS.toNanos(30));
+        loader.start();
+        loader.warmUp(WIDTH, HEIGHT, false);
+        assertTrue(loader.awaitReady(10, TimeUnit.SECONDS));
+        
+        byte[] frame = SyntheticFrames.rgba(WIDTH, HEIGHT, 3);
+        ByteBuffer expected = ByteBuffer.allocateDirect(WIDTH * HEIGHT);
+        ByteBuffer actual = ByteBuffer.allocateDirect(WIDTH * HEIGHT);
+        ByteBuffer input = ByteBuffer.allocateDirect(frame.length);
+        input.put(frame);
+        new JavaFrameProcessor(new CannyEdgeDetector(), OutputFormat.LUMINANCE).processFrame(input, expected, WIDTH, HEIGHT, true);
+        assertTrue(warmed.processFrame(input, actual, WIDTH, HEIGHT, true));
+        assertEquals(expected, actual);
+    }
+}
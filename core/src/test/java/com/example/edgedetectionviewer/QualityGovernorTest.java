@@ -0,0 +1,196 @@
+package com.example.edgedetectionviewer;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for the quality governor, driven by a simulated clock and a per-level cost model
+ */
+public class QualityGovernorTest {
+    
+    private static final long DEADLINE = 33_000_000L;
+    
+    private final FakeClock clock = new FakeClock();
+    private final QualityGovernor governor = new QualityGovernor(QualityLevel.DEFAULT_LADDER, DEADLINE, clock);
+    
+    private static final class FakeClock implements QualityGovernor.Clock {
+        long now = 1_000_000_000L;
+        
+        @Override
+        public long nanoTime() {
+            return now;
+        }
+    }
+    
+    /**
+     * Processing time of a frame at a level.
+     */
+    private interface CostModel {
+        long cost(QualityLevel level);
+    }
+    
+    /**
+     * Cost proportional to the level's relative cost, for a device that needs
+     * {@code fullCost} at full quality.
+     */
+    private static CostModel device(final long fullCost) {
+        return new CostModel() {
+            @Override
+            public long cost(QualityLevel level) {
+                return (long) (fullCost * level.getRelativeCost());
+            }
+        };
+    }
+    
+    /**
+     * Feeds captured frames at the deadline's rate for the given time.
+     */
+    private void run(CostModel model, long nanos) {
+        long end = clock.now + nanos;
+        while (clock.now < end) {
+            clock.now += DEADLINE;
+            if (governor.admitFrame()) {
+                governor.recordFrame(model.cost(governor.getLevel()));
+            }
+        }
+    }
+    
+    private static long seconds(double s) {
+        return (long) (s * 1e9);
+    }
+    
+    @Test
+    public void testFastDevice_staysAtFullQuality() {
+        run(device(DEADLINE / 2), seconds(60));
+        
+        assertEquals(0, governor.getLevelIndex());
+        assertSame(QualityLevel.FULL, governor.getLevel());
+        assertTrue(governor.getRecentChanges().isEmpty());
+        assertEquals(0, governor.getSkippedFrameCount());
+    }
+    
+    @Test
+    public void testSlowDevice_dropsToFirstLevelThatFits() {
+        // 1.5x the deadline at full quality: the 3x3 blur alone is not enough, half scale is
+        run(device(DEADLINE * 3 / 2), seconds(1));
+        
+        assertEquals(2, governor.getLevelIndex());
+        List<QualityGovernor.Change> changes = governor.getRecentChanges();
+        assertEquals(1, changes.size());
+        QualityGovernor.Change change = changes.get(0);
+        assertEquals(0, change.getFromIndex());
+        assertEquals(2, change.getToIndex());
+        assertEquals(QualityGovernor.Reason.OVER_DEADLINE, change.getReason());
+        assertTrue(change.getCostNanos() > change.getBudgetNanos());
+        assertEquals(DEADLINE, change.getBudgetNanos());
+        assertTrue(change.toString(), change.toString().contains("over deadline"));
+    }
+    
+    @Test
+    public void testVerySlowDevice_skipsFramesWithinStrideBudget() {
+        // Even at quarter scale a frame takes 1.5 frame periods
+        run(device(DEADLINE * 24), seconds(10));
+        
+        QualityLevel level = governor.getLevel();
+        assertEquals(2, level.getFrameStride());
+        assertTrue(governor.getSmoothedCostNanos() <= 2 * DEADLINE);
+        assertTrue(governor.getSkippedFrameCount() > 0);
+    }
+    
+    @Test
+    public void testLoadDrops_climbsBackOneLevelAtATime() {
+        run(device(DEADLINE * 8), seconds(2));
+        int degraded = governor.getLevelIndex();
+        assertTrue(degraded >= 3);
+        int changesBefore = governor.getRecentChanges().size();
+        
+        run(device(DEADLINE / 4), seconds(60));
+        
+        assertEquals(0, governor.getLevelIndex());
+        List<QualityGovernor.Change> changes = governor.getRecentChanges();
+        List<QualityGovernor.Change> climbs = changes.subList(changesBefore, changes.size());
+        assertEquals(degraded, climbs.size());
+        for (int i = 0; i < climbs.size(); i++) {
+            QualityGovernor.Change climb = climbs.get(i);
+            assertEquals(QualityGovernor.Reason.HEADROOM, climb.getReason());
+            assertEquals(climb.getFromIndex() - 1, climb.getToIndex());
+            long since = i == 0 ? changes.get(changesBefore - 1).getTimeNanos() : climbs.get(i - 1).getTimeNanos();
+            assertTrue(climb.getTimeNanos() - since >= QualityGovernor.MIN_UPGRADE_HOLD_NANOS);
+        }
+    }
+    
+    @Test
+    public void testBorderlineCost_doesNotFlap() {
+        // Just over at full quality, so the next level is well within but full never has headroom
+        run(device(DEADLINE * 11 / 10), seconds(120));
+        
+        assertEquals(1, governor.getLevelIndex());
+        assertEquals(1, governor.getRecentChanges().size());
+    }
+    
+    @Test
+    public void testSingleStall_doesNotChangeLevel() {
+        run(device(DEADLINE / 2), seconds(1));
+        governor.recordFrame(DEADLINE * 50);
+        run(device(DEADLINE / 2), seconds(1));
+        
+        assertEquals(0, governor.getLevelIndex());
+    }
+    
+    @Test
+    public void testMisleadingEstimate_backsOffRepeatedClimbs() {
+        // Full quality is far more expensive than the 3x3 level suggests, so every climb
+        // back to it fails
+        final CostModel cheap = device(DEADLINE / 2);
+        CostModel model = new CostModel() {
+            @Override
+            public long cost(QualityLevel level) {
+                return level.equals(QualityLevel.FULL) ? DEADLINE * 2 : cheap.cost(level);
+            }
+        };
+        run(model, seconds(120));
+        
+        List<QualityGovernor.Change> changes = governor.getRecentChanges();
+        long previousHold = 0;
+        int climbs = 0;
+        for (int i = 1; i < changes.size(); i++) {
+            QualityGovernor.Change change = changes.get(i);
+            if (change.getToIndex() != 0) {
+                continue;
+            }
+            long hold = change.getTimeNanos() - changes.get(i - 1).getTimeNanos();
+            assertTrue("Hold " + hold + " after " + previousHold, hold >= previousHold);
+            previousHold = hold;
+            climbs++;
+        }
+        // Holds of 2, 4, 8, 16, 32 and 32 s, each followed by a drop
+        assertTrue("Climbs: " + climbs, climbs >= 5 && climbs <= 7);
+        assertTrue(previousHold >= QualityGovernor.MAX_UPGRADE_HOLD_NANOS);
+        // The level below full always held, so its hold never grew
+        for (QualityGovernor.Change change : changes) {
+            assertTrue(change.toString(), change.getToIndex() <= 2);
+        }
+    }
+    
+    @Test
+    public void testListener_seesEachChange() {
+        final int[] calls = new int[1];
+        governor.setListener(new QualityGovernor.Listener() {
+            @Override
+            public void onLevelChanged(QualityGovernor.Change change) {
+                assertSame(change.getLevel(), governor.getLevel());
+                calls[0]++;
+            }
+        });
+        
+        run(device(DEADLINE * 2), seconds(1));
+        run(device(DEADLINE / 4), seconds(30));
+        
+        assertEquals(governor.getRecentChanges().size(), calls[0]);
+        assertTrue(calls[0] >= 2);
+        assertTrue(governor.describeStats(), governor.describeStats().startsWith("quality[level=0/5"));
+    }
+}
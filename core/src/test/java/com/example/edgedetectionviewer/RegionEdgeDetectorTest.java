@@ -0,0 +1,195 @@
+package com.example.edgedetectionviewer;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class RegionEdgeDetectorTest {
+    
+    private static final int WIDTH = 96;
+    private static final int HEIGHT = 72;
+    private static final int ROW_STRIDE = 104;
+    
+    private static byte[] gray(int seed) {
+        byte[] gray = new byte[WIDTH * HEIGHT];
+        new CannyEdgeDetector().grayscale(SyntheticFrames.rgba(WIDTH, HEIGHT, seed), 0, gray, WIDTH, HEIGHT);
+        return gray;
+    }
+    
+    private static byte[] fullFrame(CannyEdgeDetector detector, byte[] gray) {
+        byte[] edges = new byte[WIDTH * HEIGHT];
+        detector.detectEdgesFromLuma(gray, edges, WIDTH, HEIGHT);
+        return edges;
+    }
+    
+    /**
+     * Regions at the frame's corners and edges, where the halo is clipped, and inside it.
+     */
+    private static RegionSet regions() {
+        RegionSet regions = new RegionSet(4);
+        regions.addRect(0, 0, 20, 15);
+        regions.addRect(30, 20, 33, 27);
+        regions.addRect(WIDTH - 9, 40, 9, HEIGHT - 40);
+        regions.addRect(3, HEIGHT - 1, 50, 1);
+        return regions;
+    }
+    
+    private static void assertRegionsMatch(RegionSet regions, byte[] packed, byte[] frame) {
+        for (int i = 0; i < regions.size(); i++) {
+            int w = regions.getWidth(i);
+            for (int r = 0; r < regions.getHeight(i); r++) {
+                int s = regions.getOutputOffset(i) + r * w;
+                int d = (regions.getY(i) + r) * WIDTH + regions.getX(i);
+                assertArrayEquals("Region " + i + " row " + r,
+                        Arrays.copyOfRange(frame, d, d + w), Arrays.copyOfRange(packed, s, s + w));
+            }
+        }
+    }
+    
+    @Test
+    public void testWithoutHysteresis_matchesWholeFrame() {
+        // Equal thresholds leave no candidates to link, so only suppression decides
+        for (int kernel : new int[] {5, 3}) {
+            CannyEdgeDetector full = new CannyEdgeDetector(80, 80);
+            full.setBlurKernelSize(kernel);
+            RegionEdgeDetector detector = new RegionEdgeDetector(new CannyEdgeDetector(80, 80));
+            detector.setBlurKernelSize(kernel);
+            byte[] gray = gray(1);
+            RegionSet regions = regions();
+            byte[] packed = new byte[regions.getOutputSize()];
+            
+            detector.detect(SyntheticFrames.lumaPlane(gray, WIDTH, HEIGHT, ROW_STRIDE), ROW_STRIDE, WIDTH, HEIGHT, regions, packed, 0);
+            assertRegionsMatch(regions, packed, fullFrame(full, gray));
+        }
+    }
+    
+    @Test
+    public void testWithHysteresis_findsSubsetOfWholeFrame() {
+        byte[] gray = gray(2);
+        byte[] frame = fullFrame(new CannyEdgeDetector(), gray);
+        RegionSet regions = regions();
+        byte[] packed = new byte[regions.getOutputSize()];
+        new RegionEdgeDetector().detect(ByteBuffer.wrap(gray), WIDTH, WIDTH, HEIGHT, regions, packed, 0);
+        
+        int edges = 0;
+        for (int i = 0; i < regions.size(); i++) {
+            int w = regions.getWidth(i);
+            for (int p = 0; p < w * regions.getHeight(i); p++) {
+                byte v = packed[regions.getOutputOffset(i) + p];
+                if (v != 0) {
+                    edges++;
+                    assertEquals((byte) 255, v);
+                    assertEquals("Edge only in region " + i, (byte) 255,
+                            frame[(regions.getY(i) + p / w) * WIDTH + regions.getX(i) + p % w]);
+                }
+            }
+        }
+        assertTrue(edges > 0);
+    }
+    
+    @Test
+    public void testWholeFrameRegion_matchesWholeFrame() {
+        byte[] gray = gray(3);
+        RegionSet regions = new RegionSet(1);
+        regions.addRect(0, 0, WIDTH, HEIGHT);
+        byte[] packed = new byte[WIDTH * HEIGHT];
+        new RegionEdgeDetector().detect(ByteBuffer.wrap(gray), WIDTH, WIDTH, HEIGHT, regions, packed, 0);
+        assertArrayEquals(fullFrame(new CannyEdgeDetector(), gray), packed);
+    }
+    
+    @Test
+    public void testProcessor_appliesMasksAndLeavesRestOfFrame() {
+        byte[] gray = gray(4);
+        byte[] mask = new byte[24 * 24];
+        for (int y = 0; y < 24; y++) {
+            for (int x = 0; x < 24; x++) {
+                mask[y * 24 + x] = (byte) ((x - 12) * (x - 12) + (y - 12) * (y - 12) < 100 ? 1 : 0);
+            }
+        }
+        RegionSet regions = new RegionSet(2);
+        regions.addRect(4, 4, 30, 20);
+        regions.addMask(50, 30, 24, 24, mask);
+        
+        JavaFrameProcessor processor = new JavaFrameProcessor(new CannyEdgeDetector(), OutputFormat.LUMINANCE);
+        ByteBuffer packed = ByteBuffer.allocateDirect(regions.getOutputSize());
+        assertTrue(processor.processLumaRegions(SyntheticFrames.lumaPlane(gray, WIDTH, HEIGHT, ROW_STRIDE),
+                ROW_STRIDE, WIDTH, HEIGHT, regions, packed));
+        
+        byte[] expected = new byte[regions.getOutputSize()];
+        new RegionEdgeDetector().detect(ByteBuffer.wrap(gray), WIDTH, WIDTH, HEIGHT, regions, expected, 0);
+        int offset = regions.getOutputOffset(1);
+        for (int p = 0; p < mask.length; p++) {
+            assertEquals(mask[p] != 0 ? expected[offset + p] : 0, packed.get(offset + p));
+        }
+        for (int p = 0; p < offset; p++) {
+            assertEquals(expected[p], packed.get(p));
+        }
+        
+        ByteBuffer frame = ByteBuffer.allocate(WIDTH * HEIGHT);
+        for (int p = 0; p < WIDTH * HEIGHT; p++) {
+            frame.put(p, (byte) 7);
+        }
+        regions.copyToFrame(packed, frame, WIDTH, OutputFormat.LUMINANCE);
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                byte v = frame.get(y * WIDTH + x);
+                if (x >= 4 && x < 34 && y >= 4 && y < 24) {
+                    assertEquals(packed.get((y - 4) * 30 + x - 4), v);
+                } else if (x >= 50 && x < 74 && y >= 30 && y < 54 && mask[(y - 30) * 24 + x - 50] != 0) {
+                    assertEquals(packed.get(offset + (y - 30) * 24 + x - 50), v);
+                } else {
+                    assertEquals("Untouched at " + x + "," + y, 7, v);
+                }
+            }
+        }
+    }
+    
+    @Test
+    public void testMovingRegions_allocatesNothingPerFrame() {
+        AllocationMeter.assumeSupported();
+        final int frames = 40;
+        final ByteBuffer plane = SyntheticFrames.lumaPlane(gray(5), WIDTH, HEIGHT, ROW_STRIDE);
+        final RegionSet regions = new RegionSet(3);
+        regions.addRect(0, 0, 32, 32);
+        regions.addRect(40, 10, 16, 48);
+        final RegionSet update = new RegionSet(3);
+        final ByteBuffer packed = ByteBuffer.allocateDirect(64 * 64);
+        final JavaFrameProcessor processor = new JavaFrameProcessor(new CannyEdgeDetector(), OutputFormat.LUMINANCE);
+        Runnable run = new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 0; i < frames; i++) {
+                    // Regions move and change count between frames, within the sizes already seen
+                    regions.set(0, i % 40, i % 30, 32, 32);
+                    if (i % 2 == 0) {
+                        regions.addRect(60, 40, 20, 20);
+                    } else {
+                        regions.remove(2);
+                    }
+                    update.copyFrom(regions);
+                    processor.processLumaRegions(plane, ROW_STRIDE, WIDTH, HEIGHT, update, packed);
+                }
+            }
+        };
+        run.run();
+        long allocated = AllocationMeter.measure(run);
+        
+        assertEquals("Bytes allocated per frame", 0, allocated / frames);
+    }
+    
+    @Test
+    public void testEmptyRegions_readNothing() {
+        byte[] out = new byte[0];
+        new RegionEdgeDetector().detect(ByteBuffer.allocate(WIDTH * HEIGHT), WIDTH, WIDTH, HEIGHT, new RegionSet(1), out, 0);
+    }
+    
+    @Test(expected = IllegalArgumentException.class)
+    public void testRegionPastFrame_isRejected() {
+        RegionSet regions = new RegionSet(1);
+        regions.addRect(WIDTH - 10, 0, 11, 10);
+        new RegionEdgeDetector().detect(ByteBuffer.allocate(WIDTH * HEIGHT), WIDTH, WIDTH, HEIGHT, regions, new byte[110], 0);
+    }
+}
@@ -0,0 +1,155 @@
+package com.example.edgedetectionviewer;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.*;
+
+public class RegionSetTest {
+    
+    @Test
+    public void testOffsets_followRegionOrder() {
+        RegionSet regions = new RegionSet(4);
+        assertEquals(0, regions.getOutputSize());
+        assertEquals(0, regions.addRect(10, 20, 8, 4));
+        assertEquals(1, regions.addRect(0, 0, 3, 3));
+        assertEquals(2, regions.addMask(5, 5, 2, 5, new byte[10]));
+        
+        assertEquals(0, regions.getOutputOffset(0));
+        assertEquals(32, regions.getOutputOffset(1));
+        assertEquals(41, regions.getOutputOffset(2));
+        assertEquals(51, regions.getOutputSize());
+        assertEquals("regions[8x4+10+20 3x3+0+0 2x5+5+5 masked]", regions.toString());
+        
+        // Resizing one region moves the ones after it
+        regions.set(0, 10, 20, 2, 2);
+        assertEquals(4, regions.getOutputOffset(1));
+        assertEquals(13, regions.getOutputOffset(2));
+        
+        regions.remove(1);
+        assertEquals(2, regions.size());
+        assertEquals(5, regions.getX(1));
+        assertNotNull(regions.getMask(1));
+        assertEquals(4, regions.getOutputOffset(1));
+        assertEquals(14, regions.getOutputSize());
+    }
+    
+    @Test
+    public void testCopyFrom_replacesContent() {
+        RegionSet source = new RegionSet(2);
+        source.addRect(1, 2, 3, 4);
+        RegionSet target = new RegionSet(3);
+        target.addRect(0, 0, 9, 9);
+        target.addMask(0, 0, 1, 1, new byte[1]);
+        target.addRect(0, 0, 5, 5);
+        
+        target.copyFrom(source);
+        assertEquals(1, target.size());
+        assertEquals("regions[3x4+1+2]", target.toString());
+        assertEquals(12, target.getOutputSize());
+        
+        target.clear();
+        assertTrue(target.isEmpty());
+        assertEquals(0, target.getOutputSize());
+    }
+    
+    @Test
+    public void testCopyToFrame_expandsToRgba() {
+        RegionSet regions = new RegionSet(1);
+        regions.addRect(1, 1, 2, 1);
+        ByteBuffer packed = ByteBuffer.wrap(new byte[] {(byte) 255, 0});
+        ByteBuffer frame = ByteBuffer.allocate(4 * 3 * 4);
+        regions.copyToFrame(packed, frame, 4, OutputFormat.RGBA);
+        
+        int p = (1 * 4 + 1) * 4;
+        assertEquals(-1, frame.getInt(p));
+        assertEquals(0xFF, frame.getInt(p + 4));
+        assertEquals(0, frame.getInt(0));
+        assertEquals(0, frame.getInt(p + 8));
+    }
+    
+    @Test
+    public void testReplaceInFrame_writesOnlyOldAndNewRegions() {
+        int width = 40;
+        int height = 30;
+        RegionSet drawn = new RegionSet(1);
+        drawn.addRect(2, 2, 6, 4);
+        RegionSet regions = new RegionSet(1);
+        regions.addRect(20, 10, 5, 5);
+        ByteBuffer packed = ByteBuffer.allocate(regions.getOutputSize());
+        for (int i = 0; i < packed.capacity(); i++) {
+            packed.put(i, (byte) 255);
+        }
+        // Stands for content a real frame would have blank; it shows which bytes were written
+        ByteBuffer frame = ByteBuffer.allocate(width * height);
+        for (int p = 0; p < width * height; p++) {
+            frame.put(p, (byte) 0x55);
+        }
+        frame.position(7);
+        
+        regions.replaceInFrame(packed, frame, width, height, OutputFormat.LUMINANCE, drawn);
+        assertEquals(7, frame.position());
+        int written = 0;
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                byte v = frame.get(y * width + x);
+                if (x >= 20 && x < 25 && y >= 10 && y < 15) {
+                    assertEquals((byte) 255, v);
+                } else if (x >= 2 && x < 8 && y >= 2 && y < 6) {
+                    assertEquals(0, v);
+                } else {
+                    assertEquals("Untouched at " + x + "," + y, 0x55, v);
+                    continue;
+                }
+                written++;
+            }
+        }
+        // Region area, not frame area
+        assertEquals(6 * 4 + 5 * 5, written);
+    }
+    
+    @Test
+    public void testReplaceInFrame_blanksWholeRgbaFrameWhenDrawnIsUnknown() {
+        RegionSet regions = new RegionSet(1);
+        regions.addRect(1, 0, 1, 1);
+        ByteBuffer packed = ByteBuffer.wrap(new byte[] {(byte) 255});
+        ByteBuffer frame = ByteBuffer.allocate(3 * 2 * 4);
+        for (int p = 0; p < frame.capacity(); p++) {
+            frame.put(p, (byte) 0x55);
+        }
+        frame.clear();
+        
+        regions.replaceInFrame(packed, frame, 3, 2, OutputFormat.RGBA, null);
+        for (int p = 0; p < 6; p++) {
+            assertEquals("Pixel " + p, p == 1 ? -1 : 0xFF, frame.getInt(p * 4));
+        }
+    }
+    
+    @Test
+    public void testBadRegions_areRejected() {
+        RegionSet regions = new RegionSet(1);
+        try {
+            regions.addRect(0, 0, 0, 4);
+            fail("Empty region accepted");
+        } catch (IllegalArgumentException expected) {
+        }
+        try {
+            regions.addMask(0, 0, 4, 4, new byte[15]);
+            fail("Short mask accepted");
+        } catch (IllegalArgumentException expected) {
+        }
+        assertEquals(0, regions.size());
+        regions.addRect(0, 0, 4, 4);
+        try {
+            regions.addRect(0, 0, 4, 4);
+            fail("Full set grew");
+        } catch (IllegalStateException expected) {
+        }
+        try {
+            regions.checkFrame(3, 8);
+            fail("Region past the frame accepted");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package com.example.edgedetectionviewer;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+public class ReplayFrameSourceTest {
+    private static final int WIDTH = 24;
+    private static final int HEIGHT = 16;
+    private static final long FRAME_NANOS = TimeUnit.MILLISECONDS.toNanos(20);
+    
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+    
+    private final FrameBufferPool pool = new FrameBufferPool();
+    private FrameRecorder recorder;
+    private ReplayFrameSource source;
+    
+    @After
+    public void tearDown() {
+        if (source != null) {
+            source.close();
+        }
+        if (recorder != null) {
+            recorder.close();
+        }
+    }
+    
+    /**
+     * Records {@code count} frames FRAME_NANOS apart, ending now; frame i is filled by
+     * {@link #pixel}.
+     */
+    private File recording(int count, int bytesPerPixel, boolean edges) throws Exception {
+        recorder = new FrameRecorder(1 << 20);
+        long start = System.nanoTime() - count * FRAME_NANOS;
+        for (int i = 0; i < count; i++) {
+            FrameBuffer frame = pool.acquire(WIDTH, HEIGHT, bytesPerPixel);
+            for (int p = 0; p < frame.getData().capacity(); p++) {
+                frame.getData().put(p, pixel(i, p / bytesPerPixel, edges));
+            }
+            recorder.record(frame, edges, start + i * FRAME_NANOS);
+            frame.release();
+        }
+        return save();
+    }
+    
+    private static byte pixel(int frame, int p, boolean edges) {
+        if (edges) {
+            return (byte) ((p + frame) % 5 == 0 ? 255 : 0);
+        }
+        return (byte) (frame * 31 + p);
+    }
+    
+    private File save() throws Exception {
+        File file = folder.newFile();
+        final CountDownLatch done = new CountDownLatch(1);
+        final AtomicReference<IOException> failure = new AtomicReference<>();
+        recorder.save(file, TimeUnit.MINUTES.toNanos(1), new FrameRecorder.SaveListener() {
+            @Override
+            public void onSaved(File file, int frameCount) {
+                done.countDown();
+            }
+            
+            @Override
+            public void onSaveFailed(File file, IOException error) {
+                failure.set(error);
+                done.countDown();
+            }
+        });
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        if (failure.get() != null) {
+            throw failure.get();
+        }
+        return file;
+    }
+    
+    /**
+     * Plays the source through unthrottled and copies out every frame it hands over.
+     */
+    private static List<byte[]> drain(ReplayFrameSource source) throws Exception {
+        final List<byte[]> frames = new ArrayList<>();
+        source.start(new CaptureTarget() {
+            @Override
+            public void submit(CapturedFrame frame) {
+                LumaFrame luma = (LumaFrame) frame;
+                assertEquals(WIDTH, luma.getWidth());
+                assertEquals(HEIGHT, luma.getHeight());
+                byte[] pixels = new byte[WIDTH * HEIGHT];
+                luma.copyTo(pixels);
+                frames.add(pixels);
+                frame.release();
+            }
+        });
+        SyntheticFrameSourceTest.awaitFinished(source);
+        return frames;
+    }
+    
+    private static void assertFrames(List<byte[]> frames, int count, boolean edges) {
+        assertEquals(count, frames.size());
+        for (int i = 0; i < count; i++) {
+            for (int p = 0; p < WIDTH * HEIGHT; p++) {
+                assertEquals("Frame " + i + " pixel " + p, pixel(i, p, edges), frames.get(i)[p]);
+            }
+        }
+    }
+    
+    @Test
+    public void testGrayRecording_replaysMappedFramesInOrder() throws Exception {
+        source = new ReplayFrameSource(recording(6, 1, false));
+        assertEquals(6, source.getFrameCount());
+        source.setRealTime(false);
+        source.setLooping(false);
+        
+        assertFrames(drain(source), 6, false);
+        assertEquals(0, source.getDroppedCount());
+    }
+    
+    @Test
+    public void testPackedEdgeRecording_replaysUnpackedEdges() throws Exception {
+        source = new ReplayFrameSource(recording(4, 1, true));
+        source.setRealTime(false);
+        source.setLooping(false);
+        
+        assertFrames(drain(source), 4, true);
+    }
+    
+    @Test
+    public void testLooping_startsOverAfterLastFrame() throws Exception {
+        source = new ReplayFrameSource(recording(3, 1, false));
+        source.setRealTime(false);
+        source.setFrameLimit(7);
+        
+        List<byte[]> frames = drain(source);
+        assertEquals(7, frames.size());
+        assertArrayEquals(frames.get(0), frames.get(3));
+        assertArrayEquals(frames.get(0), frames.get(6));
+    }
+    
+    @Test
+    public void testRealTime_keepsRecordedSpacing() throws Exception {
+        source = new ReplayFrameSource(recording(5, 1, false));
+        source.setLooping(false);
+        long start = System.nanoTime();
+        
+        assertEquals(5, drain(source).size());
+        // Four intervals between five frames; only a lower bound holds on a busy machine
+        assertTrue(System.nanoTime() - start >= 4 * FRAME_NANOS);
+    }
+    
+    @Test(expected = IOException.class)
+    public void testRgbaOnlyRecording_isRejected() throws Exception {
+        new ReplayFrameSource(recording(2, 4, false));
+    }
+}
@@ -0,0 +1,115 @@
+package com.example.edgedetectionviewer;
+
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for the latest-frame-wins ring between pipeline stages
+ */
+public class SpscRingBufferTest {
+    
+    private static final class CountingDrops implements SpscRingBuffer.DropHandler<Integer> {
+        final AtomicLong count = new AtomicLong();
+        volatile Integer last;
+        
+        @Override
+        public void onDrop(Integer item) {
+            count.incrementAndGet();
+            last = item;
+        }
+    }
+    
+    @Test
+    public void testPoll_fifoOrder() {
+        SpscRingBuffer<Integer> ring = new SpscRingBuffer<>("test", 4, new CountingDrops());
+        assertNull(ring.poll());
+        ring.offer(1);
+        ring.offer(2);
+        ring.offer(3);
+        
+        assertEquals(3, ring.size());
+        assertEquals(Integer.valueOf(1), ring.poll());
+        assertEquals(Integer.valueOf(2), ring.poll());
+        assertEquals(Integer.valueOf(3), ring.poll());
+        assertNull(ring.poll());
+    }
+    
+    @Test
+    public void testOffer_fullRingEvictsOldest() {
+        CountingDrops drops = new CountingDrops();
+        SpscRingBuffer<Integer> ring = new SpscRingBuffer<>("test", 2, drops);
+        assertTrue(ring.offer(1));
+        assertTrue(ring.offer(2));
+        assertFalse(ring.offer(3));
+        
+        assertEquals(Integer.valueOf(1), drops.last);
+        assertEquals(2, ring.size());
+        assertEquals(Integer.valueOf(2), ring.poll());
+        assertEquals(Integer.valueOf(3), ring.poll());
+        assertEquals(1, ring.getDroppedCount());
+    }
+    
+    @Test
+    public void testPollLatest_skipsToNewest() {
+        CountingDrops drops = new CountingDrops();
+        SpscRingBuffer<Integer> ring = new SpscRingBuffer<>("test", 4, drops);
+        ring.offer(1);
+        ring.offer(2);
+        ring.offer(3);
+        
+        assertEquals(Integer.valueOf(3), ring.pollLatest());
+        assertEquals(2, drops.count.get());
+        assertEquals(0, ring.size());
+        assertEquals(3, ring.getMaxDepth());
+        assertNull(ring.pollLatest());
+    }
+    
+    @Test
+    public void testCapacity_roundedUpToPowerOfTwo() {
+        assertEquals(4, new SpscRingBuffer<>("test", 3, new CountingDrops()).capacity());
+        assertEquals(1, new SpscRingBuffer<>("test", 1, new CountingDrops()).capacity());
+    }
+    
+    @Test
+    public void testConcurrent_everyItemConsumedOrDroppedExactlyOnce() throws Exception {
+        final int items = 500000;
+        final AtomicIntegerArray seen = new AtomicIntegerArray(items);
+        final SpscRingBuffer<Integer> ring = new SpscRingBuffer<>("test", 2, new SpscRingBuffer.DropHandler<Integer>() {
+            @Override
+            public void onDrop(Integer item) {
+                seen.incrementAndGet(item);
+            }
+        });
+        
+        Thread producer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 0; i < items; i++) {
+                    ring.offer(i);
+                }
+            }
+        });
+        producer.start();
+        
+        int last = -1;
+        while (producer.isAlive() || ring.size() > 0) {
+            Integer item = ring.pollLatest();
+            if (item != null) {
+                assertTrue("Out of order: " + item + " after " + last, item > last);
+                last = item;
+                seen.incrementAndGet(item);
+            }
+        }
+        producer.join();
+        
+        for (int i = 0; i < items; i++) {
+            assertEquals("Item " + i, 1, seen.get(i));
+        }
+        assertEquals(items - 1, last);
+        assertEquals(items, ring.getPublishedCount());
+    }
+}
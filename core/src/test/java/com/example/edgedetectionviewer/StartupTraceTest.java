@@ -0,0 +1,64 @@
+package com.example.edgedetectionviewer;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class StartupTraceTest {
+    
+    private static final long MS = TimeUnit.MILLISECONDS.toNanos(1);
+    
+    @Test
+    public void testPhases_relativeToOrigin() {
+        long origin = 1_000 * MS;
+        StartupTrace trace = new StartupTrace(origin);
+        assertTrue(trace.record(StartupTrace.Phase.LIBRARY_LOAD, origin + 10 * MS, origin + 55 * MS));
+        assertTrue(trace.record(StartupTrace.Phase.CAMERA_OPEN, origin + 5 * MS, origin + 300 * MS));
+        
+        assertEquals(55 * MS, trace.getElapsedNanos(StartupTrace.Phase.LIBRARY_LOAD));
+        assertEquals(45 * MS, trace.getDurationNanos(StartupTrace.Phase.LIBRARY_LOAD));
+        assertEquals(295 * MS, trace.getDurationNanos(StartupTrace.Phase.CAMERA_OPEN));
+        assertEquals(-1, trace.getDurationNanos(StartupTrace.Phase.WARM_UP));
+        assertEquals(-1, trace.getTimeToFirstFrameNanos());
+        assertEquals("startup[library_load=10.0+45.0 camera_open=5.0+295.0 ms]", trace.describe());
+    }
+    
+    @Test
+    public void testEachPhase_recordedOnce() {
+        long origin = System.nanoTime() - 400 * MS;
+        StartupTrace trace = new StartupTrace(origin);
+        assertTrue(trace.mark(StartupTrace.Phase.FIRST_FRAME));
+        long first = trace.getTimeToFirstFrameNanos();
+        assertTrue(first >= 400 * MS);
+        
+        // A camera reopened after a pause is not a cold start
+        assertFalse(trace.mark(StartupTrace.Phase.FIRST_FRAME));
+        assertFalse(trace.record(StartupTrace.Phase.FIRST_FRAME, origin, origin + 1));
+        assertEquals(first, trace.getTimeToFirstFrameNanos());
+        assertEquals(first, trace.getDurationNanos(StartupTrace.Phase.FIRST_FRAME));
+    }
+    
+    @Test
+    public void testReport_listsRecordedPhases() throws Exception {
+        StartupTrace trace = new StartupTrace(0);
+        trace.record(StartupTrace.Phase.WARM_UP, 60 * MS, 240 * MS);
+        trace.record(StartupTrace.Phase.FIRST_FRAME, 0, 420 * MS);
+        StringBuilder report = new StringBuilder();
+        trace.writeReport(report);
+        
+        String[] lines = report.toString().split("\n");
+        assertEquals(3, lines.length);
+        assertTrue(lines[0].startsWith("phase"));
+        assertEquals("warm_up", lines[1].split("\\s+")[0]);
+        assertEquals("180.0", lines[1].split("\\s+")[3]);
+        assertEquals("420.0", lines[2].split("\\s+")[2]);
+        assertEquals("startup[warm_up=60.0+180.0 first_frame=420.0 ms]", trace.describe());
+    }
+    
+    @Test(expected = IllegalArgumentException.class)
+    public void testPhaseEndingBeforeItStarts_isRejected() {
+        new StartupTrace(0).record(StartupTrace.Phase.WARM_UP, 10, 5);
+    }
+}
@@ -0,0 +1,392 @@
+package com.example.edgedetectionviewer;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for multi-stream scheduling, with synthetic sources on their own threads
+ */
+public class StreamManagerTest {
+    
+    private static final int WIDTH = 64;
+    private static final int HEIGHT = 48;
+    
+    private StreamManager manager;
+    private final List<Thread> sources = new ArrayList<>();
+    private volatile boolean sourcesRunning = true;
+    
+    /**
+     * Spins for a fixed time per frame, so pool time is what the scheduler hands out.
+     */
+    private static class SpinProcessor implements FrameProcessor {
+        private final long spinNanos;
+        
+        SpinProcessor(long spinNanos) {
+            this.spinNanos = spinNanos;
+        }
+        
+        @Override
+        public boolean processFrame(ByteBuffer input, ByteBuffer output, int width, int height, boolean edges) {
+            long end = System.nanoTime() + spinNanos;
+            while (System.nanoTime() < end) {
+                // Busy, like a detector
+            }
+            output.put(0, input.get(0));
+            return true;
+        }
+        
+        @Override
+        public boolean processLuma(ByteBuffer luma, int rowStride, ByteBuffer output, int width, int height, boolean edges) {
+            return processFrame(luma, output, width, height, edges);
+        }
+        
+        @Override
+        public boolean processLumaRegions(ByteBuffer luma, int rowStride, int width, int height, RegionSet regions, ByteBuffer output) {
+            return false;
+        }
+        
+        @Override
+        public OutputFormat getOutputFormat() {
+            return OutputFormat.RGBA;
+        }
+        
+        @Override
+        public void setQualityLevel(QualityLevel level) {
+        }
+        
+        @Override
+        public void release() {
+        }
+    }
+    
+    @After
+    public void tearDown() throws InterruptedException {
+        sourcesRunning = false;
+        for (Thread source : sources) {
+            source.join();
+        }
+        if (manager != null) {
+            manager.stop();
+        }
+    }
+    
+    /**
+     * Submits a numbered frame to {@code stream} every {@code periodMillis} until the test ends.
+     */
+    private void startSource(final StreamManager.Stream stream, final long periodMillis) {
+        Thread source = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                int frame = 0;
+                while (sourcesRunning) {
+                    FrameBuffer capture = stream.acquireCaptureBuffer(WIDTH, HEIGHT);
+                    capture.getData().put(0, (byte) frame++);
+                    stream.submit(capture);
+                    try {
+                        Thread.sleep(periodMillis);
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+            }
+        }, "Source-" + stream.getName());
+        sources.add(source);
+        source.start();
+    }
+    
+    /**
+     * Keeps {@code stream} backlogged: each processed frame is replaced before the worker
+     * lets go of the stream, so the scheduler alone decides its share.
+     */
+    private static void startBacklogged(StreamManager.Stream stream) {
+        stream.setListener(new StreamManager.Listener() {
+            @Override
+            public void onFrameProcessed(StreamManager.Stream s) {
+                FrameBuffer frame = s.pollProcessed();
+                if (frame != null) {
+                    frame.release();
+                }
+                s.submit(s.acquireCaptureBuffer(WIDTH, HEIGHT));
+            }
+        });
+        stream.submit(stream.acquireCaptureBuffer(WIDTH, HEIGHT));
+    }
+    
+    private static void awaitProcessed(StreamManager.Stream stream, long count) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (System.nanoTime() < deadline && stream.getProcessedCount() < count) {
+            Thread.sleep(2);
+        }
+    }
+    
+    @Test
+    public void testEachStreamUsesItsOwnProcessor() throws Exception {
+        manager = new StreamManager(2);
+        StreamManager.Stream color = manager.register("back", new JavaFrameProcessor(), StreamManager.DEFAULT_PRIORITY);
+        StreamManager.Stream gray = manager.register("front",
+                new JavaFrameProcessor(new CannyEdgeDetector(), OutputFormat.LUMINANCE), StreamManager.DEFAULT_PRIORITY);
+        manager.start();
+        
+        byte[] frame = SyntheticFrames.rgba(WIDTH, HEIGHT, 3);
+        for (StreamManager.Stream stream : manager.getStreams()) {
+            FrameBuffer capture = stream.acquireCaptureBuffer(WIDTH, HEIGHT);
+            capture.getData().put(frame);
+            stream.submit(capture);
+        }
+        awaitProcessed(color, 1);
+        awaitProcessed(gray, 1);
+        
+        FrameBuffer rgba = color.pollProcessed();
+        assertNotNull(rgba);
+        ByteBuffer expected = ByteBuffer.allocate(frame.length);
+        new JavaFrameProcessor().processFrame(ByteBuffer.wrap(frame), expected, WIDTH, HEIGHT, true);
+        rgba.getData().rewind();
+        assertEquals(expected, rgba.getData());
+        rgba.release();
+        
+        FrameBuffer luma = gray.pollProcessed();
+        assertNotNull(luma);
+        assertEquals(1, luma.getBytesPerPixel());
+        byte[] edges = new byte[WIDTH * HEIGHT];
+        new CannyEdgeDetector().detectEdges(frame, 0, edges, WIDTH, HEIGHT);
+        luma.getData().rewind();
+        assertEquals(ByteBuffer.wrap(edges), luma.getData());
+        luma.release();
+    }
+    
+    @Test
+    public void testEqualPriorities_shareThePoolEvenly() throws Exception {
+        manager = new StreamManager(1);
+        // Frame costs differ 3x, so equal frame counts would not be an even share
+        StreamManager.Stream cheap = manager.register("cheap", new SpinProcessor(TimeUnit.MILLISECONDS.toNanos(1)), 1);
+        StreamManager.Stream costly = manager.register("costly", new SpinProcessor(TimeUnit.MILLISECONDS.toNanos(3)), 1);
+        manager.start();
+        startBacklogged(cheap);
+        startBacklogged(costly);
+        Thread.sleep(600);
+        
+        double ratio = (double) cheap.getBusyNanos() / costly.getBusyNanos();
+        assertTrue(manager.describeStats(), ratio > 0.7 && ratio < 1.4);
+        assertTrue(cheap.getProcessedCount() > costly.getProcessedCount());
+    }
+    
+    @Test
+    public void testPriority_weightsThePoolShare() throws Exception {
+        manager = new StreamManager(1);
+        long spin = TimeUnit.MILLISECONDS.toNanos(2);
+        StreamManager.Stream high = manager.register("high", new SpinProcessor(spin), 3);
+        StreamManager.Stream low = manager.register("low", new SpinProcessor(spin), 1);
+        manager.start();
+        startBacklogged(high);
+        startBacklogged(low);
+        Thread.sleep(600);
+        
+        double ratio = (double) high.getBusyNanos() / low.getBusyNanos();
+        assertTrue(manager.describeStats(), ratio > 2.2 && ratio < 4.0);
+        assertTrue(low.getProcessedCount() > 0);
+    }
+    
+    @Test
+    public void testIdleStream_getsNoCreditForIdleTime() throws Exception {
+        manager = new StreamManager(1);
+        long spin = TimeUnit.MILLISECONDS.toNanos(2);
+        StreamManager.Stream busy = manager.register("busy", new SpinProcessor(spin), 1);
+        StreamManager.Stream late = manager.register("late", new SpinProcessor(spin), 1);
+        manager.start();
+        startBacklogged(busy);
+        Thread.sleep(300);
+        
+        // Had the late stream kept its start time it would run alone for the next 300 ms
+        long busyBefore = busy.getProcessedCount();
+        startBacklogged(late);
+        Thread.sleep(300);
+        long busyDuring = busy.getProcessedCount() - busyBefore;
+        double ratio = (double) busyDuring / late.getProcessedCount();
+        assertTrue(manager.describeStats(), ratio > 0.6 && ratio < 1.6);
+    }
+    
+    @Test
+    public void testBusyStream_dropsOlderFramesAndReleasesThem() throws Exception {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        manager = new StreamManager(2);
+        StreamManager.Stream stream = manager.register("camera", new SpinProcessor(0) {
+            @Override
+            public boolean processFrame(ByteBuffer input, ByteBuffer output, int width, int height, boolean edges) {
+                started.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return super.processFrame(input, output, width, height, edges);
+            }
+        }, 1);
+        manager.start();
+        
+        // The stream's worker blocks on the first frame while 20 more arrive; the second
+        // worker must not take the stream too
+        final AtomicInteger released = new AtomicInteger();
+        for (int i = 0; i < 21; i++) {
+            final FrameBuffer buffer = stream.acquireCaptureBuffer(WIDTH, HEIGHT);
+            buffer.getData().put(0, (byte) i);
+            stream.submit(new CapturedFrame() {
+                @Override
+                public int getWidth() {
+                    return buffer.getWidth();
+                }
+                
+                @Override
+                public int getHeight() {
+                    return buffer.getHeight();
+                }
+                
+                @Override
+                public long getTimestampNanos() {
+                    return buffer.getTimestampNanos();
+                }
+                
+                @Override
+                public boolean processInto(FrameProcessor processor, ByteBuffer output, boolean edges) {
+                    return buffer.processInto(processor, output, edges);
+                }
+                
+                @Override
+                public boolean processRegionsInto(FrameProcessor processor, RegionSet regions, ByteBuffer packed) {
+                    return false;
+                }
+                
+                @Override
+                public void release() {
+                    released.incrementAndGet();
+                    buffer.release();
+                }
+            });
+            if (i == 0) {
+                assertTrue(started.await(5, TimeUnit.SECONDS));
+            }
+        }
+        release.countDown();
+        awaitProcessed(stream, 2);
+        
+        FrameBuffer result = stream.pollProcessed();
+        assertNotNull(result);
+        assertEquals(20, result.getData().get(0));
+        assertEquals(2, stream.getProcessedCount());
+        assertEquals(21, stream.getSubmittedCount());
+        assertEquals(19, stream.getDroppedCount());
+        assertEquals(21, released.get());
+        result.release();
+    }
+    
+    @Test
+    public void testStreamIsNeverProcessedConcurrently() throws Exception {
+        manager = new StreamManager(4);
+        final AtomicInteger inside = new AtomicInteger();
+        final AtomicInteger overlaps = new AtomicInteger();
+        List<StreamManager.Stream> streams = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            final AtomicInteger streamInside = new AtomicInteger();
+            streams.add(manager.register("s" + i, new SpinProcessor(TimeUnit.MICROSECONDS.toNanos(200)) {
+                @Override
+                public boolean processFrame(ByteBuffer input, ByteBuffer output, int width, int height, boolean edges) {
+                    if (streamInside.incrementAndGet() > 1) {
+                        overlaps.incrementAndGet();
+                    }
+                    inside.incrementAndGet();
+                    try {
+                        return super.processFrame(input, output, width, height, edges);
+                    } finally {
+                        inside.decrementAndGet();
+                        streamInside.decrementAndGet();
+                    }
+                }
+            }, 1));
+        }
+        manager.start();
+        for (StreamManager.Stream stream : streams) {
+            startSource(stream, 0);
+        }
+        Thread.sleep(300);
+        
+        assertEquals(0, overlaps.get());
+        for (StreamManager.Stream stream : streams) {
+            assertTrue(stream.describeStats(), stream.getProcessedCount() > 10);
+            assertTrue(stream.getLatency().getCount() > 0);
+        }
+    }
+    
+    @Test
+    public void testUnregister_releasesQueuedFramesAndLaterSubmits() throws Exception {
+        manager = new StreamManager(1);
+        final AtomicInteger released = new AtomicInteger();
+        StreamManager.Stream stream = manager.register("camera", new SpinProcessor(0), 1);
+        // Not started, so frames stay queued
+        for (int i = 0; i < 3; i++) {
+            stream.submit(new ReleaseCounter(released));
+        }
+        assertEquals(1, released.get());
+        
+        manager.unregister(stream);
+        assertEquals(3, released.get());
+        assertTrue(manager.getStreams().isEmpty());
+        
+        stream.submit(new ReleaseCounter(released));
+        assertEquals(4, released.get());
+        manager.start();
+        Thread.sleep(20);
+        assertEquals(0, stream.getProcessedCount());
+    }
+    
+    @Test(expected = IllegalArgumentException.class)
+    public void testRegister_rejectsZeroPriority() {
+        new StreamManager(1).register("camera", new SpinProcessor(0), 0);
+    }
+    
+    private static class ReleaseCounter implements CapturedFrame {
+        private final AtomicInteger released;
+        
+        ReleaseCounter(AtomicInteger released) {
+            this.released = released;
+        }
+        
+        @Override
+        public int getWidth() {
+            return WIDTH;
+        }
+        
+        @Override
+        public int getHeight() {
+            return HEIGHT;
+        }
+        
+        @Override
+        public long getTimestampNanos() {
+            return 0;
+        }
+        
+        @Override
+        public boolean processInto(FrameProcessor processor, ByteBuffer output, boolean edges) {
+            return true;
+        }
+        
+        @Override
+        public boolean processRegionsInto(FrameProcessor processor, RegionSet regions, ByteBuffer packed) {
+            return false;
+        }
+        
+        @Override
+        public void release() {
+            released.incrementAndGet();
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package com.example.edgedetectionviewer;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class SyntheticFrameSourceTest {
+    private static final int WIDTH = 64;
+    private static final int HEIGHT = 48;
+    
+    private final List<PacedFrameSource> sources = new ArrayList<>();
+    private FramePipeline pipeline;
+    
+    @After
+    public void tearDown() {
+        for (PacedFrameSource source : sources) {
+            source.stop();
+        }
+        if (pipeline != null) {
+            pipeline.stop();
+        }
+    }
+    
+    private SyntheticFrameSource source(int seed) {
+        SyntheticFrameSource source = new SyntheticFrameSource(WIDTH, HEIGHT, seed);
+        sources.add(source);
+        return source;
+    }
+    
+    private static byte[] render(SyntheticFrameSource source, long index) {
+        ByteBuffer plane = ByteBuffer.allocate(WIDTH * HEIGHT);
+        source.render(index, plane);
+        return plane.array();
+    }
+    
+    @Test
+    public void testFrames_dependOnSeedSettingsAndIndexOnly() {
+        SyntheticFrameSource a = source(1);
+        SyntheticFrameSource b = source(1);
+        a.setNoise(20);
+        b.setNoise(20);
+        render(b, 3);
+        assertArrayEquals(render(a, 7), render(b, 7));
+        
+        assertFalse(Arrays.equals(render(a, 7), render(a, 8)));
+        SyntheticFrameSource other = source(2);
+        other.setNoise(20);
+        assertFalse(Arrays.equals(render(a, 7), render(other, 7)));
+    }
+    
+    @Test
+    public void testMotion_pansCheckerboard() {
+        SyntheticFrameSource source = source(1);
+        source.setMotion(4, 0);
+        byte[] first = render(source, 0);
+        byte[] later = render(source, 1);
+        // Away from the disc, row 0 moved four pixels left
+        for (int x = 0; x < WIDTH - 4; x++) {
+            assertEquals("x " + x, first[x + 4], later[x]);
+        }
+    }
+    
+    @Test
+    public void testUnthrottled_waitsForReleasedFrames() throws Exception {
+        SyntheticFrameSource source = source(1);
+        source.setFrameRate(0);
+        final List<CapturedFrame> held = new ArrayList<>();
+        source.start(new CaptureTarget() {
+            @Override
+            public void submit(CapturedFrame frame) {
+                synchronized (held) {
+                    held.add(frame);
+                }
+            }
+        });
+        // One frame at a time: the next waits, filled, for the first to come back
+        awaitDelivered(source, 1);
+        Thread.sleep(50);
+        assertEquals(1, source.getDeliveredCount());
+        
+        synchronized (held) {
+            held.remove(0).release();
+        }
+        awaitDelivered(source, 2);
+        assertEquals(0, source.getDroppedCount());
+    }
+    
+    @Test
+    public void testFixedRate_dropsWhileTargetHoldsEveryFrame() throws Exception {
+        SyntheticFrameSource source = source(1);
+        source.setFrameRate(1000);
+        source.setFrameLimit(30);
+        final List<CapturedFrame> held = new ArrayList<>();
+        source.start(new CaptureTarget() {
+            @Override
+            public void submit(CapturedFrame frame) {
+                held.add(frame);
+            }
+        });
+        awaitFinished(source);
+        
+        assertTrue(source.getDeliveredCount() < 30);
+        assertEquals(30, source.getDeliveredCount() + source.getDroppedCount());
+        assertEquals(source.getDeliveredCount(), held.size());
+    }
+    
+    @Test
+    public void testPipeline_processesEveryFrameWhenUnthrottled() throws Exception {
+        SyntheticFrameSource source = source(1);
+        source.setFrameRate(0);
+        source.setFrameLimit(20);
+        pipeline = new FramePipeline(new JavaFrameProcessor(new CannyEdgeDetector(), OutputFormat.LUMINANCE));
+        pipeline.setListener(new FramePipeline.Listener() {
+            @Override
+            public void onFrameProcessed() {
+                FrameBuffer frame = pipeline.pollProcessed();
+                if (frame != null) {
+                    frame.release();
+                }
+            }
+        });
+        pipeline.start();
+        source.start(pipeline);
+        awaitFinished(source);
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (pipeline.getProcessedCount() < 20 && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        
+        assertEquals(20, pipeline.getProcessedCount());
+        assertEquals(0, pipeline.getDroppedFrameCount());
+        assertEquals(0, source.getDroppedCount());
+    }
+    
+    private static void awaitDelivered(PacedFrameSource source, long count) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (source.getDeliveredCount() < count && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+        assertEquals(count, source.getDeliveredCount());
+    }
+    
+    static void awaitFinished(PacedFrameSource source) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (!source.isFinished() && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+        assertTrue("Source finished", source.isFinished());
+    }
+}
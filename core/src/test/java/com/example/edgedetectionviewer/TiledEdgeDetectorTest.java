@@ -0,0 +1,132 @@
+package com.example.edgedetectionviewer;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.*;
+
+/**
+ * The tiled detector must give exactly the single-threaded output for any strip layout.
+ */
+public class TiledEdgeDetectorTest {
+    
+    private static ForkJoinPool pool;
+    
+    @BeforeClass
+    public static void setUpPool() {
+        pool = new ForkJoinPool(4);
+    }
+    
+    @AfterClass
+    public static void tearDownPool() {
+        pool.shutdown();
+    }
+    
+    @Test
+    public void testDetectEdges_matchesSingleThreaded() {
+        int[][] sizes = {{640, 480}, {1280, 720}, {33, 17}, {7, 5}, {64, 1}, {1, 64}};
+        int[] stripCounts = {1, 2, 3, 8, 64, 1000};
+        for (int[] size : sizes) {
+            int width = size[0];
+            int height = size[1];
+            byte[] frame = SyntheticFrames.rgba(width, height, width + height);
+            byte[] expected = new byte[width * height];
+            new CannyEdgeDetector().detectEdges(frame, 0, expected, width, height);
+            
+            for (int strips : stripCounts) {
+                byte[] edges = new byte[width * height];
+                new TiledEdgeDetector(pool, new CannyEdgeDetector(), strips)
+                        .detectEdges(frame, 0, edges, width, height);
+                assertArrayEquals(width + "x" + height + " in " + strips + " strips", expected, edges);
+            }
+        }
+    }
+    
+    @Test
+    public void testBlur3x3_matchesSingleThreaded() {
+        int width = 640;
+        int height = 480;
+        byte[] frame = SyntheticFrames.rgba(width, height, 7);
+        CannyEdgeDetector single = new CannyEdgeDetector();
+        single.setBlurKernelSize(3);
+        byte[] expected = new byte[width * height];
+        single.detectEdges(frame, 0, expected, width, height);
+        byte[] full = new byte[width * height];
+        new CannyEdgeDetector().detectEdges(frame, 0, full, width, height);
+        assertFalse(Arrays.equals(full, expected));
+        
+        for (int strips : new int[]{1, 3, 64}) {
+            TiledEdgeDetector tiled = new TiledEdgeDetector(pool, new CannyEdgeDetector(), strips);
+            tiled.setBlurKernelSize(3);
+            byte[] edges = new byte[width * height];
+            tiled.detectEdges(frame, 0, edges, width, height);
+            assertArrayEquals(strips + " strips", expected, edges);
+        }
+    }
+    
+    @Test
+    public void testDetectEdges_weakEdgeLinkedAcrossStrips() {
+        // Vertical step that is strong only in the first strip and too weak everywhere else
+        // to pass the high threshold; it must still be traced through all twelve strips
+        int width = 64;
+        int height = 96;
+        TiledEdgeDetector tiled = new TiledEdgeDetector(pool, new CannyEdgeDetector(), 12);
+        
+        byte[] weakOnly = new byte[width * height];
+        tiled.detectEdges(stepFrame(width, height, 0), 0, weakOnly, width, height);
+        assertEquals("Weak step alone", 0, countEdges(weakOnly, height - 4, width));
+        
+        byte[] linked = new byte[width * height];
+        tiled.detectEdges(stepFrame(width, height, 8), 0, linked, width, height);
+        assertEquals("Weak step in the last strip", 1, countEdges(linked, height - 4, width));
+        
+        byte[] expected = new byte[width * height];
+        new CannyEdgeDetector().detectEdges(stepFrame(width, height, 8), 0, expected, width, height);
+        assertArrayEquals(expected, linked);
+    }
+    
+    private static byte[] stepFrame(int width, int height, int strongRows) {
+        byte[] frame = new byte[width * height * 4];
+        for (int y = 0; y < height; y++) {
+            for (int x = width / 2; x < width; x++) {
+                byte v = (byte) (y < strongRows ? 255 : 65);
+                int i = (y * width + x) * 4;
+                frame[i] = v;
+                frame[i + 1] = v;
+                frame[i + 2] = v;
+            }
+        }
+        return frame;
+    }
+    
+    private static int countEdges(byte[] edges, int row, int width) {
+        int count = 0;
+        for (int x = 0; x < width; x++) {
+            if (edges[row * width + x] != 0) {
+                count++;
+            }
+        }
+        return count;
+    }
+    
+    @Test
+    public void testDetectEdges_reusedAcrossFramesAndSizes() {
+        TiledEdgeDetector tiled = new TiledEdgeDetector(pool, new CannyEdgeDetector(), 5);
+        CannyEdgeDetector reference = new CannyEdgeDetector();
+        int[][] sizes = {{320, 240}, {320, 240}, {160, 90}, {320, 240}};
+        for (int i = 0; i < sizes.length; i++) {
+            int width = sizes[i][0];
+            int height = sizes[i][1];
+            byte[] frame = SyntheticFrames.rgba(width, height, i + 1);
+            byte[] expected = new byte[width * height];
+            byte[] edges = new byte[width * height];
+            reference.detectEdges(frame, 0, expected, width, height);
+            tiled.detectEdges(frame, 0, edges, width, height);
+            assertArrayEquals("Frame " + i, expected, edges);
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package com.example.edgedetectionviewer;
+
+import java.nio.ByteBuffer;
+import java.util.zip.CRC32;
+
+/**
+ * Deterministic RGBA test frames: a checkerboard with a textured disc and per-channel noise,
+ * which gives Canny straight, curved and noisy edges to work on.
+ */
+final class SyntheticFrames {
+    
+    private SyntheticFrames() {
+    }
+    
+    static byte[] rgba(int width, int height, int seed) {
+        byte[] frame = new byte[width * height * 4];
+        int state = seed * 0x9E3779B9 | 1;
+        double radius = height / 4.0;
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int base = ((x / 17 + y / 13) % 2 == 0) ? 60 : 190;
+                double cx = x - width / 2.0;
+                double cy = y - height / 2.0;
+                if (cx * cx + cy * cy < radius * radius) {
+                    base = 120 + (int) (40 * Math.sin(x * 0.3));
+                }
+                int i = (y * width + x) * 4;
+                state = xorshift(state);
+                frame[i] = clamp(base + (state & 0xFF) % 41 - 20);
+                state = xorshift(state);
+                frame[i + 1] = clamp(base + (state & 0xFF) % 61 - 30 + x % 7);
+                state = xorshift(state);
+                frame[i + 2] = clamp(base - (state & 0xFF) % 41);
+                frame[i + 3] = (byte) 255;
+            }
+        }
+        return frame;
+    }
+    
+    /**
+     * Lays a packed luminance frame out like a camera Y plane: a direct buffer with
+     * {@code rowStride}-byte rows, junk in the padding and no padding after the last row.
+     */
+    static ByteBuffer lumaPlane(byte[] luma, int width, int height, int rowStride) {
+        ByteBuffer plane = ByteBuffer.allocateDirect(LumaFrame.requiredCapacity(width, height, rowStride));
+        for (int i = 0; i < plane.capacity(); i++) {
+            plane.put(i, (byte) 0xA5);
+        }
+        for (int y = 0; y < height; y++) {
+            plane.position(y * rowStride);
+            plane.put(luma, y * width, width);
+        }
+        plane.rewind();
+        return plane;
+    }
+    
+    static long crc(byte[] data) {
+        CRC32 crc = new CRC32();
+        crc.update(data, 0, data.length);
+        return crc.getValue();
+    }
+    
+    private static int xorshift(int x) {
+        x ^= x << 13;
+        x ^= x >>> 17;
+        x ^= x << 5;
+        return x;
+    }
+    
+    private static byte clamp(int v) {
+        return (byte) Math.max(0, Math.min(255, v));
+    }
+}
@@ -0,0 +1,314 @@
+/**
+ * Web Worker behind the viewer's live mode.
+ * Reads the app's frame stream, applies its delta-coded frames and edge maps and expands
+ * them to RGBA, so the main thread only draws.
+ */
+
+// Message header written by FrameStreamServer (big-endian)
+const HEADER_SIZE = 24;
+const FLAG_KEYFRAME = 1;
+const FLAG_EDGES = 2;
+const FLAG_EDGE_RUNS = 4;
+const FLAG_EDGE_WORDS = 8;
+
+/** Viewer to worker */
+type ViewerMessage =
+    | { type: 'start'; url: string }
+    | { type: 'stop' }
+    // The previous frame is on screen; its pixels come back for reuse
+    | { type: 'ready'; image: ImageData };
+
+/** Worker to viewer */
+interface LiveFrameMessage {
+    type: 'frame';
+    width: number;
+    height: number;
+    image: ImageData; // pixel buffer transferred
+    fps: number;
+    sequence: number;
+    edges: boolean;
+    bytesReceived: number;
+    framesSkipped: number;
+}
+
+interface LiveStatusMessage {
+    type: 'status';
+    state: 'connected' | 'closed' | 'error';
+    message?: string;
+}
+
+type WorkerMessage = LiveFrameMessage | LiveStatusMessage;
+
+/**
+ * Collects network chunks until whole messages are available.
+ */
+class MessageAssembler {
+    private buffer = new Uint8Array(1 << 16);
+    private start = 0;
+    private end = 0;
+
+    push(chunk: Uint8Array): void {
+        if (this.end + chunk.length > this.buffer.length) {
+            const pending = this.end - this.start;
+            if (pending + chunk.length > this.buffer.length) {
+                const grown = new Uint8Array(Math.max(this.buffer.length * 2, pending + chunk.length));
+                grown.set(this.buffer.subarray(this.start, this.end));
+                this.buffer = grown;
+            } else {
+                this.buffer.copyWithin(0, this.start, this.end);
+            }
+            this.start = 0;
+            this.end = pending;
+        }
+        this.buffer.set(chunk, this.end);
+        this.end += chunk.length;
+    }
+
+    /**
+     * Returns the next whole message, valid until the next push().
+     */
+    next(): { header: DataView; body: Uint8Array } | null {
+        if (this.end - this.start < HEADER_SIZE) return null;
+        const header = new DataView(this.buffer.buffer, this.start, HEADER_SIZE);
+        const bodyLength = header.getUint32(0);
+        const messageEnd = this.start + HEADER_SIZE + bodyLength;
+        if (messageEnd > this.end) return null;
+        const body = this.buffer.subarray(this.start + HEADER_SIZE, messageEnd);
+        this.start = messageEnd;
+        return { header, body };
+    }
+}
+
+/**
+ * Applies FrameDeltaCodec runs (varint skip, varint literal, literal bytes) to frame.
+ */
+function applyRuns(body: Uint8Array, frame: Uint8Array): void {
+    let i = 0;
+    let position = 0;
+    const readVarint = (): number => {
+        let value = 0;
+        let scale = 1;
+        let b: number;
+        do {
+            if (i >= body.length) throw new Error('Truncated run');
+            b = body[i++];
+            value += (b & 0x7f) * scale;
+            scale *= 128;
+        } while (b & 0x80);
+        return value;
+    };
+    while (i < body.length) {
+        position += readVarint();
+        const literal = readVarint();
+        if (position + literal > frame.length || i + literal > body.length) {
+            throw new Error(`Runs overflow the frame at byte ${position}`);
+        }
+        frame.set(body.subarray(i, i + literal), position);
+        i += literal;
+        position += literal;
+    }
+}
+
+/**
+ * Applies EdgeMapCodec runs to an edge frame of 0 and 255: nibbles, high first, counting
+ * unchanged then flipped pixels in turn. 15 is followed by the excess in 3-bit groups,
+ * least significant first, with bit 8 on all but the last.
+ */
+function applyEdgeRuns(body: Uint8Array, frame: Uint8Array): void {
+    const nibbles = 2 * body.length;
+    const nibbleAt = (n: number): number => (n & 1) === 0 ? body[n >> 1] >> 4 : body[n >> 1] & 0xf;
+    let n = 0;
+    let position = 0;
+    let flipped = false;
+    while (n < nibbles) {
+        let run = nibbleAt(n++);
+        if (run === 15) {
+            let scale = 1;
+            let group: number;
+            do {
+                if (n === nibbles) throw new Error(`Truncated run at pixel ${position}`);
+                group = nibbleAt(n++);
+                run += (group & 7) * scale;
+                scale *= 8;
+            } while (group & 8);
+        }
+        if (position + run > frame.length) {
+            throw new Error(`Runs overflow the frame at pixel ${position}`);
+        }
+        if (flipped) {
+            for (let end = position + run; position < end; position++) {
+                frame[position] ^= 0xff;
+            }
+        } else {
+            position += run;
+        }
+        flipped = !flipped;
+    }
+}
+
+/**
+ * Unpacks EdgeMap words into an edge frame of 0 and 255: big-endian 64-bit words, pixel i
+ * in bit i % 64 of word i / 64, so the last byte of each word holds its first 8 pixels.
+ */
+function applyEdgeWords(body: Uint8Array, frame: Uint8Array): void {
+    if (body.length !== Math.ceil(frame.length / 64) * 8) {
+        throw new Error('Edge map size does not match the frame');
+    }
+    for (let p = 0; p < frame.length; p++) {
+        const byte = body[(p >> 6) * 8 + 7 - ((p >> 3) & 7)];
+        frame[p] = (byte >> (p & 7)) & 1 ? 255 : 0;
+    }
+}
+
+const scope = self as unknown as Worker;
+
+let controller: AbortController | null = null;
+// Frame as the server last sent it, one or four bytes per pixel
+let frame = new Uint8Array(0);
+let width = 0;
+let height = 0;
+let bytesPerPixel = 0;
+let edges = false;
+let fps = 0;
+let sequence = -1;
+let bytesReceived = 0;
+let framesSkipped = 0;
+// Latest-wins hand-off: the viewer gets a frame only once it has drawn the previous one
+let viewerReady = true;
+let dirty = false;
+let spare: ImageData | null = null;
+
+function post(message: WorkerMessage, transfer: Transferable[] = []): void {
+    scope.postMessage(message, transfer);
+}
+
+function onMessage(header: DataView, body: Uint8Array): void {
+    const flags = header.getUint8(4);
+    const bpp = header.getUint8(5);
+    const w = header.getUint32(8);
+    const h = header.getUint32(12);
+    const seq = header.getInt32(16);
+    if ((flags & FLAG_KEYFRAME) !== 0) {
+        frame = new Uint8Array(w * h * bpp);
+        width = w;
+        height = h;
+        bytesPerPixel = bpp;
+    } else if (w !== width || h !== height || bpp !== bytesPerPixel) {
+        throw new Error('Delta frame without a keyframe');
+    }
+    if ((flags & FLAG_EDGE_RUNS) !== 0) {
+        applyEdgeRuns(body, frame);
+    } else if ((flags & FLAG_EDGE_WORDS) !== 0) {
+        applyEdgeWords(body, frame);
+    } else {
+        applyRuns(body, frame);
+    }
+
+    if (sequence >= 0 && seq > sequence + 1) {
+        framesSkipped += seq - sequence - 1;
+    }
+    if (dirty) {
+        // The viewer never got the previous frame
+        framesSkipped++;
+    }
+    sequence = seq;
+    edges = (flags & FLAG_EDGES) !== 0;
+    fps = header.getFloat32(20);
+    dirty = true;
+    if (viewerReady) {
+        sendFrame();
+    }
+}
+
+function sendFrame(): void {
+    const pixelCount = width * height;
+    const image = spare && spare.width === width && spare.height === height ? spare : new ImageData(width, height);
+    const pixels = image.data;
+    spare = null;
+    if (bytesPerPixel === 4) {
+        pixels.set(frame);
+    } else {
+        for (let p = 0, q = 0; p < pixelCount; p++, q += 4) {
+            const value = frame[p];
+            pixels[q] = value;
+            pixels[q + 1] = value;
+            pixels[q + 2] = value;
+            pixels[q + 3] = 255;
+        }
+    }
+    dirty = false;
+    viewerReady = false;
+    post({
+        type: 'frame',
+        width,
+        height,
+        image,
+        fps,
+        sequence,
+        edges,
+        bytesReceived,
+        framesSkipped
+    }, [pixels.buffer]);
+}
+
+async function stream(url: string, signal: AbortSignal): Promise<void> {
+    const response = await fetch(url, { signal, cache: 'no-store' });
+    if (!response.ok || !response.body) {
+        throw new Error(`Stream request failed: ${response.status}`);
+    }
+    post({ type: 'status', state: 'connected' });
+    const reader = response.body.getReader();
+    const assembler = new MessageAssembler();
+    for (;;) {
+        const { done, value } = await reader.read();
+        if (done) break;
+        bytesReceived += value.length;
+        assembler.push(value);
+        for (let message = assembler.next(); message; message = assembler.next()) {
+            onMessage(message.header, message.body);
+        }
+    }
+}
+
+function start(url: string): void {
+    stop();
+    const current = new AbortController();
+    controller = current;
+    frame = new Uint8Array(0);
+    width = height = bytesPerPixel = 0;
+    sequence = -1;
+    bytesReceived = 0;
+    framesSkipped = 0;
+    dirty = false;
+    stream(url, current.signal).then(
+        () => post({ type: 'status', state: 'closed' }),
+        (error: Error) => {
+            if (!current.signal.aborted) {
+                post({ type: 'status', state: 'error', message: error.message });
+            }
+        });
+}
+
+function stop(): void {
+    controller?.abort();
+    controller = null;
+}
+
+scope.onmessage = (event: MessageEvent<ViewerMessage>) => {
+    const message = event.data;
+    switch (message.type) {
+        case 'start':
+            start(message.url);
+            break;
+        case 'stop':
+            stop();
+            break;
+        case 'ready':
+            spare = message.image;
+            viewerReady = true;
+            if (dirty) sendFrame();
+            break;
+    }
+};
+
+export { ViewerMessage, WorkerMessage, LiveFrameMessage, LiveStatusMessage };
@@ -1,10 +1,12 @@
 /**
  * TypeScript Web Viewer for Edge Detection processed frames
- * Displays frame data with stats overlay
+ * Displays frame data with stats overlay, from a file or live from the app
  */
 
+import type { ViewerMessage, WorkerMessage, LiveFrameMessage } from './stream-worker.js';
+
 interface FrameData {
-    imageData: string; // base64 or URL
+    imageData: string; // base64 or URL; empty for live frames, drawn straight to the canvas
     width: number;
     height: number;
     fps: number;
@@ -18,6 +20,13 @@ class EdgeDetectionViewer {
     private statsElement: HTMLElement;
     private currentFrame: FrameData | null = null;
 
+    // Live mode: decoding runs in a worker, see stream-worker.ts
+    private streamWorker: Worker | null = null;
+    private liveUrl: string | null = null;
+    private liveStatus = '';
+    private liveStats: { bytesReceived: number; framesSkipped: number; sequence: number } | null = null;
+    private lastStatsUpdate = 0;
+
     constructor() {
         this.canvas = document.getElementById('frameCanvas') as HTMLCanvasElement;
         this.ctx = this.canvas.getContext('2d')!;
@@ -39,6 +48,104 @@ class EdgeDetectionViewer {
         // Setup clear button
         const clearButton = document.getElementById('clearButton') as HTMLButtonElement;
         clearButton.addEventListener('click', () => this.clearFrame());
+
+        // Setup live button
+        const liveButton = document.getElementById('liveButton') as HTMLButtonElement;
+        const streamUrl = document.getElementById('streamUrl') as HTMLInputElement;
+        liveButton.addEventListener('click', () => {
+            if (this.liveUrl) {
+                this.stopLive();
+            } else if (streamUrl.value) {
+                this.startLive(streamUrl.value);
+            }
+        });
+    }
+
+    /**
+     * Streams frames from the app's FrameStreamServer, e.g. http://localhost:8090/stream through adb forward
+     */
+    public startLive(url: string): void {
+        this.stopLive();
+        if (!this.streamWorker) {
+            this.streamWorker = new Worker(new URL('./stream-worker.js', import.meta.url), { type: 'module' });
+            this.streamWorker.onmessage = (e: MessageEvent<WorkerMessage>) => this.handleWorkerMessage(e.data);
+        }
+        this.liveUrl = url;
+        this.liveStatus = 'Connecting';
+        this.liveStats = null;
+        this.postToWorker({ type: 'start', url });
+        this.setLiveButton(true);
+        this.updateStats();
+    }
+
+    public stopLive(): void {
+        if (!this.liveUrl) return;
+        this.postToWorker({ type: 'stop' });
+        this.liveUrl = null;
+        this.setLiveButton(false);
+    }
+
+    /**
+     * Stops streaming and drops live stats, before showing a frame from elsewhere.
+     */
+    private leaveLiveMode(): void {
+        this.stopLive();
+        this.liveStatus = '';
+        this.liveStats = null;
+    }
+
+    private postToWorker(message: ViewerMessage, transfer: Transferable[] = []): void {
+        this.streamWorker!.postMessage(message, transfer);
+    }
+
+    private setLiveButton(live: boolean): void {
+        const liveButton = document.getElementById('liveButton') as HTMLButtonElement;
+        liveButton.textContent = live ? 'Stop Live' : 'Go Live';
+    }
+
+    private handleWorkerMessage(message: WorkerMessage): void {
+        if (message.type === 'status') {
+            this.liveStatus = message.state === 'connected' ? 'Connected'
+                : message.state === 'closed' ? 'Stream ended' : `Error: ${message.message}`;
+            if (message.state !== 'connected') {
+                this.liveUrl = null;
+                this.setLiveButton(false);
+            }
+            this.updateStats();
+            return;
+        }
+        if (this.liveUrl) {
+            this.drawLiveFrame(message);
+        }
+        // Always hand the buffer back, or the worker stops sending
+        this.postToWorker({ type: 'ready', image: message.image }, [message.image.data.buffer]);
+    }
+
+    private drawLiveFrame(message: LiveFrameMessage): void {
+        if (this.canvas.width !== message.width || this.canvas.height !== message.height) {
+            this.canvas.width = message.width;
+            this.canvas.height = message.height;
+        }
+        this.ctx.putImageData(message.image, 0, 0);
+        this.currentFrame = {
+            imageData: '',
+            width: message.width,
+            height: message.height,
+            fps: message.fps,
+            timestamp: Date.now(),
+            processedWithEdges: message.edges
+        };
+        this.liveStats = {
+            bytesReceived: message.bytesReceived,
+            framesSkipped: message.framesSkipped,
+            sequence: message.sequence
+        };
+        // Rebuilding the stats panel every frame would cost more than drawing it
+        const now = performance.now();
+        if (now - this.lastStatsUpdate >= 250) {
+            this.lastStatsUpdate = now;
+            this.updateStats();
+        }
     }
 
     private handleFileUpload(event: Event): void {
@@ -46,6 +153,7 @@ class EdgeDetectionViewer {
         const file = input.files?.[0];
 
         if (!file) return;
+        this.leaveLiveMode();
 
         const reader = new FileReader();
         reader.onload = (e) => {
@@ -70,6 +178,7 @@ class EdgeDetectionViewer {
     }
 
     private loadSampleFrame(): void {
+        this.leaveLiveMode();
         // Create a sample processed frame with edge-like pattern
         const width = 640;
         const height = 480;
@@ -130,13 +239,26 @@ class EdgeDetectionViewer {
     }
 
     private updateStats(): void {
-        if (!this.currentFrame) {
-            this.statsElement.innerHTML = '<p class="no-data">No frame loaded</p>';
+        if (!this.currentFrame || (this.liveStatus && !this.liveStats)) {
+            this.statsElement.innerHTML = `<p class="no-data">${this.liveStatus || 'No frame loaded'}</p>`;
             return;
         }
 
         const date = new Date(this.currentFrame.timestamp);
         const processingMode = this.currentFrame.processedWithEdges ? 'Edge Detection' : 'Grayscale';
+        const live = this.liveStats ? `
+            <div class="stat-item">
+                <span class="stat-label">Live:</span>
+                <span class="stat-value">${this.liveStatus}</span>
+            </div>
+            <div class="stat-item">
+                <span class="stat-label">Received:</span>
+                <span class="stat-value">${(this.liveStats.bytesReceived / 1e6).toFixed(1)} MB</span>
+            </div>
+            <div class="stat-item">
+                <span class="stat-label">Skipped Frames:</span>
+                <span class="stat-value">${this.liveStats.framesSkipped} of ${this.liveStats.sequence + 1}</span>
+            </div>` : '';
 
         this.statsElement.innerHTML = `
             <div class="stat-item">
@@ -154,11 +276,12 @@ class EdgeDetectionViewer {
             <div class="stat-item">
                 <span class="stat-label">Timestamp:</span>
                 <span class="stat-value">${date.toLocaleTimeString()}</span>
-            </div>
+            </div>${live}
         `;
     }
 
     private clearFrame(): void {
+        this.leaveLiveMode();
         this.currentFrame = null;
         this.ctx.clearRect(0, 0, this.canvas.width, this.canvas.height);
         this.canvas.width = 640;